@@ -0,0 +1,12 @@
+package com.prelinamontelli.jsondb;
+
+/**
+ * SELECT 中的聚合函数，见 {@link HashAggregator}。除 COUNT(*) 外都忽略 NULL 值。
+ */
+enum AggregateFunction {
+    COUNT, // 行数（COUNT(*)）或非 NULL 值的个数，结果为整数
+    SUM,   // 仅数值列：INTEGER 列的和为整数，DOUBLE 列的和为小数；没有非 NULL 值时为 NULL
+    AVG,   // 仅数值列，结果为小数；没有非 NULL 值时为 NULL
+    MIN,   // 按列类型比较的最小值
+    MAX    // 按列类型比较的最大值
+}
@@ -0,0 +1,470 @@
+package com.prelinamontelli.jsondb;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 按列编码的二进制快照格式。
+ * <pre>
+ * 文件头：魔数 "JSDB"、格式版本、标志位（bit 0 = DEFLATE 压缩），文件头之后的内容整体按标志位压缩。
+ * 数据库：名称、lastLsn、表数量，然后逐个写表。
+ * 表：名称、列定义（只写一次）、nextRowId、行数、行 ID（差值变长编码），
+ *     然后每列一个数据块：NULL 位图，再按类型写非 NULL 值
+ *     （INTEGER 为 zigzag 变长整数，DOUBLE 为 8 字节，BOOLEAN 为位图，STRING 为字典加变长编码），然后是索引定义，
+ *     最后是统计信息（版本 2 起）：标志字节，有统计时接着 ANALYZE 时的行数、修改次数和每列的数据分布。
+ * </pre>
+ * 整数都使用变长编码，字符串为 UTF-8 字节长度加内容。
+ */
+final class BinarySnapshotCodec implements SnapshotCodec {
+    private static final int MAGIC = 0x4A534442; // "JSDB"
+    private static final int VERSION = 2;
+    private static final int MIN_VERSION = 1; // 版本 1 没有统计信息
+    private static final int FLAG_DEFLATE = 1;
+
+    private final boolean compress;
+    private final PageStore pageStore;
+
+    /**
+     * @param pageStore 非 null 时加载的表使用分页存储模式
+     */
+    BinarySnapshotCodec(boolean compress, PageStore pageStore) {
+        this.compress = compress;
+        this.pageStore = pageStore;
+    }
+
+    @Override
+    public void write(Database image, OutputStream target) throws IOException {
+        OutputStream unclosable = new FilterOutputStream(target) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush(); // 文件由调用者 fsync 和关闭
+            }
+        };
+        DataOutputStream header = new DataOutputStream(unclosable);
+        header.writeInt(MAGIC);
+        header.writeByte(VERSION);
+        header.writeByte(compress ? FLAG_DEFLATE : 0);
+        header.flush();
+        Deflater deflater = compress ? new Deflater(Deflater.BEST_SPEED) : null;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(compress
+                ? new DeflaterOutputStream(unclosable, deflater, 1 << 16)
+                : unclosable, 1 << 16))) {
+            writeString(out, image.getName());
+            writeVarLong(out, image.getLastLsn());
+            Map<String, Table> tables = image.getTables();
+            writeVarLong(out, tables.size());
+            for (Table table : tables.values()) {
+                writeTable(out, table);
+            }
+        } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+    }
+
+    private static void writeTable(DataOutputStream out, Table table) throws IOException {
+        writeString(out, table.getName());
+        List<Column> columns = table.getColumnDefinitions();
+        writeVarLong(out, columns.size());
+        for (Column column : columns) {
+            writeString(out, column.getName());
+            writeString(out, column.getType().name());
+            out.writeByte((column.isPrimaryKey() ? 1 : 0) | (column.isUnique() ? 2 : 0));
+        }
+        writeVarLong(out, table.getNextRowId());
+
+        ColumnStore store = table.columnStore();
+        int[] liveSlots = new int[store.liveCount()];
+        int rowCount = 0;
+        for (int slot = 0; slot < store.size(); slot++) {
+            if (store.isLive(slot)) {
+                liveSlots[rowCount++] = slot;
+            }
+        }
+        writeVarLong(out, rowCount);
+        long previousRowId = 0;
+        for (int slot : liveSlots) {
+            long rowId = store.rowIdAt(slot);
+            writeVarLong(out, rowId - previousRowId); // 行 ID 升序，差值通常只占一个字节
+            previousRowId = rowId;
+        }
+        for (int columnIndex = 0; columnIndex < columns.size(); columnIndex++) {
+            writeColumn(out, columns.get(columnIndex).getType(), store.vector(columnIndex), liveSlots);
+        }
+
+        List<IndexDefinition> indexes = table.getIndexDefinitions();
+        writeVarLong(out, indexes.size());
+        for (IndexDefinition index : indexes) {
+            writeString(out, index.getName());
+            writeString(out, index.getColumn());
+            writeString(out, index.getType().name());
+        }
+        writeStatistics(out, columns, table.getStatistics());
+    }
+
+    private static void writeStatistics(DataOutputStream out, List<Column> columns, TableStatistics statistics) throws IOException {
+        out.writeByte(statistics == null ? 0 : 1);
+        if (statistics == null) {
+            return;
+        }
+        writeVarLong(out, statistics.getAnalyzedRows());
+        writeVarLong(out, statistics.getModifications());
+        for (int i = 0; i < columns.size(); i++) {
+            DataType type = columns.get(i).getType();
+            ColumnDistribution distribution = statistics.get(i);
+            writeVarLong(out, distribution.getRows());
+            writeVarLong(out, distribution.getNulls());
+            writeValue(out, type, distribution.getMin());
+            writeValue(out, type, distribution.getMax());
+            List<Object> bounds = distribution.getBounds();
+            writeVarLong(out, bounds.size());
+            for (Object bound : bounds) {
+                writeValue(out, type, bound);
+            }
+            for (long count : distribution.getCounts()) {
+                writeVarLong(out, count);
+            }
+            byte[] sketch = distribution.getSketch();
+            writeVarLong(out, sketch.length);
+            out.write(sketch);
+        }
+    }
+
+    // 单个可以为 NULL 的值：标志字节，再按列类型写值
+    private static void writeValue(DataOutputStream out, DataType type, Object value) throws IOException {
+        out.writeByte(value == null ? 0 : 1);
+        if (value == null) {
+            return;
+        }
+        switch (type) {
+            case INTEGER:
+                out.writeInt((Integer) value);
+                break;
+            case DOUBLE:
+                out.writeDouble((Double) value);
+                break;
+            case BOOLEAN:
+                out.writeBoolean((Boolean) value);
+                break;
+            case STRING:
+                writeString(out, (String) value);
+                break;
+            default:
+                throw new IllegalStateException("Unsupported data type: " + type);
+        }
+    }
+
+    private static void writeColumn(DataOutputStream out, DataType type, ColumnVector vector, int[] liveSlots) throws IOException {
+        BitSet nulls = new BitSet(liveSlots.length);
+        for (int i = 0; i < liveSlots.length; i++) {
+            if (vector.isNull(liveSlots[i])) {
+                nulls.set(i);
+            }
+        }
+        writeBits(out, nulls);
+        switch (type) {
+            case INTEGER:
+                for (int i = 0; i < liveSlots.length; i++) {
+                    if (!nulls.get(i)) {
+                        int value = (Integer) vector.get(liveSlots[i]);
+                        writeVarLong(out, ((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL); // zigzag，使小的负数也很短
+                    }
+                }
+                break;
+            case DOUBLE:
+                for (int i = 0; i < liveSlots.length; i++) {
+                    if (!nulls.get(i)) {
+                        out.writeDouble((Double) vector.get(liveSlots[i]));
+                    }
+                }
+                break;
+            case BOOLEAN:
+                BitSet values = new BitSet(liveSlots.length);
+                for (int i = 0; i < liveSlots.length; i++) {
+                    if (!nulls.get(i) && (Boolean) vector.get(liveSlots[i])) {
+                        values.set(i);
+                    }
+                }
+                writeBits(out, values);
+                break;
+            case STRING:
+                // 只为存活的值重新建立字典，已删除行留下的字典项不写出
+                Map<String, Integer> dictionary = new LinkedHashMap<>();
+                int[] codes = new int[liveSlots.length];
+                for (int i = 0; i < liveSlots.length; i++) {
+                    if (!nulls.get(i)) {
+                        codes[i] = dictionary.computeIfAbsent((String) vector.get(liveSlots[i]), key -> dictionary.size());
+                    }
+                }
+                writeVarLong(out, dictionary.size());
+                for (String value : dictionary.keySet()) {
+                    writeString(out, value);
+                }
+                for (int i = 0; i < liveSlots.length; i++) {
+                    if (!nulls.get(i)) {
+                        writeVarLong(out, codes[i]);
+                    }
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unsupported data type: " + type);
+        }
+    }
+
+    @Override
+    public Database read(Path file) throws IOException {
+        try (InputStream fileIn = new BufferedInputStream(Files.newInputStream(file), 1 << 16)) {
+            DataInputStream header = new DataInputStream(fileIn);
+            if (header.readInt() != MAGIC) {
+                throw new IOException("Not a binary database file.");
+            }
+            int version = header.readUnsignedByte();
+            if (version < MIN_VERSION || version > VERSION) {
+                throw new IOException("Unsupported binary database format version " + version + ".");
+            }
+            int flags = header.readUnsignedByte();
+            Inflater inflater = (flags & FLAG_DEFLATE) != 0 ? new Inflater() : null;
+            try {
+                DataInputStream in = new DataInputStream(inflater == null
+                    ? fileIn
+                    : new BufferedInputStream(new InflaterInputStream(fileIn, inflater, 1 << 16), 1 << 16));
+                String name = readString(in);
+                long lastLsn = readVarLong(in);
+                int tableCount = readCount(in);
+                Map<String, Table> tables = new LinkedHashMap<>();
+                for (int i = 0; i < tableCount; i++) {
+                    Table table = readTable(in, version, pageStore);
+                    tables.put(table.getName(), table);
+                }
+                return new Database(name, tables, lastLsn, pageStore);
+            } finally {
+                if (inflater != null) {
+                    inflater.end();
+                }
+            }
+        } catch (EOFException e) {
+            throw new IOException("Binary database file " + file.getFileName() + " is truncated.", e);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    private static Table readTable(DataInputStream in, int version, PageStore pageStore) throws IOException {
+        String name = readString(in);
+        int columnCount = readCount(in);
+        List<Column> columns = new ArrayList<>(columnCount);
+        for (int i = 0; i < columnCount; i++) {
+            String columnName = readString(in);
+            DataType type = DataType.valueOf(readString(in));
+            int flags = in.readUnsignedByte();
+            columns.add(new Column(columnName, type, (flags & 1) != 0, (flags & 2) != 0));
+        }
+        long nextRowId = readVarLong(in);
+        int rowCount = readCount(in);
+        long[] rowIds = new long[rowCount];
+        long rowId = 0;
+        for (int i = 0; i < rowCount; i++) {
+            rowId += readVarLong(in);
+            rowIds[i] = rowId;
+        }
+        // 先按列解码到与内存格式相同的列向量中，再逐行插入以重建唯一键并验证约束
+        ColumnVector[] vectors = new ColumnVector[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            vectors[i] = readColumn(in, columns.get(i).getType(), rowCount);
+        }
+        Table table = new Table(name, columns, pageStore);
+        Object[] values = new Object[columnCount];
+        for (int row = 0; row < rowCount; row++) {
+            for (int i = 0; i < columnCount; i++) {
+                values[i] = vectors[i].get(row);
+            }
+            table.insertValues(rowIds[row], values);
+        }
+        table.advanceNextRowId(nextRowId);
+        int indexCount = readCount(in);
+        for (int i = 0; i < indexCount; i++) {
+            table.createIndex(new IndexDefinition(readString(in), readString(in), IndexType.valueOf(readString(in))));
+        }
+        if (version >= 2) {
+            table.restoreStatistics(readStatistics(in, columns));
+        }
+        return table;
+    }
+
+    private static TableStatistics readStatistics(DataInputStream in, List<Column> columns) throws IOException {
+        if (in.readUnsignedByte() == 0) {
+            return null;
+        }
+        long analyzedRows = readVarLong(in);
+        long modifications = readVarLong(in);
+        Map<String, ColumnDistribution> distributions = new LinkedHashMap<>();
+        for (Column column : columns) {
+            DataType type = column.getType();
+            long rows = readVarLong(in);
+            long nulls = readVarLong(in);
+            Object min = readValue(in, type);
+            Object max = readValue(in, type);
+            int boundCount = readCount(in);
+            List<Object> bounds = new ArrayList<>(boundCount);
+            for (int i = 0; i < boundCount; i++) {
+                bounds.add(readValue(in, type));
+            }
+            long[] counts = new long[Math.max(0, boundCount - 1)];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = readVarLong(in);
+            }
+            byte[] sketch = new byte[readCount(in)];
+            in.readFully(sketch);
+            distributions.put(column.getName(), new ColumnDistribution(rows, nulls, min, max, bounds, counts, sketch));
+        }
+        return new TableStatistics(analyzedRows, modifications, distributions);
+    }
+
+    private static Object readValue(DataInputStream in, DataType type) throws IOException {
+        if (in.readUnsignedByte() == 0) {
+            return null;
+        }
+        switch (type) {
+            case INTEGER:
+                return in.readInt();
+            case DOUBLE:
+                return in.readDouble();
+            case BOOLEAN:
+                return in.readBoolean();
+            case STRING:
+                return readString(in);
+            default:
+                throw new IllegalStateException("Unsupported data type: " + type);
+        }
+    }
+
+    private static ColumnVector readColumn(DataInputStream in, DataType type, int rowCount) throws IOException {
+        BitSet nulls = readBits(in);
+        ColumnVector vector = ColumnVector.forType(type);
+        switch (type) {
+            case INTEGER:
+                for (int row = 0; row < rowCount; row++) {
+                    if (!nulls.get(row)) {
+                        long zigzag = readVarLong(in);
+                        vector.set(row, (int) ((zigzag >>> 1) ^ -(zigzag & 1)));
+                    }
+                }
+                break;
+            case DOUBLE:
+                for (int row = 0; row < rowCount; row++) {
+                    if (!nulls.get(row)) {
+                        vector.set(row, in.readDouble());
+                    }
+                }
+                break;
+            case BOOLEAN:
+                BitSet values = readBits(in);
+                for (int row = 0; row < rowCount; row++) {
+                    if (!nulls.get(row)) {
+                        vector.set(row, values.get(row));
+                    }
+                }
+                break;
+            case STRING:
+                String[] dictionary = new String[readCount(in)];
+                for (int i = 0; i < dictionary.length; i++) {
+                    dictionary[i] = readString(in);
+                }
+                for (int row = 0; row < rowCount; row++) {
+                    if (!nulls.get(row)) {
+                        int code = readCount(in);
+                        if (code >= dictionary.length) {
+                            throw new IOException("Invalid dictionary code " + code + " in string column.");
+                        }
+                        vector.set(row, dictionary[code]);
+                    }
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unsupported data type: " + type);
+        }
+        // 上面只写入了非 NULL 的槽位
+        for (int row = nulls.nextSetBit(0); row >= 0 && row < rowCount; row = nulls.nextSetBit(row + 1)) {
+            vector.set(row, null);
+        }
+        return vector;
+    }
+
+    private static void writeBits(DataOutputStream out, BitSet bits) throws IOException {
+        byte[] bytes = bits.toByteArray();
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static BitSet readBits(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[readCount(in)];
+        in.readFully(bytes);
+        return BitSet.valueOf(bytes);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[readCount(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // 无符号变长整数：每字节 7 位，最高位表示后面还有字节
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable-length integer.");
+    }
+
+    private static int readCount(DataInputStream in) throws IOException {
+        long count = readVarLong(in);
+        if (count < 0 || count > Integer.MAX_VALUE) {
+            throw new IOException("Invalid count " + count + ".");
+        }
+        return (int) count;
+    }
+}
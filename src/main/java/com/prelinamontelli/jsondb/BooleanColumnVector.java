@@ -0,0 +1,54 @@
+package com.prelinamontelli.jsondb;
+
+import java.util.BitSet;
+
+/**
+ * BOOLEAN 列的值向量，每个值占一位。
+ */
+final class BooleanColumnVector extends ColumnVector {
+    private BitSet values = new BitSet();
+
+    @Override
+    protected long estimateValueBytes() {
+        return 32 + values.size() / 8;
+    }
+
+    @Override
+    protected Object getNonNull(int slot) {
+        return values.get(slot);
+    }
+
+    @Override
+    protected void setNonNull(int slot, Object value) {
+        values.set(slot, (Boolean) value);
+    }
+
+    @Override
+    protected void clearValue(int slot) {
+        values.clear(slot);
+    }
+
+    @Override
+    protected void ensureCapacity(int capacity) {
+        // BitSet 按需扩容
+    }
+
+    @Override
+    protected void retainValues(int[] keptSlots) {
+        BitSet retained = new BitSet(keptSlots.length);
+        for (int i = 0; i < keptSlots.length; i++) {
+            if (values.get(keptSlots[i])) {
+                retained.set(i);
+            }
+        }
+        values = retained;
+    }
+
+    @Override
+    ColumnVector copy(int size) {
+        BooleanColumnVector copy = new BooleanColumnVector();
+        copy.values = values.get(0, size);
+        copy.nulls = nulls.get(0, size);
+        return copy;
+    }
+}
@@ -0,0 +1,78 @@
+package com.prelinamontelli.jsondb;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 分页存储的缓冲池：按 LRU 顺序保留最多 maxPages 个已映射的页。
+ * 页通过 {@link PageFile#map(int)} 以共享方式映射，修改直接写入操作系统页缓存，
+ * 因此从池中淘汰一页只是丢弃映射，不需要写回；下次访问时重新映射。
+ * 映射的内存位于 Java 堆之外，被淘汰的映射由 GC 回收。
+ */
+final class BufferPool {
+    private final int maxPages;
+    private final LinkedHashMap<Long, MappedByteBuffer> pages; // (文件编号, 页号) -> 已映射的页，按访问顺序排列
+    private long hits;
+    private long misses;
+
+    BufferPool(int maxPages) {
+        if (maxPages <= 0) {
+            throw new IllegalArgumentException("Buffer pool must hold at least one page.");
+        }
+        this.maxPages = maxPages;
+        this.pages = new LinkedHashMap<Long, MappedByteBuffer>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, MappedByteBuffer> eldest) {
+                return size() > BufferPool.this.maxPages;
+            }
+        };
+    }
+
+    /**
+     * @return 文件中给定页的映射，不在池中时映射它（必要时扩展文件）
+     */
+    synchronized MappedByteBuffer page(PageFile file, int pageNo) {
+        long key = key(file, pageNo);
+        MappedByteBuffer page = pages.get(key);
+        if (page != null) {
+            hits++;
+            return page;
+        }
+        misses++;
+        try {
+            page = file.map(pageNo);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to map page " + pageNo + " of " + file.getPath(), e);
+        }
+        pages.put(key, page);
+        return page;
+    }
+
+    /**
+     * 丢弃文件的所有页，在文件删除之前调用。
+     */
+    synchronized void invalidate(PageFile file) {
+        Iterator<Long> keys = pages.keySet().iterator();
+        while (keys.hasNext()) {
+            if ((keys.next() >>> 32) == file.getId()) {
+                keys.remove();
+            }
+        }
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    private static long key(PageFile file, int pageNo) {
+        return ((long) file.getId() << 32) | (pageNo & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,61 @@
+package com.prelinamontelli.jsondb;
+
+/**
+ * 单个数据库的 checkpoint 统计信息，用于在负载下评估 checkpoint 的开销和阈值设置。
+ */
+public class CheckpointStats {
+    private long checkpointCount;
+    private long failureCount;
+    private long lastDurationMillis;
+    private long lastBytesWritten;
+    private long totalBytesWritten;
+    private long totalDurationMillis;
+    private long lastCheckpointLsn;
+    private long lastCompletedAtMillis;
+
+    synchronized void recordSuccess(long durationMillis, long bytesWritten, long checkpointLsn) {
+        checkpointCount++;
+        lastDurationMillis = durationMillis;
+        lastBytesWritten = bytesWritten;
+        totalBytesWritten += bytesWritten;
+        totalDurationMillis += durationMillis;
+        lastCheckpointLsn = checkpointLsn;
+        lastCompletedAtMillis = System.currentTimeMillis();
+    }
+
+    synchronized void recordFailure() {
+        failureCount++;
+    }
+
+    public synchronized long getCheckpointCount() {
+        return checkpointCount;
+    }
+
+    public synchronized long getFailureCount() {
+        return failureCount;
+    }
+
+    public synchronized long getLastDurationMillis() {
+        return lastDurationMillis;
+    }
+
+    public synchronized long getLastBytesWritten() {
+        return lastBytesWritten;
+    }
+
+    public synchronized long getTotalBytesWritten() {
+        return totalBytesWritten;
+    }
+
+    public synchronized long getTotalDurationMillis() {
+        return totalDurationMillis;
+    }
+
+    public synchronized long getLastCheckpointLsn() {
+        return lastCheckpointLsn;
+    }
+
+    public synchronized long getLastCompletedAtMillis() {
+        return lastCompletedAtMillis;
+    }
+}
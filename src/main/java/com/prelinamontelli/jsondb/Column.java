@@ -1,6 +1,7 @@
 package com.prelinamontelli.jsondb;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import java.util.Objects;
@@ -8,9 +9,14 @@ import java.util.Objects;
 public class Column {
     private final String name;
     private final DataType type;
+    private final boolean primaryKey; // 主键：唯一且不允许 NULL，每张表最多一个
+    private final boolean unique;     // 唯一约束：非 NULL 值不能重复，允许多个 NULL
 
     @JsonCreator
-    public Column(@JsonProperty("name") String name, @JsonProperty("type") DataType type) {
+    public Column(@JsonProperty("name") String name,
+                  @JsonProperty("type") DataType type,
+                  @JsonProperty("primaryKey") Boolean primaryKey,
+                  @JsonProperty("unique") Boolean unique) {
         if (name == null || name.trim().isEmpty()) {
             throw new IllegalArgumentException("Column name cannot be null or empty.");
         }
@@ -19,6 +25,12 @@ public class Column {
         }
         this.name = name.trim();
         this.type = type;
+        this.primaryKey = primaryKey != null && primaryKey;
+        this.unique = unique != null && unique;
+    }
+
+    public Column(String name, DataType type) {
+        this(name, type, false, false);
     }
 
     public String getName() {
@@ -29,6 +41,23 @@ public class Column {
         return type;
     }
 
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    public boolean isPrimaryKey() {
+        return primaryKey;
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    public boolean isUnique() {
+        return unique;
+    }
+
+    /**
+     * @return 此列的非 NULL 值是否必须在表内唯一（主键或唯一约束）
+     */
+    public boolean requiresUniqueValues() {
+        return primaryKey || unique;
+    }
+
     // 校验值是否符合列的数据类型
     public boolean isValidValue(Object value) {
         if (value == null) {
@@ -91,18 +120,37 @@ public class Column {
         }
     }
 
+    /**
+     * 按此列的数据类型比较两个非 NULL 值，规则与 {@link #convertValue(Object)} 的类型转换一致：
+     * INTEGER 和 DOUBLE 按数值比较，STRING 按字典序比较，BOOLEAN 中 false 小于 true。
+     */
+    public int compareValues(Object left, Object right) {
+        switch (type) {
+            case INTEGER:
+                return Integer.compare(((Number) left).intValue(), ((Number) right).intValue());
+            case DOUBLE:
+                return Double.compare(((Number) left).doubleValue(), ((Number) right).doubleValue());
+            case STRING:
+                return String.valueOf(left).compareTo(String.valueOf(right));
+            case BOOLEAN:
+                return Boolean.compare((Boolean) left, (Boolean) right);
+            default:
+                throw new IllegalStateException("Unsupported data type: " + type);
+        }
+    }
 
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Column column = (Column) o;
-        return name.equals(column.name) && type == column.type;
+        return name.equals(column.name) && type == column.type &&
+               primaryKey == column.primaryKey && unique == column.unique;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(name, type);
+        return Objects.hash(name, type, primaryKey, unique);
     }
 
     @Override
@@ -110,6 +158,8 @@ public class Column {
         return "Column{" +
                "name='" + name + '\'' +
                ", type=" + type +
+               (primaryKey ? ", primaryKey" : "") +
+               (unique ? ", unique" : "") +
                '}';
     }
 } 
\ No newline at end of file
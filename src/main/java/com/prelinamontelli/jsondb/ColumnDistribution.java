@@ -0,0 +1,342 @@
+package com.prelinamontelli.jsondb;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * ANALYZE 收集的单列数据分布：行数、NULL 个数、最小值 / 最大值、等深直方图和 HyperLogLog 不同值估算。
+ * 之后的插入、更新和删除通过 {@link #add(Object)} / {@link #remove(Object)} 增量维护，直到下一次 ANALYZE 重新收集：
+ * 计数保持精确，直方图的桶边界和删除之后的最小值 / 最大值、不同值估算只会变得偏宽。
+ * 随表结构一起持久化；只在持有表锁时访问。
+ */
+@JsonPropertyOrder({"rows", "nulls", "min", "max", "bounds", "counts", "sketch"})
+final class ColumnDistribution {
+    static final int HISTOGRAM_BUCKETS = 100;
+    static final int SAMPLE_ROWS = 30000; // 构建直方图时最多排序的值的个数
+
+    private Column column; // 按列类型比较值；从文件加载之后由 bind 设置
+    private long rows;
+    private long nulls;
+    private Object min;     // 非 NULL 值的最小值 / 最大值，没有非 NULL 值时为 null
+    private Object max;
+    private Object[] bounds; // 桶边界（升序，可以重复），比桶多一个；桶 i 包含 [bounds[i], bounds[i + 1]] 中的值
+    private long[] counts;   // 每个桶中的行数
+    private final HyperLogLog sketch;
+
+    private ColumnDistribution(Column column, long rows, long nulls, Object min, Object max, Object[] bounds, long[] counts,
+                               HyperLogLog sketch) {
+        this.column = column;
+        this.rows = rows;
+        this.nulls = nulls;
+        this.min = min;
+        this.max = max;
+        this.bounds = bounds;
+        this.counts = counts;
+        this.sketch = sketch;
+    }
+
+    /**
+     * 从快照文件加载，使用之前需要调用 {@link #bind(Column)}。
+     * @throws IllegalArgumentException 如果计数、直方图或基数草图无效
+     */
+    @JsonCreator
+    ColumnDistribution(@JsonProperty("rows") long rows,
+                       @JsonProperty("nulls") long nulls,
+                       @JsonProperty("min") Object min,
+                       @JsonProperty("max") Object max,
+                       @JsonProperty("bounds") List<Object> bounds,
+                       @JsonProperty("counts") long[] counts,
+                       @JsonProperty("sketch") byte[] sketch) {
+        this(null, rows, nulls, min, max, bounds == null ? new Object[0] : bounds.toArray(),
+            counts == null ? new long[0] : counts, sketch == null ? new HyperLogLog() : HyperLogLog.decode(sketch));
+        if (rows < 0 || nulls < 0 || nulls > rows) {
+            throw new IllegalArgumentException("Invalid column statistics: " + nulls + " nulls in " + rows + " rows.");
+        }
+        if (this.bounds.length != (this.counts.length == 0 ? 0 : this.counts.length + 1)) {
+            throw new IllegalArgumentException("Histogram has " + this.counts.length + " buckets but " + this.bounds.length + " bounds.");
+        }
+    }
+
+    /**
+     * 按列类型转换从文件读到的值（例如 JSON 中的整数用于 DOUBLE 列），之后才能维护和估算。
+     * @throws IllegalArgumentException 如果值不符合列类型
+     */
+    void bind(Column column) {
+        this.column = column;
+        min = column.convertValue(min);
+        max = column.convertValue(max);
+        for (int i = 0; i < bounds.length; i++) {
+            bounds[i] = column.convertValue(bounds[i]);
+        }
+    }
+
+    ColumnDistribution copy() {
+        return new ColumnDistribution(column, rows, nulls, min, max, bounds.clone(), counts.clone(), sketch.copy());
+    }
+
+    @JsonProperty("rows")
+    long getRows() {
+        return rows;
+    }
+
+    @JsonProperty("nulls")
+    long getNulls() {
+        return nulls;
+    }
+
+    @JsonProperty("min")
+    Object getMin() {
+        return min;
+    }
+
+    @JsonProperty("max")
+    Object getMax() {
+        return max;
+    }
+
+    @JsonProperty("bounds")
+    List<Object> getBounds() {
+        return Arrays.asList(bounds);
+    }
+
+    @JsonProperty("counts")
+    long[] getCounts() {
+        return counts;
+    }
+
+    @JsonProperty("sketch")
+    byte[] getSketch() {
+        return sketch.encode();
+    }
+
+    int getBucketCount() {
+        return counts.length;
+    }
+
+    /**
+     * @return 估算的不同的非 NULL 值的个数，不超过非 NULL 的行数
+     */
+    long getDistinctCount() {
+        return Math.min(sketch.estimate(), rows - nulls);
+    }
+
+    double nullFraction() {
+        return rows == 0 ? 0 : (double) nulls / rows;
+    }
+
+    /**
+     * 记录新增的一个值（插入的行或更新后的值）。
+     */
+    void add(Object value) {
+        rows++;
+        if (value == null) {
+            nulls++;
+            return;
+        }
+        sketch.add(value);
+        if (min == null || column.compareValues(value, min) < 0) {
+            min = value;
+        }
+        if (max == null || column.compareValues(value, max) > 0) {
+            max = value;
+        }
+        if (counts.length == 0) {
+            bounds = new Object[] {value, value};
+            counts = new long[1];
+        }
+        // 超出直方图范围的值放进两端的桶，并扩展桶的边界
+        if (column.compareValues(value, bounds[0]) < 0) {
+            bounds[0] = value;
+        } else if (column.compareValues(value, bounds[bounds.length - 1]) > 0) {
+            bounds[bounds.length - 1] = value;
+        }
+        counts[bucketFor(value, true)]++;
+    }
+
+    /**
+     * 记录移除的一个值（删除的行或更新前的值）。最小值 / 最大值和不同值估算保持不变。
+     */
+    void remove(Object value) {
+        if (rows == 0) {
+            return;
+        }
+        rows--;
+        if (value == null) {
+            nulls = Math.max(0, nulls - 1);
+            return;
+        }
+        if (counts.length > 0) {
+            int bucket = bucketFor(value, false);
+            counts[bucket] = Math.max(0, counts[bucket] - 1);
+        }
+    }
+
+    /**
+     * @return 列值等于 value 的行所占的比例。value 为 null 时是 NULL 的比例
+     */
+    double equalityFraction(Object value) {
+        if (value == null) {
+            return nullFraction();
+        }
+        if (rows == 0 || min == null || column.compareValues(value, min) < 0 || column.compareValues(value, max) > 0) {
+            return 0;
+        }
+        double uniform = (double) (rows - nulls) / rows / Math.max(1, getDistinctCount());
+        // 占满整个桶的高频值：等深直方图中它是多个相邻桶的两个边界
+        long frequent = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (column.compareValues(bounds[i], value) == 0 && column.compareValues(bounds[i + 1], value) == 0) {
+                frequent += counts[i];
+            }
+        }
+        return Math.max(uniform, (double) frequent / rows);
+    }
+
+    /**
+     * 根据直方图估算落在范围内的行所占的比例。部分重叠的桶中，数值按均匀分布插值，其他类型取一半。
+     * @param lower 下界，null 表示不受限
+     * @param upper 上界，null 表示不受限
+     */
+    double rangeFraction(Object lower, boolean lowerInclusive, Object upper, boolean upperInclusive) {
+        if (rows == 0) {
+            return 0;
+        }
+        double matched = 0;
+        for (int i = 0; i < counts.length; i++) {
+            Object low = bounds[i];
+            Object high = bounds[i + 1];
+            if (lower != null) {
+                int cmp = column.compareValues(high, lower);
+                if (cmp < 0 || (cmp == 0 && !lowerInclusive)) {
+                    continue;
+                }
+            }
+            if (upper != null) {
+                int cmp = column.compareValues(low, upper);
+                if (cmp > 0 || (cmp == 0 && !upperInclusive)) {
+                    continue;
+                }
+            }
+            boolean coversLow = lower == null || column.compareValues(low, lower) > 0
+                || (lowerInclusive && column.compareValues(low, lower) == 0);
+            boolean coversHigh = upper == null || column.compareValues(high, upper) < 0
+                || (upperInclusive && column.compareValues(high, upper) == 0);
+            matched += counts[i] * (coversLow && coversHigh ? 1 : overlap(low, high, lower, upper));
+        }
+        return Math.min(1, matched / rows);
+    }
+
+    // 范围与部分重叠的桶 [low, high] 的交集占桶宽度的比例
+    private static double overlap(Object low, Object high, Object lower, Object upper) {
+        if (!(low instanceof Number)) {
+            return 0.5;
+        }
+        double from = ((Number) low).doubleValue();
+        double to = ((Number) high).doubleValue();
+        if (to <= from) {
+            return 1;
+        }
+        double clippedFrom = lower == null ? from : Math.max(from, ((Number) lower).doubleValue());
+        double clippedTo = upper == null ? to : Math.min(to, ((Number) upper).doubleValue());
+        // 至少按一个值计算，使落在桶边界上的窄范围不被估算为零
+        return Math.min(1, Math.max((clippedTo - clippedFrom) / (to - from), 1.0 / HISTOGRAM_BUCKETS));
+    }
+
+    // 高频值可以落在多个相邻的桶中：添加时放进其中行数最少的桶，移除时从行数最多的桶中减去，使各桶保持等深
+    private int bucketFor(Object value, boolean adding) {
+        int bucket = bucketOf(value);
+        for (int i = bucket + 1; i < counts.length && column.compareValues(bounds[i], value) <= 0; i++) {
+            if (adding ? counts[i] < counts[bucket] : counts[i] > counts[bucket]) {
+                bucket = i;
+            }
+        }
+        return bucket;
+    }
+
+    // 第一个上边界不小于 value 的桶；value 在直方图范围内
+    private int bucketOf(Object value) {
+        int low = 0;
+        int high = counts.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (column.compareValues(bounds[mid + 1], value) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 在全表扫描中逐个接收列值，计数、最小值 / 最大值和不同值估算覆盖所有值，
+     * 直方图从按固定间隔抽取的样本构建（结果只取决于表的内容，重放 WAL 时得到相同的统计）。
+     */
+    static final class Builder {
+        private final Column column;
+        private final int sampleStep;
+        private final HyperLogLog sketch = new HyperLogLog();
+        private final List<Object> sample = new ArrayList<>();
+        private long rows;
+        private long nulls;
+        private Object min;
+        private Object max;
+
+        /**
+         * @param expectedRows 将要扫描的行数，用于确定抽样间隔
+         */
+        Builder(Column column, int expectedRows) {
+            this.column = column;
+            this.sampleStep = Math.max(1, (expectedRows + SAMPLE_ROWS - 1) / SAMPLE_ROWS);
+        }
+
+        void accept(Object value) {
+            long position = rows++;
+            if (value == null) {
+                nulls++;
+                return;
+            }
+            sketch.add(value);
+            if (min == null || column.compareValues(value, min) < 0) {
+                min = value;
+            }
+            if (max == null || column.compareValues(value, max) > 0) {
+                max = value;
+            }
+            if (position % sampleStep == 0) {
+                sample.add(value);
+            }
+        }
+
+        /**
+         * 把样本排序后等分成最多 {@link #HISTOGRAM_BUCKETS} 个桶，每个桶的行数按非 NULL 行数等比放大。
+         * 两端的边界使用精确的最小值 / 最大值。
+         */
+        ColumnDistribution build() {
+            int sampled = sample.size();
+            if (sampled == 0) {
+                return new ColumnDistribution(column, rows, nulls, null, null, new Object[0], new long[0], sketch);
+            }
+            sample.sort(column::compareValues);
+            int buckets = Math.min(HISTOGRAM_BUCKETS, sampled);
+            Object[] bounds = new Object[buckets + 1];
+            long[] counts = new long[buckets];
+            long nonNull = rows - nulls;
+            long assigned = 0;
+            bounds[0] = min;
+            for (int i = 1; i <= buckets; i++) {
+                int end = (int) ((long) i * sampled / buckets); // 桶 i - 1 包含样本 [start, end)
+                bounds[i] = i == buckets ? max : sample.get(end - 1);
+                long total = nonNull * end / sampled;
+                counts[i - 1] = total - assigned;
+                assigned = total;
+            }
+            return new ColumnDistribution(column, rows, nulls, min, max, bounds, counts, sketch);
+        }
+    }
+}
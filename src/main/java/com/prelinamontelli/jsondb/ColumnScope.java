@@ -0,0 +1,154 @@
+package com.prelinamontelli.jsondb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 查询中可以引用的列：FROM 中的一张表，或者连接的两张表。行值数组按表的顺序排列各表的所有列（连接时左表的列在前），
+ * {@link #indexOf} 把语句中的列名解析为列在行值数组中的下标。
+ * 列名可以用表名限定（{@code t.c}），表有别名时用别名限定；不限定时列名在所有表中必须唯一。
+ * 与表的列定义一样，先按精确的名称匹配，再不区分大小写匹配。
+ */
+final class ColumnScope {
+    private final List<Table> tables;
+    private final List<String> qualifiers; // 各表的限定名：别名，没有别名时是表名
+    private final List<Column> columns = new ArrayList<>();
+    private final List<Integer> tableOf = new ArrayList<>(); // 每列所属的表在 tables 中的下标
+
+    private ColumnScope(List<Table> tables, List<String> qualifiers) {
+        this.tables = tables;
+        this.qualifiers = qualifiers;
+        for (int i = 0; i < tables.size(); i++) {
+            for (Column column : tables.get(i).getColumnDefinitions()) {
+                columns.add(column);
+                tableOf.add(i);
+            }
+        }
+    }
+
+    static ColumnScope of(Table table) {
+        return of(table, null);
+    }
+
+    /**
+     * @param alias 表的别名，null 表示没有别名
+     */
+    static ColumnScope of(Table table, String alias) {
+        return new ColumnScope(Collections.singletonList(table), Collections.singletonList(alias == null ? table.getName() : alias));
+    }
+
+    /**
+     * @return 在这些表之后连接 table 得到的范围
+     * @throws IllegalArgumentException 如果 table 的限定名与已有的表相同（同一张表连接自身时需要别名）
+     */
+    ColumnScope join(Table table, String alias) {
+        String qualifier = alias == null ? table.getName() : alias;
+        for (String existing : qualifiers) {
+            if (existing.equalsIgnoreCase(qualifier)) {
+                throw new IllegalArgumentException("Table name '" + qualifier + "' is specified more than once. Give one of them an alias.");
+            }
+        }
+        List<Table> joinedTables = new ArrayList<>(tables);
+        joinedTables.add(table);
+        List<String> joinedQualifiers = new ArrayList<>(qualifiers);
+        joinedQualifiers.add(qualifier);
+        return new ColumnScope(joinedTables, joinedQualifiers);
+    }
+
+    /**
+     * @param reference 列名，或者 {@code 限定名.列名}
+     * @return 列在行值数组中的下标，找不到时返回 -1
+     * @throws IllegalArgumentException 如果限定名不是 FROM 中的表，或者不限定的列名在多张表中都存在
+     */
+    int indexOf(String reference) {
+        int dot = reference.indexOf('.');
+        int table = -1;
+        String name = reference;
+        if (dot >= 0) {
+            String qualifier = reference.substring(0, dot);
+            name = reference.substring(dot + 1);
+            for (int i = 0; i < qualifiers.size() && table < 0; i++) {
+                if (qualifiers.get(i).equalsIgnoreCase(qualifier)) {
+                    table = i;
+                }
+            }
+            if (table < 0) {
+                throw new IllegalArgumentException("Table or alias '" + qualifier + "' in '" + reference + "' is not in the FROM clause.");
+            }
+        }
+        for (int pass = 0; pass < 2; pass++) {
+            int found = -1;
+            for (int i = 0; i < columns.size(); i++) {
+                String columnName = columns.get(i).getName();
+                if ((table < 0 || tableOf.get(i) == table) && (pass == 0 ? columnName.equals(name) : columnName.equalsIgnoreCase(name))) {
+                    if (found >= 0 && !tableOf.get(found).equals(tableOf.get(i))) {
+                        throw new IllegalArgumentException("Column reference '" + reference + "' is ambiguous. Qualify it with a table name.");
+                    }
+                    if (found < 0) {
+                        found = i;
+                    }
+                }
+            }
+            if (found >= 0) {
+                return found;
+            }
+        }
+        return -1;
+    }
+
+    Column column(int index) {
+        return columns.get(index);
+    }
+
+    /**
+     * @return 行值数组的长度
+     */
+    int size() {
+        return columns.size();
+    }
+
+    List<Column> columns() {
+        return Collections.unmodifiableList(columns);
+    }
+
+    /**
+     * @return 第 index 列在结果中显示的名称：只有一张表时是列名，连接时带表的限定名
+     */
+    String name(int index) {
+        String columnName = columns.get(index).getName();
+        return tables.size() == 1 ? columnName : qualifiers.get(tableOf.get(index)) + "." + columnName;
+    }
+
+    /**
+     * @return 第 index 列所属的表在 FROM 中的位置，从 0 开始
+     */
+    int tableOf(int index) {
+        return tableOf.get(index);
+    }
+
+    /**
+     * @return 以逗号分隔的表名
+     */
+    String tableNames() {
+        List<String> names = new ArrayList<>();
+        for (Table table : tables) {
+            names.add(table.getName());
+        }
+        return String.join(", ", names);
+    }
+
+    /**
+     * @return 用于错误信息的表名，例如 {@code table 'a'} 或 {@code tables 'a' and 'b'}
+     */
+    String describe() {
+        StringBuilder text = new StringBuilder(tables.size() == 1 ? "table " : "tables ");
+        for (int i = 0; i < tables.size(); i++) {
+            if (i > 0) {
+                text.append(i == tables.size() - 1 ? " and " : ", ");
+            }
+            text.append('\'').append(tables.get(i).getName()).append('\'');
+        }
+        return text.toString();
+    }
+}
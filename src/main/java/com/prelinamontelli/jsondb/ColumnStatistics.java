@@ -0,0 +1,123 @@
+package com.prelinamontelli.jsondb;
+
+import java.util.Map;
+
+/**
+ * 查询计划使用的单列统计信息，在规划时从表的唯一键表和索引中读取：行数、不同值个数、等值的精确行数，
+ * 以及有序索引给出的最小值 / 最大值。唯一键和索引给出的精确计数优先；ANALYZE 过的表使用列的数据分布
+ * （NULL 比例、不同值估算和直方图），其余情况使用默认的选择率。
+ * 只在持有表锁时创建和使用。
+ */
+final class ColumnStatistics {
+    static final double DEFAULT_EQUALITY_SELECTIVITY = 0.1;
+    static final double DEFAULT_RANGE_SELECTIVITY = 1.0 / 3;
+    static final double DEFAULT_NULL_FRACTION = 0.1;
+
+    private final Column column;
+    private final int rowCount;
+    private final Map<Object, Long> uniqueKeys; // 主键 / 唯一列的键表，其他列为 null
+    private final TableIndex index;             // 列上的任意一个索引，没有时为 null
+    private final OrderedIndex orderedIndex;    // 列上的有序索引，没有时为 null
+    private final ColumnDistribution distribution; // ANALYZE 收集的数据分布，没有时为 null
+
+    ColumnStatistics(Column column, int rowCount, Map<Object, Long> uniqueKeys, TableIndex index, OrderedIndex orderedIndex,
+                     ColumnDistribution distribution) {
+        this.column = column;
+        this.rowCount = rowCount;
+        this.uniqueKeys = uniqueKeys;
+        this.index = index;
+        this.orderedIndex = orderedIndex;
+        this.distribution = distribution;
+    }
+
+    Column getColumn() {
+        return column;
+    }
+
+    /**
+     * @return 不同的非 NULL 值的个数，未知时返回 -1
+     */
+    long getDistinctCount() {
+        if (uniqueKeys != null) {
+            return uniqueKeys.size();
+        }
+        if (index != null) {
+            return index.distinctKeys() - (index.count(null) > 0 ? 1 : 0);
+        }
+        if (distribution != null) {
+            return distribution.getDistinctCount();
+        }
+        return -1;
+    }
+
+    /**
+     * @return 列值等于 value 的行所占的比例。value 为 null 时是 NULL 的比例
+     */
+    double equalitySelectivity(Object value) {
+        if (rowCount == 0) {
+            return 0;
+        }
+        if (value == null) {
+            if (column.isPrimaryKey()) {
+                return 0;
+            }
+            if (uniqueKeys != null) {
+                return (double) (rowCount - uniqueKeys.size()) / rowCount;
+            }
+            if (index != null) {
+                return (double) index.count(null) / rowCount;
+            }
+            return distribution != null ? distribution.nullFraction() : DEFAULT_NULL_FRACTION;
+        }
+        if (uniqueKeys != null) {
+            return uniqueKeys.containsKey(value) ? 1.0 / rowCount : 0;
+        }
+        if (index != null) {
+            return (double) index.count(value) / rowCount;
+        }
+        if (distribution != null) {
+            return distribution.equalityFraction(value);
+        }
+        return DEFAULT_EQUALITY_SELECTIVITY;
+    }
+
+    /**
+     * 估算范围条件的选择率。ANALYZE 过的列按直方图估算；否则数值列上有有序索引时按最小值到最大值之间均匀分布插值，
+     * 再否则每个边界取默认的 1/3。
+     * @param lower 下界，null 表示不受限
+     * @param upper 上界，null 表示不受限
+     */
+    double rangeSelectivity(Object lower, boolean lowerInclusive, Object upper, boolean upperInclusive) {
+        if (rowCount == 0) {
+            return 0;
+        }
+        if (distribution != null && distribution.getBucketCount() > 0) {
+            return distribution.rangeFraction(lower, lowerInclusive, upper, upperInclusive);
+        }
+        Object min = orderedIndex == null ? null : orderedIndex.minKey();
+        Object max = orderedIndex == null ? null : orderedIndex.maxKey();
+        if (min instanceof Number && max instanceof Number) {
+            double nonNull = 1 - equalitySelectivity(null);
+            double low = Math.max(((Number) min).doubleValue(), lower == null ? Double.NEGATIVE_INFINITY : ((Number) lower).doubleValue());
+            double high = Math.min(((Number) max).doubleValue(), upper == null ? Double.POSITIVE_INFINITY : ((Number) upper).doubleValue());
+            if (low > high) {
+                return 0;
+            }
+            double width = ((Number) max).doubleValue() - ((Number) min).doubleValue();
+            if (width == 0) {
+                return nonNull; // 所有非 NULL 值相同，且落在范围内
+            }
+            // 至少按一个值计算，使落在边界上的等值范围不被估算为零
+            double fraction = Math.max((high - low) / width, 1.0 / Math.max(rowCount, 1));
+            return Math.min(1, fraction) * nonNull;
+        }
+        double selectivity = 1;
+        if (lower != null) {
+            selectivity *= DEFAULT_RANGE_SELECTIVITY;
+        }
+        if (upper != null) {
+            selectivity *= DEFAULT_RANGE_SELECTIVITY;
+        }
+        return selectivity;
+    }
+}
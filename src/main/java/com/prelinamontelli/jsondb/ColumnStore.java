@@ -0,0 +1,306 @@
+package com.prelinamontelli.jsondb;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 表数据的列式存储：每列一个按 {@link DataType} 特化的 {@link ColumnVector}，行按槽位对齐。
+ * 新行总是追加到末尾，删除只打墓碑标记，墓碑过多时再整体压缩，因此槽位顺序始终等于表中顺序（行 ID 升序）。
+ * 此类不是线程安全的，由 {@link Table} 的调用者负责同步。
+ */
+final class ColumnStore {
+    private final List<Column> columns;
+    private final Map<String, Integer> columnIndexes = new HashMap<>();
+    private final ColumnVector[] vectors;
+    private long[] rowIds = new long[0];
+    private final BitSet deleted = new BitSet();
+    private final LongIntHashMap slotsByRowId = new LongIntHashMap();
+    private int size;      // 已使用的槽位数，包括已删除的槽位
+    private int liveCount;
+    private int generation; // 每次压缩后递增，行视图据此判断缓存的槽位是否失效
+    private final boolean paged;
+
+    /**
+     * @param pageStore 非 null 时列值保存在页文件中（分页存储模式），否则保存在堆上的数组中
+     */
+    ColumnStore(List<Column> columns, PageStore pageStore) {
+        this.columns = columns;
+        this.vectors = new ColumnVector[columns.size()];
+        this.paged = pageStore != null;
+        for (int i = 0; i < columns.size(); i++) {
+            columnIndexes.put(columns.get(i).getName(), i);
+            DataType type = columns.get(i).getType();
+            vectors[i] = pageStore == null ? ColumnVector.forType(type) : new PagedColumnVector(type, pageStore);
+        }
+    }
+
+    private ColumnStore(ColumnStore source) {
+        this.columns = source.columns;
+        this.columnIndexes.putAll(source.columnIndexes);
+        this.vectors = new ColumnVector[source.vectors.length];
+        this.paged = source.paged;
+        for (int i = 0; i < vectors.length; i++) {
+            vectors[i] = source.vectors[i].copy(source.size);
+        }
+        this.rowIds = Arrays.copyOf(source.rowIds, source.size);
+        this.deleted.or(source.deleted);
+        this.size = source.size;
+        this.liveCount = source.liveCount;
+        for (int slot = 0; slot < size; slot++) {
+            if (!deleted.get(slot)) {
+                slotsByRowId.put(rowIds[slot], slot);
+            }
+        }
+    }
+
+    boolean isPaged() {
+        return paged;
+    }
+
+    /**
+     * @return 独立的副本，之后对此存储的修改不会影响副本
+     */
+    ColumnStore copy() {
+        return new ColumnStore(this);
+    }
+
+    /**
+     * 追加一行。values 按列定义顺序排列，且已经按列类型转换。
+     * @return 新行的槽位
+     */
+    int append(long rowId, Object[] values) {
+        int slot = size;
+        if (slot == rowIds.length) {
+            rowIds = Arrays.copyOf(rowIds, ColumnVector.grow(rowIds.length, slot + 1));
+        }
+        for (int i = 0; i < vectors.length; i++) {
+            vectors[i].set(slot, values[i]);
+        }
+        rowIds[slot] = rowId;
+        slotsByRowId.put(rowId, slot);
+        size++;
+        liveCount++;
+        return slot;
+    }
+
+    /**
+     * @return 列在存储中的下标，列不存在时返回 -1
+     */
+    int columnIndex(String columnName) {
+        Integer index = columnIndexes.get(columnName);
+        return index == null ? -1 : index;
+    }
+
+    ColumnVector vector(int columnIndex) {
+        return vectors[columnIndex];
+    }
+
+    Object get(int slot, int columnIndex) {
+        return vectors[columnIndex].get(slot);
+    }
+
+    void set(int slot, int columnIndex, Object value) {
+        vectors[columnIndex].set(slot, value);
+    }
+
+    /**
+     * 替换所有槽位的行 ID，ids[slot] 为槽位上的新行 ID。仅用于没有已删除槽位的存储，
+     * 调用者负责保持槽位顺序与行 ID 升序一致。
+     */
+    void reassignRowIds(long[] ids) {
+        slotsByRowId.clear();
+        for (int slot = 0; slot < size; slot++) {
+            rowIds[slot] = ids[slot];
+            slotsByRowId.put(ids[slot], slot);
+        }
+    }
+
+    /**
+     * @return 行所在的槽位，行不存在时返回 -1
+     */
+    int slotOf(long rowId) {
+        return slotsByRowId.get(rowId);
+    }
+
+    long rowIdAt(int slot) {
+        return rowIds[slot];
+    }
+
+    boolean isLive(int slot) {
+        return slot < size && !deleted.get(slot);
+    }
+
+    /**
+     * @return 已使用的槽位数（包括已删除的槽位），即槽位编号的上界
+     */
+    int size() {
+        return size;
+    }
+
+    int liveCount() {
+        return liveCount;
+    }
+
+    int generation() {
+        return generation;
+    }
+
+    List<Column> getColumns() {
+        return columns;
+    }
+
+    /**
+     * 标记槽位为已删除。值保留到下一次压缩。
+     */
+    void delete(int slot) {
+        if (deleted.get(slot)) {
+            return;
+        }
+        deleted.set(slot);
+        slotsByRowId.remove(rowIds[slot]);
+        liveCount--;
+    }
+
+    /**
+     * 撤销 {@link #delete(int)}。只能在删除之后还没有压缩过时调用，否则槽位已经不存在。
+     */
+    void undelete(int slot) {
+        if (slot >= size || !deleted.get(slot)) {
+            return;
+        }
+        deleted.clear(slot);
+        slotsByRowId.put(rowIds[slot], slot);
+        liveCount++;
+    }
+
+    /**
+     * 已删除的槽位超过一半时压缩存储，使槽位重新连续。压缩会改变槽位编号。
+     */
+    void compactIfSparse() {
+        if (size - liveCount <= Math.max(liveCount, 16)) {
+            return;
+        }
+        int[] kept = new int[liveCount];
+        int next = 0;
+        for (int slot = deleted.nextClearBit(0); slot < size; slot = deleted.nextClearBit(slot + 1)) {
+            kept[next++] = slot;
+        }
+        for (ColumnVector vector : vectors) {
+            vector.retain(kept);
+        }
+        long[] keptRowIds = new long[Math.max(kept.length, 16)];
+        slotsByRowId.clear();
+        for (int i = 0; i < kept.length; i++) {
+            keptRowIds[i] = rowIds[kept[i]];
+            slotsByRowId.put(keptRowIds[i], i);
+        }
+        rowIds = keptRowIds;
+        deleted.clear();
+        size = kept.length;
+        generation++;
+    }
+
+    /**
+     * 释放列向量的堆外资源（分页存储模式下删除页文件）。之后不能再访问此存储。
+     */
+    void release() {
+        for (ColumnVector vector : vectors) {
+            vector.release();
+        }
+    }
+
+    /**
+     * @return 存储占用堆内存的粗略估算（字节）
+     */
+    long estimateSizeBytes() {
+        long bytes = 64 + 8L * rowIds.length + deleted.size() / 8 + 12L * slotsByRowId.capacity();
+        for (ColumnVector vector : vectors) {
+            bytes += vector.estimateSizeBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * 对所有存活的行求值条件。
+     * @return 匹配的槽位
+     */
+    BitSet scan(WhereCondition condition) {
+        return scan(condition, 0, size);
+    }
+
+    /**
+     * 对槽位 [from, to) 中存活的行求值条件。
+     * @return 匹配的槽位
+     */
+    BitSet scan(WhereCondition condition, int from, int to) {
+        BitSet matches = new BitSet(to);
+        vectors[columnIndexes.get(condition.getColumn().getName())].scan(condition, from, to, matches);
+        matches.andNot(deleted);
+        return matches;
+    }
+
+    /**
+     * @return 槽位上的值，按列定义顺序排列
+     */
+    Object[] values(int slot) {
+        Object[] values = new Object[vectors.length];
+        for (int i = 0; i < vectors.length; i++) {
+            values[i] = vectors[i].get(slot);
+        }
+        return values;
+    }
+
+    /**
+     * @return 所有槽位的值（按列定义顺序）的只读列表视图，每次 get 返回新的数组。
+     *         用于没有删除过的行的暂存存储（COPY），按需逐行取值而不复制整个存储
+     */
+    List<Object[]> rowValues() {
+        return new AbstractList<Object[]>() {
+            @Override
+            public Object[] get(int index) {
+                if (index < 0 || index >= size) {
+                    throw new IndexOutOfBoundsException("Slot " + index + " out of " + size);
+                }
+                return values(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * @return 第一个行 ID 大于 rowId 的槽位（包括已删除的槽位），没有时返回 size。槽位按行 ID 升序，可以二分查找
+     */
+    int firstSlotAfter(long rowId) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (rowIds[mid] <= rowId) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return 槽位上的行数据副本，按列定义顺序排列
+     */
+    Map<String, Object> materialize(int slot) {
+        Map<String, Object> data = new LinkedHashMap<>();
+        for (int i = 0; i < vectors.length; i++) {
+            data.put(columns.get(i).getName(), vectors[i].get(slot));
+        }
+        return data;
+    }
+}
@@ -0,0 +1,139 @@
+package com.prelinamontelli.jsondb;
+
+import java.util.BitSet;
+
+/**
+ * 列式存储中单列的值向量，按槽位 (slot) 访问。NULL 由单独的位图记录。
+ * 子类按 {@link DataType} 使用基本类型数组保存值，避免每个单元格一个装箱对象和一个 Map 条目。
+ */
+abstract class ColumnVector {
+    protected static final int INITIAL_CAPACITY = 16;
+
+    protected BitSet nulls = new BitSet();
+
+    static ColumnVector forType(DataType type) {
+        switch (type) {
+            case INTEGER:
+                return new IntColumnVector();
+            case DOUBLE:
+                return new DoubleColumnVector();
+            case STRING:
+                return new StringColumnVector();
+            case BOOLEAN:
+                return new BooleanColumnVector();
+            default:
+                throw new IllegalStateException("Unsupported data type: " + type);
+        }
+    }
+
+    boolean isNull(int slot) {
+        return nulls.get(slot);
+    }
+
+    /**
+     * @return 槽位上的值，NULL 时返回 null
+     */
+    Object get(int slot) {
+        return nulls.get(slot) ? null : getNonNull(slot);
+    }
+
+    /**
+     * @return 非 NULL 槽位上的数值，不装箱。默认实现取出装箱值，基本类型向量会覆盖它直接读取数组元素
+     */
+    int getInt(int slot) {
+        return ((Number) getNonNull(slot)).intValue();
+    }
+
+    /**
+     * @see #getInt(int)
+     */
+    double getDouble(int slot) {
+        return ((Number) getNonNull(slot)).doubleValue();
+    }
+
+    /**
+     * 设置槽位上的值，必要时扩容。值必须已经按列类型转换。
+     */
+    void set(int slot, Object value) {
+        ensureCapacity(slot + 1);
+        if (value == null) {
+            nulls.set(slot);
+            clearValue(slot);
+        } else {
+            nulls.clear(slot);
+            setNonNull(slot, value);
+        }
+    }
+
+    /**
+     * 只保留给定的槽位，按给定顺序重新编号为 0..keptSlots.length-1。
+     */
+    void retain(int[] keptSlots) {
+        BitSet retainedNulls = new BitSet(keptSlots.length);
+        for (int i = 0; i < keptSlots.length; i++) {
+            if (nulls.get(keptSlots[i])) {
+                retainedNulls.set(i);
+            }
+        }
+        retainValues(keptSlots);
+        nulls = retainedNulls;
+    }
+
+    /**
+     * 对槽位 [from, to) 求值条件，把匹配的槽位加入 matches（包括已删除的槽位，由调用者过滤）。
+     * 默认实现逐个取出装箱值比较，基本类型向量会覆盖它直接比较数组元素。
+     */
+    void scan(WhereCondition condition, int from, int to, BitSet matches) {
+        for (int slot = from; slot < to; slot++) {
+            if (condition.matchesValue(get(slot))) {
+                matches.set(slot);
+            }
+        }
+    }
+
+    // 处理 "= NULL" 条件，返回 true 表示已处理
+    protected boolean scanNullEquality(WhereCondition condition, int from, int to, BitSet matches) {
+        if (condition.getOperator() != WhereCondition.Operator.EQ || condition.getValue() != null) {
+            return false;
+        }
+        for (int slot = nulls.nextSetBit(from); slot >= 0 && slot < to; slot = nulls.nextSetBit(slot + 1)) {
+            matches.set(slot);
+        }
+        return true;
+    }
+
+    /**
+     * @return 前 size 个槽位的独立副本，供 checkpoint 快照使用
+     */
+    abstract ColumnVector copy(int size);
+
+    /**
+     * @return 向量占用堆内存的粗略估算（字节），用于内存预算
+     */
+    long estimateSizeBytes() {
+        return 32 + nulls.size() / 8 + estimateValueBytes();
+    }
+
+    /**
+     * 释放向量占用的堆外资源。之后不能再访问此向量。
+     */
+    void release() {
+        // 堆上的向量由 GC 回收
+    }
+
+    protected abstract long estimateValueBytes();
+
+    protected abstract Object getNonNull(int slot);
+
+    protected abstract void setNonNull(int slot, Object value);
+
+    protected abstract void clearValue(int slot);
+
+    protected abstract void ensureCapacity(int capacity);
+
+    protected abstract void retainValues(int[] keptSlots);
+
+    protected static int grow(int currentCapacity, int requiredCapacity) {
+        return Math.max(requiredCapacity, Math.max(INITIAL_CAPACITY, currentCapacity + (currentCapacity >> 1)));
+    }
+}
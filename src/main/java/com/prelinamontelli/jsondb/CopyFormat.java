@@ -0,0 +1,38 @@
+package com.prelinamontelli.jsondb;
+
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * COPY 命令读取的数据文件格式。
+ */
+public enum CopyFormat {
+    CSV,    // 逗号分隔，字段可以用双引号包围（引号内的 "" 表示一个双引号），可选的首行列名
+    NDJSON; // 每行一个 JSON 对象，字段名为列名
+
+    /**
+     * @throws IllegalArgumentException 如果名称不是已知的格式
+     */
+    public static CopyFormat fromName(String name) {
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException | NullPointerException e) {
+            throw new IllegalArgumentException("Unknown COPY format '" + name + "'. Supported formats: CSV, NDJSON.");
+        }
+    }
+
+    /**
+     * 根据文件扩展名推断格式：.csv 为 CSV，.ndjson / .jsonl / .json 为 NDJSON。
+     * @throws IllegalArgumentException 如果无法从扩展名推断
+     */
+    public static CopyFormat fromFileName(Path file) {
+        String name = file.getFileName() == null ? "" : file.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".csv")) {
+            return CSV;
+        }
+        if (name.endsWith(".ndjson") || name.endsWith(".jsonl") || name.endsWith(".json")) {
+            return NDJSON;
+        }
+        throw new IllegalArgumentException("Cannot infer the format of '" + file + "'. Add FORMAT CSV or FORMAT NDJSON.");
+    }
+}
@@ -0,0 +1,367 @@
+package com.prelinamontelli.jsondb;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * COPY 命令的数据文件解析器。调用线程只负责按行读取文件并切分成记录（CSV 引号内的换行合并到同一条记录），
+ * 记录按块交给解析线程拆分字段，并用 {@link Column#convertValue(Object)} 按列类型转换，结果按文件顺序交回调用线程。
+ */
+final class CopyReader {
+    private static final int CHUNK_RECORDS = 8192;
+
+    private final ObjectMapper objectMapper;
+    private final int threads;
+
+    /**
+     * @param threads 解析线程数，1 表示在调用线程上解析
+     */
+    CopyReader(ObjectMapper objectMapper, int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("COPY parse thread count must be positive.");
+        }
+        this.objectMapper = objectMapper;
+        this.threads = threads;
+    }
+
+    /**
+     * 读取整个文件。空行被忽略。
+     * @param header CSV 的第一条记录是列名；没有列名时字段按表的列顺序对应
+     * @param sink 在调用线程上按文件顺序接收每一行转换后的值（按列定义顺序）
+     * @return 读取的行数
+     * @throws IllegalArgumentException 如果某一行格式错误或值无法转换，消息中包含行号
+     */
+    long read(Path file, CopyFormat format, boolean header, List<Column> columns, Consumer<Object[]> sink) throws IOException {
+        if (header && format != CopyFormat.CSV) {
+            throw new IllegalArgumentException("HEADER can only be used with FORMAT CSV.");
+        }
+        ExecutorService pool = threads == 1 ? null : Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "jsondb-copy");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            RecordSource source = new RecordSource(reader, format == CopyFormat.CSV);
+            ChunkParser parser = format == CopyFormat.CSV
+                ? new CsvParser(columns, header ? source.nextRecord() : null, source.getLine())
+                : new NdjsonParser(columns);
+            ArrayDeque<Future<List<Object[]>>> inFlight = new ArrayDeque<>();
+            long rows = 0;
+            Chunk chunk;
+            while ((chunk = source.nextChunk()) != null) {
+                if (pool == null) {
+                    rows += deliver(parser.parse(chunk), sink);
+                    continue;
+                }
+                Chunk submitted = chunk;
+                inFlight.addLast(pool.submit(() -> parser.parse(submitted)));
+                if (inFlight.size() >= threads * 2) {
+                    rows += deliver(await(inFlight.pollFirst()), sink);
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                rows += deliver(await(inFlight.pollFirst()), sink);
+            }
+            return rows;
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    private static int deliver(List<Object[]> rows, Consumer<Object[]> sink) {
+        for (Object[] row : rows) {
+            sink.accept(row);
+        }
+        return rows.size();
+    }
+
+    private static List<Object[]> await(Future<List<Object[]>> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("COPY was interrupted.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause.getMessage(), cause);
+        }
+    }
+
+    // 一块连续的记录，以及每条记录在文件中的起始行号（从 1 开始）
+    private static final class Chunk {
+        final List<String> records = new ArrayList<>(CHUNK_RECORDS);
+        final List<Long> lines = new ArrayList<>(CHUNK_RECORDS);
+    }
+
+    // 按行读取文件并切分记录，只在调用线程上使用
+    private static final class RecordSource {
+        private final BufferedReader reader;
+        private final boolean csv;
+        private long line;       // 已读取的行数
+        private long recordLine; // 最近一条记录的起始行号
+
+        RecordSource(BufferedReader reader, boolean csv) {
+            this.reader = reader;
+            this.csv = csv;
+        }
+
+        long getLine() {
+            return recordLine;
+        }
+
+        // 下一条非空记录，文件结束时返回 null
+        String nextRecord() throws IOException {
+            String text;
+            do {
+                text = reader.readLine();
+                if (text == null) {
+                    return null;
+                }
+                line++;
+            } while (text.trim().isEmpty());
+            recordLine = line;
+            if (!csv || quoteCount(text) % 2 == 0) {
+                return text;
+            }
+            StringBuilder record = new StringBuilder(text);
+            int quotes = quoteCount(text);
+            while (quotes % 2 != 0) {
+                String next = reader.readLine();
+                if (next == null) {
+                    throw new IllegalArgumentException("Line " + recordLine + ": unterminated quoted field.");
+                }
+                line++;
+                record.append('\n').append(next);
+                quotes += quoteCount(next);
+            }
+            return record.toString();
+        }
+
+        Chunk nextChunk() throws IOException {
+            Chunk chunk = new Chunk();
+            String record;
+            while (chunk.records.size() < CHUNK_RECORDS && (record = nextRecord()) != null) {
+                chunk.records.add(record);
+                chunk.lines.add(recordLine);
+            }
+            return chunk.records.isEmpty() ? null : chunk;
+        }
+
+        private static int quoteCount(String text) {
+            int count = 0;
+            for (int i = 0; i < text.length(); i++) {
+                if (text.charAt(i) == '"') {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
+    // 把一块记录转换成行，可以在多个线程上同时调用
+    private interface ChunkParser {
+        List<Object[]> parse(Chunk chunk);
+    }
+
+    private static final class CsvParser implements ChunkParser {
+        private final List<Column> columns;
+        private final int[] positions; // 字段序号 -> 列序号
+
+        /**
+         * @param header 列名记录，null 表示字段按表的列顺序对应
+         */
+        CsvParser(List<Column> columns, String header, long headerLine) {
+            this.columns = columns;
+            if (header == null) {
+                positions = new int[columns.size()];
+                for (int i = 0; i < positions.length; i++) {
+                    positions[i] = i;
+                }
+                return;
+            }
+            Map<String, Integer> byName = new HashMap<>();
+            for (int i = 0; i < columns.size(); i++) {
+                byName.put(columns.get(i).getName(), i);
+            }
+            List<String> names = split(header, headerLine);
+            positions = new int[names.size()];
+            boolean[] seen = new boolean[columns.size()];
+            for (int i = 0; i < names.size(); i++) {
+                String name = names.get(i) == null ? "" : names.get(i).trim();
+                Integer position = byName.get(name);
+                if (position == null) {
+                    throw new IllegalArgumentException("Line " + headerLine + ": column '" + name + "' not found in table.");
+                }
+                if (seen[position]) {
+                    throw new IllegalArgumentException("Line " + headerLine + ": duplicate column '" + name + "' in header.");
+                }
+                seen[position] = true;
+                positions[i] = position; // 表头中没有的列取 NULL
+            }
+        }
+
+        @Override
+        public List<Object[]> parse(Chunk chunk) {
+            List<Object[]> rows = new ArrayList<>(chunk.records.size());
+            for (int r = 0; r < chunk.records.size(); r++) {
+                long line = chunk.lines.get(r);
+                List<String> fields = split(chunk.records.get(r), line);
+                if (fields.size() != positions.length) {
+                    throw new IllegalArgumentException("Line " + line + ": expected " + positions.length + " fields but found " + fields.size() + ".");
+                }
+                Object[] values = new Object[columns.size()];
+                for (int i = 0; i < positions.length; i++) {
+                    values[positions[i]] = convert(columns.get(positions[i]), fields.get(i), line);
+                }
+                rows.add(values);
+            }
+            return rows;
+        }
+
+        /**
+         * 拆分一条 CSV 记录。未加引号的字段去掉首尾空白，为空时是 NULL；加引号的字段原样保留，即使为空也是空字符串。
+         */
+        static List<String> split(String record, long line) {
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            int length = record.length();
+            int i = 0;
+            while (true) {
+                field.setLength(0);
+                boolean quoted = false;
+                while (i < length && record.charAt(i) == ' ') {
+                    i++;
+                }
+                if (i < length && record.charAt(i) == '"') {
+                    quoted = true;
+                    i++;
+                    while (true) {
+                        if (i >= length) {
+                            throw new IllegalArgumentException("Line " + line + ": unterminated quoted field.");
+                        }
+                        char c = record.charAt(i++);
+                        if (c != '"') {
+                            field.append(c);
+                        } else if (i < length && record.charAt(i) == '"') {
+                            field.append('"');
+                            i++;
+                        } else {
+                            break;
+                        }
+                    }
+                    while (i < length && record.charAt(i) == ' ') {
+                        i++;
+                    }
+                    if (i < length && record.charAt(i) != ',') {
+                        throw new IllegalArgumentException("Line " + line + ": unexpected character after a quoted field.");
+                    }
+                } else {
+                    int comma = record.indexOf(',', i);
+                    int end = comma < 0 ? length : comma;
+                    field.append(record, i, end);
+                    i = end;
+                }
+                String value = quoted ? field.toString() : field.toString().trim();
+                fields.add(!quoted && value.isEmpty() ? null : value);
+                if (i >= length) {
+                    return fields;
+                }
+                i++; // 跳过逗号
+            }
+        }
+    }
+
+    private final class NdjsonParser implements ChunkParser {
+        private final List<Column> columns;
+        private final Map<String, Integer> positions = new HashMap<>();
+
+        NdjsonParser(List<Column> columns) {
+            this.columns = columns;
+            for (int i = 0; i < columns.size(); i++) {
+                positions.put(columns.get(i).getName(), i);
+            }
+        }
+
+        @Override
+        public List<Object[]> parse(Chunk chunk) {
+            List<Object[]> rows = new ArrayList<>(chunk.records.size());
+            for (int r = 0; r < chunk.records.size(); r++) {
+                long line = chunk.lines.get(r);
+                try (JsonParser parser = objectMapper.getFactory().createParser(chunk.records.get(r))) {
+                    if (parser.nextToken() != JsonToken.START_OBJECT) {
+                        throw new IllegalArgumentException("Line " + line + ": expected a JSON object.");
+                    }
+                    Object[] values = new Object[columns.size()];
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        Integer position = positions.get(parser.getCurrentName());
+                        JsonToken token = parser.nextToken();
+                        if (position == null) {
+                            parser.skipChildren(); // 忽略表中不存在的字段
+                            continue;
+                        }
+                        values[position] = convert(columns.get(position), scalarValue(parser, token, line), line);
+                    }
+                    if (parser.nextToken() != null) {
+                        throw new IllegalArgumentException("Line " + line + ": unexpected content after the JSON object.");
+                    }
+                    rows.add(values);
+                } catch (IOException e) {
+                    throw new IllegalArgumentException("Line " + line + ": invalid JSON: " + e.getMessage(), e);
+                }
+            }
+            return rows;
+        }
+    }
+
+    private static Object scalarValue(JsonParser parser, JsonToken token, long line) throws IOException {
+        switch (token) {
+            case VALUE_NULL:
+                return null;
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                return parser.getNumberValue();
+            case VALUE_STRING:
+                return parser.getText();
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            default:
+                throw new IllegalArgumentException("Line " + line + ": field '" + parser.getCurrentName() + "' must be a scalar value, found " + token + ".");
+        }
+    }
+
+    private static Object convert(Column column, Object value, long line) {
+        try {
+            Object converted = column.convertValue(value);
+            if (converted != null && !column.isValidValue(converted)) {
+                throw new IllegalArgumentException("Invalid value '" + value + "' for column '" + column.getName() + "' of type " + column.getType());
+            }
+            return converted;
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Line " + line + ": " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,440 @@
+package com.prelinamontelli.jsondb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * 数据库引擎的运行参数。
+ * 默认值可以通过 JVM 系统属性覆盖，例如 -Djsondb.wal.sync=ALWAYS。
+ */
+public class DBConfig {
+    public static final String WAL_SYNC_PROPERTY = "jsondb.wal.sync";
+    public static final String WAL_GROUP_COMMIT_DELAY_PROPERTY = "jsondb.wal.groupCommitDelayMillis";
+    public static final String CHECKPOINT_WAL_RECORDS_PROPERTY = "jsondb.checkpoint.walRecords";
+    public static final String CHECKPOINT_WAL_BYTES_PROPERTY = "jsondb.checkpoint.walBytes";
+    public static final String MEMORY_BUDGET_PROPERTY = "jsondb.memory.budgetBytes";
+    public static final String PRELOAD_DATABASES_PROPERTY = "jsondb.startup.preload";
+    public static final String STARTUP_LOAD_THREADS_PROPERTY = "jsondb.startup.loadThreads";
+    public static final String PRELOAD_ALL = "*";
+    public static final String STORAGE_FORMAT_PROPERTY = "jsondb.storage.format";
+    public static final String STORAGE_COMPRESSION_PROPERTY = "jsondb.storage.compression";
+    public static final String PAGED_STORAGE_PROPERTY = "jsondb.storage.paged";
+    public static final String PAGE_SIZE_PROPERTY = "jsondb.paged.pageSizeBytes";
+    public static final String BUFFER_POOL_BYTES_PROPERTY = "jsondb.paged.bufferPoolBytes";
+    public static final String SERVER_HOST_PROPERTY = "jsondb.server.host";
+    public static final String SERVER_PORT_PROPERTY = "jsondb.server.port";
+    public static final String SERVER_MAX_CONNECTIONS_PROPERTY = "jsondb.server.maxConnections";
+    public static final String COPY_PARSE_THREADS_PROPERTY = "jsondb.copy.parseThreads";
+    public static final String QUERY_PARALLELISM_PROPERTY = "jsondb.query.parallelism";
+    public static final String PARALLEL_SCAN_MIN_ROWS_PROPERTY = "jsondb.query.parallelMinRows";
+    public static final String HASH_JOIN_MAX_BUILD_ROWS_PROPERTY = "jsondb.query.hashJoinMaxBuildRows";
+    public static final String OUTPUT_FORMAT_PROPERTY = "jsondb.output.format";
+    public static final String OUTPUT_BUFFER_CHARS_PROPERTY = "jsondb.output.bufferChars";
+    public static final String OUTPUT_ALIGN_ROWS_PROPERTY = "jsondb.output.alignRows";
+
+    private WalSyncMode walSyncMode = WalSyncMode.GROUP;
+    private long walGroupCommitDelayMillis = 0;
+    private long checkpointWalRecords = 10_000;
+    private long checkpointWalBytes = 64L * 1024 * 1024;
+    private long memoryBudgetBytes = 0; // 0 表示不限制
+    private List<String> preloadDatabases = Collections.emptyList();
+    private int startupLoadThreads = Runtime.getRuntime().availableProcessors();
+    private StorageFormat storageFormat = StorageFormat.JSON; // 新建数据库的默认存储格式
+    private boolean storageCompression = false;              // BINARY 格式是否使用 DEFLATE 块压缩
+    private boolean pagedStorage = false;                    // 表数据是否保存在堆外的内存映射页文件中
+    private int pageSizeBytes = 64 * 1024;
+    private long bufferPoolBytes = 256L * 1024 * 1024;       // 同时映射的页的总大小上限
+    private String serverHost = "127.0.0.1";                 // 服务器模式默认只监听本机
+    private int serverPort = 6543;
+    private int serverMaxConnections = 64;
+    private int copyParseThreads = Runtime.getRuntime().availableProcessors(); // COPY 解析数据文件的线程数
+    private int queryParallelism = Runtime.getRuntime().availableProcessors(); // 并行扫描的线程数，1 表示不并行
+    private long parallelScanMinRows = 100_000;              // 表的行数达到该值时查询才并行扫描
+    private int hashJoinMaxBuildRows = 1_000_000;            // 哈希连接的哈希表中同时保存的最大行数
+    private OutputFormat outputFormat = OutputFormat.TABLE;  // 新会话的查询结果输出格式
+    private int outputBufferChars = 64 * 1024;               // 查询结果缓冲到该字符数时整块写出
+    private int outputAlignRows = 1000;                      // 表格格式按前多少行计算列宽
+
+    public static DBConfig fromSystemProperties() {
+        DBConfig config = new DBConfig();
+        String syncMode = System.getProperty(WAL_SYNC_PROPERTY);
+        if (syncMode != null && !syncMode.trim().isEmpty()) {
+            try {
+                config.setWalSyncMode(WalSyncMode.valueOf(syncMode.trim().toUpperCase()));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid value '" + syncMode + "' for " + WAL_SYNC_PROPERTY);
+            }
+        }
+        config.setWalGroupCommitDelayMillis(readLong(WAL_GROUP_COMMIT_DELAY_PROPERTY, config.walGroupCommitDelayMillis));
+        config.setCheckpointWalRecords(readLong(CHECKPOINT_WAL_RECORDS_PROPERTY, config.checkpointWalRecords));
+        config.setCheckpointWalBytes(readLong(CHECKPOINT_WAL_BYTES_PROPERTY, config.checkpointWalBytes));
+        config.setMemoryBudgetBytes(readLong(MEMORY_BUDGET_PROPERTY, config.memoryBudgetBytes));
+        String preload = System.getProperty(PRELOAD_DATABASES_PROPERTY);
+        if (preload != null) {
+            config.setPreloadDatabases(Arrays.stream(preload.split(","))
+                .map(String::trim)
+                .filter(name -> !name.isEmpty())
+                .collect(Collectors.toList()));
+        }
+        long loadThreads = readLong(STARTUP_LOAD_THREADS_PROPERTY, config.startupLoadThreads);
+        if (loadThreads > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid value '" + loadThreads + "' for " + STARTUP_LOAD_THREADS_PROPERTY);
+        }
+        config.setStartupLoadThreads((int) loadThreads);
+        String storageFormat = System.getProperty(STORAGE_FORMAT_PROPERTY);
+        if (storageFormat != null && !storageFormat.trim().isEmpty()) {
+            config.setStorageFormat(StorageFormat.fromName(storageFormat));
+        }
+        String compression = System.getProperty(STORAGE_COMPRESSION_PROPERTY);
+        if (compression != null && !compression.trim().isEmpty()) {
+            String normalized = compression.trim().toUpperCase();
+            if (!"NONE".equals(normalized) && !"DEFLATE".equals(normalized)) {
+                throw new IllegalArgumentException("Invalid value '" + compression + "' for " + STORAGE_COMPRESSION_PROPERTY);
+            }
+            config.setStorageCompression("DEFLATE".equals(normalized));
+        }
+        String paged = System.getProperty(PAGED_STORAGE_PROPERTY);
+        if (paged != null && !paged.trim().isEmpty()) {
+            String normalized = paged.trim().toLowerCase();
+            if (!"true".equals(normalized) && !"false".equals(normalized)) {
+                throw new IllegalArgumentException("Invalid value '" + paged + "' for " + PAGED_STORAGE_PROPERTY);
+            }
+            config.setPagedStorage(Boolean.parseBoolean(normalized));
+        }
+        long pageSize = readLong(PAGE_SIZE_PROPERTY, config.pageSizeBytes);
+        if (pageSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid value '" + pageSize + "' for " + PAGE_SIZE_PROPERTY);
+        }
+        config.setPageSizeBytes((int) pageSize);
+        config.setBufferPoolBytes(readLong(BUFFER_POOL_BYTES_PROPERTY, config.bufferPoolBytes));
+        String serverHost = System.getProperty(SERVER_HOST_PROPERTY);
+        if (serverHost != null && !serverHost.trim().isEmpty()) {
+            config.setServerHost(serverHost.trim());
+        }
+        long serverPort = readLong(SERVER_PORT_PROPERTY, config.serverPort);
+        if (serverPort > 65535) {
+            throw new IllegalArgumentException("Invalid value '" + serverPort + "' for " + SERVER_PORT_PROPERTY);
+        }
+        config.setServerPort((int) serverPort);
+        long maxConnections = readLong(SERVER_MAX_CONNECTIONS_PROPERTY, config.serverMaxConnections);
+        if (maxConnections > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid value '" + maxConnections + "' for " + SERVER_MAX_CONNECTIONS_PROPERTY);
+        }
+        config.setServerMaxConnections((int) maxConnections);
+        long copyThreads = readLong(COPY_PARSE_THREADS_PROPERTY, config.copyParseThreads);
+        if (copyThreads > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid value '" + copyThreads + "' for " + COPY_PARSE_THREADS_PROPERTY);
+        }
+        config.setCopyParseThreads((int) copyThreads);
+        long parallelism = readLong(QUERY_PARALLELISM_PROPERTY, config.queryParallelism);
+        if (parallelism > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid value '" + parallelism + "' for " + QUERY_PARALLELISM_PROPERTY);
+        }
+        config.setQueryParallelism((int) parallelism);
+        config.setParallelScanMinRows(readLong(PARALLEL_SCAN_MIN_ROWS_PROPERTY, config.parallelScanMinRows));
+        long buildRows = readLong(HASH_JOIN_MAX_BUILD_ROWS_PROPERTY, config.hashJoinMaxBuildRows);
+        if (buildRows > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid value '" + buildRows + "' for " + HASH_JOIN_MAX_BUILD_ROWS_PROPERTY);
+        }
+        config.setHashJoinMaxBuildRows((int) buildRows);
+        String outputFormat = System.getProperty(OUTPUT_FORMAT_PROPERTY);
+        if (outputFormat != null && !outputFormat.trim().isEmpty()) {
+            config.setOutputFormat(OutputFormat.fromName(outputFormat));
+        }
+        long bufferChars = readLong(OUTPUT_BUFFER_CHARS_PROPERTY, config.outputBufferChars);
+        if (bufferChars > Integer.MAX_VALUE / 4) {
+            throw new IllegalArgumentException("Invalid value '" + bufferChars + "' for " + OUTPUT_BUFFER_CHARS_PROPERTY);
+        }
+        config.setOutputBufferChars((int) bufferChars);
+        long alignRows = readLong(OUTPUT_ALIGN_ROWS_PROPERTY, config.outputAlignRows);
+        if (alignRows > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid value '" + alignRows + "' for " + OUTPUT_ALIGN_ROWS_PROPERTY);
+        }
+        config.setOutputAlignRows((int) alignRows);
+        return config;
+    }
+
+    private static long readLong(String property, long defaultValue) {
+        String value = System.getProperty(property);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value '" + value + "' for " + property);
+        }
+    }
+
+    public WalSyncMode getWalSyncMode() {
+        return walSyncMode;
+    }
+
+    public void setWalSyncMode(WalSyncMode walSyncMode) {
+        if (walSyncMode == null) {
+            throw new IllegalArgumentException("WAL sync mode cannot be null.");
+        }
+        this.walSyncMode = walSyncMode;
+    }
+
+    public long getWalGroupCommitDelayMillis() {
+        return walGroupCommitDelayMillis;
+    }
+
+    public void setWalGroupCommitDelayMillis(long walGroupCommitDelayMillis) {
+        if (walGroupCommitDelayMillis < 0) {
+            throw new IllegalArgumentException("Group commit delay cannot be negative.");
+        }
+        this.walGroupCommitDelayMillis = walGroupCommitDelayMillis;
+    }
+
+    /**
+     * @return 触发后台 checkpoint 的日志记录数阈值
+     */
+    public long getCheckpointWalRecords() {
+        return checkpointWalRecords;
+    }
+
+    public void setCheckpointWalRecords(long checkpointWalRecords) {
+        if (checkpointWalRecords <= 0) {
+            throw new IllegalArgumentException("Checkpoint WAL record threshold must be positive.");
+        }
+        this.checkpointWalRecords = checkpointWalRecords;
+    }
+
+    /**
+     * @return 触发后台 checkpoint 的日志字节数阈值
+     */
+    public long getCheckpointWalBytes() {
+        return checkpointWalBytes;
+    }
+
+    public void setCheckpointWalBytes(long checkpointWalBytes) {
+        if (checkpointWalBytes <= 0) {
+            throw new IllegalArgumentException("Checkpoint WAL byte threshold must be positive.");
+        }
+        this.checkpointWalBytes = checkpointWalBytes;
+    }
+
+    /**
+     * @return 已加载数据库的估算内存总量上限，超过时按 LRU 卸载不常用的数据库；0 表示不限制
+     */
+    public long getMemoryBudgetBytes() {
+        return memoryBudgetBytes;
+    }
+
+    public void setMemoryBudgetBytes(long memoryBudgetBytes) {
+        if (memoryBudgetBytes < 0) {
+            throw new IllegalArgumentException("Memory budget cannot be negative.");
+        }
+        this.memoryBudgetBytes = memoryBudgetBytes;
+    }
+
+    /**
+     * @return 启动时并发预加载的数据库名称；包含 {@link #PRELOAD_ALL} 时预加载所有数据库，为空时全部按需加载
+     */
+    public List<String> getPreloadDatabases() {
+        return preloadDatabases;
+    }
+
+    public void setPreloadDatabases(List<String> preloadDatabases) {
+        if (preloadDatabases == null) {
+            throw new IllegalArgumentException("Preload database list cannot be null.");
+        }
+        this.preloadDatabases = Collections.unmodifiableList(new ArrayList<>(preloadDatabases));
+    }
+
+    /**
+     * @return 启动时预加载数据库使用的最大线程数
+     */
+    public int getStartupLoadThreads() {
+        return startupLoadThreads;
+    }
+
+    public void setStartupLoadThreads(int startupLoadThreads) {
+        if (startupLoadThreads <= 0) {
+            throw new IllegalArgumentException("Startup load thread count must be positive.");
+        }
+        this.startupLoadThreads = startupLoadThreads;
+    }
+
+    public StorageFormat getStorageFormat() {
+        return storageFormat;
+    }
+
+    public void setStorageFormat(StorageFormat storageFormat) {
+        if (storageFormat == null) {
+            throw new IllegalArgumentException("Storage format cannot be null.");
+        }
+        this.storageFormat = storageFormat;
+    }
+
+    public boolean isStorageCompression() {
+        return storageCompression;
+    }
+
+    public void setStorageCompression(boolean storageCompression) {
+        this.storageCompression = storageCompression;
+    }
+
+    public boolean isPagedStorage() {
+        return pagedStorage;
+    }
+
+    public void setPagedStorage(boolean pagedStorage) {
+        this.pagedStorage = pagedStorage;
+    }
+
+    public int getPageSizeBytes() {
+        return pageSizeBytes;
+    }
+
+    public void setPageSizeBytes(int pageSizeBytes) {
+        if (pageSizeBytes < 4096 || Integer.bitCount(pageSizeBytes) != 1) {
+            throw new IllegalArgumentException("Page size must be a power of two of at least 4096 bytes.");
+        }
+        this.pageSizeBytes = pageSizeBytes;
+    }
+
+    public long getBufferPoolBytes() {
+        return bufferPoolBytes;
+    }
+
+    public void setBufferPoolBytes(long bufferPoolBytes) {
+        if (bufferPoolBytes <= 0) {
+            throw new IllegalArgumentException("Buffer pool size must be positive.");
+        }
+        this.bufferPoolBytes = bufferPoolBytes;
+    }
+
+    public String getServerHost() {
+        return serverHost;
+    }
+
+    public void setServerHost(String serverHost) {
+        if (serverHost == null || serverHost.trim().isEmpty()) {
+            throw new IllegalArgumentException("Server host cannot be null or empty.");
+        }
+        this.serverHost = serverHost;
+    }
+
+    public int getServerPort() {
+        return serverPort;
+    }
+
+    public void setServerPort(int serverPort) {
+        if (serverPort < 0 || serverPort > 65535) {
+            throw new IllegalArgumentException("Server port must be between 0 and 65535.");
+        }
+        this.serverPort = serverPort;
+    }
+
+    public int getServerMaxConnections() {
+        return serverMaxConnections;
+    }
+
+    public void setServerMaxConnections(int serverMaxConnections) {
+        if (serverMaxConnections <= 0) {
+            throw new IllegalArgumentException("Server connection limit must be positive.");
+        }
+        this.serverMaxConnections = serverMaxConnections;
+    }
+
+    public int getCopyParseThreads() {
+        return copyParseThreads;
+    }
+
+    public void setCopyParseThreads(int copyParseThreads) {
+        if (copyParseThreads <= 0) {
+            throw new IllegalArgumentException("COPY parse thread count must be positive.");
+        }
+        this.copyParseThreads = copyParseThreads;
+    }
+
+    /**
+     * @return 查询并行扫描使用的线程数，1 表示总是顺序扫描
+     */
+    public int getQueryParallelism() {
+        return queryParallelism;
+    }
+
+    public void setQueryParallelism(int queryParallelism) {
+        if (queryParallelism <= 0) {
+            throw new IllegalArgumentException("Query parallelism must be positive.");
+        }
+        this.queryParallelism = queryParallelism;
+    }
+
+    /**
+     * @return 表的行数达到该值时查询的顺序扫描按行范围分区并行执行
+     */
+    public long getParallelScanMinRows() {
+        return parallelScanMinRows;
+    }
+
+    public void setParallelScanMinRows(long parallelScanMinRows) {
+        if (parallelScanMinRows <= 0) {
+            throw new IllegalArgumentException("Parallel scan row threshold must be positive.");
+        }
+        this.parallelScanMinRows = parallelScanMinRows;
+    }
+
+    /**
+     * @return 哈希连接的构建端一次放入哈希表的最大行数；构建端更大时分多趟构建，每趟重新扫描探测端
+     */
+    public int getHashJoinMaxBuildRows() {
+        return hashJoinMaxBuildRows;
+    }
+
+    public void setHashJoinMaxBuildRows(int hashJoinMaxBuildRows) {
+        if (hashJoinMaxBuildRows <= 0) {
+            throw new IllegalArgumentException("Hash join build row limit must be positive.");
+        }
+        this.hashJoinMaxBuildRows = hashJoinMaxBuildRows;
+    }
+
+    /**
+     * @return 新会话的查询结果输出格式，会话中可以用 SET OUTPUT FORMAT 修改
+     */
+    public OutputFormat getOutputFormat() {
+        return outputFormat;
+    }
+
+    public void setOutputFormat(OutputFormat outputFormat) {
+        if (outputFormat == null) {
+            throw new IllegalArgumentException("Output format cannot be null.");
+        }
+        this.outputFormat = outputFormat;
+    }
+
+    /**
+     * @return 查询结果在内存中缓冲的字符数，达到该值时整块写出
+     */
+    public int getOutputBufferChars() {
+        return outputBufferChars;
+    }
+
+    public void setOutputBufferChars(int outputBufferChars) {
+        if (outputBufferChars <= 0 || outputBufferChars > Integer.MAX_VALUE / 4) {
+            throw new IllegalArgumentException("Output buffer size must be positive and at most " + Integer.MAX_VALUE / 4 + " characters.");
+        }
+        this.outputBufferChars = outputBufferChars;
+    }
+
+    /**
+     * @return 表格格式在输出之前读取并用来计算列宽的行数；之后的行中更长的值超出列宽
+     */
+    public int getOutputAlignRows() {
+        return outputAlignRows;
+    }
+
+    public void setOutputAlignRows(int outputAlignRows) {
+        if (outputAlignRows < 0) {
+            throw new IllegalArgumentException("Output alignment row count cannot be negative.");
+        }
+        this.outputAlignRows = outputAlignRows;
+    }
+}
@@ -5,154 +5,1008 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 public class DBManager {
     private static final String DEFAULT_DATA_DIR = "data";
+    private static final String PAGES_DIR = "pages";
     private final Path dataDirectory;
+    private final DBConfig config;
     private final ObjectMapper objectMapper;
-    private final Map<String, Database> databases; // 数据库名称 -> 数据库对象
-    private String currentDatabaseName; // 当前选择的数据库名
+    private final Map<StorageFormat, SnapshotCodec> snapshotCodecs;
+    private final PageStore pageStore; // 分页存储模式下表数据的页文件和缓冲池，未启用时为 null
+    private final Set<String> knownDatabases; // 数据目录中的所有数据库，无论是否已加载
+    private final Map<String, StorageFormat> storageFormats; // 数据库名称 -> 快照文件的存储格式
+    private final Map<String, Database> databases; // 已加载的数据库：数据库名称 -> 数据库对象
+    private final Map<String, Long> checkpointedLsns; // 已加载数据库 -> 已写入快照的最后 LSN，等于 lastLsn 时数据库是干净的
+    private final Map<String, Long> estimatedSizes; // 已加载数据库 -> 估算的堆内存占用（字节）
+    private final Map<String, Long> lastAccess; // 已加载数据库 -> 最近一次访问的序号，用于 LRU 卸载
+    private final AtomicLong accessCounter = new AtomicLong();
+    private final Map<String, WriteAheadLog> writeAheadLogs; // 数据库名称 -> 预写日志
+    private final Map<String, CheckpointStats> checkpointStats; // 数据库名称 -> checkpoint 统计
+    private final Map<String, Object> checkpointMutexes; // 同一数据库的 checkpoint 与 DROP 互斥
+    private final Map<String, Object> loadMutexes; // 同一数据库的加载、创建与 DROP 互斥，不同数据库可以并发加载
+    private final Object evictionMutex = new Object(); // 同时只有一个线程按内存预算挑选卸载的数据库
+    private final AtomicBoolean shutDown = new AtomicBoolean();
+    private final Set<String> pendingCheckpoints; // 已排队但尚未执行的 checkpoint
+    private final ExecutorService checkpointExecutor;
+    private final ParallelScan parallelScan; // 所有会话的查询共用的并行扫描线程池
+    private final Set<Session> sessions; // 打开的会话；会话正在使用的数据库不会被卸载
+    private final AtomicLong sessionCounter = new AtomicLong();
+    private final Session defaultSession; // 命令行界面使用的会话
 
     public DBManager() {
         this(Paths.get(DEFAULT_DATA_DIR));
     }
 
     public DBManager(Path dataDirectory) {
+        this(dataDirectory, DBConfig.fromSystemProperties());
+    }
+
+    public DBManager(Path dataDirectory, DBConfig config) {
         this.dataDirectory = dataDirectory;
+        this.config = config;
+        this.knownDatabases = ConcurrentHashMap.newKeySet();
+        this.storageFormats = new ConcurrentHashMap<>();
         this.databases = new ConcurrentHashMap<>();
+        this.checkpointedLsns = new ConcurrentHashMap<>();
+        this.estimatedSizes = new ConcurrentHashMap<>();
+        this.lastAccess = new ConcurrentHashMap<>();
+        this.writeAheadLogs = new ConcurrentHashMap<>();
+        this.checkpointStats = new ConcurrentHashMap<>();
+        this.checkpointMutexes = new ConcurrentHashMap<>();
+        this.loadMutexes = new ConcurrentHashMap<>();
+        this.pendingCheckpoints = ConcurrentHashMap.newKeySet();
+        this.sessions = ConcurrentHashMap.newKeySet();
+        this.defaultSession = openSession();
         this.objectMapper = new ObjectMapper();
         objectMapper.enable(SerializationFeature.INDENT_OUTPUT); // 美化JSON输出
         objectMapper.registerModule(new JavaTimeModule()); // 支持 Java 8 Date/Time API (如果以后用到)
         // objectMapper.setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY); // 如果需要序列化私有字段
+        try {
+            this.pageStore = config.isPagedStorage()
+                ? new PageStore(dataDirectory.resolve(PAGES_DIR), config.getPageSizeBytes(), config.getBufferPoolBytes())
+                : null;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to initialize page directory: " + dataDirectory.resolve(PAGES_DIR), e);
+        }
+        this.snapshotCodecs = new EnumMap<>(StorageFormat.class);
+        snapshotCodecs.put(StorageFormat.JSON, new JsonSnapshotCodec(objectMapper, pageStore));
+        snapshotCodecs.put(StorageFormat.BINARY, new BinarySnapshotCodec(config.isStorageCompression(), pageStore));
+        this.parallelScan = new ParallelScan(config.getQueryParallelism(), config.getParallelScanMinRows());
+        this.checkpointExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "jsondb-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
 
         try {
             if (!Files.exists(dataDirectory)) {
                 Files.createDirectories(dataDirectory);
             }
-            loadDatabases();
+            discoverDatabases();
         } catch (IOException e) {
             // 通常在 CLI 中，我们会打印错误并可能退出
             // 此处暂时作为运行时异常抛出，以便早期发现问题
             throw new RuntimeException("Failed to initialize data directory or load databases: " + dataDirectory, e);
         }
+        preloadDatabases();
     }
 
-    private void loadDatabases() throws IOException {
-        File[] dbFiles = dataDirectory.toFile().listFiles((dir, name) -> name.endsWith(".json"));
-        if (dbFiles != null) {
+    // 启动时只扫描数据目录中的文件名，数据库在第一次访问时才加载
+    private void discoverDatabases() throws IOException {
+        for (StorageFormat format : StorageFormat.values()) {
+            // 清理上次崩溃时残留的未完成快照
+            File[] staleTempFiles = dataDirectory.toFile().listFiles((dir, name) -> name.endsWith(format.getFileExtension() + ".tmp"));
+            if (staleTempFiles != null) {
+                for (File staleTempFile : staleTempFiles) {
+                    Files.deleteIfExists(staleTempFile.toPath());
+                }
+            }
+        }
+        for (StorageFormat format : StorageFormat.values()) {
+            File[] dbFiles = dataDirectory.toFile().listFiles((dir, name) -> name.endsWith(format.getFileExtension()));
+            if (dbFiles == null) {
+                continue;
+            }
             for (File dbFile : dbFiles) {
+                String fileName = dbFile.getName();
+                String dbName = fileName.substring(0, fileName.length() - format.getFileExtension().length());
+                StorageFormat existing = storageFormats.get(dbName);
+                if (existing != null) {
+                    // 转换格式时在新文件写完、旧文件删除之前崩溃：保留较新的文件
+                    Path existingPath = getDatabasePath(dbName, existing);
+                    boolean keepExisting = Files.getLastModifiedTime(existingPath).compareTo(Files.getLastModifiedTime(dbFile.toPath())) >= 0;
+                    Path stale = keepExisting ? dbFile.toPath() : existingPath;
+                    System.err.println("Found both " + existingPath.getFileName() + " and " + fileName + ", removing the older " + stale.getFileName() + ".");
+                    Files.delete(stale);
+                    if (keepExisting) {
+                        continue;
+                    }
+                }
+                storageFormats.put(dbName, format);
+                knownDatabases.add(dbName);
+            }
+        }
+        if (!knownDatabases.isEmpty()) {
+            System.out.println("Found " + knownDatabases.size() + " database(s) in " + dataDirectory + ", loading on first use.");
+        }
+    }
+
+    /**
+     * 启动时在有界线程池上并发加载配置的数据库（{@link DBConfig#getPreloadDatabases()}）。
+     * 每个数据库独立加载，单个数据库失败只打印错误，不影响其他数据库和启动。
+     * 预加载不为腾出内存而卸载其他数据库：已加载的数据库达到内存预算后，其余的数据库不再预加载，留到第一次访问时加载。
+     * 并发加载的数据库使总量略超预算时，按配置的顺序保留排在前面的数据库。
+     */
+    private void preloadDatabases() {
+        List<String> requested = config.getPreloadDatabases();
+        if (requested.isEmpty()) {
+            return;
+        }
+        List<String> names = requested.contains(DBConfig.PRELOAD_ALL)
+            ? knownDatabases.stream().sorted().collect(Collectors.toList())
+            : requested;
+        int threads = Math.max(1, Math.min(config.getStartupLoadThreads(), names.size()));
+        ExecutorService loader = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "jsondb-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long startNanos = System.nanoTime();
+        AtomicLong loadedCount = new AtomicLong();
+        AtomicLong skippedCount = new AtomicLong();
+        List<Future<?>> loads = new ArrayList<>();
+        for (String name : names) {
+            loads.add(loader.submit(() -> {
                 try {
-                    Database db = objectMapper.readValue(dbFile, Database.class);
-                    databases.put(db.getName(), db);
-                    System.out.println("Loaded database: " + db.getName());
-                } catch (IOException e) {
-                    System.err.println("Failed to load database from file " + dbFile.getName() + ": " + e.getMessage());
-                    // 可以选择跳过损坏的文件，或者抛出异常停止服务
+                    if (!knownDatabases.contains(name)) {
+                        System.err.println("Cannot preload database " + name + ": not found.");
+                    } else if (isOverBudget()) {
+                        skippedCount.incrementAndGet();
+                    } else {
+                        loadDatabase(name, false);
+                        loadedCount.incrementAndGet();
+                    }
+                } catch (RuntimeException e) {
+                    System.err.println(e.getMessage());
+                }
+            }));
+        }
+        try {
+            for (Future<?> load : loads) {
+                load.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // 任务内部已经处理并打印了所有异常
+        } finally {
+            loader.shutdownNow();
+        }
+        if (isOverBudget()) {
+            String first = null; // 第一个预加载的数据库单独超出预算时也保留
+            for (int i = names.size() - 1; i >= 0; i--) {
+                if (databases.containsKey(names.get(i))) {
+                    touch(names.get(i)); // 排在前面的数据库最近访问，最后卸载
+                    first = names.get(i);
                 }
             }
+            evictColdDatabases(first);
+        }
+        System.out.println("Preloaded " + loadedCount.get() + " of " + names.size() + " database(s) in "
+            + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) + " ms using " + threads + " thread(s).");
+        if (skippedCount.get() > 0) {
+            System.out.println("Skipped preloading " + skippedCount.get() + " database(s): memory budget of "
+                + config.getMemoryBudgetBytes() + " bytes reached, they load on first use.");
         }
     }
 
+    // 已加载数据库的估算内存总量超过预算
+    private boolean isOverBudget() {
+        long budget = config.getMemoryBudgetBytes();
+        return budget > 0 && estimatedSizes.values().stream().mapToLong(Long::longValue).sum() >= budget;
+    }
+
+    // 从快照文件加载数据库并重放 WAL，evict 为 true 时在超出内存预算时卸载其他数据库。不同数据库可以在多个线程上并发加载
+    private Database loadDatabase(String dbName, boolean evict) {
+        Database db;
+        synchronized (loadMutexes.computeIfAbsent(dbName, key -> new Object())) {
+            db = databases.get(dbName);
+            if (db != null) {
+                return db;
+            }
+            if (!knownDatabases.contains(dbName)) {
+                throw new IllegalStateException("Database '" + dbName + "' not found.");
+            }
+            db = readDatabase(dbName);
+        }
+        if (evict) {
+            evictColdDatabases(dbName);
+        }
+        return db;
+    }
+
+    private Database readDatabase(String dbName) {
+        Path dbPath = getDatabasePath(dbName);
+        try {
+            long startNanos = System.nanoTime();
+            Database db = snapshotCodecs.get(getStorageFormat(dbName)).read(dbPath);
+            if (!db.getName().equals(dbName)) {
+                throw new IOException("file contains database '" + db.getName() + "'");
+            }
+            long snapshotLsn = db.getLastLsn();
+            long replayed = openWriteAheadLog(db);
+            databases.put(dbName, db);
+            checkpointedLsns.put(dbName, snapshotLsn);
+            estimatedSizes.put(dbName, db.getEstimatedSizeBytes());
+            touch(dbName);
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            if (replayed > 0) {
+                System.out.println("Loaded database: " + dbName + " in " + millis + " ms (replayed " + replayed + " WAL records)");
+            } else {
+                System.out.println("Loaded database: " + dbName + " in " + millis + " ms");
+            }
+            return db;
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to load database from file " + dbPath.getFileName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    private void touch(String dbName) {
+        lastAccess.put(dbName, accessCounter.incrementAndGet());
+    }
+
+    /**
+     * 当已加载数据库的估算内存总量超过预算时，按最近最少使用的顺序卸载数据库，直到回到预算以内。
+     * 在加载数据库、会话切换数据库和 checkpoint（更新估算大小）之后调用。
+     * 当前数据库和 keep（可以为 null）不会被卸载；有未写入快照的变更的数据库先同步 checkpoint，变干净后再卸载。
+     */
+    private void evictColdDatabases(String keep) {
+        long budget = config.getMemoryBudgetBytes();
+        if (budget <= 0 || shutDown.get()) {
+            return;
+        }
+        synchronized (evictionMutex) {
+            evictColdDatabasesLocked(keep, budget);
+        }
+    }
+
+    private void evictColdDatabasesLocked(String keep, long budget) {
+        long total = estimatedSizes.values().stream().mapToLong(Long::longValue).sum();
+        List<String> candidates = databases.keySet().stream()
+            .filter(name -> !name.equals(keep) && !isInUse(name))
+            .sorted(Comparator.comparingLong(name -> lastAccess.getOrDefault(name, 0L)))
+            .collect(Collectors.toList());
+        for (String candidate : candidates) {
+            if (total <= budget) {
+                break;
+            }
+            total -= evictDatabase(candidate);
+        }
+    }
+
+    // 卸载数据库并关闭其 WAL；返回释放的估算字节数，无法卸载时返回 0
+    private long evictDatabase(String dbName) {
+        Database db = databases.get(dbName);
+        if (db == null) {
+            return 0;
+        }
+        if (!isClean(db)) {
+            try {
+                checkpoint(db);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Cannot evict database " + dbName + ", checkpoint failed: " + e.getMessage());
+                return 0;
+            }
+        }
+        Object mutex = checkpointMutexes.computeIfAbsent(dbName, key -> new Object());
+        synchronized (mutex) {
+            db.getChangeLock().writeLock().lock();
+            try {
+                if (databases.get(dbName) != db || !isClean(db)) {
+                    return 0; // checkpoint 之后又有新的变更
+                }
+                if (db.hasOpenReadViews()) {
+                    return 0; // 挑选之后有查询或游标开始读取它
+                }
+                databases.remove(dbName);
+                WriteAheadLog wal = writeAheadLogs.remove(dbName);
+                if (wal != null) {
+                    wal.close();
+                }
+            } catch (IOException e) {
+                System.err.println("Failed to close WAL of evicted database " + dbName + ": " + e.getMessage());
+            } finally {
+                db.getChangeLock().writeLock().unlock();
+            }
+        }
+        db.releaseStorage();
+        checkpointedLsns.remove(dbName);
+        lastAccess.remove(dbName);
+        Long freed = estimatedSizes.remove(dbName);
+        System.out.println("Evicted database: " + dbName + " (~" + (freed == null ? 0 : freed / 1024) + " KiB)");
+        return freed == null ? 0 : freed;
+    }
+
+    // 数据库的所有变更都已写入快照
+    private boolean isClean(Database db) {
+        Long checkpointedLsn = checkpointedLsns.get(db.getName());
+        return checkpointedLsn != null && checkpointedLsn == db.getLastLsn();
+    }
+
+    // 打开数据库的 WAL，并把快照之后的记录重放到内存中；返回重放的记录数
+    private long openWriteAheadLog(Database db) throws IOException {
+        WriteAheadLog wal = new WriteAheadLog(getWalPath(db.getName()), objectMapper, config);
+        long snapshotLsn = db.getLastLsn();
+        long[] replayed = {0};
+        try {
+            wal.recover(snapshotLsn, record -> {
+                record.applyTo(db);
+                db.setLastLsn(record.getLsn());
+                replayed[0]++;
+            });
+        } catch (RuntimeException e) {
+            wal.close();
+            throw new IOException("Failed to replay WAL for database '" + db.getName() + "': " + e.getMessage(), e);
+        }
+        wal.advanceLsn(snapshotLsn);
+        WriteAheadLog previous = writeAheadLogs.put(db.getName(), wal);
+        if (previous != null) {
+            previous.close();
+        }
+        return replayed[0];
+    }
+
     private Path getDatabasePath(String dbName) {
-        return dataDirectory.resolve(dbName + ".json");
+        return getDatabasePath(dbName, getStorageFormat(dbName));
+    }
+
+    private Path getDatabasePath(String dbName, StorageFormat format) {
+        return dataDirectory.resolve(dbName + format.getFileExtension());
+    }
+
+    /**
+     * @return 数据库快照文件的存储格式；数据库不存在时返回配置的默认格式
+     */
+    public StorageFormat getStorageFormat(String dbName) {
+        return storageFormats.getOrDefault(dbName, config.getStorageFormat());
+    }
+
+    private Path getWalPath(String dbName) {
+        return dataDirectory.resolve(dbName + ".wal");
     }
 
-    public synchronized void createDatabase(String dbName) throws IOException {
+    public void createDatabase(String dbName) throws IOException {
+        createDatabase(dbName, config.getStorageFormat());
+    }
+
+    public void createDatabase(String dbName, StorageFormat format) throws IOException {
+        if (format == null) {
+            throw new IllegalArgumentException("Storage format cannot be null.");
+        }
         if (dbName == null || dbName.trim().isEmpty()) {
             throw new IllegalArgumentException("Database name cannot be null or empty.");
         }
         String trimmedDbName = dbName.trim();
-        if (databases.containsKey(trimmedDbName)) {
-            throw new IllegalStateException("Database '" + trimmedDbName + "' already exists.");
+        synchronized (loadMutexes.computeIfAbsent(trimmedDbName, key -> new Object())) {
+            if (knownDatabases.contains(trimmedDbName)) {
+                throw new IllegalStateException("Database '" + trimmedDbName + "' already exists.");
+            }
+            Database newDb = new Database(trimmedDbName, null, 0L, pageStore);
+            new WriteAheadLog(getWalPath(trimmedDbName), objectMapper, config).delete(); // 丢弃同名旧数据库遗留的日志
+            storageFormats.put(trimmedDbName, format);
+            databases.put(trimmedDbName, newDb);
+            knownDatabases.add(trimmedDbName);
+            touch(trimmedDbName);
+            saveDatabase(newDb); // 保存到文件
+            openWriteAheadLog(newDb);
         }
-        Database newDb = new Database(trimmedDbName);
-        databases.put(trimmedDbName, newDb);
-        saveDatabase(newDb); // 保存到文件
-        System.out.println("Database '" + trimmedDbName + "' created.");
     }
 
-    public synchronized void saveDatabase(Database db) throws IOException {
+    /**
+     * 在调用线程上同步执行一次 checkpoint。
+     */
+    public void saveDatabase(Database db) throws IOException {
         if (db == null) {
             throw new IllegalArgumentException("Cannot save a null database.");
         }
-        Path dbPath = getDatabasePath(db.getName());
-        objectMapper.writeValue(dbPath.toFile(), db);
+        checkpoint(db);
+        evictColdDatabases(db.getName());
+    }
+
+    /**
+     * 在内存中应用一条变更并追加到数据库的 WAL，按配置的同步策略落盘。
+     * 当日志量超过阈值时，在后台线程上安排一次 checkpoint。
+     */
+    public void applyChange(Database db, WalRecord record) throws IOException {
+        if (db == null || record == null) {
+            throw new IllegalArgumentException("Database and WAL record cannot be null.");
+        }
+        WalRecord.Type type = record.getType();
+        if (type == WalRecord.Type.TRANSACTION) {
+            throw new IllegalArgumentException("Transaction records are written by commit(Session), not applied directly.");
+        }
+        boolean schemaChange = type == WalRecord.Type.CREATE_TABLE || type == WalRecord.Type.CREATE_INDEX || type == WalRecord.Type.DROP_INDEX;
+        applyChange(db, type == WalRecord.Type.CREATE_TABLE ? null : record.getTable(), schemaChange, table -> record);
+    }
+
+    /**
+     * 在表的写锁内根据表的当前状态生成一条数据变更，应用到内存并追加到 WAL，查找受影响的行和应用修改之间不会插入其他写入。
+     * 同一表上的变更依次执行；不同表上的变更以及所有读取互不阻塞。
+     * @param change 根据表生成 INSERT / UPDATE / DELETE / COPY 记录，返回 null 表示没有需要应用的变更。
+     *               在写锁内调用，不能再读取或锁定同一个表
+     * @return 应用的记录，没有变更时返回 null
+     * @throws IllegalStateException 如果表不存在或数据库已被卸载
+     */
+    public WalRecord applyChange(Database db, String tableName, Function<Table, WalRecord> change) throws IOException {
+        if (db == null || tableName == null || change == null) {
+            throw new IllegalArgumentException("Database, table name and change cannot be null.");
+        }
+        return applyChange(db, tableName, false, table -> requireRowChange(table, change.apply(table)));
+    }
+
+    private static WalRecord requireRowChange(Table table, WalRecord record) {
+        if (record != null && (!table.getName().equals(record.getTable()) || (record.getType() != WalRecord.Type.INSERT
+                && record.getType() != WalRecord.Type.UPDATE && record.getType() != WalRecord.Type.DELETE
+                && record.getType() != WalRecord.Type.COPY))) {
+            throw new IllegalArgumentException("Only row changes of table '" + table.getName() + "' can be applied here, got " + record + ".");
+        }
+        return record;
+    }
+
+    /**
+     * 数据变更持有数据库变更锁的读锁和表的写锁；表结构变更独占整个数据库，保证 WAL 中表的创建先于对它的任何修改。
+     * checkpoint 在变更锁的写锁内捕获快照，此时没有进行中的变更，快照与 lastLsn 一致。
+     * @param tableName 要锁定的表；为 null 时不锁定任何表（创建表）
+     */
+    private WalRecord applyChange(Database db, String tableName, boolean schemaChange, Function<Table, WalRecord> change) throws IOException {
+        Table table = tableName == null ? null : db.getTable(tableName).orElseThrow(() ->
+            new IllegalStateException("Table '" + tableName + "' not found in database '" + db.getName() + "'."));
+        Lock databaseLock = schemaChange ? db.getChangeLock().writeLock() : db.getChangeLock().readLock();
+        WriteAheadLog wal;
+        WalRecord record;
+        long lsn;
+        databaseLock.lock();
+        try {
+            if (databases.get(db.getName()) != db) {
+                throw new IllegalStateException("Database '" + db.getName() + "' is no longer open.");
+            }
+            wal = writeAheadLogs.get(db.getName());
+            if (wal == null) {
+                throw new IllegalStateException("No write-ahead log is open for database '" + db.getName() + "'.");
+            }
+            long stamp = table == null ? 0 : table.lock().writeLock();
+            try {
+                record = change.apply(table);
+                if (record == null) {
+                    return null;
+                }
+                record.applyTo(db);
+                lsn = wal.append(record);
+                db.advanceLastLsn(lsn);
+            } finally {
+                if (table != null) {
+                    table.lock().unlockWrite(stamp);
+                }
+            }
+        } finally {
+            databaseLock.unlock();
+        }
+        wal.sync(lsn);
+        if (wal.getRecordCount() >= config.getCheckpointWalRecords() || wal.getSizeBytes() >= config.getCheckpointWalBytes()) {
+            requestCheckpoint(db);
+        }
+        return record;
+    }
+
+    /**
+     * 把 CSV / NDJSON 文件中的行批量追加到表中（COPY）。文件先在不持有任何锁的情况下解析（按配置使用多个线程），
+     * 转换后的值暂存在独立的列存储中；然后在表的写锁内一次性追加，约束在修改之前统一检查，索引在最后统一更新，
+     * 整个导入作为一条 WAL 记录写入并只同步一次。任何一行出错时表保持不变。
+     * @return 导入的行数
+     * @throws IllegalArgumentException 如果文件中某一行格式错误、值无效或违反约束
+     */
+    public long copyFrom(Database db, String tableName, Path file, CopyFormat format, boolean header) throws IOException {
+        if (db == null || tableName == null || file == null || format == null) {
+            throw new IllegalArgumentException("Database, table name, file and format cannot be null.");
+        }
+        Table table = db.getTable(tableName).orElseThrow(() ->
+            new IllegalStateException("Table '" + tableName + "' not found in database '" + db.getName() + "'."));
+        if (!Files.isRegularFile(file)) {
+            throw new IOException("File not found: " + file);
+        }
+        List<Column> columns = table.getColumnDefinitions();
+        ColumnStore staged = new ColumnStore(columns, null);
+        try {
+            new CopyReader(objectMapper, config.getCopyParseThreads())
+                .read(file, format, header, columns, values -> staged.append(staged.size(), values));
+            if (staged.size() == 0) {
+                return 0;
+            }
+            applyChange(db, table.getName(), false, locked -> WalRecord.copy(locked.getName(), staged.rowValues()));
+            return staged.size();
+        } finally {
+            staged.release();
+        }
+    }
+
+    /**
+     * 在会话中开始一个事务。之后通过 {@link #queueChange} 提交的数据变更在 {@link #commit} 时一起应用。
+     * 事务绑定到会话的当前数据库，结束之前不能切换数据库。
+     * @throws IllegalStateException 如果会话已经在事务中或没有选择数据库
+     */
+    public void beginTransaction(Session session) {
+        if (session.isInTransaction()) {
+            throw new IllegalStateException("A transaction is already in progress. COMMIT or ROLLBACK it first.");
+        }
+        Database db = ensureCurrentDatabaseSelected(session);
+        session.setTransaction(new Transaction(db.getName()));
+    }
+
+    /**
+     * 把一条数据变更加入会话的事务。change 要到提交时才在表的写锁内调用，约定与
+     * {@link #applyChange(Database, String, Function)} 相同。
+     * @return 事务中排队的语句数
+     * @throws IllegalStateException 如果会话不在事务中，或表不在事务的数据库中
+     */
+    public int queueChange(Session session, String tableName, Function<Table, WalRecord> change) {
+        if (tableName == null || change == null) {
+            throw new IllegalArgumentException("Table name and change cannot be null.");
+        }
+        Transaction transaction = requireTransaction(session);
+        Database db = getDatabase(transaction.getDatabaseName()).orElseThrow(() ->
+            new IllegalStateException("Database '" + transaction.getDatabaseName() + "' no longer exists."));
+        if (!db.getTable(tableName).isPresent()) {
+            throw new IllegalStateException("Table '" + tableName + "' not found in database '" + db.getName() + "'.");
+        }
+        transaction.add(tableName, change);
+        return transaction.size();
+    }
+
+    /**
+     * 提交会话的事务：按表名顺序获取所有相关表的写锁，依次生成并应用排队的变更，整体作为一条 WAL 记录追加并同步一次。
+     * 任何一条变更失败时撤销已应用的部分，表恢复到提交之前的内容。无论成功与否，事务都会结束。
+     * 其他会话的读视图要么看到事务之前的状态，要么看到全部变更。
+     * @return 实际应用的记录，按执行顺序（没有匹配行的 UPDATE / DELETE 不产生记录）
+     * @throws IllegalStateException 如果会话不在事务中，或某条变更失败（此时事务已回滚）
+     */
+    public List<WalRecord> commit(Session session) throws IOException {
+        Transaction transaction = requireTransaction(session);
+        session.setTransaction(null);
+        List<WalRecord> applied = new ArrayList<>();
+        if (transaction.size() == 0) {
+            return applied;
+        }
+        Database db = getDatabase(transaction.getDatabaseName()).orElseThrow(() ->
+            new IllegalStateException("Database '" + transaction.getDatabaseName() + "' no longer exists."));
+        Map<String, Table> tables = new TreeMap<>(); // 固定的加锁顺序，避免两个事务互相等待
+        for (Transaction.PendingChange pending : transaction.getChanges()) {
+            tables.put(pending.tableName, db.getTable(pending.tableName).orElseThrow(() ->
+                new IllegalStateException("Table '" + pending.tableName + "' not found in database '" + db.getName() + "'.")));
+        }
+        WriteAheadLog wal;
+        long lsn = 0;
+        db.getChangeLock().readLock().lock();
+        try {
+            if (databases.get(db.getName()) != db) {
+                throw new IllegalStateException("Database '" + db.getName() + "' is no longer open.");
+            }
+            wal = writeAheadLogs.get(db.getName());
+            if (wal == null) {
+                throw new IllegalStateException("No write-ahead log is open for database '" + db.getName() + "'.");
+            }
+            List<Table> locked = new ArrayList<>();
+            List<Long> stamps = new ArrayList<>();
+            try {
+                for (Table table : tables.values()) {
+                    stamps.add(table.lock().writeLock());
+                    locked.add(table);
+                    table.beginUndoLog();
+                }
+                boolean committed = false;
+                try {
+                    for (Transaction.PendingChange pending : transaction.getChanges()) {
+                        Table table = tables.get(pending.tableName);
+                        WalRecord record = requireRowChange(table, pending.change.apply(table));
+                        if (record != null) {
+                            record.applyTo(db);
+                            applied.add(record);
+                        }
+                    }
+                    if (!applied.isEmpty()) {
+                        lsn = wal.append(WalRecord.transaction(applied));
+                        db.advanceLastLsn(lsn);
+                    }
+                    committed = true;
+                } catch (IllegalArgumentException | IllegalStateException e) {
+                    throw new IllegalStateException("Transaction rolled back: " + e.getMessage(), e);
+                } finally {
+                    for (Table table : locked) {
+                        table.endUndoLog(!committed);
+                    }
+                }
+            } finally {
+                for (int i = locked.size() - 1; i >= 0; i--) {
+                    locked.get(i).lock().unlockWrite(stamps.get(i));
+                }
+            }
+        } finally {
+            db.getChangeLock().readLock().unlock();
+        }
+        if (lsn > 0) {
+            wal.sync(lsn);
+            if (wal.getRecordCount() >= config.getCheckpointWalRecords() || wal.getSizeBytes() >= config.getCheckpointWalBytes()) {
+                requestCheckpoint(db);
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * 丢弃会话事务中排队的所有变更。表没有被修改过，不需要撤销。
+     * @return 丢弃的语句数
+     * @throws IllegalStateException 如果会话不在事务中
+     */
+    public int rollback(Session session) {
+        Transaction transaction = requireTransaction(session);
+        session.setTransaction(null);
+        return transaction.size();
+    }
+
+    private static Transaction requireTransaction(Session session) {
+        Transaction transaction = session.getTransaction();
+        if (transaction == null) {
+            throw new IllegalStateException("No transaction in progress. Use 'BEGIN;' first.");
+        }
+        return transaction;
+    }
+
+    // 在后台线程上安排 checkpoint；同一数据库同时最多排队一次
+    private void requestCheckpoint(Database db) {
+        if (!pendingCheckpoints.add(db.getName())) {
+            return;
+        }
+        try {
+            checkpointExecutor.execute(() -> {
+                pendingCheckpoints.remove(db.getName());
+                try {
+                    checkpoint(db);
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("Background checkpoint of database " + db.getName() + " failed: " + e.getMessage());
+                }
+                evictColdDatabases(null); // checkpoint 更新了估算大小
+            });
+        } catch (java.util.concurrent.RejectedExecutionException e) {
+            pendingCheckpoints.remove(db.getName()); // 正在关闭，由 shutdown 同步保存
+        }
+    }
+
+    /**
+     * 将数据库的一致性快照写入临时文件、fsync 后原子替换 {@code <db>.json}，然后删除已被快照覆盖的日志段。
+     * 只有捕获快照和封存日志段时才持有数据库变更锁的写锁，序列化和磁盘写入不阻塞变更。
+     */
+    private void checkpoint(Database db) throws IOException {
+        String dbName = db.getName();
+        Object mutex = checkpointMutexes.computeIfAbsent(dbName, key -> new Object());
+        CheckpointStats stats = checkpointStats.computeIfAbsent(dbName, key -> new CheckpointStats());
+        synchronized (mutex) {
+            if (databases.get(dbName) != db) {
+                return; // 数据库已被删除或替换
+            }
+            long startNanos = System.nanoTime();
+            Database image;
+            db.getChangeLock().writeLock().lock(); // 只等待进行中的变更完成，不阻塞读取
+            try {
+                image = db.snapshot();
+                WriteAheadLog wal = writeAheadLogs.get(dbName);
+                if (wal != null) {
+                    wal.rotate();
+                }
+            } finally {
+                db.getChangeLock().writeLock().unlock();
+            }
+            try {
+                StorageFormat format = getStorageFormat(dbName);
+                long bytesWritten = writeSnapshotAtomically(image, getDatabasePath(dbName, format), snapshotCodecs.get(format));
+                WriteAheadLog wal = writeAheadLogs.get(dbName);
+                if (wal != null) {
+                    wal.deleteSealedSegmentsUpTo(image.getLastLsn());
+                }
+                checkpointedLsns.put(dbName, image.getLastLsn());
+                estimatedSizes.put(dbName, image.getEstimatedSizeBytes());
+                stats.recordSuccess(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), bytesWritten, image.getLastLsn());
+            } catch (IOException | RuntimeException e) {
+                stats.recordFailure();
+                throw e;
+            } finally {
+                image.releaseStorage();
+            }
+        }
+    }
+
+    // 写入临时文件并 fsync，然后原子重命名覆盖目标文件；返回写入的字节数
+    private long writeSnapshotAtomically(Database image, Path target, SnapshotCodec codec) throws IOException {
+        Path tempPath = target.resolveSibling(target.getFileName() + ".tmp");
+        long bytesWritten;
+        try (FileOutputStream fileOut = new FileOutputStream(tempPath.toFile())) {
+            BufferedOutputStream out = new BufferedOutputStream(fileOut, 1 << 16);
+            codec.write(image, out);
+            out.flush();
+            fileOut.getFD().sync();
+            bytesWritten = fileOut.getChannel().size();
+        }
+        Files.move(tempPath, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        syncDataDirectory();
+        return bytesWritten;
+    }
+
+    // fsync 目录以持久化重命名；部分平台（如 Windows）不支持打开目录，忽略即可
+    private void syncDataDirectory() {
+        try (FileChannel directory = FileChannel.open(dataDirectory, StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException e) {
+            // 不支持目录 fsync 的平台上依赖文件系统自身的重命名语义
+        }
+    }
+
+    /**
+     * 修改数据库的存储格式：立即以新格式写出快照，然后删除旧格式的文件。
+     * @throws IllegalStateException 如果数据库不存在
+     */
+    public void setStorageFormat(String dbName, StorageFormat format) throws IOException {
+        if (format == null) {
+            throw new IllegalArgumentException("Storage format cannot be null.");
+        }
+        Database db = getDatabase(dbName).orElseThrow(() ->
+            new IllegalStateException("Database '" + dbName + "' not found."));
+        String name = db.getName();
+        Object mutex = checkpointMutexes.computeIfAbsent(name, key -> new Object());
+        StorageFormat previous;
+        synchronized (mutex) {
+            previous = storageFormats.put(name, format);
+        }
+        if (previous == format) {
+            return;
+        }
+        checkpoint(db);
+        synchronized (mutex) {
+            if (storageFormats.get(name) == format) {
+                Files.deleteIfExists(getDatabasePath(name, previous));
+                syncDataDirectory();
+            }
+        }
+    }
+
+    /**
+     * 把数据库的一致性快照以缩进 JSON 写到给定文件，不影响数据库本身的存储格式。
+     * @return 写入的字节数
+     */
+    public long exportDatabase(String dbName, Path target) throws IOException {
+        Database db = getDatabase(dbName).orElseThrow(() ->
+            new IllegalStateException("Database '" + dbName + "' not found."));
+        Database image;
+        db.getChangeLock().writeLock().lock();
+        try {
+            image = db.snapshot();
+        } finally {
+            db.getChangeLock().writeLock().unlock();
+        }
+        try (FileOutputStream fileOut = new FileOutputStream(target.toFile())) {
+            BufferedOutputStream out = new BufferedOutputStream(fileOut, 1 << 16);
+            snapshotCodecs.get(StorageFormat.JSON).write(image, out);
+            out.flush();
+            return fileOut.getChannel().size();
+        } finally {
+            image.releaseStorage();
+        }
+    }
+
+    public Optional<CheckpointStats> getCheckpointStats(String dbName) {
+        if (dbName == null) return Optional.empty();
+        return Optional.ofNullable(checkpointStats.get(dbName.trim()));
     }
     
     // 保存当前数据库 (如果已选择)
-    public synchronized void saveCurrentDatabase() throws IOException {
+    public void saveCurrentDatabase() throws IOException {
         Database currentDb = getCurrentDatabase().orElse(null);
         if (currentDb != null) {
             saveDatabase(currentDb);
         }
     }
 
+    /**
+     * 返回数据库，如果尚未加载则先从磁盘加载。
+     * @throws IllegalStateException 如果数据库文件无法加载
+     */
     public Optional<Database> getDatabase(String dbName) {
         if (dbName == null) return Optional.empty();
-        return Optional.ofNullable(databases.get(dbName.trim()));
+        String trimmedDbName = dbName.trim();
+        Database db = databases.get(trimmedDbName);
+        if (db == null) {
+            if (!knownDatabases.contains(trimmedDbName)) {
+                return Optional.empty();
+            }
+            db = loadDatabase(trimmedDbName, true);
+        }
+        touch(trimmedDbName);
+        return Optional.of(db);
     }
 
-    public synchronized void dropDatabase(String dbName) throws IOException {
+    public void dropDatabase(String dbName) throws IOException {
         if (dbName == null || dbName.trim().isEmpty()) {
             throw new IllegalArgumentException("Database name cannot be null or empty for drop operation.");
         }
         String trimmedDbName = dbName.trim();
-        Database removedDb = databases.remove(trimmedDbName);
-        if (removedDb == null) {
-            throw new IllegalStateException("Database '" + trimmedDbName + "' not found.");
+        Database dropped;
+        synchronized (loadMutexes.computeIfAbsent(trimmedDbName, key -> new Object())) { // 等待进行中的加载完成
+            if (!knownDatabases.remove(trimmedDbName)) {
+                throw new IllegalStateException("Database '" + trimmedDbName + "' not found.");
+            }
+            dropped = databases.remove(trimmedDbName);
         }
-        Path dbPath = getDatabasePath(trimmedDbName);
-        Files.deleteIfExists(dbPath);
-        if (currentDatabaseName != null && currentDatabaseName.equals(trimmedDbName)) {
-            currentDatabaseName = null; // 如果删除的是当前数据库，则取消选择
+        checkpointedLsns.remove(trimmedDbName);
+        estimatedSizes.remove(trimmedDbName);
+        lastAccess.remove(trimmedDbName);
+        Object mutex = checkpointMutexes.computeIfAbsent(trimmedDbName, key -> new Object());
+        synchronized (mutex) { // 等待进行中的 checkpoint 完成，避免其在删除后重新写出快照
+            for (StorageFormat format : StorageFormat.values()) {
+                Files.deleteIfExists(getDatabasePath(trimmedDbName, format));
+            }
+            storageFormats.remove(trimmedDbName);
+            WriteAheadLog wal = writeAheadLogs.remove(trimmedDbName);
+            if (wal != null) {
+                wal.delete();
+            } else {
+                new WriteAheadLog(getWalPath(trimmedDbName), objectMapper, config).delete();
+            }
+            checkpointStats.remove(trimmedDbName);
+        }
+        if (dropped != null) {
+            dropped.releaseStorage(); // 其他会话正在读取的表在最后一个读视图关闭时才释放
+        }
+        for (Session session : sessions) {
+            if (trimmedDbName.equals(session.getCurrentDatabaseName())) {
+                session.setCurrentDatabaseName(null); // 如果删除的是当前数据库，则取消选择
+            }
         }
-        System.out.println("Database '" + trimmedDbName + "' dropped.");
     }
 
     public List<String> listDatabaseNames() {
-        return databases.keySet().stream().sorted().collect(Collectors.toList());
+        return knownDatabases.stream().sorted().collect(Collectors.toList());
+    }
+
+    /**
+     * 打开一个新的会话，每个会话有独立的当前数据库。用完后调用 {@link #closeSession(Session)}。
+     */
+    public Session openSession() {
+        Session session = new Session(sessionCounter.incrementAndGet());
+        sessions.add(session);
+        return session;
+    }
+
+    public void closeSession(Session session) {
+        session.setTransaction(null); // 未提交的事务随会话丢弃
+        sessions.remove(session);
+    }
+
+    ParallelScan getParallelScan() {
+        return parallelScan;
+    }
+
+    public DBConfig getConfig() {
+        return config;
+    }
+
+    public Session getDefaultSession() {
+        return defaultSession;
+    }
+
+    // 数据库是某个会话的当前数据库，或者有查询和游标正在读取它（表上有打开的读视图）
+    private boolean isInUse(String dbName) {
+        if (sessions.stream().anyMatch(session -> dbName.equals(session.getCurrentDatabaseName()))) {
+            return true;
+        }
+        Database db = databases.get(dbName);
+        return db != null && db.hasOpenReadViews();
     }
 
     public void useDatabase(String dbName) {
-        if (dbName == null || !databases.containsKey(dbName.trim())) {
+        useDatabase(defaultSession, dbName);
+    }
+
+    public void useDatabase(Session session, String dbName) {
+        if (dbName == null || !knownDatabases.contains(dbName.trim())) {
             throw new IllegalArgumentException("Database '" + dbName + "' not found. Cannot use.");
         }
-        this.currentDatabaseName = dbName.trim();
-        System.out.println("Now using database '" + this.currentDatabaseName + "'.");
+        if (session.isInTransaction()) {
+            throw new IllegalStateException("Cannot switch databases inside a transaction. COMMIT or ROLLBACK it first.");
+        }
+        String previous = session.getCurrentDatabaseName();
+        String trimmedDbName = dbName.trim();
+        getDatabase(trimmedDbName); // 在切换之前加载，加载失败时保持原来的当前数据库
+        session.setCurrentDatabaseName(trimmedDbName);
+        if (previous != null && !previous.equals(trimmedDbName)) {
+            evictColdDatabases(trimmedDbName); // 切换走的数据库不再被这个会话使用，可能需要卸载
+        }
     }
 
     public Optional<Database> getCurrentDatabase() {
+        return getCurrentDatabase(defaultSession);
+    }
+
+    public Optional<Database> getCurrentDatabase(Session session) {
+        String currentDatabaseName = session.getCurrentDatabaseName();
         if (currentDatabaseName == null) {
             return Optional.empty();
         }
-        return Optional.ofNullable(databases.get(currentDatabaseName));
+        return getDatabase(currentDatabaseName);
     }
 
     public Optional<String> getCurrentDatabaseName() {
-        return Optional.ofNullable(currentDatabaseName);
+        return getCurrentDatabaseName(defaultSession);
+    }
+
+    public Optional<String> getCurrentDatabaseName(Session session) {
+        return Optional.ofNullable(session.getCurrentDatabaseName());
     }
     
     // Helper method for CLI/Engine to get the current DB or throw
     public Database ensureCurrentDatabaseSelected() {
-        return getCurrentDatabase().orElseThrow(() -> 
+        return ensureCurrentDatabaseSelected(defaultSession);
+    }
+
+    public Database ensureCurrentDatabaseSelected(Session session) {
+        return getCurrentDatabase(session).orElseThrow(() ->
             new IllegalStateException("No database selected. Use 'USE <database_name>;' first.")
         ); // 辅助方法，供CLI/引擎获取当前数据库，如果不存在则抛出异常
     }
 
-    // 可以在应用关闭时调用，确保所有更改都已保存
-    public synchronized void shutdown() {
+    // 可以在应用关闭时调用，确保所有更改都已保存：只对有未写入快照的变更的数据库执行 checkpoint
+    public void shutdown() {
+        if (!shutDown.compareAndSet(false, true)) {
+            return; // 命令行退出和关闭钩子可能先后调用
+        }
         System.out.println("Shutting down database manager...");
+        parallelScan.close();
+        checkpointExecutor.shutdown();
+        try {
+            checkpointExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
         databases.values().forEach(db -> {
+            if (isClean(db)) {
+                return; // 快照已包含所有变更，不需要重写
+            }
             try {
                 saveDatabase(db);
                 System.out.println("Saved database: " + db.getName());
@@ -160,6 +1014,15 @@ public class DBManager {
                 System.err.println("Failed to save database " + db.getName() + " on shutdown: " + e.getMessage());
             }
         });
+        writeAheadLogs.values().forEach(wal -> {
+            try {
+                wal.close();
+            } catch (IOException e) {
+                System.err.println("Failed to close WAL " + wal.getPath().getFileName() + ": " + e.getMessage());
+            }
+        });
+        writeAheadLogs.clear();
+        databases.values().forEach(Database::releaseStorage);
         System.out.println("Database manager shutdown complete.");
     }
 } 
\ No newline at end of file
@@ -1,26 +1,45 @@
 package com.prelinamontelli.jsondb;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.stream.Collectors;
 
 public class Database {
     private final String name;
     private final Map<String, Table> tables; // 使用 ConcurrentHashMap 保证线程安全
+    private volatile long lastLsn; // 已应用到内存状态的最后一条 WAL 记录，随快照一起保存
+    // 数据变更持有读锁（共享，同一表上的变更由表锁串行化），表结构变更和 checkpoint 的快照捕获持有写锁
+    private final ReentrantReadWriteLock changeLock = new ReentrantReadWriteLock();
+    private final PageStore pageStore; // 非 null 时新建的表使用分页存储模式
 
     @JsonCreator
-    public Database(@JsonProperty("name") String name, @JsonProperty("tables") Map<String, Table> tables) {
+    public Database(@JsonProperty("name") String name,
+                    @JsonProperty("tables") Map<String, Table> tables,
+                    @JsonProperty("lastLsn") Long lastLsn) {
+        this(name, tables, lastLsn, null);
+    }
+
+    Database(String name, Map<String, Table> tables, Long lastLsn, PageStore pageStore) {
         if (name == null || name.trim().isEmpty()) {
             throw new IllegalArgumentException("Database name cannot be null or empty.");
         }
         this.name = name.trim();
         this.tables = tables == null ? new ConcurrentHashMap<>() : new ConcurrentHashMap<>(tables);
+        this.lastLsn = lastLsn == null ? 0 : lastLsn;
+        this.pageStore = pageStore;
+    }
+
+    public Database(String name, Map<String, Table> tables) {
+        this(name, tables, 0L);
     }
 
     public Database(String name) {
@@ -31,6 +50,62 @@ public class Database {
         return name;
     }
 
+    public long getLastLsn() {
+        return lastLsn;
+    }
+
+    public void setLastLsn(long lastLsn) {
+        this.lastLsn = lastLsn;
+    }
+
+    // 不同表上的变更并发追加 WAL，完成的顺序不一定是 LSN 的顺序，lastLsn 只前进不后退
+    synchronized void advanceLastLsn(long lsn) {
+        if (lsn > lastLsn) {
+            lastLsn = lsn;
+        }
+    }
+
+    @JsonIgnore
+    public ReentrantReadWriteLock getChangeLock() {
+        return changeLock;
+    }
+
+    /**
+     * 创建当前状态的只读副本，供后台 checkpoint 序列化。
+     * 行数据按列保存在基本类型数组中，复制只是数组级的内存拷贝，不需要逐行复制对象。
+     * 调用者必须持有 {@link #getChangeLock()} 的写锁。
+     */
+    public Database snapshot() {
+        Map<String, Table> tableCopies = new HashMap<>();
+        for (Map.Entry<String, Table> entry : tables.entrySet()) {
+            tableCopies.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return new Database(name, tableCopies, lastLsn, pageStore);
+    }
+
+    /**
+     * @return 数据库占用堆内存的粗略估算（字节），用于内存预算
+     */
+    @JsonIgnore
+    public long getEstimatedSizeBytes() {
+        return tables.values().stream().mapToLong(Table::getEstimatedSizeBytes).sum();
+    }
+
+    /**
+     * 释放所有表的堆外资源，用于快照副本写出之后以及数据库被卸载或删除时。之后不能再访问此数据库；
+     * 已经打开的读视图仍然可以读取，表的存储在它的最后一个视图关闭时才释放。
+     */
+    void releaseStorage() {
+        tables.values().forEach(Table::releaseStorage);
+    }
+
+    /**
+     * @return 是否有表上打开着读视图，例如正在执行的查询或会话中 DECLARE 的游标
+     */
+    boolean hasOpenReadViews() {
+        return tables.values().stream().anyMatch(Table::hasOpenReadViews);
+    }
+
     public Map<String, Table> getTables() {
         return tables; // 返回的是 ConcurrentHashMap，直接操作是线程安全的
     }
@@ -43,8 +118,10 @@ public class Database {
         if (tables.containsKey(trimmedTableName)) {
             throw new IllegalStateException("Table '" + trimmedTableName + "' already exists in database '" + this.name + "'.");
         }
-        Table newTable = new Table(trimmedTableName, columns);
-        tables.put(trimmedTableName, newTable);
+        Table newTable = new Table(trimmedTableName, columns, pageStore);
+        if (tables.putIfAbsent(trimmedTableName, newTable) != null) {
+            throw new IllegalStateException("Table '" + trimmedTableName + "' already exists in database '" + this.name + "'.");
+        }
     }
 
     public Optional<Table> getTable(String tableName) {
@@ -57,6 +134,14 @@ public class Database {
         return tables.remove(tableName.trim()) != null;
     }
 
+    /**
+     * @return 拥有给定名称索引的表。索引名称在数据库内唯一
+     */
+    public Optional<Table> findIndexOwner(String indexName) {
+        if (indexName == null) return Optional.empty();
+        return tables.values().stream().filter(table -> table.read(() -> table.hasIndex(indexName))).findFirst();
+    }
+
     public List<String> listTableNames() {
         return tables.keySet().stream().collect(Collectors.toList());
     }
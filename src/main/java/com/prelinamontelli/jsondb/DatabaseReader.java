@@ -0,0 +1,221 @@
+package com.prelinamontelli.jsondb;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 基于 {@link JsonParser} 的快照文件流式加载器。
+ * 行数据逐个 token 读取，按列类型转换后直接追加到表的列式存储中，不会为每行构建 Map，
+ * 也不会先把整个文件绑定成对象树，因此加载时的峰值内存接近最终的数据大小。
+ * 格式与 Jackson 序列化 {@link Database} 得到的 JSON 相同；字段顺序不限，
+ * 但 "columns" 在 "rows" 之前时（当前版本写出的文件）才能完全流式处理。
+ */
+final class DatabaseReader {
+    private static final TypeReference<List<Column>> COLUMN_LIST = new TypeReference<List<Column>>() {};
+    private static final TypeReference<List<IndexDefinition>> INDEX_LIST = new TypeReference<List<IndexDefinition>>() {};
+
+    private final ObjectMapper objectMapper;
+    private final PageStore pageStore;
+
+    /**
+     * @param pageStore 非 null 时加载的表使用分页存储模式
+     */
+    DatabaseReader(ObjectMapper objectMapper, PageStore pageStore) {
+        this.objectMapper = objectMapper;
+        this.pageStore = pageStore;
+    }
+
+    /**
+     * @throws IOException 如果文件无法读取、不是合法的 JSON 或内容与表定义不符
+     */
+    Database read(Path file) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(file.toFile())) {
+            expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+            String name = null;
+            Map<String, Table> tables = new HashMap<>();
+            long lastLsn = 0;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "name":
+                        name = parser.getValueAsString();
+                        break;
+                    case "lastLsn":
+                        lastLsn = parser.getLongValue();
+                        break;
+                    case "tables":
+                        expect(parser, value, JsonToken.START_OBJECT);
+                        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                            String tableKey = parser.getCurrentName();
+                            expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+                            tables.put(tableKey, readTable(parser, tableKey));
+                        }
+                        break;
+                    default:
+                        parser.skipChildren(); // 忽略未知字段
+                }
+            }
+            return new Database(name, tables, lastLsn, pageStore);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    // 读取一个表对象，parser 位于表的 START_OBJECT 上
+    private Table readTable(JsonParser parser, String tableKey) throws IOException {
+        String name = tableKey;
+        Table table = null;
+        List<Column> columns = null;
+        long[] rowIds = null;
+        Long nextRowId = null;
+        List<IndexDefinition> indexDefinitions = null;
+        TableStatistics statistics = null;
+        JsonNode bufferedRows = null; // 手工编辑的文件中 "rows" 出现在 "columns" 之前时才会暂存
+        boolean rowsLoaded = false;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "name":
+                    name = parser.getValueAsString();
+                    break;
+                case "columns":
+                    columns = parser.readValueAs(COLUMN_LIST);
+                    break;
+                case "nextRowId":
+                    nextRowId = value == JsonToken.VALUE_NULL ? null : parser.getLongValue();
+                    break;
+                case "rowIds":
+                    rowIds = value == JsonToken.VALUE_NULL ? null : readLongs(parser);
+                    if (rowsLoaded && rowIds != null) {
+                        // 旧版本写出的文件中行 ID 在行之后：行已按顺序临时编号，这里换成保存的行 ID
+                        table.reassignRowIds(rowIds);
+                    }
+                    break;
+                case "rows":
+                    if (value == JsonToken.VALUE_NULL) {
+                        break;
+                    }
+                    if (columns == null) {
+                        bufferedRows = parser.readValueAsTree();
+                        break;
+                    }
+                    table = new Table(name, columns, pageStore);
+                    readRows(parser, table, rowIds);
+                    rowsLoaded = true;
+                    break;
+                case "indexes":
+                    indexDefinitions = value == JsonToken.VALUE_NULL ? null : parser.readValueAs(INDEX_LIST);
+                    break;
+                case "statistics":
+                    statistics = value == JsonToken.VALUE_NULL ? null : parser.readValueAs(TableStatistics.class);
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        if (table == null) {
+            table = new Table(name, columns, pageStore);
+            if (bufferedRows != null) {
+                try (JsonParser rowParser = bufferedRows.traverse(objectMapper)) {
+                    readRows(rowParser, table, rowIds);
+                }
+            }
+        }
+        if (nextRowId != null) {
+            table.advanceNextRowId(nextRowId);
+        }
+        if (indexDefinitions != null) {
+            for (IndexDefinition definition : indexDefinitions) {
+                table.createIndex(definition); // 在所有行加载之后一次性构建索引
+            }
+        }
+        table.restoreStatistics(statistics);
+        return table;
+    }
+
+    /**
+     * 读取行数组并逐行插入表中。parser 位于 START_ARRAY 上，或者（暂存的行）位于其之前。
+     * @param rowIds 已读到的行 ID；为 null 时按顺序从 0 分配
+     */
+    private void readRows(JsonParser parser, Table table, long[] rowIds) throws IOException {
+        JsonToken token = parser.currentToken() == null ? parser.nextToken() : parser.currentToken();
+        expect(parser, token, JsonToken.START_ARRAY);
+        List<Column> columns = table.getColumnDefinitions();
+        Map<String, Integer> positions = new HashMap<>();
+        for (int i = 0; i < columns.size(); i++) {
+            positions.put(columns.get(i).getName(), i);
+        }
+        int rowCount = 0;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            expect(parser, parser.currentToken(), JsonToken.START_OBJECT);
+            Object[] values = new Object[columns.size()];
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                Integer position = positions.get(parser.getCurrentName());
+                JsonToken value = parser.nextToken();
+                if (position == null) {
+                    parser.skipChildren(); // 与 Map 插入一致，忽略表中不存在的列
+                    continue;
+                }
+                values[position] = scalarValue(parser, value);
+            }
+            if (rowIds != null && rowCount >= rowIds.length) {
+                throw new IOException("Table " + table.getName() + " has more rows than row ids.");
+            }
+            table.insertValues(rowIds == null ? null : rowIds[rowCount], values);
+            rowCount++;
+        }
+        if (rowIds != null && rowCount != rowIds.length) {
+            throw new IOException("Table " + table.getName() + " has " + rowCount + " rows but " + rowIds.length + " row ids.");
+        }
+    }
+
+    // 返回标量 token 的原始值，类型转换和验证交给 Column.convertValue
+    private static Object scalarValue(JsonParser parser, JsonToken token) throws IOException {
+        switch (token) {
+            case VALUE_NULL:
+                return null;
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                return parser.getNumberValue();
+            case VALUE_STRING:
+                return parser.getText();
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            default:
+                throw new IOException("Unexpected " + token + " for a column value at " + parser.getCurrentLocation());
+        }
+    }
+
+    private static long[] readLongs(JsonParser parser) throws IOException {
+        expect(parser, parser.currentToken(), JsonToken.START_ARRAY);
+        long[] values = new long[16];
+        int count = 0;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (count == values.length) {
+                values = Arrays.copyOf(values, ColumnVector.grow(values.length, count + 1));
+            }
+            values[count++] = parser.getLongValue();
+        }
+        return Arrays.copyOf(values, count);
+    }
+
+    private static void expect(JsonParser parser, JsonToken actual, JsonToken expected) throws IOException {
+        if (actual != expected) {
+            throw new IOException("Expected " + expected + " but found " + actual + " at " + parser.getCurrentLocation());
+        }
+    }
+}
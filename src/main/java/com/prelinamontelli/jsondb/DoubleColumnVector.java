@@ -0,0 +1,83 @@
+package com.prelinamontelli.jsondb;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * DOUBLE 列的值向量，值保存在 double[] 中。比较规则与 {@link Column#compareValues(Object, Object)} 一致（Double.compare）。
+ */
+final class DoubleColumnVector extends ColumnVector {
+    private double[] values = new double[0];
+
+    @Override
+    double getDouble(int slot) {
+        return values[slot];
+    }
+
+    @Override
+    protected long estimateValueBytes() {
+        return 16 + 8L * values.length;
+    }
+
+    @Override
+    protected Object getNonNull(int slot) {
+        return values[slot];
+    }
+
+    @Override
+    protected void setNonNull(int slot, Object value) {
+        values[slot] = ((Number) value).doubleValue();
+    }
+
+    @Override
+    protected void clearValue(int slot) {
+        values[slot] = 0;
+    }
+
+    @Override
+    protected void ensureCapacity(int capacity) {
+        if (capacity > values.length) {
+            values = Arrays.copyOf(values, grow(values.length, capacity));
+        }
+    }
+
+    @Override
+    protected void retainValues(int[] keptSlots) {
+        double[] retained = new double[Math.max(keptSlots.length, INITIAL_CAPACITY)];
+        for (int i = 0; i < keptSlots.length; i++) {
+            retained[i] = values[keptSlots[i]];
+        }
+        values = retained;
+    }
+
+    @Override
+    ColumnVector copy(int size) {
+        DoubleColumnVector copy = new DoubleColumnVector();
+        copy.values = Arrays.copyOf(values, size);
+        copy.nulls = nulls.get(0, size);
+        return copy;
+    }
+
+    @Override
+    void scan(WhereCondition condition, int from, int to, BitSet matches) {
+        if (scanNullEquality(condition, from, to, matches)) {
+            return;
+        }
+        Object lowerBound = condition.isRange() ? condition.getLowerBound() : condition.getValue();
+        Object upperBound = condition.isRange() ? condition.getUpperBound() : condition.getValue();
+        boolean hasLow = lowerBound != null;
+        boolean hasHigh = upperBound != null;
+        double low = hasLow ? ((Number) lowerBound).doubleValue() : 0;
+        double high = hasHigh ? ((Number) upperBound).doubleValue() : 0;
+        int lowLimit = condition.isLowerInclusive() ? 0 : 1;   // Double.compare(value, low) 必须 >= lowLimit
+        int highLimit = condition.isUpperInclusive() ? 0 : -1; // Double.compare(value, high) 必须 <= highLimit
+        for (int slot = from; slot < to; slot++) {
+            double value = values[slot];
+            if ((!hasLow || Double.compare(value, low) >= lowLimit)
+                    && (!hasHigh || Double.compare(value, high) <= highLimit)
+                    && !nulls.get(slot)) {
+                matches.set(slot);
+            }
+        }
+    }
+}
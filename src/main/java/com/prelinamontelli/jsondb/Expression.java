@@ -0,0 +1,741 @@
+package com.prelinamontelli.jsondb;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link SqlParser} 产生的表达式语法树。解析得到的表达式只包含名称和原始字面量，
+ * {@link #bind} 把列名解析为列在行值数组中的下标，并把字面量转换为比较对象列的类型，之后才能求值。
+ * 绑定到 {@link ColumnScope} 时行值数组可以是连接的多张表的行拼接而成。
+ * <p>
+ * 谓词按 SQL 的三值逻辑求值：任何一边为 NULL 的比较结果未知（null），NOT 未知仍是未知，只有结果为 TRUE 的行匹配。
+ * 与旧的单条件语法保持一致，字面量写成的 {@code = NULL} 和 {@code != NULL} 在绑定时改写为 IS NULL 和 IS NOT NULL。
+ */
+abstract class Expression {
+
+    /**
+     * 在一行上求值。
+     * @param values 行的所有列的值，按列定义顺序
+     * @return 操作数返回值；谓词返回 TRUE、FALSE，或 null 表示未知
+     */
+    abstract Object evaluate(Object[] values);
+
+    /**
+     * 把表达式绑定到范围中的列上。
+     * @throws IllegalArgumentException 如果列不存在或有歧义、字面量无法转换为列类型或比较的两边类型不一致
+     */
+    abstract Expression bind(ColumnScope scope);
+
+    /**
+     * 把表达式绑定到表的列上。
+     * @throws IllegalArgumentException 如果列不存在、字面量无法转换为列类型或比较的两边类型不一致
+     */
+    final Expression bind(Table table) {
+        return bind(ColumnScope.of(table));
+    }
+
+    /**
+     * @return 谓词在这一行上是否为 TRUE
+     */
+    final boolean test(Object[] values) {
+        return Boolean.TRUE.equals(evaluate(values));
+    }
+
+    /**
+     * @return 顶层 AND 连接的各个子条件；不是 AND 时只有自身
+     */
+    List<Expression> conjuncts() {
+        return Collections.singletonList(this);
+    }
+
+    /**
+     * @return 等价的单列条件（可以使用唯一键、索引或列向量扫描），不能表示为单列条件时返回 null。只对绑定后的表达式有效
+     */
+    WhereCondition toWhereCondition() {
+        return null;
+    }
+
+    /**
+     * 把表达式引用的列依次加入 columns。只对绑定后的表达式有效
+     */
+    void collectColumns(List<ColumnRef> columns) {
+    }
+
+    // ---------------------------------------------------------------- 操作数
+
+    /**
+     * 列引用，名称可以带表的限定名。绑定后 index 为列在行值数组中的下标。
+     */
+    static final class ColumnRef extends Expression {
+        private final String name;
+        private final Column column;
+        private final int index;
+
+        ColumnRef(String name) {
+            this(name, null, -1);
+        }
+
+        private ColumnRef(String name, Column column, int index) {
+            this.name = name;
+            this.column = column;
+            this.index = index;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        Column getColumn() {
+            return column;
+        }
+
+        /**
+         * @return 列在行值数组中的下标，未绑定时为 -1
+         */
+        int getIndex() {
+            return index;
+        }
+
+        @Override
+        Object evaluate(Object[] values) {
+            if (index < 0) {
+                throw new IllegalStateException("Column '" + name + "' is not bound to a table.");
+            }
+            return values[index];
+        }
+
+        @Override
+        Expression bind(ColumnScope scope) {
+            int i = scope.indexOf(name);
+            if (i < 0) {
+                throw new IllegalArgumentException("Column '" + name + "' not found in " + scope.describe() + ".");
+            }
+            // 保留限定名，使 EXPLAIN 中的条件与语句中的写法一致
+            Column found = scope.column(i);
+            int dot = name.indexOf('.');
+            return new ColumnRef(dot < 0 ? found.getName() : name.substring(0, dot + 1) + found.getName(), found, i);
+        }
+
+        @Override
+        void collectColumns(List<ColumnRef> columns) {
+            columns.add(this);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * 字面量。解析时数字和字符串都保存为文本，TRUE / FALSE 为 Boolean，NULL 为 null；绑定时按比较对象的列类型转换。
+     */
+    static final class Literal extends Expression {
+        private final Object value;
+        private final boolean quoted; // 源文本中带引号，只影响 toString
+
+        Literal(Object value, boolean quoted) {
+            this.value = value;
+            this.quoted = quoted;
+        }
+
+        Object getValue() {
+            return value;
+        }
+
+        Literal convertTo(Column column) {
+            return new Literal(column.convertValue(value), column.getType() == DataType.STRING);
+        }
+
+        /**
+         * @return 与 INTEGER 列比较的小数或超出 INTEGER 范围的数的精确值；列不是 INTEGER、值是 NULL 或可以直接转换为 INTEGER 时返回 null
+         * @throws IllegalArgumentException 如果值不是数
+         */
+        BigDecimal nonIntegerValue(Column column) {
+            if (column.getType() != DataType.INTEGER || value == null) {
+                return null;
+            }
+            try {
+                column.convertValue(value);
+                return null;
+            } catch (IllegalArgumentException e) {
+                try {
+                    return new BigDecimal(String.valueOf(value).trim());
+                } catch (NumberFormatException notNumber) {
+                    throw e;
+                }
+            }
+        }
+
+        @Override
+        Object evaluate(Object[] values) {
+            return value;
+        }
+
+        @Override
+        Expression bind(ColumnScope scope) {
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            if (value == null) {
+                return "NULL";
+            }
+            return quoted ? "\"" + value.toString().replace("\"", "\"\"") + "\"" : value.toString();
+        }
+    }
+
+    /**
+     * 预备语句的参数 $n，执行时由实参替换。
+     */
+    static final class Parameter extends Expression {
+        private final int index;
+
+        Parameter(int index) {
+            this.index = index;
+        }
+
+        /**
+         * @return 参数编号，从 1 开始
+         */
+        int getIndex() {
+            return index;
+        }
+
+        @Override
+        Object evaluate(Object[] values) {
+            throw new IllegalStateException("Parameter $" + index + " has no value.");
+        }
+
+        @Override
+        Expression bind(ColumnScope scope) {
+            throw new IllegalArgumentException("Parameter $" + index + " can only be used in the VALUES of a prepared INSERT.");
+        }
+
+        @Override
+        public String toString() {
+            return "$" + index;
+        }
+    }
+
+    // ---------------------------------------------------------------- 谓词
+
+    /**
+     * 比较 {@code <left> <op> <right>}。至少一边是列；另一边是字面量时按该列的类型转换，是列时两列的类型必须相同。
+     */
+    static final class Comparison extends Expression {
+        enum Operator {
+            EQ("="),
+            NE("!="),
+            LT("<"),
+            LE("<="),
+            GT(">"),
+            GE(">=");
+
+            private final String symbol;
+
+            Operator(String symbol) {
+                this.symbol = symbol;
+            }
+
+            String getSymbol() {
+                return symbol;
+            }
+
+            // 交换两边之后的运算符：a < b 等价于 b > a
+            Operator flip() {
+                switch (this) {
+                    case LT:
+                        return GT;
+                    case LE:
+                        return GE;
+                    case GT:
+                        return LT;
+                    case GE:
+                        return LE;
+                    default:
+                        return this;
+                }
+            }
+        }
+
+        private final Operator operator;
+        private final Expression left;
+        private final Expression right;
+
+        Comparison(Operator operator, Expression left, Expression right) {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        Operator getOperator() {
+            return operator;
+        }
+
+        Expression getLeft() {
+            return left;
+        }
+
+        Expression getRight() {
+            return right;
+        }
+
+        @Override
+        Object evaluate(Object[] values) {
+            Object leftValue = left.evaluate(values);
+            Object rightValue = right.evaluate(values);
+            if (leftValue == null || rightValue == null) {
+                return null;
+            }
+            int comparison = comparisonColumn().compareValues(leftValue, rightValue);
+            switch (operator) {
+                case EQ:
+                    return comparison == 0;
+                case NE:
+                    return comparison != 0;
+                case LT:
+                    return comparison < 0;
+                case LE:
+                    return comparison <= 0;
+                case GT:
+                    return comparison > 0;
+                case GE:
+                    return comparison >= 0;
+                default:
+                    throw new IllegalStateException("Unsupported operator: " + operator);
+            }
+        }
+
+        // 决定比较规则的列
+        private Column comparisonColumn() {
+            return left instanceof ColumnRef ? ((ColumnRef) left).getColumn() : ((ColumnRef) right).getColumn();
+        }
+
+        @Override
+        Expression bind(ColumnScope scope) {
+            Expression boundLeft = left.bind(scope);
+            Expression boundRight = right.bind(scope);
+            if (boundLeft instanceof ColumnRef && boundRight instanceof ColumnRef) {
+                Column leftColumn = ((ColumnRef) boundLeft).getColumn();
+                Column rightColumn = ((ColumnRef) boundRight).getColumn();
+                if (leftColumn.getType() != rightColumn.getType()) {
+                    throw new IllegalArgumentException("Cannot compare " + leftColumn.getType() + " column '" + leftColumn.getName()
+                        + "' with " + rightColumn.getType() + " column '" + rightColumn.getName() + "'.");
+                }
+            } else if (boundLeft instanceof ColumnRef) {
+                if (isNullEquality(boundRight)) {
+                    return new IsNull(boundLeft, operator == Operator.NE);
+                }
+                BigDecimal number = ((Literal) boundRight).nonIntegerValue(((ColumnRef) boundLeft).getColumn());
+                if (number != null) {
+                    return integerComparison(operator, (ColumnRef) boundLeft, number);
+                }
+                boundRight = ((Literal) boundRight).convertTo(((ColumnRef) boundLeft).getColumn());
+            } else if (boundRight instanceof ColumnRef) {
+                if (isNullEquality(boundLeft)) {
+                    return new IsNull(boundRight, operator == Operator.NE);
+                }
+                BigDecimal number = ((Literal) boundLeft).nonIntegerValue(((ColumnRef) boundRight).getColumn());
+                if (number != null) {
+                    return integerComparison(operator.flip(), (ColumnRef) boundRight, number);
+                }
+                boundLeft = ((Literal) boundLeft).convertTo(((ColumnRef) boundRight).getColumn());
+            } else {
+                throw new IllegalArgumentException("Comparison " + this + " must reference a column.");
+            }
+            return new Comparison(operator, boundLeft, boundRight);
+        }
+
+        // 字面量写成的 = NULL 或 != NULL；列中的 NULL 值与任何值比较都是未知
+        private boolean isNullEquality(Expression literal) {
+            return (operator == Operator.EQ || operator == Operator.NE) && ((Literal) literal).getValue() == null;
+        }
+
+        /**
+         * INTEGER 列与小数或超出 INTEGER 范围的数比较时按数值比较，改写为等价的整数比较，使条件仍可以使用索引和范围扫描：
+         * {@code > 5.5} 改为 {@code >= 6}，{@code <= 5.5} 改为 {@code <= 5}，{@code = 5.5} 对非 NULL 值永远不成立，{@code != 5.5} 对非 NULL 值永远成立，
+         * 对 NULL 都是未知（与 {@link #evaluate} 的规则一致）。
+         */
+        private static Expression integerComparison(Operator operator, ColumnRef column, BigDecimal value) {
+            switch (operator) {
+                case EQ:
+                case NE:
+                    BigDecimal integral = value.setScale(0, RoundingMode.FLOOR);
+                    if (integral.compareTo(value) == 0 && isInteger(integral)) {
+                        return new Comparison(operator, column, integerLiteral(integral));
+                    }
+                    return operator == Operator.NE ? anyInteger(column) : noInteger(column);
+                case GT:
+                    return atLeast(column, value.setScale(0, RoundingMode.FLOOR).add(BigDecimal.ONE));
+                case GE:
+                    return atLeast(column, value.setScale(0, RoundingMode.CEILING));
+                case LT:
+                    return atMost(column, value.setScale(0, RoundingMode.CEILING).subtract(BigDecimal.ONE));
+                case LE:
+                    return atMost(column, value.setScale(0, RoundingMode.FLOOR));
+                default:
+                    throw new IllegalStateException("Unsupported operator: " + operator);
+            }
+        }
+
+        private static final BigDecimal MIN_INTEGER = BigDecimal.valueOf(Integer.MIN_VALUE);
+        private static final BigDecimal MAX_INTEGER = BigDecimal.valueOf(Integer.MAX_VALUE);
+
+        // column >= lower；lower 超出 INTEGER 范围时改为对所有非 NULL 值都成立或都不成立的比较
+        private static Expression atLeast(ColumnRef column, BigDecimal lower) {
+            if (lower.compareTo(MAX_INTEGER) > 0) {
+                return noInteger(column);
+            }
+            return new Comparison(Operator.GE, column, integerLiteral(lower.max(MIN_INTEGER)));
+        }
+
+        // column <= upper；upper 超出 INTEGER 范围时同上
+        private static Expression atMost(ColumnRef column, BigDecimal upper) {
+            if (upper.compareTo(MIN_INTEGER) < 0) {
+                return new Comparison(Operator.LT, column, integerLiteral(MIN_INTEGER));
+            }
+            return new Comparison(Operator.LE, column, integerLiteral(upper.min(MAX_INTEGER)));
+        }
+
+        // 对所有非 NULL 值都不成立、对 NULL 未知的比较
+        static Expression noInteger(ColumnRef column) {
+            return new Comparison(Operator.GT, column, integerLiteral(MAX_INTEGER));
+        }
+
+        // 对所有非 NULL 值都成立、对 NULL 未知的比较
+        private static Expression anyInteger(ColumnRef column) {
+            return new Comparison(Operator.LE, column, integerLiteral(MAX_INTEGER));
+        }
+
+        private static boolean isInteger(BigDecimal value) {
+            return value.compareTo(MIN_INTEGER) >= 0 && value.compareTo(MAX_INTEGER) <= 0;
+        }
+
+        static Literal integerLiteral(BigDecimal value) {
+            return new Literal(value.intValueExact(), false);
+        }
+
+        @Override
+        void collectColumns(List<ColumnRef> columns) {
+            left.collectColumns(columns);
+            right.collectColumns(columns);
+        }
+
+        @Override
+        WhereCondition toWhereCondition() {
+            if (operator == Operator.NE) {
+                return null;
+            }
+            ColumnRef column;
+            Literal literal;
+            Operator op = operator;
+            if (left instanceof ColumnRef && right instanceof Literal) {
+                column = (ColumnRef) left;
+                literal = (Literal) right;
+            } else if (right instanceof ColumnRef && left instanceof Literal) {
+                column = (ColumnRef) right;
+                literal = (Literal) left;
+                op = operator.flip();
+            } else {
+                return null;
+            }
+            if (column.getColumn() == null || literal.getValue() == null) {
+                return null; // 未绑定，或与 NULL 的范围比较（永远不成立，留给逐行求值）
+            }
+            return new WhereCondition(column.getColumn(), WhereCondition.Operator.valueOf(op.name()), literal.getValue(), null);
+        }
+
+        @Override
+        public String toString() {
+            return left + " " + operator.getSymbol() + " " + right;
+        }
+    }
+
+    /**
+     * {@code <operand> BETWEEN <low> AND <high>}，operand 必须是列，两个边界是字面量。
+     */
+    static final class Between extends Expression {
+        private final Expression operand;
+        private final Expression low;
+        private final Expression high;
+
+        Between(Expression operand, Expression low, Expression high) {
+            this.operand = operand;
+            this.low = low;
+            this.high = high;
+        }
+
+        @Override
+        Object evaluate(Object[] values) {
+            Object value = operand.evaluate(values);
+            Object lowValue = low.evaluate(values);
+            Object highValue = high.evaluate(values);
+            if (value == null || lowValue == null || highValue == null) {
+                return null;
+            }
+            Column column = ((ColumnRef) operand).getColumn();
+            return column.compareValues(value, lowValue) >= 0 && column.compareValues(value, highValue) <= 0;
+        }
+
+        @Override
+        Expression bind(ColumnScope scope) {
+            Expression boundOperand = operand.bind(scope);
+            if (!(boundOperand instanceof ColumnRef) || !(low instanceof Literal) || !(high instanceof Literal)) {
+                throw new IllegalArgumentException("BETWEEN must be written <column> BETWEEN <value> AND <value>.");
+            }
+            Column column = ((ColumnRef) boundOperand).getColumn();
+            BigDecimal lowNumber = ((Literal) low).nonIntegerValue(column);
+            BigDecimal highNumber = ((Literal) high).nonIntegerValue(column);
+            Object lowValue = ((Literal) low).getValue();
+            Object highValue = ((Literal) high).getValue();
+            if ((lowNumber != null || highNumber != null) && lowValue != null && highValue != null) {
+                // INTEGER 列的小数边界向内取整，与 Comparison 的 >= 和 <= 一致
+                BigDecimal lower = (lowNumber != null ? lowNumber : BigDecimal.valueOf((Integer) column.convertValue(lowValue)))
+                    .setScale(0, RoundingMode.CEILING);
+                BigDecimal upper = (highNumber != null ? highNumber : BigDecimal.valueOf((Integer) column.convertValue(highValue)))
+                    .setScale(0, RoundingMode.FLOOR);
+                if (lower.compareTo(upper) > 0 || lower.compareTo(Comparison.MAX_INTEGER) > 0 || upper.compareTo(Comparison.MIN_INTEGER) < 0) {
+                    return Comparison.noInteger((ColumnRef) boundOperand); // 范围内没有 INTEGER 值
+                }
+                lower = lower.max(Comparison.MIN_INTEGER);
+                upper = upper.min(Comparison.MAX_INTEGER);
+                return new Between(boundOperand, Comparison.integerLiteral(lower), Comparison.integerLiteral(upper));
+            }
+            return new Between(boundOperand, ((Literal) low).convertTo(column), ((Literal) high).convertTo(column));
+        }
+
+        @Override
+        void collectColumns(List<ColumnRef> columns) {
+            operand.collectColumns(columns);
+        }
+
+        @Override
+        WhereCondition toWhereCondition() {
+            if (!(operand instanceof ColumnRef) || !(low instanceof Literal) || !(high instanceof Literal)) {
+                return null;
+            }
+            Object lowValue = ((Literal) low).getValue();
+            Object highValue = ((Literal) high).getValue();
+            Column column = ((ColumnRef) operand).getColumn();
+            if (column == null || lowValue == null || highValue == null) {
+                return null;
+            }
+            return new WhereCondition(column, WhereCondition.Operator.BETWEEN, lowValue, highValue);
+        }
+
+        @Override
+        public String toString() {
+            return operand + " BETWEEN " + low + " AND " + high;
+        }
+    }
+
+    /**
+     * {@code <operand> IS [NOT] NULL}。
+     */
+    static final class IsNull extends Expression {
+        private final Expression operand;
+        private final boolean negated;
+
+        IsNull(Expression operand, boolean negated) {
+            this.operand = operand;
+            this.negated = negated;
+        }
+
+        Expression getOperand() {
+            return operand;
+        }
+
+        boolean isNegated() {
+            return negated;
+        }
+
+        @Override
+        Object evaluate(Object[] values) {
+            return (operand.evaluate(values) == null) != negated;
+        }
+
+        @Override
+        Expression bind(ColumnScope scope) {
+            return new IsNull(operand.bind(scope), negated);
+        }
+
+        @Override
+        void collectColumns(List<ColumnRef> columns) {
+            operand.collectColumns(columns);
+        }
+
+        @Override
+        WhereCondition toWhereCondition() {
+            if (negated || !(operand instanceof ColumnRef) || ((ColumnRef) operand).getColumn() == null) {
+                return null;
+            }
+            return WhereCondition.equalTo(((ColumnRef) operand).getColumn(), null);
+        }
+
+        @Override
+        public String toString() {
+            return operand + (negated ? " IS NOT NULL" : " IS NULL");
+        }
+    }
+
+    /**
+     * 多个条件的 AND。任何一个为 FALSE 时为 FALSE，否则有未知时为未知。
+     */
+    static final class And extends Expression {
+        private final List<Expression> operands;
+
+        And(List<Expression> operands) {
+            this.operands = operands;
+        }
+
+        List<Expression> getOperands() {
+            return operands;
+        }
+
+        @Override
+        Object evaluate(Object[] values) {
+            boolean unknown = false;
+            for (Expression operand : operands) {
+                Object result = operand.evaluate(values);
+                if (Boolean.FALSE.equals(result)) {
+                    return false;
+                }
+                unknown |= result == null;
+            }
+            return unknown ? null : Boolean.TRUE;
+        }
+
+        @Override
+        Expression bind(ColumnScope scope) {
+            List<Expression> bound = new ArrayList<>(operands.size());
+            for (Expression operand : operands) {
+                bound.add(operand.bind(scope));
+            }
+            return new And(bound);
+        }
+
+        @Override
+        void collectColumns(List<ColumnRef> columns) {
+            for (Expression operand : operands) {
+                operand.collectColumns(columns);
+            }
+        }
+
+        @Override
+        List<Expression> conjuncts() {
+            List<Expression> conjuncts = new ArrayList<>();
+            for (Expression operand : operands) {
+                conjuncts.addAll(operand.conjuncts());
+            }
+            return conjuncts;
+        }
+
+        @Override
+        public String toString() {
+            return join(operands, " AND ");
+        }
+    }
+
+    /**
+     * 多个条件的 OR。任何一个为 TRUE 时为 TRUE，否则有未知时为未知。
+     */
+    static final class Or extends Expression {
+        private final List<Expression> operands;
+
+        Or(List<Expression> operands) {
+            this.operands = operands;
+        }
+
+        List<Expression> getOperands() {
+            return operands;
+        }
+
+        @Override
+        Object evaluate(Object[] values) {
+            boolean unknown = false;
+            for (Expression operand : operands) {
+                Object result = operand.evaluate(values);
+                if (Boolean.TRUE.equals(result)) {
+                    return true;
+                }
+                unknown |= result == null;
+            }
+            return unknown ? null : Boolean.FALSE;
+        }
+
+        @Override
+        Expression bind(ColumnScope scope) {
+            List<Expression> bound = new ArrayList<>(operands.size());
+            for (Expression operand : operands) {
+                bound.add(operand.bind(scope));
+            }
+            return new Or(bound);
+        }
+
+        @Override
+        void collectColumns(List<ColumnRef> columns) {
+            for (Expression operand : operands) {
+                operand.collectColumns(columns);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return join(operands, " OR ");
+        }
+    }
+
+    static final class Not extends Expression {
+        private final Expression operand;
+
+        Not(Expression operand) {
+            this.operand = operand;
+        }
+
+        Expression getOperand() {
+            return operand;
+        }
+
+        @Override
+        Object evaluate(Object[] values) {
+            Object result = operand.evaluate(values);
+            return result == null ? null : !((Boolean) result);
+        }
+
+        @Override
+        Expression bind(ColumnScope scope) {
+            return new Not(operand.bind(scope));
+        }
+
+        @Override
+        void collectColumns(List<ColumnRef> columns) {
+            operand.collectColumns(columns);
+        }
+
+        @Override
+        public String toString() {
+            return "NOT " + wrap(operand);
+        }
+    }
+
+    private static String join(List<Expression> operands, String separator) {
+        StringBuilder text = new StringBuilder();
+        for (Expression operand : operands) {
+            if (text.length() > 0) {
+                text.append(separator);
+            }
+            text.append(wrap(operand));
+        }
+        return text.toString();
+    }
+
+    // AND / OR 作为子表达式时加括号
+    private static String wrap(Expression expression) {
+        return expression instanceof And || expression instanceof Or ? "(" + expression + ")" : expression.toString();
+    }
+}
@@ -0,0 +1,580 @@
+package com.prelinamontelli.jsondb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 哈希聚合：按 GROUP BY 列把行分组，为每组计算 {@link AggregateFunction}。
+ * 单个 INTEGER 或 DOUBLE 分组列的值直接编码为 long 键，放在无装箱的 {@link LongIntHashMap} 中（键 -> 组号）；
+ * 其他分组列用一个复用的探测键查找 HashMap，只在出现新组时分配。累加器按组号保存在基本类型数组中
+ * （INTEGER 的和用 long[]，DOUBLE 用 double[]），列向量扫描时按槽位直接读取基本类型值，
+ * 因此按单个数值列分组（或不分组）时每行不分配内存。没有 GROUP BY 时所有行属于同一组，没有行时也输出这一组。
+ * 此类不是线程安全的：并行扫描时每个分区使用 {@link #newPartial()} 创建的部分聚合器，再用 {@link #merge} 合并。
+ */
+final class HashAggregator {
+    private static final int INITIAL_GROUPS = 16;
+
+    private final List<Column> columns;
+    private final AggregateFunction[] functions;
+    private final int[] argumentPositions;
+    private final Column[] groupColumns;
+    private final int[] groupPositions;    // 分组列在行中的位置（按列定义顺序）
+    private final Accumulator[] accumulators;
+    private final boolean primitiveKey;    // 单个 INTEGER / DOUBLE 分组列，键编码为 long
+    private final LongIntHashMap primitiveGroups = new LongIntHashMap();
+    private int nullGroup = -1;            // primitiveKey 时分组列为 NULL 的组
+    private final Map<GroupKey, Integer> groups = new HashMap<>();
+    private final GroupKey probe;
+    private final List<Object[]> groupKeys = new ArrayList<>(); // 组号 -> 分组列的值
+    private int capacity = INITIAL_GROUPS;
+
+    /**
+     * @param columns 表的列定义
+     * @param groupPositions GROUP BY 列的位置，没有 GROUP BY 时为空
+     * @param functions 要计算的聚合函数
+     * @param argumentPositions 与 functions 对应的参数列位置，COUNT(*) 时为 -1
+     * @throws IllegalArgumentException 如果 SUM / AVG 的参数不是数值列
+     */
+    HashAggregator(List<Column> columns, int[] groupPositions, AggregateFunction[] functions, int[] argumentPositions) {
+        this.columns = columns;
+        this.functions = functions.clone();
+        this.argumentPositions = argumentPositions.clone();
+        this.groupPositions = groupPositions.clone();
+        this.groupColumns = new Column[groupPositions.length];
+        for (int i = 0; i < groupPositions.length; i++) {
+            groupColumns[i] = columns.get(groupPositions[i]);
+        }
+        this.primitiveKey = groupPositions.length == 1
+            && (groupColumns[0].getType() == DataType.INTEGER || groupColumns[0].getType() == DataType.DOUBLE);
+        this.probe = new GroupKey(new Object[groupPositions.length]);
+        this.accumulators = new Accumulator[functions.length];
+        for (int i = 0; i < functions.length; i++) {
+            int position = argumentPositions[i];
+            accumulators[i] = accumulator(functions[i], position < 0 ? null : columns.get(position), position);
+        }
+    }
+
+    private static Accumulator accumulator(AggregateFunction function, Column column, int position) {
+        switch (function) {
+            case COUNT:
+                return new Count(position);
+            case SUM:
+            case AVG:
+                if (column.getType() == DataType.INTEGER) {
+                    return new IntSum(position, function == AggregateFunction.AVG);
+                }
+                if (column.getType() == DataType.DOUBLE) {
+                    return new DoubleSum(position, function == AggregateFunction.AVG);
+                }
+                throw new IllegalArgumentException(function + " requires an INTEGER or DOUBLE column, but column '"
+                    + column.getName() + "' is " + column.getType() + ".");
+            case MIN:
+            case MAX:
+                boolean max = function == AggregateFunction.MAX;
+                if (column.getType() == DataType.INTEGER) {
+                    return new IntExtreme(position, max);
+                }
+                if (column.getType() == DataType.DOUBLE) {
+                    return new DoubleExtreme(position, max);
+                }
+                return new ObjectExtreme(position, max, column);
+            default:
+                throw new IllegalStateException("Unsupported aggregate function: " + function);
+        }
+    }
+
+    /**
+     * 把列存储中槽位上的行加入聚合，值从列向量中直接读取。调用者持有表锁。
+     */
+    void add(ColumnStore store, int slot) {
+        int group = groupOf(store, slot);
+        for (Accumulator accumulator : accumulators) {
+            ColumnVector vector = accumulator.position < 0 ? null : store.vector(accumulator.position);
+            if (vector == null || !vector.isNull(slot)) {
+                accumulator.add(group, vector, slot);
+            }
+        }
+    }
+
+    /**
+     * 把一行（按列定义顺序的值）加入聚合。
+     */
+    void add(Object[] values) {
+        int group = groupOf(values);
+        for (Accumulator accumulator : accumulators) {
+            Object value = accumulator.position < 0 ? null : values[accumulator.position];
+            if (accumulator.position < 0 || value != null) {
+                accumulator.add(group, value);
+            }
+        }
+    }
+
+    /**
+     * @return 分组和聚合函数相同、还没有任何行的聚合器
+     */
+    HashAggregator newPartial() {
+        return new HashAggregator(columns, groupPositions, functions, argumentPositions);
+    }
+
+    /**
+     * 把另一个聚合器（由 {@link #newPartial()} 创建）的各组合并进来，other 中新出现的组按它们在 other 中的顺序排在后面。
+     * @return 此聚合器
+     */
+    HashAggregator merge(HashAggregator other) {
+        for (int otherGroup = 0; otherGroup < other.groupKeys.size(); otherGroup++) {
+            int group = groupOfKey(other.groupKeys.get(otherGroup));
+            for (int i = 0; i < accumulators.length; i++) {
+                accumulators[i].merge(group, other.accumulators[i], otherGroup);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * @return 组数
+     */
+    int size() {
+        return groupKeys.size();
+    }
+
+    /**
+     * 每组一行：先是分组列的值，然后是各个聚合的结果（按构造时的顺序）。
+     * @param orderPosition 排序依据在结果行中的位置（NULL 视为最大值），-1 表示按组第一次出现的顺序
+     * @param limit 最多返回的组数，-1 表示不限
+     */
+    List<Object[]> results(int orderPosition, boolean descending, int limit) {
+        if (groupPositions.length == 0 && groupKeys.isEmpty()) {
+            newGroup(new Object[0]);
+        }
+        List<Object[]> rows = new ArrayList<>(groupKeys.size());
+        for (int group = 0; group < groupKeys.size(); group++) {
+            Object[] row = Arrays.copyOf(groupKeys.get(group), groupPositions.length + accumulators.length);
+            for (int i = 0; i < accumulators.length; i++) {
+                row[groupPositions.length + i] = accumulators[i].result(group);
+            }
+            rows.add(row);
+        }
+        if (orderPosition >= 0) {
+            Comparator<Object[]> order = Comparator.comparing(row -> row[orderPosition], valueOrder(orderPosition));
+            rows.sort(descending ? order.reversed() : order); // 稳定排序，相同的值保持组出现的顺序
+        }
+        return limit >= 0 && limit < rows.size() ? new ArrayList<>(rows.subList(0, limit)) : rows;
+    }
+
+    // 分组列按列类型比较；聚合结果同一位置的类型相同（整数、小数或参数列的类型）
+    @SuppressWarnings("unchecked")
+    private Comparator<Object> valueOrder(int position) {
+        Comparator<Object> values = position < groupColumns.length
+            ? groupColumns[position]::compareValues
+            : (left, right) -> ((Comparable<Object>) left).compareTo(right);
+        return Comparator.nullsLast(values);
+    }
+
+    private int groupOf(ColumnStore store, int slot) {
+        if (groupPositions.length == 0) {
+            return groupKeys.isEmpty() ? newGroup(new Object[0]) : 0;
+        }
+        if (primitiveKey) {
+            ColumnVector vector = store.vector(groupPositions[0]);
+            if (vector.isNull(slot)) {
+                return nullGroup();
+            }
+            return groupColumns[0].getType() == DataType.INTEGER
+                ? primitiveGroup(vector.getInt(slot))
+                : primitiveGroup(Double.doubleToLongBits(vector.getDouble(slot)));
+        }
+        for (int i = 0; i < groupPositions.length; i++) {
+            probe.values[i] = store.vector(groupPositions[i]).get(slot);
+        }
+        return objectGroup();
+    }
+
+    private int groupOf(Object[] values) {
+        if (groupPositions.length == 0) {
+            return groupKeys.isEmpty() ? newGroup(new Object[0]) : 0;
+        }
+        if (primitiveKey) {
+            Object value = values[groupPositions[0]];
+            if (value == null) {
+                return nullGroup();
+            }
+            return groupColumns[0].getType() == DataType.INTEGER
+                ? primitiveGroup(((Number) value).intValue())
+                : primitiveGroup(Double.doubleToLongBits(((Number) value).doubleValue()));
+        }
+        for (int i = 0; i < groupPositions.length; i++) {
+            probe.values[i] = values[groupPositions[i]];
+        }
+        return objectGroup();
+    }
+
+    // 分组列的值（而不是整行）对应的组
+    private int groupOfKey(Object[] key) {
+        if (groupPositions.length == 0) {
+            return groupKeys.isEmpty() ? newGroup(new Object[0]) : 0;
+        }
+        if (primitiveKey) {
+            if (key[0] == null) {
+                return nullGroup();
+            }
+            return groupColumns[0].getType() == DataType.INTEGER
+                ? primitiveGroup(((Number) key[0]).intValue())
+                : primitiveGroup(Double.doubleToLongBits(((Number) key[0]).doubleValue()));
+        }
+        System.arraycopy(key, 0, probe.values, 0, key.length);
+        return objectGroup();
+    }
+
+    private int nullGroup() {
+        if (nullGroup < 0) {
+            nullGroup = newGroup(new Object[1]);
+        }
+        return nullGroup;
+    }
+
+    private int primitiveGroup(long key) {
+        int group = primitiveGroups.get(key);
+        if (group < 0) {
+            Object value = groupColumns[0].getType() == DataType.INTEGER ? (Object) (int) key : (Object) Double.longBitsToDouble(key);
+            group = newGroup(new Object[] {value});
+            primitiveGroups.put(key, group);
+        }
+        return group;
+    }
+
+    private int objectGroup() {
+        probe.rehash();
+        Integer group = groups.get(probe);
+        if (group != null) {
+            return group;
+        }
+        Object[] key = probe.values.clone();
+        int created = newGroup(key);
+        groups.put(new GroupKey(key), created);
+        return created;
+    }
+
+    private int newGroup(Object[] key) {
+        int group = groupKeys.size();
+        groupKeys.add(key);
+        if (group == capacity) {
+            capacity *= 2;
+            for (Accumulator accumulator : accumulators) {
+                accumulator.grow(capacity);
+            }
+        }
+        return group;
+    }
+
+    // 多列或非数值列的分组键；探测键复用同一个数组，放入 HashMap 的键使用副本
+    private static final class GroupKey {
+        final Object[] values;
+        private int hash;
+
+        GroupKey(Object[] values) {
+            this.values = values;
+            rehash();
+        }
+
+        void rehash() {
+            hash = Arrays.hashCode(values);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof GroupKey && Arrays.equals(values, ((GroupKey) o).values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * 一个聚合函数在所有组上的累加状态，按组号保存在数组中。
+     * add 只接收非 NULL 的值；COUNT(*) 接收每一行，此时 vector / value 为 null。
+     */
+    private abstract static class Accumulator {
+        final int position; // 参数列的位置，COUNT(*) 时为 -1
+
+        Accumulator(int position) {
+            this.position = position;
+        }
+
+        abstract void grow(int capacity);
+
+        abstract void add(int group, ColumnVector vector, int slot);
+
+        abstract void add(int group, Object value);
+
+        abstract Object result(int group);
+
+        /**
+         * 把同类型累加器 other 中组 otherGroup 的状态合并到组 group 中。
+         */
+        abstract void merge(int group, Accumulator other, int otherGroup);
+    }
+
+    private static final class Count extends Accumulator {
+        private long[] counts = new long[INITIAL_GROUPS];
+
+        Count(int position) {
+            super(position);
+        }
+
+        @Override
+        void grow(int capacity) {
+            counts = Arrays.copyOf(counts, capacity);
+        }
+
+        @Override
+        void add(int group, ColumnVector vector, int slot) {
+            counts[group]++;
+        }
+
+        @Override
+        void add(int group, Object value) {
+            counts[group]++;
+        }
+
+        @Override
+        Object result(int group) {
+            return counts[group];
+        }
+
+        @Override
+        void merge(int group, Accumulator other, int otherGroup) {
+            counts[group] += ((Count) other).counts[otherGroup];
+        }
+    }
+
+    // INTEGER 列的 SUM / AVG，和用 long 累加
+    private static final class IntSum extends Accumulator {
+        private final boolean average;
+        private long[] sums = new long[INITIAL_GROUPS];
+        private long[] counts = new long[INITIAL_GROUPS];
+
+        IntSum(int position, boolean average) {
+            super(position);
+            this.average = average;
+        }
+
+        @Override
+        void grow(int capacity) {
+            sums = Arrays.copyOf(sums, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+        }
+
+        @Override
+        void add(int group, ColumnVector vector, int slot) {
+            sums[group] += vector.getInt(slot);
+            counts[group]++;
+        }
+
+        @Override
+        void add(int group, Object value) {
+            sums[group] += ((Number) value).intValue();
+            counts[group]++;
+        }
+
+        @Override
+        Object result(int group) {
+            if (counts[group] == 0) {
+                return null;
+            }
+            return average ? (Object) ((double) sums[group] / counts[group]) : (Object) sums[group];
+        }
+
+        @Override
+        void merge(int group, Accumulator other, int otherGroup) {
+            sums[group] += ((IntSum) other).sums[otherGroup];
+            counts[group] += ((IntSum) other).counts[otherGroup];
+        }
+    }
+
+    private static final class DoubleSum extends Accumulator {
+        private final boolean average;
+        private double[] sums = new double[INITIAL_GROUPS];
+        private long[] counts = new long[INITIAL_GROUPS];
+
+        DoubleSum(int position, boolean average) {
+            super(position);
+            this.average = average;
+        }
+
+        @Override
+        void grow(int capacity) {
+            sums = Arrays.copyOf(sums, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+        }
+
+        @Override
+        void add(int group, ColumnVector vector, int slot) {
+            sums[group] += vector.getDouble(slot);
+            counts[group]++;
+        }
+
+        @Override
+        void add(int group, Object value) {
+            sums[group] += ((Number) value).doubleValue();
+            counts[group]++;
+        }
+
+        @Override
+        Object result(int group) {
+            if (counts[group] == 0) {
+                return null;
+            }
+            return average ? sums[group] / counts[group] : sums[group];
+        }
+
+        @Override
+        void merge(int group, Accumulator other, int otherGroup) {
+            sums[group] += ((DoubleSum) other).sums[otherGroup];
+            counts[group] += ((DoubleSum) other).counts[otherGroup];
+        }
+    }
+
+    private static final class IntExtreme extends Accumulator {
+        private final boolean max;
+        private int[] values = new int[INITIAL_GROUPS];
+        private boolean[] seen = new boolean[INITIAL_GROUPS];
+
+        IntExtreme(int position, boolean max) {
+            super(position);
+            this.max = max;
+        }
+
+        @Override
+        void grow(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+            seen = Arrays.copyOf(seen, capacity);
+        }
+
+        @Override
+        void add(int group, ColumnVector vector, int slot) {
+            accept(group, vector.getInt(slot));
+        }
+
+        @Override
+        void add(int group, Object value) {
+            accept(group, ((Number) value).intValue());
+        }
+
+        @Override
+        void merge(int group, Accumulator other, int otherGroup) {
+            if (((IntExtreme) other).seen[otherGroup]) {
+                accept(group, ((IntExtreme) other).values[otherGroup]);
+            }
+        }
+
+        private void accept(int group, int value) {
+            if (!seen[group] || (max ? value > values[group] : value < values[group])) {
+                values[group] = value;
+                seen[group] = true;
+            }
+        }
+
+        @Override
+        Object result(int group) {
+            return seen[group] ? (Object) values[group] : null;
+        }
+    }
+
+    // 与 Column#compareValues 一致，按 Double.compare 比较
+    private static final class DoubleExtreme extends Accumulator {
+        private final boolean max;
+        private double[] values = new double[INITIAL_GROUPS];
+        private boolean[] seen = new boolean[INITIAL_GROUPS];
+
+        DoubleExtreme(int position, boolean max) {
+            super(position);
+            this.max = max;
+        }
+
+        @Override
+        void grow(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+            seen = Arrays.copyOf(seen, capacity);
+        }
+
+        @Override
+        void add(int group, ColumnVector vector, int slot) {
+            accept(group, vector.getDouble(slot));
+        }
+
+        @Override
+        void add(int group, Object value) {
+            accept(group, ((Number) value).doubleValue());
+        }
+
+        @Override
+        void merge(int group, Accumulator other, int otherGroup) {
+            if (((DoubleExtreme) other).seen[otherGroup]) {
+                accept(group, ((DoubleExtreme) other).values[otherGroup]);
+            }
+        }
+
+        private void accept(int group, double value) {
+            int cmp = seen[group] ? Double.compare(value, values[group]) : 0;
+            if (!seen[group] || (max ? cmp > 0 : cmp < 0)) {
+                values[group] = value;
+                seen[group] = true;
+            }
+        }
+
+        @Override
+        Object result(int group) {
+            return seen[group] ? (Object) values[group] : null;
+        }
+    }
+
+    // STRING / BOOLEAN 列的 MIN / MAX，保存列向量中已有的值对象
+    private static final class ObjectExtreme extends Accumulator {
+        private final boolean max;
+        private final Column column;
+        private Object[] values = new Object[INITIAL_GROUPS];
+
+        ObjectExtreme(int position, boolean max, Column column) {
+            super(position);
+            this.max = max;
+            this.column = column;
+        }
+
+        @Override
+        void grow(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        void add(int group, ColumnVector vector, int slot) {
+            add(group, vector.get(slot));
+        }
+
+        @Override
+        void add(int group, Object value) {
+            Object current = values[group];
+            if (current == null || (max ? column.compareValues(value, current) > 0 : column.compareValues(value, current) < 0)) {
+                values[group] = value;
+            }
+        }
+
+        @Override
+        Object result(int group) {
+            return values[group];
+        }
+
+        @Override
+        void merge(int group, Accumulator other, int otherGroup) {
+            Object value = ((ObjectExtreme) other).values[otherGroup];
+            if (value != null) {
+                add(group, value);
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.prelinamontelli.jsondb;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 基于 HashMap 的等值索引。每个键对应一个有序的行 ID 数组，NULL 也作为一个键参与索引。
+ */
+public class HashIndex implements TableIndex {
+    private static final long[] EMPTY = new long[0];
+
+    private final IndexDefinition definition;
+    private final Map<Object, RowIdList> entries = new HashMap<>();
+
+    public HashIndex(IndexDefinition definition) {
+        this.definition = definition;
+    }
+
+    @Override
+    public IndexDefinition getDefinition() {
+        return definition;
+    }
+
+    @Override
+    public void insert(Object key, long rowId) {
+        entries.computeIfAbsent(key, k -> new RowIdList()).add(rowId);
+    }
+
+    @Override
+    public void remove(Object key, long rowId) {
+        RowIdList rowIds = entries.get(key);
+        if (rowIds != null && rowIds.remove(rowId) && rowIds.size() == 0) {
+            entries.remove(key);
+        }
+    }
+
+    @Override
+    public long[] lookup(Object key) {
+        RowIdList rowIds = entries.get(key);
+        return rowIds == null ? EMPTY : rowIds.toArray();
+    }
+
+    @Override
+    public int count(Object key) {
+        RowIdList rowIds = entries.get(key);
+        return rowIds == null ? 0 : rowIds.size();
+    }
+
+    @Override
+    public int distinctKeys() {
+        return entries.size();
+    }
+
+    @Override
+    public void clear() {
+        entries.clear();
+    }
+}
@@ -0,0 +1,175 @@
+package com.prelinamontelli.jsondb;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * HyperLogLog 不同值个数估算。2^12 个 6 位寄存器（内存中每个用一个字节保存），标准误差约 1.6%，
+ * 内存中固定为 4 KB，与表的行数无关。只能添加值：删除的值仍然计入估算，直到重新 ANALYZE。
+ * <p>
+ * 写入快照时用 {@link #encode} 压缩：不同值较少时只保存非零寄存器，否则把寄存器按 6 位紧凑排列（3 KB）。
+ */
+final class HyperLogLog {
+    static final int PRECISION = 12;
+    private static final int REGISTER_COUNT = 1 << PRECISION;
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTER_COUNT);
+    private static final int REGISTER_BITS = 6;
+    private static final byte SPARSE = 1; // 非零寄存器的列表，每个 3 字节：12 位编号和 6 位值
+    private static final byte PACKED = 2; // 全部寄存器，每个 6 位
+    private static final int PACKED_SIZE = 1 + REGISTER_COUNT * REGISTER_BITS / 8;
+
+    private final byte[] registers;
+
+    HyperLogLog() {
+        this.registers = new byte[REGISTER_COUNT];
+    }
+
+    private HyperLogLog(byte[] registers) {
+        this.registers = registers;
+    }
+
+    /**
+     * 读取 {@link #encode} 的结果。旧版本的快照保存未压缩的寄存器（每个一个字节），同样可以读取。
+     * @throws IllegalArgumentException 如果数据长度或寄存器值无效
+     */
+    static HyperLogLog decode(byte[] data) {
+        if (data.length == REGISTER_COUNT) {
+            byte[] registers = data.clone();
+            for (byte register : registers) {
+                checkRegister(register);
+            }
+            return new HyperLogLog(registers);
+        }
+        byte[] registers = new byte[REGISTER_COUNT];
+        if (data.length > 0 && data[0] == SPARSE && (data.length - 1) % 3 == 0) {
+            for (int i = 1; i < data.length; i += 3) {
+                int register = (data[i] & 0xff) << 4 | (data[i + 1] & 0xff) >>> 4;
+                registers[register] = checkRegister((byte) ((data[i + 1] & 0x0f) << 2 | (data[i + 2] & 0xff) >>> 6));
+            }
+            return new HyperLogLog(registers);
+        }
+        if (data.length == PACKED_SIZE && data[0] == PACKED) {
+            for (int register = 0; register < REGISTER_COUNT; register++) {
+                registers[register] = checkRegister((byte) readBits(data, 8 + register * REGISTER_BITS));
+            }
+            return new HyperLogLog(registers);
+        }
+        throw new IllegalArgumentException("Invalid HyperLogLog sketch of " + data.length + " bytes.");
+    }
+
+    private static byte checkRegister(byte register) {
+        if (register < 0 || register > 64 - PRECISION + 1) {
+            throw new IllegalArgumentException("Invalid HyperLogLog register value " + register + ".");
+        }
+        return register;
+    }
+
+    /**
+     * 添加一个非 NULL 值。
+     */
+    void add(Object value) {
+        long hash = hash(value);
+        int register = (int) (hash >>> (64 - PRECISION));
+        // 其余位中第一个 1 的位置；末尾补一个 1，使全零时也有界
+        int rank = Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1;
+        if (rank > registers[register]) {
+            registers[register] = (byte) rank;
+        }
+    }
+
+    /**
+     * @return 估算的不同值个数。值较少时使用线性计数修正
+     */
+    long estimate() {
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double estimate = ALPHA * REGISTER_COUNT * REGISTER_COUNT / sum;
+        if (estimate <= 2.5 * REGISTER_COUNT && zeros > 0) {
+            estimate = REGISTER_COUNT * Math.log((double) REGISTER_COUNT / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    HyperLogLog copy() {
+        return new HyperLogLog(registers.clone());
+    }
+
+    /**
+     * @return 压缩后的寄存器：非零寄存器少于 1/4 时用稀疏格式（每个 3 字节），否则按 6 位紧凑排列
+     */
+    byte[] encode() {
+        int nonZero = 0;
+        for (byte register : registers) {
+            if (register != 0) {
+                nonZero++;
+            }
+        }
+        if (1 + nonZero * 3 < PACKED_SIZE) {
+            byte[] data = new byte[1 + nonZero * 3];
+            data[0] = SPARSE;
+            int position = 1;
+            for (int register = 0; register < REGISTER_COUNT; register++) {
+                if (registers[register] != 0) {
+                    data[position] = (byte) (register >>> 4);
+                    data[position + 1] = (byte) ((register & 0x0f) << 4 | registers[register] >>> 2);
+                    data[position + 2] = (byte) ((registers[register] & 0x03) << 6);
+                    position += 3;
+                }
+            }
+            return data;
+        }
+        byte[] data = new byte[PACKED_SIZE];
+        data[0] = PACKED;
+        for (int register = 0; register < REGISTER_COUNT; register++) {
+            writeBits(data, 8 + register * REGISTER_BITS, registers[register]);
+        }
+        return data;
+    }
+
+    // 从 bit 位（从高位开始计数）起读取 6 位
+    private static int readBits(byte[] data, int bit) {
+        int index = bit >>> 3;
+        int word = (data[index] & 0xff) << 8 | (index + 1 < data.length ? data[index + 1] & 0xff : 0);
+        return word >>> (16 - REGISTER_BITS - (bit & 7)) & ((1 << REGISTER_BITS) - 1);
+    }
+
+    private static void writeBits(byte[] data, int bit, int value) {
+        int index = bit >>> 3;
+        int shifted = value << (16 - REGISTER_BITS - (bit & 7));
+        data[index] |= (byte) (shifted >>> 8);
+        if (index + 1 < data.length) {
+            data[index + 1] |= (byte) shifted;
+        }
+    }
+
+    // 64 位哈希：数值按位模式、字符串按 UTF-8 字节做 FNV-1a，再经过 MurmurHash3 的最终混合使各位分布均匀
+    private static long hash(Object value) {
+        long bits;
+        if (value instanceof Integer || value instanceof Long) {
+            bits = ((Number) value).longValue();
+        } else if (value instanceof Double) {
+            double number = (Double) value;
+            bits = Double.doubleToLongBits(number == 0 ? 0.0 : number); // -0.0 与 0.0 相等
+        } else if (value instanceof Boolean) {
+            bits = (Boolean) value ? 1 : 2;
+        } else {
+            String text = value instanceof String ? (String) value : String.valueOf(value);
+            bits = 0xcbf29ce484222325L;
+            for (byte b : text.getBytes(StandardCharsets.UTF_8)) {
+                bits ^= b & 0xff;
+                bits *= 0x100000001b3L;
+            }
+        }
+        bits ^= bits >>> 33;
+        bits *= 0xff51afd7ed558ccdL;
+        bits ^= bits >>> 33;
+        bits *= 0xc4ceb9fe1a85ec53L;
+        bits ^= bits >>> 33;
+        return bits;
+    }
+}
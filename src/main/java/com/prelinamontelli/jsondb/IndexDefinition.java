@@ -0,0 +1,64 @@
+package com.prelinamontelli.jsondb;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Objects;
+
+/**
+ * 索引定义，随表结构一起持久化；索引内容在加载时根据行数据重建。
+ */
+public class IndexDefinition {
+    private final String name;
+    private final String column;
+    private final IndexType type;
+
+    @JsonCreator
+    public IndexDefinition(@JsonProperty("name") String name,
+                           @JsonProperty("column") String column,
+                           @JsonProperty("type") IndexType type) {
+        if (name == null || name.trim().isEmpty()) {
+            throw new IllegalArgumentException("Index name cannot be null or empty.");
+        }
+        if (column == null || column.trim().isEmpty()) {
+            throw new IllegalArgumentException("Index column cannot be null or empty.");
+        }
+        this.name = name.trim();
+        this.column = column.trim();
+        this.type = type == null ? IndexType.HASH : type;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getColumn() {
+        return column;
+    }
+
+    public IndexType getType() {
+        return type;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        IndexDefinition that = (IndexDefinition) o;
+        return name.equals(that.name) && column.equals(that.column) && type == that.type;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, column, type);
+    }
+
+    @Override
+    public String toString() {
+        return "IndexDefinition{" +
+               "name='" + name + '\'' +
+               ", column='" + column + '\'' +
+               ", type=" + type +
+               '}';
+    }
+}
@@ -0,0 +1,6 @@
+package com.prelinamontelli.jsondb;
+
+public enum IndexType {
+    HASH,     // 哈希索引，用于等值查询
+    ORDERED   // 有序索引，用于等值、范围查询和 ORDER BY
+}
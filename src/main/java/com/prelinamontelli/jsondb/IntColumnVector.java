@@ -0,0 +1,93 @@
+package com.prelinamontelli.jsondb;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * INTEGER 列的值向量，值保存在 int[] 中。
+ */
+final class IntColumnVector extends ColumnVector {
+    private int[] values = new int[0];
+
+    @Override
+    int getInt(int slot) {
+        return values[slot];
+    }
+
+    @Override
+    double getDouble(int slot) {
+        return values[slot];
+    }
+
+    @Override
+    protected long estimateValueBytes() {
+        return 16 + 4L * values.length;
+    }
+
+    @Override
+    protected Object getNonNull(int slot) {
+        return values[slot];
+    }
+
+    @Override
+    protected void setNonNull(int slot, Object value) {
+        values[slot] = ((Number) value).intValue();
+    }
+
+    @Override
+    protected void clearValue(int slot) {
+        values[slot] = 0;
+    }
+
+    @Override
+    protected void ensureCapacity(int capacity) {
+        if (capacity > values.length) {
+            values = Arrays.copyOf(values, grow(values.length, capacity));
+        }
+    }
+
+    @Override
+    protected void retainValues(int[] keptSlots) {
+        int[] retained = new int[Math.max(keptSlots.length, INITIAL_CAPACITY)];
+        for (int i = 0; i < keptSlots.length; i++) {
+            retained[i] = values[keptSlots[i]];
+        }
+        values = retained;
+    }
+
+    @Override
+    ColumnVector copy(int size) {
+        IntColumnVector copy = new IntColumnVector();
+        copy.values = Arrays.copyOf(values, size);
+        copy.nulls = nulls.get(0, size);
+        return copy;
+    }
+
+    @Override
+    void scan(WhereCondition condition, int from, int to, BitSet matches) {
+        if (scanNullEquality(condition, from, to, matches)) {
+            return;
+        }
+        // 把条件转换为闭区间 [low, high]，用 long 避免开区间边界溢出
+        long low = Long.MIN_VALUE;
+        long high = Long.MAX_VALUE;
+        if (!condition.isRange()) {
+            low = high = ((Number) condition.getValue()).intValue();
+        } else {
+            Object lowerBound = condition.getLowerBound();
+            Object upperBound = condition.getUpperBound();
+            if (lowerBound != null) {
+                low = ((Number) lowerBound).intValue() + (condition.isLowerInclusive() ? 0L : 1L);
+            }
+            if (upperBound != null) {
+                high = ((Number) upperBound).intValue() - (condition.isUpperInclusive() ? 0L : 1L);
+            }
+        }
+        for (int slot = from; slot < to; slot++) {
+            int value = values[slot];
+            if (value >= low && value <= high && !nulls.get(slot)) {
+                matches.set(slot);
+            }
+        }
+    }
+}
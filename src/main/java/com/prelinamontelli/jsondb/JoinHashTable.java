@@ -0,0 +1,99 @@
+package com.prelinamontelli.jsondb;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 哈希连接构建端的哈希表：连接键 -> 键相同的所有行。键相同的行用下标链表串起来，行本身保存在数组中，
+ * INTEGER / DOUBLE 键不装箱（DOUBLE 按位比较，与 {@link Column#compareValues} 的相等一致）。
+ * NULL 键不与任何键相等，不放入哈希表。{@link #clear} 之后数组保留，供下一趟构建复用。
+ */
+final class JoinHashTable {
+    private static final int NO_ROW = -1;
+
+    private final DataType keyType;
+    private final LongIntHashMap primitiveHeads; // INTEGER / DOUBLE 键 -> 链表中最后加入的行，其他类型时为 null
+    private final Map<Object, Integer> objectHeads;
+    private Object[][] rows = new Object[16][];
+    private int[] next = new int[16]; // 同一个键的前一行，NO_ROW 表示链表结束
+    private int size;
+
+    JoinHashTable(DataType keyType) {
+        this.keyType = keyType;
+        boolean primitive = keyType == DataType.INTEGER || keyType == DataType.DOUBLE;
+        this.primitiveHeads = primitive ? new LongIntHashMap() : null;
+        this.objectHeads = primitive ? null : new HashMap<>();
+    }
+
+    /**
+     * 加入一行。key 为 null 时忽略。
+     */
+    void add(Object key, Object[] row) {
+        if (key == null) {
+            return;
+        }
+        if (size == rows.length) {
+            rows = Arrays.copyOf(rows, size * 2);
+            next = Arrays.copyOf(next, size * 2);
+        }
+        int previous;
+        if (primitiveHeads != null) {
+            long primitiveKey = primitiveKey(key);
+            previous = primitiveHeads.get(primitiveKey);
+            primitiveHeads.put(primitiveKey, size);
+        } else {
+            Integer head = objectHeads.put(key, size);
+            previous = head == null ? NO_ROW : head;
+        }
+        rows[size] = row;
+        next[size] = previous;
+        size++;
+    }
+
+    /**
+     * @return 键等于 key 的第一行的编号，没有时（或 key 为 null）返回 -1。之后用 {@link #next} 遍历其余的行
+     */
+    int find(Object key) {
+        if (key == null) {
+            return NO_ROW;
+        }
+        if (primitiveHeads != null) {
+            return primitiveHeads.get(primitiveKey(key));
+        }
+        Integer head = objectHeads.get(key);
+        return head == null ? NO_ROW : head;
+    }
+
+    /**
+     * @return 与 entry 键相同的下一行的编号，没有时返回 -1
+     */
+    int next(int entry) {
+        return next[entry];
+    }
+
+    Object[] row(int entry) {
+        return rows[entry];
+    }
+
+    /**
+     * @return 哈希表中的行数
+     */
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        if (primitiveHeads != null) {
+            primitiveHeads.clear();
+        } else {
+            objectHeads.clear();
+        }
+        Arrays.fill(rows, 0, size, null);
+        size = 0;
+    }
+
+    private long primitiveKey(Object key) {
+        return keyType == DataType.INTEGER ? ((Number) key).intValue() : Double.doubleToLongBits(((Number) key).doubleValue());
+    }
+}
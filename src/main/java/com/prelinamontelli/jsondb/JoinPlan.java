@@ -0,0 +1,303 @@
+package com.prelinamontelli.jsondb;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * {@link JoinPlanner} 为两张表的等值连接选出的计划，并在两张表的读视图上执行。连接后的行是左表的所有列接着右表的所有列。
+ * <ul>
+ * <li>哈希连接：按各自的访问路径读取两张表，较小的一边（构建端）放入 {@link JoinHashTable}，另一边（探测端）逐行查找。
+ * 构建端超过哈希表的行数上限时分成多趟：每装满一次就完整扫描一遍探测端再清空，内存只与上限有关。</li>
+ * <li>索引嵌套循环连接：逐批读取外表的行，用内表连接列上的唯一键或索引查找匹配的行，不需要扫描内表。</li>
+ * </ul>
+ * 连接键为 NULL 的行不与任何行匹配。连接条件之外只涉及两张表的条件作为剩余条件在连接后的行上求值。
+ */
+final class JoinPlan {
+
+    enum Strategy {
+        HASH_JOIN("Hash Join"),
+        INDEX_NESTED_LOOP("Index Nested Loop");
+
+        private final String label;
+
+        Strategy(String label) {
+            this.label = label;
+        }
+
+        String getLabel() {
+            return label;
+        }
+    }
+
+    /**
+     * 按自己的访问路径读取的一边：哈希连接的两边，或者索引嵌套循环连接的外表。
+     */
+    static final class Input {
+        private final Table table;
+        private final QueryPlan plan;   // 由 Table#plan 为这一边的条件生成，不排序
+        private final Column keyColumn;
+        private final int keyIndex;     // 连接列在这张表的行中的下标
+        private final boolean left;     // 是否是 FROM 中的左表
+
+        Input(Table table, QueryPlan plan, Column keyColumn, int keyIndex, boolean left) {
+            this.table = table;
+            this.plan = plan;
+            this.keyColumn = keyColumn;
+            this.keyIndex = keyIndex;
+            this.left = left;
+        }
+    }
+
+    /**
+     * 索引嵌套循环连接的内表：按连接列查找，查到的行再用内表自己的条件过滤。
+     */
+    static final class Lookup {
+        private final Table table;
+        private final Column keyColumn;
+        private final QueryPlan.AccessType type; // KEY_LOOKUP 或 INDEX_LOOKUP
+        private final String indexName;          // KEY_LOOKUP 时是唯一列名
+        private final Expression filter;         // 绑定到内表的条件，null 表示没有
+        private final double rowsPerKey;          // 每次查找得到的行数（过滤之前）
+        private final double costPerKey;
+
+        Lookup(Table table, Column keyColumn, QueryPlan.AccessType type, String indexName, Expression filter,
+               double rowsPerKey, double costPerKey) {
+            this.table = table;
+            this.keyColumn = keyColumn;
+            this.type = type;
+            this.indexName = indexName;
+            this.filter = filter;
+            this.rowsPerKey = rowsPerKey;
+            this.costPerKey = costPerKey;
+        }
+
+        /**
+         * @return 一次查找并取出匹配行的代价
+         */
+        double getCostPerKey() {
+            return costPerKey;
+        }
+    }
+
+    private final Strategy strategy;
+    private final Input outer;       // 哈希连接的探测端，或索引嵌套循环连接的外表
+    private final Input build;       // 哈希连接的构建端，索引嵌套循环连接时为 null
+    private final Lookup lookup;     // 索引嵌套循环连接的内表，哈希连接时为 null
+    private final Expression keyCondition; // 连接键的等值条件，绑定到连接后的行，只用于显示
+    private final Expression residual;     // 连接后求值的其他条件，null 表示没有
+    private final int leftWidth;
+    private final int rightWidth;
+    private final int maxBuildRows;
+    private final double rows;
+    private final double cost;
+
+    JoinPlan(Strategy strategy, Input outer, Input build, Lookup lookup, Expression keyCondition, Expression residual,
+             int leftWidth, int rightWidth, int maxBuildRows, double rows, double cost) {
+        this.strategy = strategy;
+        this.outer = outer;
+        this.build = build;
+        this.lookup = lookup;
+        this.keyCondition = keyCondition;
+        this.residual = residual;
+        this.leftWidth = leftWidth;
+        this.rightWidth = rightWidth;
+        this.maxBuildRows = maxBuildRows;
+        this.rows = rows;
+        this.cost = cost;
+    }
+
+    /**
+     * @return 估算的结果行数
+     */
+    double getRows() {
+        return rows;
+    }
+
+    /**
+     * @return 估算的总代价
+     */
+    double getCost() {
+        return cost;
+    }
+
+    /**
+     * 在两张表的读视图上执行连接，返回连接后的行的游标：每取一批，哈希连接读取探测端的下一批行，
+     * 索引嵌套循环连接读取外表的下一批行并查找它们匹配的行。
+     * @param leftView 左表的读视图
+     * @param rightView 右表的读视图；表与自身连接时可以与 leftView 是同一个视图
+     * @return 在关闭视图之前读取的游标
+     */
+    RowCursor open(ReadView leftView, ReadView rightView) {
+        ReadView outerView = outer.left ? leftView : rightView;
+        ReadView innerView = outer.left ? rightView : leftView;
+        return strategy == Strategy.INDEX_NESTED_LOOP ? nestedLoop(outerView, innerView) : hashJoin(innerView, outerView);
+    }
+
+    /**
+     * 执行连接并按 ORDER BY 排序、应用 LIMIT 和 OFFSET。不排序时直接在连接的游标上跳过和截取，取满即停止连接；
+     * 排序时需要连接所有的行，有 LIMIT 时用大小为 limit + offset 的堆只保留前面的行。与单表查询一样，升序时 NULL 排在最后。
+     * @param orderIndex 排序列在连接后的行中的下标，-1 表示不排序
+     * @param limit 最多返回的行数，负数表示不限制
+     * @param offset 返回之前跳过的行数
+     */
+    RowCursor select(ReadView leftView, ReadView rightView, int orderIndex, Column orderColumn, boolean descending, int limit,
+                     int offset) {
+        if (orderIndex < 0) {
+            RowCursor rows = open(leftView, rightView);
+            rows.skip(offset);
+            return rows.limit(limit);
+        }
+        Comparator<Object[]> order = Comparator.comparing(row -> row[orderIndex], (left, right) -> {
+            if (left == null || right == null) {
+                return left == null ? (right == null ? 0 : 1) : -1;
+            }
+            return orderColumn.compareValues(left, right);
+        });
+        if (descending) {
+            order = order.reversed();
+        }
+        List<Object[]> sorted = new ArrayList<>();
+        RowCursor joined = open(leftView, rightView);
+        if (limit < 0) {
+            joined.forEachRemaining(sorted::add);
+        } else {
+            long max = (long) limit + offset;
+            PriorityQueue<Object[]> topN = new PriorityQueue<>((int) Math.min(max, 1024) + 1, order.reversed());
+            while (max > 0 && joined.hasNext()) {
+                topN.offer(joined.next());
+                if (topN.size() > max) {
+                    topN.poll();
+                }
+            }
+            sorted.addAll(topN);
+        }
+        sorted.sort(order);
+        RowCursor rows = RowCursor.of(sorted);
+        rows.skip(offset);
+        return rows.limit(limit);
+    }
+
+    // 逐趟构建哈希表：装满 maxBuildRows 行（或读完构建端）后逐批读取探测端，探测端读完时清空哈希表，构建下一趟
+    private RowCursor hashJoin(ReadView buildView, ReadView probeView) {
+        RowCursor buildRows = build.table.scan(buildView, build.plan);
+        JoinHashTable hashTable = new JoinHashTable(build.keyColumn.getType());
+        return new RowCursor() {
+            private RowCursor probeRows; // 当前这一趟的探测端，null 表示需要构建下一趟
+
+            @Override
+            List<Object[]> fetch() {
+                if (probeRows == null) {
+                    hashTable.clear();
+                    while (hashTable.size() < maxBuildRows && buildRows.hasNext()) {
+                        Object[] row = buildRows.next();
+                        hashTable.add(row[build.keyIndex], row);
+                    }
+                    if (hashTable.size() == 0) {
+                        return null;
+                    }
+                    probeRows = outer.table.scan(probeView, outer.plan);
+                }
+                List<Object[]> batch = probeRows.nextBatch(Integer.MAX_VALUE);
+                if (batch.isEmpty()) {
+                    probeRows = null;
+                    return batch;
+                }
+                List<Object[]> joined = new ArrayList<>();
+                for (Object[] row : batch) {
+                    for (int entry = hashTable.find(row[outer.keyIndex]); entry >= 0; entry = hashTable.next(entry)) {
+                        emit(row, hashTable.row(entry), joined);
+                    }
+                }
+                return joined;
+            }
+        };
+    }
+
+    // 外表的每一批行在内表中一次查找所有的连接键
+    private RowCursor nestedLoop(ReadView outerView, ReadView innerView) {
+        RowCursor outerRows = outer.table.scan(outerView, outer.plan);
+        return new RowCursor() {
+            @Override
+            List<Object[]> fetch() {
+                List<Object[]> batch = outerRows.nextBatch(Integer.MAX_VALUE);
+                if (batch.isEmpty()) {
+                    return null;
+                }
+                List<Object> keys = new ArrayList<>(batch.size());
+                for (Object[] row : batch) {
+                    keys.add(row[outer.keyIndex]);
+                }
+                List<List<Object[]>> matches = lookup.table.lookup(innerView, lookup.keyColumn, keys, lookup.filter);
+                List<Object[]> joined = new ArrayList<>();
+                for (int i = 0; i < batch.size(); i++) {
+                    for (Object[] match : matches.get(i)) {
+                        emit(batch.get(i), match, joined);
+                    }
+                }
+                return joined;
+            }
+        };
+    }
+
+    // 拼接外表（或探测端）的一行和与它匹配的一行，满足剩余条件时加入 joined
+    private void emit(Object[] outerRow, Object[] innerRow, List<Object[]> joined) {
+        Object[] leftRow = outer.left ? outerRow : innerRow;
+        Object[] rightRow = outer.left ? innerRow : outerRow;
+        Object[] row = new Object[leftWidth + rightWidth];
+        System.arraycopy(leftRow, 0, row, 0, leftWidth);
+        System.arraycopy(rightRow, 0, row, leftWidth, rightWidth);
+        if (residual == null || residual.test(row)) {
+            joined.add(row);
+        }
+    }
+
+    /**
+     * 以缩进的树形文本显示计划，格式与 {@link QueryPlan#explain} 相同：连接节点下面依次是外表（探测端）和内表（构建端）。
+     * @param operation 作为根节点显示的操作名称（例如聚合），null 表示没有
+     * @param sortKey 连接之后排序的说明，null 表示不排序
+     * @param limit 连接之后的 LIMIT，负数表示没有
+     * @param offset 连接之后的 OFFSET
+     */
+    List<String> explain(String operation, String sortKey, int limit, int offset) {
+        List<String> lines = new ArrayList<>();
+        int depth = 0;
+        if (operation != null) {
+            lines.add(operation);
+            depth++;
+        }
+        if (limit >= 0 || offset > 0) {
+            double limited = Math.max(0, rows - offset);
+            lines.add(QueryPlan.node(depth++, QueryPlan.limitLabel(limit, offset), cost, limit < 0 ? limited : Math.min(limited, limit)));
+        }
+        if (sortKey != null) {
+            lines.add(QueryPlan.node(depth++, "Sort: " + sortKey, cost, rows));
+        }
+        lines.add(QueryPlan.node(depth, strategy.getLabel(), cost, rows));
+        String indent = QueryPlan.detailIndent(depth);
+        if (strategy == Strategy.HASH_JOIN) {
+            lines.add(indent + "Hash Cond: " + keyCondition);
+            long buildRows = Math.round(build.plan.getRows());
+            long passes = Math.max(1, (buildRows + maxBuildRows - 1) / maxBuildRows);
+            lines.add(indent + "Hash Build: " + build.table.getName() + (passes > 1 ? " (passes=" + passes + ")" : ""));
+        } else {
+            lines.add(indent + "Index Cond: " + keyCondition);
+        }
+        if (residual != null) {
+            lines.add(indent + "Filter: " + residual);
+        }
+        outer.plan.explain(lines, depth + 1, 1);
+        if (strategy == Strategy.HASH_JOIN) {
+            build.plan.explain(lines, depth + 1, 1);
+        } else {
+            String using = lookup.type == QueryPlan.AccessType.KEY_LOOKUP ? " using key " : " using ";
+            lines.add(QueryPlan.node(depth + 1, lookup.type.getLabel() + " on " + lookup.table.getName() + using + lookup.indexName,
+                lookup.costPerKey, lookup.rowsPerKey));
+            if (lookup.filter != null) {
+                lines.add(QueryPlan.detailIndent(depth + 1) + "Filter: " + lookup.filter);
+            }
+        }
+        return lines;
+    }
+}
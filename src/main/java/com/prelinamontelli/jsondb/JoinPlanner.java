@@ -0,0 +1,185 @@
+package com.prelinamontelli.jsondb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 两张表的等值连接的规划。ON 和 WHERE 的 AND 子条件按引用的列分类：只涉及一张表的条件下推到这张表，
+ * 由 {@link QueryPlanner} 选择它的访问路径；两张表的列之间的第一个等值比较作为连接键，其余条件在连接后求值。
+ * 然后比较两种连接方式的估算代价：
+ * <ul>
+ * <li>哈希连接：较小的一边作为构建端。构建端的行数超过哈希表上限时需要多趟，每趟都要重新读取探测端。</li>
+ * <li>索引嵌套循环连接：内表的连接列上有唯一键或索引时可用，两张表都可以作为内表；代价是外表的访问代价加上每行一次查找。</li>
+ * </ul>
+ */
+final class JoinPlanner {
+    // 与 QueryPlanner 使用相同的代价单位：取出一行的所有列并求值条件
+    private static final double ROW_COST = 1.0;
+    private static final double LOOKUP_COST = 1.0;  // 一次哈希查找，或有序索引中每层树节点
+    private static final double HASH_COST = 0.2;    // 在哈希表中加入或查找一行
+    private static final double DEFAULT_SELECTIVITY = 1.0 / 3; // 连接后求值的每个剩余条件
+
+    private JoinPlanner() {
+    }
+
+    /**
+     * @param on ON 条件，未绑定
+     * @param where WHERE 条件，未绑定，null 表示没有
+     * @param maxBuildRows 哈希表中同时保存的最大行数
+     * @throws IllegalArgumentException 如果列不存在或有歧义，或者条件中没有两张表的列之间的等值比较
+     */
+    static JoinPlan plan(Table left, String leftAlias, Table right, String rightAlias, Expression on, Expression where,
+                         int maxBuildRows) {
+        ColumnScope scope = ColumnScope.of(left, leftAlias).join(right, rightAlias);
+        List<Expression> conjuncts = new ArrayList<>(on.conjuncts());
+        if (where != null) {
+            conjuncts.addAll(where.conjuncts());
+        }
+        List<Expression> leftFilters = new ArrayList<>();
+        List<Expression> rightFilters = new ArrayList<>();
+        List<Expression> crossConditions = new ArrayList<>();
+        Expression.Comparison key = null;
+        for (Expression conjunct : conjuncts) {
+            Expression bound = conjunct.bind(scope);
+            List<Expression.ColumnRef> columns = new ArrayList<>();
+            bound.collectColumns(columns);
+            int tables = 0; // 引用的表：第 0 位是左表，第 1 位是右表
+            for (Expression.ColumnRef column : columns) {
+                tables |= 1 << scope.tableOf(column.getIndex());
+            }
+            if (tables == 1) {
+                leftFilters.add(conjunct.bind(ColumnScope.of(left, leftAlias)));
+            } else if (tables == 2) {
+                rightFilters.add(conjunct.bind(ColumnScope.of(right, rightAlias)));
+            } else if (key == null && isJoinKey(bound, scope)) {
+                key = (Expression.Comparison) bound;
+            } else {
+                crossConditions.add(bound);
+            }
+        }
+        if (key == null) {
+            throw new IllegalArgumentException("JOIN requires an equality between a column of each table in ON or WHERE, such as a.x = b.y.");
+        }
+        Expression.ColumnRef first = (Expression.ColumnRef) key.getLeft();
+        Expression.ColumnRef second = (Expression.ColumnRef) key.getRight();
+        Expression.ColumnRef leftKey = scope.tableOf(first.getIndex()) == 0 ? first : second;
+        Expression.ColumnRef rightKey = leftKey == first ? second : first;
+        int leftWidth = left.getColumnDefinitions().size();
+        Side leftSide = Side.of(left, and(leftFilters), leftKey.getColumn(), leftKey.getIndex(), true);
+        Side rightSide = Side.of(right, and(rightFilters), rightKey.getColumn(), rightKey.getIndex() - leftWidth, false);
+
+        // 输出行数：连接列的不同值越多，每个值匹配的行越少。两边的不同值个数都未知时按一边的每行最多匹配另一边的一行估算
+        double distinct = Math.max(leftSide.distinct, rightSide.distinct);
+        double rows = distinct > 0
+            ? leftSide.plan.getRows() * rightSide.plan.getRows() / Math.max(1, distinct)
+            : Math.max(leftSide.plan.getRows(), rightSide.plan.getRows());
+        for (int i = 0; i < crossConditions.size(); i++) {
+            rows *= DEFAULT_SELECTIVITY;
+        }
+        Expression residual = and(crossConditions);
+        int rightWidth = right.getColumnDefinitions().size();
+
+        Side build = rightSide.plan.getRows() <= leftSide.plan.getRows() ? rightSide : leftSide;
+        Side probe = build == rightSide ? leftSide : rightSide;
+        double buildRows = build.plan.getRows();
+        double passes = Math.max(1, Math.ceil(buildRows / maxBuildRows));
+        double hashCost = build.plan.getCost() + passes * probe.plan.getCost()
+            + (buildRows + passes * probe.plan.getRows()) * HASH_COST + rows * ROW_COST;
+        JoinPlan best = new JoinPlan(JoinPlan.Strategy.HASH_JOIN, probe.input(), build.input(), null, key, residual,
+            leftWidth, rightWidth, maxBuildRows, rows, hashCost);
+        for (Side inner : new Side[] {rightSide, leftSide}) {
+            Side outerSide = inner == rightSide ? leftSide : rightSide;
+            JoinPlan.Lookup lookup = inner.lookup();
+            if (lookup == null) {
+                continue;
+            }
+            double cost = outerSide.plan.getCost() + outerSide.plan.getRows() * lookup.getCostPerKey() + rows * ROW_COST;
+            if (cost < best.getCost()) {
+                best = new JoinPlan(JoinPlan.Strategy.INDEX_NESTED_LOOP, outerSide.input(), null, lookup, key, residual,
+                    leftWidth, rightWidth, maxBuildRows, rows, cost);
+            }
+        }
+        return best;
+    }
+
+    // 两边分别是两张表的列的等值比较
+    private static boolean isJoinKey(Expression bound, ColumnScope scope) {
+        if (!(bound instanceof Expression.Comparison)) {
+            return false;
+        }
+        Expression.Comparison comparison = (Expression.Comparison) bound;
+        return comparison.getOperator() == Expression.Comparison.Operator.EQ
+            && comparison.getLeft() instanceof Expression.ColumnRef && comparison.getRight() instanceof Expression.ColumnRef
+            && scope.tableOf(((Expression.ColumnRef) comparison.getLeft()).getIndex())
+                != scope.tableOf(((Expression.ColumnRef) comparison.getRight()).getIndex());
+    }
+
+    private static Expression and(List<Expression> conditions) {
+        if (conditions.isEmpty()) {
+            return null;
+        }
+        return conditions.size() == 1 ? conditions.get(0) : new Expression.And(conditions);
+    }
+
+    // 连接的一边：下推的条件和访问路径，以及连接列的统计信息
+    private static final class Side {
+        final Table table;
+        final Expression filter;
+        final Column keyColumn;
+        final int keyIndex;
+        final boolean left;
+        final QueryPlan plan;
+        final double tableRows;
+        final double distinct;                 // 连接列的不同值个数，未知时为 -1
+        final QueryPlan.AccessType lookupType; // 连接列上可用于查找的唯一键或索引，没有时为 null
+        final String lookupName;
+        final double lookupProbeCost;
+
+        // 调用者持有表的读锁
+        private Side(Table table, Expression filter, Column keyColumn, int keyIndex, boolean left, QueryPlan plan) {
+            this.table = table;
+            this.filter = filter;
+            this.keyColumn = keyColumn;
+            this.keyIndex = keyIndex;
+            this.left = left;
+            this.plan = plan;
+            String columnName = keyColumn.getName();
+            this.tableRows = table.getRowCount();
+            this.distinct = table.columnStatistics(columnName).getDistinctCount();
+            // 与 Table 按列值查找时的选择一致：唯一键优先，其次是哈希索引
+            TableIndex hashIndex = table.findIndex(columnName, IndexType.HASH).orElse(null);
+            TableIndex index = hashIndex != null ? hashIndex : table.findIndex(columnName, IndexType.ORDERED).orElse(null);
+            if (table.hasUniqueKey(columnName)) {
+                lookupType = QueryPlan.AccessType.KEY_LOOKUP;
+                lookupName = columnName;
+                lookupProbeCost = LOOKUP_COST;
+            } else if (index != null) {
+                lookupType = QueryPlan.AccessType.INDEX_LOOKUP;
+                lookupName = index.getDefinition().getName();
+                lookupProbeCost = hashIndex != null ? LOOKUP_COST : LOOKUP_COST * Math.max(1, Math.log(tableRows + 1) / Math.log(2));
+            } else {
+                lookupType = null;
+                lookupName = null;
+                lookupProbeCost = 0;
+            }
+        }
+
+        static Side of(Table table, Expression filter, Column keyColumn, int keyIndex, boolean left) {
+            QueryPlan plan = table.plan(filter, null, false, -1, 0);
+            return table.read(() -> new Side(table, filter, keyColumn, keyIndex, left, plan));
+        }
+
+        JoinPlan.Input input() {
+            return new JoinPlan.Input(table, plan, keyColumn, keyIndex, left);
+        }
+
+        // 作为索引嵌套循环连接的内表时的查找方式，连接列上没有唯一键或索引时返回 null
+        JoinPlan.Lookup lookup() {
+            if (lookupType == null) {
+                return null;
+            }
+            double rowsPerKey = distinct < 0 ? tableRows * ColumnStatistics.DEFAULT_EQUALITY_SELECTIVITY : tableRows / Math.max(1, distinct);
+            return new JoinPlan.Lookup(table, keyColumn, lookupType, lookupName, filter, rowsPerKey, lookupProbeCost + rowsPerKey * ROW_COST);
+        }
+    }
+}
@@ -1,14 +1,23 @@
 package com.prelinamontelli.jsondb;
 
 import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Scanner;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Objects;
 
 // Imports for signature checking
 import java.io.File;
@@ -24,19 +33,64 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 
 public class JsonDBCLI {
+    // 事务中不允许的语句：表结构变更、切换数据库和批量导入不能与排队的数据变更一起提交或回滚
+    private static final Set<String> TRANSACTION_BLOCKED_ACTIONS = new HashSet<>(Arrays.asList("CREATE", "DROP", "USE", "ALTER", "COPY", "ANALYZE"));
     private final DBManager dbManager;
-    private final Scanner scanner;
+    private final Session session;
     private final LocalizationService localizationService;
+    private final PrintStream out;
+    private final PrintStream err;
+    private final Runnable responseEnd; // 每条命令的输出结束时调用；为 null 时显示交互式提示符
+    private final Map<String, PreparedInsert> preparedStatements = new HashMap<>(); // 本会话 PREPARE 的语句，键为小写的名称
+    private final Map<String, QueryResult> cursors = new HashMap<>(); // 本会话 DECLARE 的游标，键为小写的名称
+    private ResultWriter resultWriter; // 按本会话的输出格式输出查询结果，复用它的缓冲区
 
     public JsonDBCLI() {
-        this.dbManager = new DBManager();
-        this.scanner = new Scanner(System.in);
+        this(new DBManager());
+    }
+
+    private JsonDBCLI(DBManager dbManager) {
+        this(dbManager, dbManager.getDefaultSession(), System.out, System.err, null);
+    }
+
+    /**
+     * 创建绑定到一个会话和一组输出流的命令处理器，服务器模式下每个连接一个。
+     * @param responseEnd 每条命令的输出结束时调用，用于写出协议的响应结束标记
+     */
+    JsonDBCLI(DBManager dbManager, Session session, PrintStream out, PrintStream err, Runnable responseEnd) {
+        this.dbManager = dbManager;
+        this.session = session;
         this.localizationService = new LocalizationService();
+        this.out = out;
+        this.err = err;
+        this.responseEnd = responseEnd;
+        this.resultWriter = createResultWriter(dbManager.getConfig().getOutputFormat());
     }
 
     public void start() {
-        System.out.println(localizationService.getMessage("welcome_message"));
+        Scanner scanner = new Scanner(System.in);
+        run(scanner);
+        shutdown();
+        scanner.close();
+    }
+
+    /**
+     * 逐行读取并执行命令，直到输入结束或遇到 EXIT / QUIT。
+     */
+    void run(Scanner scanner) {
+        out.println(localizationService.getMessage("welcome_message"));
         displayPrompt();
+        try {
+            readCommands(scanner);
+        } finally {
+            closeCursors(); // 游标的读视图阻止表回收旧版本，不能在会话结束之后保持打开
+        }
+        if (session.isInTransaction()) {
+            out.println(localizationService.getMessage("message_transaction_rolled_back", dbManager.rollback(session)));
+        }
+    }
+
+    private void readCommands(Scanner scanner) {
         while (scanner.hasNextLine()) {
             String line = scanner.nextLine().trim();
             if (line.toUpperCase().endsWith(";")) {
@@ -47,15 +101,6 @@ public class JsonDBCLI {
                 if (action.equals("EXIT") || action.equals("QUIT")) {
                     break;
                 }
-                if (action.equals(localizationService.getMessage("command_set_language").toUpperCase())) {
-                    if (tokens.length > 1) {
-                        handleSetLanguage(tokens[1]);
-                    } else {
-                        System.err.println(localizationService.getMessage("error_invalid_syntax") + localizationService.getMessage("help_set_language"));
-                    }
-                    displayPrompt();
-                    continue;
-                }
             }
            
             if (line.isEmpty() || line.startsWith("--") || line.startsWith("//")) {
@@ -64,7 +109,7 @@ public class JsonDBCLI {
             }
 
             if (!line.endsWith(";")) {
-                System.out.println(localizationService.getMessage("error_multiline_not_supported"));
+                out.println(localizationService.getMessage("error_multiline_not_supported"));
                 displayPrompt();
                 continue;
             }
@@ -74,21 +119,27 @@ public class JsonDBCLI {
             try {
                 processCommand(command);
             } catch (IllegalArgumentException | IllegalStateException e) {
-                System.err.println(localizationService.getMessage("error_prefix") + e.getMessage());
+                err.println(localizationService.getMessage("error_prefix") + e.getMessage());
             } catch (IOException e) {
-                System.err.println(localizationService.getMessage("io_error_prefix") + e.getMessage());
+                err.println(localizationService.getMessage("io_error_prefix") + e.getMessage());
             } catch (Exception e) {
-                System.err.println(localizationService.getMessage("unexpected_error_prefix") + e.getMessage());
-                e.printStackTrace(); 
+                err.println(localizationService.getMessage("unexpected_error_prefix") + e.getMessage());
+                e.printStackTrace(err); 
             }
             displayPrompt();
         }
-        shutdown();
     }
 
     private void displayPrompt() {
-        String currentDbName = dbManager.getCurrentDatabaseName().orElse(localizationService.getMessage("db_prompt_none"));
-        System.out.print(localizationService.getMessage("db_prompt_prefix") + " (" + currentDbName + ")> ");
+        if (responseEnd != null) {
+            out.flush();
+            err.flush();
+            responseEnd.run();
+            return;
+        }
+        String currentDbName = dbManager.getCurrentDatabaseName(session).orElse(localizationService.getMessage("db_prompt_none"));
+        String transactionMarker = session.isInTransaction() ? "*" : ""; // 有未提交的事务
+        out.print(localizationService.getMessage("db_prompt_prefix") + " (" + currentDbName + transactionMarker + ")> ");
     }
 
     private void processCommand(String command) throws IOException {
@@ -96,6 +147,10 @@ public class JsonDBCLI {
         String action = parts[0].toUpperCase();
         String arguments = parts.length > 1 ? parts[1] : "";
 
+        if (session.isInTransaction() && TRANSACTION_BLOCKED_ACTIONS.contains(action)) {
+            err.println(localizationService.getMessage("error_statement_in_transaction", action));
+            return;
+        }
         switch (action) {
             case "CREATE":
                 handleCreate(arguments);
@@ -110,65 +165,150 @@ public class JsonDBCLI {
                 handleShow(arguments);
                 break;
             case "INSERT":
-                handleInsert(arguments);
-                break;
             case "SELECT":
-                handleSelect(arguments);
-                break;
             case "DELETE":
-                handleDelete(arguments);
-                break;
             case "UPDATE":
-                handleUpdate(arguments);
+            case "PREPARE":
+            case "EXECUTE":
+            case "DEALLOCATE":
+            case "DECLARE":
+            case "FETCH":
+            case "CLOSE":
+            case "EXPLAIN":
+                executeStatement(SqlParser.parse(command));
+                break;
+            case "COPY":
+                handleCopy(arguments);
+                break;
+            case "ANALYZE":
+                handleAnalyze(arguments);
+                break;
+            case "CHECKPOINT":
+                handleCheckpoint();
+                break;
+            case "ALTER":
+                handleAlter(arguments);
+                break;
+            case "EXPORT":
+                handleExport(arguments);
+                break;
+            case "BEGIN":
+                dbManager.beginTransaction(session);
+                out.println(localizationService.getMessage("message_transaction_started"));
+                break;
+            case "COMMIT":
+                handleCommit();
+                break;
+            case "ROLLBACK":
+                out.println(localizationService.getMessage("message_transaction_rolled_back", dbManager.rollback(session)));
                 break;
             case "HELP":
                 handleHelp();
                 break;
+            case "SET":
+                handleSet(arguments);
+                break;
             default:
-                System.err.println(localizationService.getMessage("error_unknown_command", action));
+                err.println(localizationService.getMessage("error_unknown_command", action));
         }
     }
     
+    private void handleCommit() throws IOException {
+        List<WalRecord> applied = dbManager.commit(session);
+        int rowCount = 0;
+        for (WalRecord record : applied) {
+            if (record.getType() == WalRecord.Type.INSERT) {
+                rowCount++;
+            } else if (record.getType() == WalRecord.Type.COPY) {
+                rowCount += record.getRows().size();
+            } else {
+                rowCount += record.getRowIds().size();
+            }
+        }
+        out.println(localizationService.getMessage("message_transaction_committed", applied.size(), rowCount));
+    }
+
+    /**
+     * 会话在事务中时把数据变更排队到 COMMIT 再执行，并输出排队信息。
+     * @return 变更已排队；返回 false 时调用者应立即执行变更
+     */
+    private boolean queueInTransaction(String tableName, Function<Table, WalRecord> change) {
+        if (!session.isInTransaction()) {
+            return false;
+        }
+        int pending = dbManager.queueChange(session, tableName, change);
+        out.println(localizationService.getMessage("message_change_queued", pending));
+        return true;
+    }
+
+    // SET LANGUAGE <lang_code> 或 SET OUTPUT FORMAT <format>
+    private void handleSet(String arguments) {
+        String[] parts = arguments.split("\\s+");
+        if (parts.length == 2 && parts[0].equalsIgnoreCase("LANGUAGE")) {
+            handleSetLanguage(parts[1]);
+        } else if (parts.length == 3 && parts[0].equalsIgnoreCase("OUTPUT") && parts[1].equalsIgnoreCase("FORMAT")) {
+            resultWriter = createResultWriter(OutputFormat.fromName(parts[2]));
+            out.println(localizationService.getMessage("message_output_format_set", resultWriter.getFormat()));
+        } else {
+            err.println(localizationService.getMessage("error_invalid_syntax") + localizationService.getMessage("help_set_language")
+                + System.lineSeparator() + localizationService.getMessage("help_set_output_format"));
+        }
+    }
+
+    private ResultWriter createResultWriter(OutputFormat format) {
+        DBConfig config = dbManager.getConfig();
+        return ResultWriter.create(format, config.getOutputBufferChars(), config.getOutputAlignRows());
+    }
+
     private void handleSetLanguage(String langCode) {
         if (localizationService.setLanguage(langCode)) {
             String langName = langCode;
             if (langCode.equalsIgnoreCase("en")) langName = "English";
             if (langCode.equalsIgnoreCase("zh")) langName = "中文 (Simplified Chinese)";
-            System.out.println(localizationService.getMessage("message_language_set", langName));
+            out.println(localizationService.getMessage("message_language_set", langName));
         } else {
-            System.err.println(localizationService.getMessage("error_unsupported_language", langCode, LocalizationService.getSupportedLanguageCodes().toString()));
+            err.println(localizationService.getMessage("error_unsupported_language", langCode, LocalizationService.getSupportedLanguageCodes().toString()));
         }
     }
 
     private void handleCreate(String arguments) throws IOException {
         String[] parts = arguments.split("\\s+", 2); 
         if (parts.length < 2) {
-            System.err.println(localizationService.getMessage("usage_create_db_table"));
+            err.println(localizationService.getMessage("usage_create_db_table"));
             return;
         }
         String type = parts[0].toUpperCase();
         String restOfArguments = parts[1];
 
         if ("DATABASE".equals(type)) {
-            dbManager.createDatabase(restOfArguments);
+            String[] dbParts = restOfArguments.trim().split("\\s+");
+            if (dbParts.length == 1) {
+                dbManager.createDatabase(dbParts[0]);
+                out.println(localizationService.getMessage("message_db_created", dbParts[0]));
+            } else if (dbParts.length == 3 && "FORMAT".equalsIgnoreCase(dbParts[1])) {
+                dbManager.createDatabase(dbParts[0], StorageFormat.fromName(dbParts[2]));
+                out.println(localizationService.getMessage("message_db_created", dbParts[0]));
+            } else {
+                err.println(localizationService.getMessage("error_invalid_syntax") + localizationService.getMessage("help_create_db").trim());
+            }
         } else if ("TABLE".equals(type)) {
             int firstParen = restOfArguments.indexOf('(');
             int lastParen = restOfArguments.lastIndexOf(')');
 
             if (firstParen == -1 || lastParen == -1 || firstParen >= lastParen) {
-                System.err.println(localizationService.getMessage("error_invalid_syntax") + "Usage: CREATE TABLE <tablename> (col1 type1, ...)");
+                err.println(localizationService.getMessage("error_invalid_syntax") + "Usage: CREATE TABLE <tablename> (col1 type1 [PRIMARY KEY | UNIQUE], ...)");
                 return;
             }
 
             String tableName = restOfArguments.substring(0, firstParen).trim();
             if (tableName.isEmpty()) {
-                System.err.println(localizationService.getMessage("error_name_empty", "Table"));
+                err.println(localizationService.getMessage("error_name_empty", "Table"));
                 return;
             }
 
             String columnsString = restOfArguments.substring(firstParen + 1, lastParen).trim();
             if (columnsString.isEmpty()) {
-                System.err.println(localizationService.getMessage("error_column_definitions_empty"));
+                err.println(localizationService.getMessage("error_column_definitions_empty"));
                 return;
             }
 
@@ -177,40 +317,102 @@ public class JsonDBCLI {
 
             for (String colDef : columnDefs) {
                 String[] colParts = colDef.trim().split("\\s+");
-                if (colParts.length != 2) {
-                    System.err.println(localizationService.getMessage("error_invalid_column_definition", colDef.trim()));
+                if (colParts.length < 2) {
+                    err.println(localizationService.getMessage("error_invalid_column_definition", colDef.trim()));
                     return; 
                 }
                 String colName = colParts[0].trim();
                 String colTypeStr = colParts[1].trim().toUpperCase();
+                // 可选的列约束：PRIMARY KEY 和 / 或 UNIQUE
+                String constraints = String.join(" ", Arrays.copyOfRange(colParts, 2, colParts.length)).toUpperCase();
+                boolean primaryKey = false;
+                boolean unique = false;
+                for (String constraint : constraints.isEmpty() ? new String[0] : constraints.replace("PRIMARY KEY", "PRIMARY_KEY").split(" ")) {
+                    if (constraint.equals("PRIMARY_KEY")) {
+                        primaryKey = true;
+                    } else if (constraint.equals("UNIQUE")) {
+                        unique = true;
+                    } else {
+                        err.println(localizationService.getMessage("error_invalid_column_definition", colDef.trim()));
+                        return;
+                    }
+                }
                 try {
                     DataType dataType = DataType.valueOf(colTypeStr);
-                    columnList.add(new Column(colName, dataType));
+                    columnList.add(new Column(colName, dataType, primaryKey, unique));
                 } catch (IllegalArgumentException e) {
-                    System.err.println(localizationService.getMessage("error_invalid_data_type", colTypeStr, colName, Arrays.toString(DataType.values())));
+                    err.println(localizationService.getMessage("error_invalid_data_type", colTypeStr, colName, Arrays.toString(DataType.values())));
                     return; 
                 }
             }
 
             if (columnList.isEmpty()) {
-                System.err.println(localizationService.getMessage("error_no_columns_defined", tableName));
+                err.println(localizationService.getMessage("error_no_columns_defined", tableName));
                 return;
             }
 
-            Database currentDb = dbManager.ensureCurrentDatabaseSelected(); 
-            currentDb.createTable(tableName, columnList);
-            dbManager.saveCurrentDatabase(); 
-            System.out.println(localizationService.getMessage("message_table_created", tableName, currentDb.getName()));
+            Database currentDb = dbManager.ensureCurrentDatabaseSelected(session); 
+            dbManager.applyChange(currentDb, WalRecord.createTable(tableName, columnList));
+            out.println(localizationService.getMessage("message_table_created", tableName, currentDb.getName()));
 
+        } else if ("INDEX".equals(type)) {
+            handleCreateIndex(restOfArguments);
         } else {
-            System.err.println(localizationService.getMessage("error_unknown_command", "CREATE " + type));
+            err.println(localizationService.getMessage("error_unknown_command", "CREATE " + type));
+        }
+    }
+
+    private void handleCreateIndex(String arguments) throws IOException {
+        int onPos = arguments.toUpperCase().indexOf(" ON ");
+        int firstParen = arguments.indexOf('(');
+        int lastParen = arguments.lastIndexOf(')');
+        if (onPos == -1 || firstParen == -1 || lastParen == -1 || firstParen < onPos || firstParen >= lastParen) {
+            err.println(localizationService.getMessage("error_invalid_syntax") + localizationService.getMessage("help_create_index").trim());
+            return;
+        }
+        String indexName = arguments.substring(0, onPos).trim();
+        String tableName = arguments.substring(onPos + " ON ".length(), firstParen).trim();
+        String columnName = arguments.substring(firstParen + 1, lastParen).trim();
+        IndexType indexType = IndexType.HASH;
+        String usingPart = arguments.substring(lastParen + 1).trim();
+        if (!usingPart.isEmpty()) {
+            String[] usingTokens = usingPart.split("\\s+");
+            if (usingTokens.length != 2 || !usingTokens[0].equalsIgnoreCase("USING")) {
+                err.println(localizationService.getMessage("error_invalid_syntax") + localizationService.getMessage("help_create_index").trim());
+                return;
+            }
+            try {
+                indexType = IndexType.valueOf(usingTokens[1].toUpperCase());
+            } catch (IllegalArgumentException e) {
+                err.println(localizationService.getMessage("error_invalid_index_type", usingTokens[1], Arrays.toString(IndexType.values())));
+                return;
+            }
+        }
+        if (indexName.isEmpty()) {
+            err.println(localizationService.getMessage("error_name_empty", "Index"));
+            return;
+        }
+        if (tableName.isEmpty()) {
+            err.println(localizationService.getMessage("error_name_empty", "Table (for CREATE INDEX)"));
+            return;
+        }
+        Database currentDb = dbManager.ensureCurrentDatabaseSelected(session);
+        Table table = currentDb.getTable(tableName)
+            .orElseThrow(() -> new IllegalArgumentException(localizationService.getMessage("error_table_not_found", tableName, currentDb.getName())));
+        Column column = table.getColumn(columnName)
+            .orElseThrow(() -> new IllegalArgumentException(localizationService.getMessage("error_column_not_found", columnName, tableName)));
+        if (currentDb.findIndexOwner(indexName).isPresent()) {
+            err.println(localizationService.getMessage("error_index_already_exists", indexName, currentDb.getName()));
+            return;
         }
+        dbManager.applyChange(currentDb, WalRecord.createIndex(tableName, new IndexDefinition(indexName, column.getName(), indexType)));
+        out.println(localizationService.getMessage("message_index_created", indexName, tableName, column.getName()));
     }
 
     private void handleDrop(String arguments) throws IOException {
         String[] parts = arguments.split("\\s+", 2);
         if (parts.length < 2) {
-            System.err.println(localizationService.getMessage("usage_drop_db_table"));
+            err.println(localizationService.getMessage("usage_drop_db_table"));
             return;
         }
         String type = parts[0].toUpperCase();
@@ -218,22 +420,35 @@ public class JsonDBCLI {
 
         if ("DATABASE".equals(type)) {
             dbManager.dropDatabase(name);
+            out.println(localizationService.getMessage("message_db_dropped", name.trim()));
         } else if ("TABLE".equals(type)) {
-            System.out.println("DROP TABLE functionality not yet implemented.");
+            out.println("DROP TABLE functionality not yet implemented.");
+        } else if ("INDEX".equals(type)) {
+            String indexName = name.trim();
+            Database currentDb = dbManager.ensureCurrentDatabaseSelected(session);
+            Table table = currentDb.findIndexOwner(indexName)
+                .orElseThrow(() -> new IllegalArgumentException(localizationService.getMessage("error_index_not_found", indexName, currentDb.getName())));
+            IndexDefinition definition = table.getIndexDefinitions().stream()
+                .filter(def -> def.getName().equals(indexName))
+                .findFirst()
+                .orElseThrow(IllegalStateException::new);
+            dbManager.applyChange(currentDb, WalRecord.dropIndex(table.getName(), definition));
+            out.println(localizationService.getMessage("message_index_dropped", indexName, table.getName()));
         } else {
-            System.err.println(localizationService.getMessage("error_unknown_command", "DROP " + type));
+            err.println(localizationService.getMessage("error_unknown_command", "DROP " + type));
         }
     }
 
     private void handleUse(String dbName) {
         if (dbName.isEmpty()) {
-            System.err.println(localizationService.getMessage("usage_use_db"));
+            err.println(localizationService.getMessage("usage_use_db"));
             return;
         }
         try {
-            dbManager.useDatabase(dbName);
+            dbManager.useDatabase(session, dbName);
+            out.println(localizationService.getMessage("message_db_now_using", dbName.trim()));
         } catch (IllegalArgumentException e){
-             System.err.println(localizationService.getMessage("error_prefix") + e.getMessage());
+             err.println(localizationService.getMessage("error_prefix") + e.getMessage());
         }
     }
 
@@ -242,459 +457,872 @@ public class JsonDBCLI {
         if ("DATABASES".equals(upperArgs)) {
             List<String> dbNames = dbManager.listDatabaseNames();
             if (dbNames.isEmpty()) {
-                System.out.println(localizationService.getMessage("message_no_databases_found"));
+                out.println(localizationService.getMessage("message_no_databases_found"));
             } else {
-                System.out.println(localizationService.getMessage("message_databases_list_header"));
-                dbNames.forEach(System.out::println);
+                out.println(localizationService.getMessage("message_databases_list_header"));
+                dbNames.forEach(out::println);
             }
         } else if ("TABLES".equals(upperArgs)) {
             try {
-                Database currentDb = dbManager.ensureCurrentDatabaseSelected();
+                Database currentDb = dbManager.ensureCurrentDatabaseSelected(session);
                 List<String> tableNames = currentDb.listTableNames();
                 if (tableNames.isEmpty()) {
-                    System.out.println(localizationService.getMessage("message_no_tables_found", currentDb.getName()));
+                    out.println(localizationService.getMessage("message_no_tables_found", currentDb.getName()));
                 } else {
-                    System.out.println(localizationService.getMessage("message_tables_list_header", currentDb.getName()));
-                    tableNames.forEach(System.out::println);
+                    out.println(localizationService.getMessage("message_tables_list_header", currentDb.getName()));
+                    tableNames.forEach(out::println);
                 }
             } catch (IllegalStateException e) {
-                 System.err.println(localizationService.getMessage("error_prefix") + e.getMessage());
+                 err.println(localizationService.getMessage("error_prefix") + e.getMessage());
+            }
+        } else if ("INDEXES".equals(upperArgs)) {
+            Database currentDb = dbManager.ensureCurrentDatabaseSelected(session);
+            boolean found = false;
+            for (String tableName : currentDb.listTableNames()) {
+                Table table = currentDb.getTable(tableName).orElseThrow(IllegalStateException::new);
+                for (IndexDefinition definition : table.read(table::getIndexDefinitions)) {
+                    if (!found) {
+                        out.println(localizationService.getMessage("message_indexes_list_header", currentDb.getName()));
+                        found = true;
+                    }
+                    out.println(localizationService.getMessage("message_index_entry", definition.getName(), tableName, definition.getColumn(), definition.getType()));
+                }
+            }
+            if (!found) {
+                out.println(localizationService.getMessage("message_no_indexes_found", currentDb.getName()));
+            }
+        } else if (upperArgs.startsWith("STATISTICS ")) {
+            showStatistics(arguments.substring("STATISTICS ".length()).trim());
+        } else if ("CHECKPOINTS".equals(upperArgs)) {
+            List<String> dbNames = dbManager.listDatabaseNames();
+            if (dbNames.isEmpty()) {
+                out.println(localizationService.getMessage("message_no_databases_found"));
+                return;
+            }
+            out.println(localizationService.getMessage("message_checkpoints_list_header"));
+            for (String dbName : dbNames) {
+                printCheckpointStats(dbName);
             }
         } else {
-            System.err.println(localizationService.getMessage("error_unknown_command", "SHOW " + upperArgs));
+            err.println(localizationService.getMessage("error_unknown_command", "SHOW " + upperArgs));
         }
     }
 
-    private void handleInsert(String arguments) throws IOException {
-        String upperArguments = arguments.toUpperCase();
-        if (!upperArguments.startsWith("INTO ")) {
-            System.err.println(localizationService.getMessage("error_invalid_syntax") + "Usage: INSERT INTO <tablename> VALUES (...)");
+    // SHOW STATISTICS <table>：ANALYZE 收集并增量维护的列统计，不扫描表
+    private void showStatistics(String tableName) {
+        Database currentDb = dbManager.ensureCurrentDatabaseSelected(session);
+        Table table = currentDb.getTable(tableName)
+            .orElseThrow(() -> new IllegalArgumentException(localizationService.getMessage("error_table_not_found", tableName, currentDb.getName())));
+        List<String> lines = table.read(() -> {
+            TableStatistics statistics = table.getStatistics();
+            if (statistics == null) {
+                return null;
+            }
+            List<String> entries = new ArrayList<>();
+            entries.add(localizationService.getMessage("message_statistics_header", table.getName(),
+                statistics.getAnalyzedRows(), statistics.getModifications()));
+            List<Column> columns = table.getColumnDefinitions();
+            for (int i = 0; i < columns.size(); i++) {
+                ColumnDistribution distribution = statistics.get(i);
+                entries.add(localizationService.getMessage("message_statistics_entry", columns.get(i).getName(),
+                    String.format(Locale.ROOT, "%.3f", distribution.nullFraction()), distribution.getDistinctCount(),
+                    Objects.toString(distribution.getMin(), "NULL"), Objects.toString(distribution.getMax(), "NULL"), distribution.getBucketCount()));
+            }
+            return entries;
+        });
+        if (lines == null) {
+            out.println(localizationService.getMessage("message_statistics_none", table.getName()));
             return;
         }
-        String remainingArgs = arguments.substring("INTO ".length()).trim();
-        int valuesKeywordPos = remainingArgs.toUpperCase().indexOf(" VALUES");
-        if (valuesKeywordPos == -1) {
-            System.err.println(localizationService.getMessage("error_missing_keyword", "VALUES"));
+        lines.forEach(out::println);
+    }
+
+    // ANALYZE <table>：扫描表重新收集统计信息，并写入 WAL
+    private void handleAnalyze(String arguments) throws IOException {
+        String tableName = arguments.trim();
+        if (tableName.isEmpty() || tableName.contains(" ")) {
+            err.println(localizationService.getMessage("error_invalid_syntax") + localizationService.getMessage("help_analyze").trim());
             return;
         }
-        String tableName = remainingArgs.substring(0, valuesKeywordPos).trim();
-        String valuesPart = remainingArgs.substring(valuesKeywordPos + " VALUES".length()).trim();
+        Database currentDb = dbManager.ensureCurrentDatabaseSelected(session);
+        Table table = currentDb.getTable(tableName)
+            .orElseThrow(() -> new IllegalArgumentException(localizationService.getMessage("error_table_not_found", tableName, currentDb.getName())));
+        long startNanos = System.nanoTime();
+        dbManager.applyChange(currentDb, WalRecord.analyze(table.getName()));
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        long rows = table.read(() -> table.getStatistics().getAnalyzedRows());
+        out.println(localizationService.getMessage("message_table_analyzed", table.getName(), rows, millis));
+    }
 
-        if (tableName.isEmpty()) {
-            System.err.println(localizationService.getMessage("error_name_empty", "Table (for INSERT)"));
+    // ALTER DATABASE <name> SET FORMAT JSON|BINARY
+    private void handleAlter(String arguments) throws IOException {
+        String[] parts = arguments.trim().split("\\s+");
+        if (parts.length != 5 || !"DATABASE".equalsIgnoreCase(parts[0])
+                || !"SET".equalsIgnoreCase(parts[2]) || !"FORMAT".equalsIgnoreCase(parts[3])) {
+            err.println(localizationService.getMessage("error_invalid_syntax") + localizationService.getMessage("help_alter_db").trim());
             return;
         }
-        if (!valuesPart.startsWith("(") || !valuesPart.endsWith(")")) {
-            System.err.println(localizationService.getMessage("error_invalid_syntax") + "Values must be in parentheses.");
+        StorageFormat format = StorageFormat.fromName(parts[4]);
+        dbManager.setStorageFormat(parts[1], format);
+        out.println(localizationService.getMessage("message_db_format_changed", parts[1], format));
+    }
+
+    // EXPORT DATABASE <name> TO "<file>"
+    private void handleExport(String arguments) throws IOException {
+        String[] parts = arguments.trim().split("\\s+", 4);
+        if (parts.length != 4 || !"DATABASE".equalsIgnoreCase(parts[0]) || !"TO".equalsIgnoreCase(parts[2])) {
+            err.println(localizationService.getMessage("error_invalid_syntax") + localizationService.getMessage("help_export_db").trim());
             return;
         }
-        String valuesString = valuesPart.substring(1, valuesPart.length() - 1).trim();
-        Database currentDbForCheck = dbManager.ensureCurrentDatabaseSelected();
-        Table tableForCheck = currentDbForCheck.getTable(tableName)
-            .orElseThrow(() -> new IllegalArgumentException(localizationService.getMessage("error_table_not_found", tableName, currentDbForCheck.getName())));
-
-        if (valuesString.isEmpty() && !tableForCheck.getColumnDefinitions().isEmpty() ){
-            System.err.println(localizationService.getMessage("error_values_list_empty"));
+        String file = parts[3].trim();
+        if (file.length() >= 2 && file.startsWith("\"") && file.endsWith("\"")) {
+            file = file.substring(1, file.length() - 1);
+        }
+        if (file.isEmpty()) {
+            err.println(localizationService.getMessage("error_invalid_syntax") + localizationService.getMessage("help_export_db").trim());
             return;
         }
+        long bytes = dbManager.exportDatabase(parts[1], Paths.get(file));
+        out.println(localizationService.getMessage("message_db_exported", parts[1], file, bytes));
+    }
 
-        List<String> rawValueStrings = new ArrayList<>();
-        if (!valuesString.isEmpty()) {
-            List<String> tempList = new ArrayList<>();
-            StringBuilder currentValue = new StringBuilder();
-            boolean inQuotes = false;
-            for (char c : valuesString.toCharArray()) {
-                if (c == '"') {
-                    inQuotes = !inQuotes;
-                    currentValue.append(c); 
-                } else if (c == ',' && !inQuotes) {
-                    tempList.add(currentValue.toString().trim());
-                    currentValue.setLength(0); 
-                } else {
-                    currentValue.append(c);
-                }
+    private void handleCopy(String arguments) throws IOException {
+        String usage = localizationService.getMessage("error_invalid_syntax") + localizationService.getMessage("help_copy").trim();
+        String[] head = arguments.trim().split("\\s+", 3);
+        if (head.length < 3 || !"FROM".equalsIgnoreCase(head[1])) {
+            err.println(usage);
+            return;
+        }
+        String rest = head[2].trim();
+        String file;
+        String options;
+        if (rest.startsWith("\"") || rest.startsWith("'")) {
+            int end = rest.indexOf(rest.charAt(0), 1);
+            if (end < 0) {
+                err.println(usage);
+                return;
             }
-            tempList.add(currentValue.toString().trim()); 
-            rawValueStrings.addAll(tempList);
+            file = rest.substring(1, end);
+            options = rest.substring(end + 1).trim();
+        } else {
+            String[] fileAndOptions = rest.split("\\s+", 2);
+            file = fileAndOptions[0];
+            options = fileAndOptions.length > 1 ? fileAndOptions[1] : "";
         }
-       
-        Database currentDb = dbManager.ensureCurrentDatabaseSelected();
-        Table table = currentDb.getTable(tableName)
-                .orElseThrow(() -> new IllegalArgumentException(localizationService.getMessage("error_table_not_found", tableName, currentDb.getName())));
+        CopyFormat format = null;
+        boolean header = false;
+        String[] tokens = options.isEmpty() ? new String[0] : options.split("\\s+");
+        for (int i = 0; i < tokens.length; i++) {
+            if ("FORMAT".equalsIgnoreCase(tokens[i]) && i + 1 < tokens.length) {
+                format = CopyFormat.fromName(tokens[++i]);
+            } else if ("HEADER".equalsIgnoreCase(tokens[i])) {
+                header = true;
+            } else {
+                err.println(usage);
+                return;
+            }
+        }
+        if (file.isEmpty()) {
+            err.println(usage);
+            return;
+        }
+        Database currentDb = dbManager.ensureCurrentDatabaseSelected(session);
+        Table table = currentDb.getTable(head[0])
+            .orElseThrow(() -> new IllegalArgumentException(localizationService.getMessage("error_table_not_found", head[0], currentDb.getName())));
+        Path path = Paths.get(file);
+        long startNanos = System.nanoTime();
+        long rows = dbManager.copyFrom(currentDb, table.getName(), path, format == null ? CopyFormat.fromFileName(path) : format, header);
+        long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        out.println(localizationService.getMessage("message_rows_copied", rows, table.getName(), millis, rows * 1000 / millis));
+    }
+
+    private void handleCheckpoint() throws IOException {
+        Database currentDb = dbManager.ensureCurrentDatabaseSelected(session);
+        dbManager.saveDatabase(currentDb);
+        printCheckpointStats(currentDb.getName());
+    }
+
+    private void printCheckpointStats(String dbName) {
+        CheckpointStats stats = dbManager.getCheckpointStats(dbName).orElse(null);
+        if (stats == null || stats.getCheckpointCount() == 0) {
+            out.println(localizationService.getMessage("message_checkpoint_none", dbName));
+            return;
+        }
+        out.println(localizationService.getMessage("message_checkpoint_stats", dbName,
+            stats.getCheckpointCount(), stats.getLastDurationMillis(), stats.getLastBytesWritten(),
+            stats.getTotalBytesWritten(), stats.getLastCheckpointLsn(), stats.getFailureCount()));
+    }
+
+    /**
+     * 执行由 {@link SqlParser} 解析的语句。
+     */
+    private void executeStatement(Statement statement) throws IOException {
+        if (statement instanceof Statement.Select) {
+            executeSelect((Statement.Select) statement);
+        } else if (statement instanceof Statement.Insert) {
+            executeInsert((Statement.Insert) statement);
+        } else if (statement instanceof Statement.Update) {
+            executeUpdate((Statement.Update) statement);
+        } else if (statement instanceof Statement.Delete) {
+            executeDelete((Statement.Delete) statement);
+        } else if (statement instanceof Statement.Prepare) {
+            executePrepare((Statement.Prepare) statement);
+        } else if (statement instanceof Statement.Execute) {
+            executeExecute((Statement.Execute) statement);
+        } else if (statement instanceof Statement.Deallocate) {
+            executeDeallocate((Statement.Deallocate) statement);
+        } else if (statement instanceof Statement.Declare) {
+            executeDeclare((Statement.Declare) statement);
+        } else if (statement instanceof Statement.Fetch) {
+            executeFetch((Statement.Fetch) statement);
+        } else if (statement instanceof Statement.Close) {
+            executeClose((Statement.Close) statement);
+        } else if (statement instanceof Statement.Explain) {
+            executeExplain((Statement.Explain) statement);
+        } else {
+            throw new IllegalStateException("Unsupported statement: " + statement.getClass().getSimpleName());
+        }
+    }
+
+    private Table requireTable(Database db, String tableName) {
+        return db.getTable(tableName)
+            .orElseThrow(() -> new IllegalArgumentException(localizationService.getMessage("error_table_not_found", tableName, db.getName())));
+    }
+
+    private void executeInsert(Statement.Insert insert) throws IOException {
+        String tableName = insert.getTable();
+        Database currentDb = dbManager.ensureCurrentDatabaseSelected(session);
+        Table table = requireTable(currentDb, tableName);
 
         List<Column> columns = table.getColumnDefinitions();
-        if (rawValueStrings.size() != columns.size()) {
-            System.err.println(localizationService.getMessage("error_column_count_mismatch_insert", tableName, columns.size(), rawValueStrings.size()));
+        if (insert.getRows().size() > 1) {
+            // 多行 INSERT 与 EXECUTE 相同：解析一次，作为一条批量追加记录写入
+            insertRows(currentDb, PreparedInsert.prepare(table, insert.getRows()), Collections.emptyList());
+            return;
+        }
+        List<Expression> values = insert.getRows().get(0);
+        if (values.isEmpty() && !columns.isEmpty()) {
+            err.println(localizationService.getMessage("error_values_list_empty"));
+            return;
+        }
+        if (values.size() != columns.size()) {
+            err.println(localizationService.getMessage("error_column_count_mismatch_insert", tableName, columns.size(), values.size()));
             return;
         }
 
         Map<String, Object> rowData = new LinkedHashMap<>();
         for (int i = 0; i < columns.size(); i++) {
             Column column = columns.get(i);
-            String rawValue = rawValueStrings.get(i);
-            Object actualValue;
-            if (rawValue.equalsIgnoreCase("NULL")) {
-                actualValue = null;
-            } else if (rawValue.startsWith("\"") && rawValue.endsWith("\"") && rawValue.length() >= 2) {
-                actualValue = rawValue.substring(1, rawValue.length() - 1); 
-            } else {
-                actualValue = rawValue; 
-            }
+            Expression value = values.get(i).bind(table); // 参数只能出现在 PREPARE 中，这里会报错
+            Object actualValue = ((Expression.Literal) value).getValue();
+            column.convertValue(actualValue); // 类型错误在语句执行时报告，而不是等到事务提交
             rowData.put(column.getName(), actualValue);
         }
-        try {
-            table.addRow(rowData); 
-            dbManager.saveCurrentDatabase();
-            System.out.println(localizationService.getMessage("message_row_inserted", tableName));
-        } catch (IllegalArgumentException e) {
-            System.err.println(localizationService.getMessage("error_prefix") + e.getMessage());
+        if (queueInTransaction(tableName, locked -> WalRecord.insert(tableName, rowData))) {
+            return;
         }
+        dbManager.applyChange(currentDb, WalRecord.insert(tableName, rowData));
+        out.println(localizationService.getMessage("message_row_inserted", tableName));
     }
 
-    private void handleSelect(String arguments) throws IOException {
-        String upperArgs = arguments.toUpperCase();
-        int fromPos = upperArgs.indexOf(" FROM ");
-        if (fromPos == -1) {
-            System.err.println(localizationService.getMessage("error_missing_keyword", "FROM (in SELECT)"));
+    /**
+     * 代入参数执行一条已准备的 INSERT。所有行作为一条批量追加记录直接写入列存储，
+     * 不再经过语句解析和按列名组织的行数据。
+     */
+    private void insertRows(Database db, PreparedInsert insert, List<Expression> arguments) throws IOException {
+        List<Object[]> rows = insert.bind(arguments);
+        String tableName = insert.getTableName();
+        if (queueInTransaction(tableName, locked -> WalRecord.copy(tableName, rows))) {
             return;
         }
-        String columnsPart = arguments.substring(0, fromPos).trim();
-        String tableAndWherePart = arguments.substring(fromPos + " FROM ".length()).trim();
-        String tableName; String whereClause = null;
-        int whereKeywordPos = tableAndWherePart.toUpperCase().indexOf(" WHERE ");
-
-        if (whereKeywordPos != -1) {
-            tableName = tableAndWherePart.substring(0, whereKeywordPos).trim();
-            whereClause = tableAndWherePart.substring(whereKeywordPos + " WHERE ".length()).trim();
-            if (whereClause.isEmpty()) {
-                System.err.println(localizationService.getMessage("error_empty_clause", "WHERE"));
-                return;
-            }
+        dbManager.applyChange(db, WalRecord.copy(tableName, rows));
+        if (rows.size() == 1) {
+            out.println(localizationService.getMessage("message_row_inserted", tableName));
         } else {
-            tableName = tableAndWherePart.trim();
+            out.println(localizationService.getMessage("message_rows_inserted", rows.size(), tableName));
         }
-        if (tableName.isEmpty()) {
-            System.err.println(localizationService.getMessage("error_name_empty", "Table (for SELECT)"));
+    }
+
+    private void executePrepare(Statement.Prepare prepare) {
+        Statement.Insert insert = prepare.getInsert();
+        Database currentDb = dbManager.ensureCurrentDatabaseSelected(session);
+        PreparedInsert prepared = PreparedInsert.prepare(requireTable(currentDb, insert.getTable()), insert.getRows());
+        preparedStatements.put(prepare.getName().toLowerCase(Locale.ROOT), prepared);
+        out.println(localizationService.getMessage("message_statement_prepared", prepare.getName(), prepared.getParameterCount()));
+    }
+
+    private void executeExecute(Statement.Execute execute) throws IOException {
+        String name = execute.getName();
+        PreparedInsert prepared = preparedStatements.get(name.toLowerCase(Locale.ROOT));
+        if (prepared == null) {
+            err.println(localizationService.getMessage("error_prepared_statement_not_found", name));
             return;
         }
-        if (columnsPart.isEmpty()) {
-            System.err.println(localizationService.getMessage("error_invalid_syntax") + "Column selection cannot be empty.");
+        Database currentDb = dbManager.ensureCurrentDatabaseSelected(session);
+        Table table = requireTable(currentDb, prepared.getTableName());
+        PreparedInsert insert = prepared;
+        if (!prepared.isValidFor(table)) {
+            // 表在准备之后被重建（或切换到了另一个数据库中的同名表），按新的表结构重新准备
+            insert = PreparedInsert.prepare(table, prepared.getTuples());
+            preparedStatements.put(name.toLowerCase(Locale.ROOT), insert);
+        }
+        insertRows(currentDb, insert, execute.getArguments());
+    }
+
+    private void executeDeallocate(Statement.Deallocate deallocate) {
+        String name = deallocate.getName();
+        if (name == null) {
+            preparedStatements.clear();
+            name = "ALL";
+        } else if (preparedStatements.remove(name.toLowerCase(Locale.ROOT)) == null) {
+            err.println(localizationService.getMessage("error_prepared_statement_not_found", name));
             return;
         }
+        out.println(localizationService.getMessage("message_statement_deallocated", name));
+    }
 
-        Database currentDb = dbManager.ensureCurrentDatabaseSelected();
-        Table table = currentDb.getTable(tableName)
-                .orElseThrow(() -> new IllegalArgumentException(localizationService.getMessage("error_table_not_found", tableName, currentDb.getName())));
+    private void executeSelect(Statement.Select select) {
+        try (QueryResult result = openResult(select)) {
+            printRows(result.headers, result.rows, result.positions);
+        }
+    }
 
-        List<String> selectedColumnNames;
-        List<Column> tableColumns = table.getColumnDefinitions();
-        if (columnsPart.equals("*")) {
-            selectedColumnNames = tableColumns.stream().map(Column::getName).collect(Collectors.toList());
-        } else {
-            List<String> rawSelectedColumnNames = Arrays.stream(columnsPart.split(",")).map(String::trim).collect(Collectors.toList());
-            selectedColumnNames = new ArrayList<>();
-            for (String rawScn : rawSelectedColumnNames) {
-                boolean found = false;
-                for (Column tableCol : tableColumns) {
-                    if (tableCol.getName().equalsIgnoreCase(rawScn)) {
-                        selectedColumnNames.add(tableCol.getName());
-                        found = true; break;
-                    }
-                }
-                if (!found) {
-                    System.err.println(localizationService.getMessage("error_column_not_found", rawScn, tableName));
-                    return;
-                }
-            }
+    /**
+     * 规划并打开 SELECT 的结果。普通查询和连接查询返回在读视图上逐批读取的游标：看到语句开始时的一致状态，
+     * 不阻塞其他会话的写入；读取结果时不持有锁，只有读视图保持打开，直到结果关闭。聚合查询在返回之前完成分组，不保留读视图。
+     */
+    private QueryResult openResult(Statement.Select select) {
+        Database currentDb = dbManager.ensureCurrentDatabaseSelected(session);
+        Table table = requireTable(currentDb, select.getTable());
+        if (select.getJoin() != null) {
+            return openJoinResult(currentDb, table, select);
         }
-        if (selectedColumnNames.isEmpty()) {
-            System.err.println("No columns selected or specified correctly.");
+        ColumnScope scope = ColumnScope.of(table, select.getAlias());
+        if (select.isAggregate()) {
+            return openAggregateResult(table, scope, select);
+        }
+        int[] selectedPositions = selectedPositions(scope, select);
+        QueryPlan plan = planSelect(table, scope, select);
+        ReadView view = table.openReadView();
+        try {
+            return new QueryResult(columnNames(scope, selectedPositions), table.select(view, plan, dbManager.getParallelScan()),
+                selectedPositions, view);
+        } catch (RuntimeException e) {
+            view.close();
+            throw e;
+        }
+    }
+
+    /**
+     * DECLARE：打开 SELECT 的结果并保存为本会话的游标，之后用 FETCH 分页读取。游标保持读视图打开，
+     * 各次 FETCH 看到的是 DECLARE 时的同一个一致状态；CLOSE 或会话结束时关闭。
+     */
+    private void executeDeclare(Statement.Declare declare) {
+        String key = declare.getName().toLowerCase(Locale.ROOT);
+        if (cursors.containsKey(key)) {
+            err.println(localizationService.getMessage("error_cursor_exists", declare.getName()));
             return;
         }
-        List<Row> resultRows = new ArrayList<>(table.getRows());
-        if (whereClause != null) {
-            String[] whereParts = whereClause.split("=", 2);
-            if (whereParts.length != 2) {
-                System.err.println(localizationService.getMessage("error_invalid_syntax") + "WHERE format: <col> = <val>");
+        cursors.put(key, openResult(declare.getSelect()));
+        out.println(localizationService.getMessage("message_cursor_declared", declare.getName()));
+    }
+
+    // FETCH：输出游标接下来的行，读完之后再 FETCH 输出 0 行
+    private void executeFetch(Statement.Fetch fetch) {
+        QueryResult cursor = cursors.get(fetch.getName().toLowerCase(Locale.ROOT));
+        if (cursor == null) {
+            err.println(localizationService.getMessage("error_cursor_not_found", fetch.getName()));
+            return;
+        }
+        printRows(cursor.headers, cursor.rows.limit(fetch.getCount()), cursor.positions);
+    }
+
+    private void executeClose(Statement.Close close) {
+        String name = close.getName();
+        if (name == null) {
+            closeCursors();
+            name = "ALL";
+        } else {
+            QueryResult cursor = cursors.remove(name.toLowerCase(Locale.ROOT));
+            if (cursor == null) {
+                err.println(localizationService.getMessage("error_cursor_not_found", name));
                 return;
             }
-            String filterColumnName = whereParts[0].trim();
-            String filterValueString = whereParts[1].trim();
-            Column filterColumn = table.getColumn(filterColumnName)
-                .orElseThrow(() -> new IllegalArgumentException(localizationService.getMessage("error_column_not_found_where", filterColumnName, tableName)));
-            Object filterValue;
-            if (filterValueString.equalsIgnoreCase("NULL")) {
-                filterValue = null;
-            } else if (filterValueString.startsWith("\"") && filterValueString.endsWith("\"") && filterValueString.length() >= 2) {
-                filterValue = filterColumn.convertValue(filterValueString.substring(1, filterValueString.length() - 1));
-            } else {
-                filterValue = filterColumn.convertValue(filterValueString);
-            }
-            resultRows = resultRows.stream()
-                                   .filter(row -> {
-                                       Object rowValue = row.getValue(filterColumn.getName());
-                                       return (filterValue == null) ? rowValue == null : filterValue.equals(rowValue);
-                                   })
-                                   .collect(Collectors.toList());
-        }
-        System.out.println(String.join("\t|\t", selectedColumnNames));
-        selectedColumnNames.forEach(header -> {
-            for (int i = 0; i < header.length() + 2; i++) System.out.print("-");
-            System.out.print("-");
-        });
-        System.out.println();
-        if (resultRows.isEmpty()) {
-            System.out.println(localizationService.getMessage("message_select_0_rows"));
-        } else {
-            for (Row row : resultRows) {
-                List<String> outputValues = new ArrayList<>();
-                for (String colName : selectedColumnNames) {
-                    Object val = row.getValue(colName);
-                    outputValues.add(val == null ? "NULL" : val.toString());
-                }
-                System.out.println(String.join("\t|\t", outputValues));
+            cursor.close();
+        }
+        out.println(localizationService.getMessage("message_cursor_closed", name));
+    }
+
+    private void closeCursors() {
+        cursors.values().forEach(QueryResult::close);
+        cursors.clear();
+    }
+
+    // 选择列表中的各列在行值数组中的位置；SELECT * 时是所有列
+    private int[] selectedPositions(ColumnScope scope, Statement.Select select) {
+        if (select.getItems() == null) {
+            int[] positions = new int[scope.size()];
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = i;
             }
-            String row_count_msg_key = resultRows.size() == 1 ? "message_row_singular" : "message_row_plural";
-            System.out.println("(" + resultRows.size() + " " + localizationService.getMessage(row_count_msg_key) + ")");
+            return positions;
         }
+        int[] positions = new int[select.getItems().size()];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = requireColumn(scope, select.getItems().get(i).getColumn());
+        }
+        return positions;
     }
 
-    private void handleDelete(String arguments) throws IOException {
-        String upperArgs = arguments.toUpperCase();
-        if (!upperArgs.startsWith("FROM ")) {
-            System.err.println(localizationService.getMessage("error_missing_keyword", "FROM (in DELETE)"));
-            return;
+    private static List<String> columnNames(ColumnScope scope, int[] positions) {
+        List<String> names = new ArrayList<>(positions.length);
+        for (int position : positions) {
+            names.add(scope.name(position));
         }
-        String tableAndWherePart = arguments.substring("FROM ".length()).trim();
-        String tableName; String whereClause = null;
-        int whereKeywordPos = tableAndWherePart.toUpperCase().indexOf(" WHERE ");
-        if (whereKeywordPos != -1) {
-            tableName = tableAndWherePart.substring(0, whereKeywordPos).trim();
-            whereClause = tableAndWherePart.substring(whereKeywordPos + " WHERE ".length()).trim();
-            if (whereClause.isEmpty()) {
-                System.err.println(localizationService.getMessage("error_empty_clause", "WHERE"));
-                return;
+        return names;
+    }
+
+    /**
+     * 带聚合函数或 GROUP BY 的 SELECT：按查询规划选出的访问路径和条件读取行，由 {@link HashAggregator} 分组计算，
+     * 再按 ORDER BY 排序各组、应用 LIMIT 和 OFFSET。与普通查询一样在读视图上执行。
+     */
+    private QueryResult openAggregateResult(Table table, ColumnScope scope, Statement.Select select) {
+        AggregateQuery query = new AggregateQuery(scope, select);
+        QueryPlan plan = planAggregate(table, scope, select);
+        try (ReadView view = table.openReadView()) {
+            table.aggregate(view, plan, query.aggregator, dbManager.getParallelScan());
+        }
+        return new QueryResult(query.headers, groupRows(query, select), query.outputPositions);
+    }
+
+    // 分组之后的结果：各组按 ORDER BY 排序，跳过 OFFSET 组，最多 LIMIT 组
+    private static RowCursor groupRows(AggregateQuery query, Statement.Select select) {
+        int limit = select.getLimit() == null ? -1 : select.getLimit();
+        int needed = limit < 0 ? -1 : (int) Math.min(Integer.MAX_VALUE, (long) limit + select.getOffset());
+        RowCursor rows = RowCursor.of(query.aggregator.results(query.orderPosition, select.isDescending(), needed));
+        rows.skip(select.getOffset());
+        return rows;
+    }
+
+    // 聚合查询只需要满足 WHERE 的行，排序、LIMIT 和 OFFSET 作用于分组之后的结果
+    private QueryPlan planAggregate(Table table, ColumnScope scope, Statement.Select select) {
+        Expression filter = select.getWhere() == null ? null : select.getWhere().bind(scope);
+        return table.plan(filter, null, false, -1, 0);
+    }
+
+    /**
+     * 两张表的 JOIN：由 {@link JoinPlanner} 选择哈希连接或索引嵌套循环连接，连接后的行再排序、应用 LIMIT 和 OFFSET，
+     * 或者交给 {@link HashAggregator} 分组。每张表在自己的读视图上读取，表与自身连接时两边共用一个读视图。
+     * 不排序也不分组时结果是连接的游标，读取结果时才逐批连接。
+     */
+    private QueryResult openJoinResult(Database db, Table left, Statement.Select select) {
+        Table right = requireTable(db, select.getJoin().getTable());
+        ColumnScope scope = ColumnScope.of(left, select.getAlias()).join(right, select.getJoin().getAlias());
+        AggregateQuery query = select.isAggregate() ? new AggregateQuery(scope, select) : null;
+        int[] positions = query == null ? selectedPositions(scope, select) : query.outputPositions;
+        int orderIndex = query != null || select.getOrderBy() == null ? -1 : requireColumn(scope, select.getOrderBy().getColumn());
+        int limit = select.getLimit() == null ? -1 : select.getLimit();
+        JoinPlan plan = planJoin(left, right, select);
+        if (query != null) {
+            try (ReadView leftView = left.openReadView(); ReadView rightView = right == left ? null : right.openReadView()) {
+                plan.open(leftView, rightView == null ? leftView : rightView).forEachRemaining(query.aggregator::add);
             }
-        } else {
-            tableName = tableAndWherePart.trim();
+            return new QueryResult(query.headers, groupRows(query, select), positions);
         }
-        if (tableName.isEmpty()) {
-            System.err.println(localizationService.getMessage("error_name_empty", "Table (for DELETE)"));
-            return;
+        ReadView leftView = left.openReadView();
+        ReadView rightView = null;
+        try {
+            rightView = right == left ? null : right.openReadView();
+            RowCursor rows = plan.select(leftView, rightView == null ? leftView : rightView, orderIndex,
+                orderIndex < 0 ? null : scope.column(orderIndex), select.isDescending(), limit, select.getOffset());
+            return new QueryResult(columnNames(scope, positions), rows, positions,
+                rightView == null ? new ReadView[] {leftView} : new ReadView[] {leftView, rightView});
+        } catch (RuntimeException e) {
+            leftView.close();
+            if (rightView != null) {
+                rightView.close();
+            }
+            throw e;
         }
-        Database currentDb = dbManager.ensureCurrentDatabaseSelected();
-        Table table = currentDb.getTable(tableName)
-                .orElseThrow(() -> new IllegalArgumentException(localizationService.getMessage("error_table_not_found", tableName, currentDb.getName())));
-        
-        List<Row> originalRows = new ArrayList<>(table.getRows());
-        List<Row> rowsToDelete = new ArrayList<>();
-
-        if (whereClause != null) {
-            String[] whereParts = whereClause.split("=", 2);
-            if (whereParts.length != 2) {
-                System.err.println(localizationService.getMessage("error_invalid_syntax") + "WHERE format: <col> = <val>");
-                return;
+    }
+
+    private JoinPlan planJoin(Table left, Table right, Statement.Select select) {
+        Statement.Join join = select.getJoin();
+        return JoinPlanner.plan(left, select.getAlias(), right, join.getAlias(), join.getOn(), select.getWhere(),
+            dbManager.getConfig().getHashJoinMaxBuildRows());
+    }
+
+    /**
+     * 把聚合查询的选择列表、GROUP BY 和 ORDER BY 解析为 {@link HashAggregator} 的输入，以及输出列在结果行中的位置。
+     * 结果行先是分组列，然后是聚合；只出现在 ORDER BY 中的聚合也会计算，但不输出。
+     */
+    private final class AggregateQuery {
+        final List<String> headers = new ArrayList<>();
+        final List<String> groupNames = new ArrayList<>();
+        final int[] outputPositions;
+        final int orderPosition;
+        final HashAggregator aggregator;
+        private final ColumnScope scope;
+        private final int[] groupPositions;
+        private final List<Statement.SelectItem> aggregates = new ArrayList<>();
+
+        AggregateQuery(ColumnScope scope, Statement.Select select) {
+            if (select.getItems() == null) {
+                throw new IllegalArgumentException(localizationService.getMessage("error_select_star_grouped"));
             }
-            String filterColumnName = whereParts[0].trim();
-            String filterValueString = whereParts[1].trim();
-            Column filterColumn = table.getColumn(filterColumnName)
-                .orElseThrow(() -> new IllegalArgumentException(localizationService.getMessage("error_column_not_found_where", filterColumnName, tableName)));
-            Object filterValue;
-            if (filterValueString.equalsIgnoreCase("NULL")) {
-                filterValue = null;
-            } else if (filterValueString.startsWith("\"") && filterValueString.endsWith("\"") && filterValueString.length() >= 2) {
-                filterValue = filterColumn.convertValue(filterValueString.substring(1, filterValueString.length() - 1));
-            } else {
-                filterValue = filterColumn.convertValue(filterValueString);
+            this.scope = scope;
+            groupPositions = new int[select.getGroupBy().size()];
+            for (int i = 0; i < groupPositions.length; i++) {
+                groupPositions[i] = requireColumn(scope, select.getGroupBy().get(i));
+                groupNames.add(scope.name(groupPositions[i]));
+            }
+            List<Statement.SelectItem> items = select.getItems();
+            outputPositions = new int[items.size()];
+            for (int i = 0; i < outputPositions.length; i++) {
+                Statement.SelectItem item = items.get(i);
+                outputPositions[i] = position(item);
+                headers.add(item.isAggregate() ? item.toString() : groupNames.get(outputPositions[i]));
             }
-            for (Row row : originalRows) {
-                Object rowValue = row.getValue(filterColumn.getName());
-                if ((filterValue == null && rowValue == null) || (filterValue != null && filterValue.equals(rowValue))) {
-                    rowsToDelete.add(row);
+            orderPosition = select.getOrderBy() == null ? -1 : position(select.getOrderBy());
+
+            AggregateFunction[] functions = new AggregateFunction[aggregates.size()];
+            int[] arguments = new int[aggregates.size()];
+            for (int i = 0; i < functions.length; i++) {
+                Statement.SelectItem aggregate = aggregates.get(i);
+                functions[i] = aggregate.getFunction();
+                arguments[i] = aggregate.getColumn() == null ? -1 : requireColumn(scope, aggregate.getColumn());
+                if (arguments[i] >= 0 && (functions[i] == AggregateFunction.SUM || functions[i] == AggregateFunction.AVG)) {
+                    Column argument = scope.column(arguments[i]);
+                    if (argument.getType() != DataType.INTEGER && argument.getType() != DataType.DOUBLE) {
+                        throw new IllegalArgumentException(localizationService.getMessage("error_aggregate_not_numeric",
+                            functions[i], argument.getName(), argument.getType()));
+                    }
                 }
             }
-        } else {
-            rowsToDelete.addAll(originalRows);
+            aggregator = new HashAggregator(scope.columns(), groupPositions, functions, arguments);
         }
 
-        if (!rowsToDelete.isEmpty()) {
-            boolean changed = table.getRows().removeAll(rowsToDelete);
-            if (changed) {
-                dbManager.saveCurrentDatabase();
-                String singularPluralKey = rowsToDelete.size() == 1 ? "message_row_singular" : "message_row_plural";
-                System.out.println(localizationService.getMessage("message_rows_deleted", rowsToDelete.size(), localizationService.getMessage(singularPluralKey)));
-            } else {
-                System.out.println(localizationService.getMessage("message_rows_affected_0")); 
+        // 选择项在结果行中的位置：普通列必须是分组列，相同的聚合只计算一次
+        private int position(Statement.SelectItem item) {
+            if (item.isAggregate()) {
+                for (int i = 0; i < aggregates.size(); i++) {
+                    if (aggregates.get(i).matches(item)) {
+                        return groupPositions.length + i;
+                    }
+                }
+                aggregates.add(item);
+                return groupPositions.length + aggregates.size() - 1;
             }
-        } else {
-            System.out.println(localizationService.getMessage("message_rows_affected_0"));
+            int columnPosition = requireColumn(scope, item.getColumn());
+            for (int i = 0; i < groupPositions.length; i++) {
+                if (groupPositions[i] == columnPosition) {
+                    return i;
+                }
+            }
+            throw new IllegalArgumentException(localizationService.getMessage("error_column_not_grouped", item.getColumn()));
         }
     }
 
-    private void handleUpdate(String arguments) throws IOException {
-        String upperArgs = arguments.toUpperCase();
-        int setPos = upperArgs.indexOf(" SET ");
-        if (setPos == -1) {
-            System.err.println(localizationService.getMessage("error_missing_keyword", "SET (in UPDATE)"));
-            return;
+    // 列在行值数组中的位置；列名可以用表名或别名限定
+    private int requireColumn(ColumnScope scope, String columnName) {
+        int position = scope.indexOf(columnName);
+        if (position < 0) {
+            throw new IllegalArgumentException(localizationService.getMessage("error_column_not_found", columnName, scope.tableNames()));
         }
-        String tableName = arguments.substring(0, setPos).trim();
-        if (tableName.isEmpty()) {
-            System.err.println(localizationService.getMessage("error_name_empty", "Table (for UPDATE)"));
+        return position;
+    }
+
+    // 按会话的输出格式逐行输出结果，不保存已经输出的行：positions 是各输出列在结果行中的位置。
+    // CSV 和 NDJSON 只输出数据，便于其他程序读取；表格格式在末尾输出行数
+    private void printRows(List<String> headers, RowCursor rows, int[] positions) {
+        long rowCount = resultWriter.write(out, headers, rows, positions);
+        if (resultWriter.getFormat() != OutputFormat.TABLE) {
             return;
         }
-        String setAndWherePart = arguments.substring(setPos + " SET ".length()).trim();
-        String setClauseString; String whereClause = null;
-        int wherePos = setAndWherePart.toUpperCase().indexOf(" WHERE ");
-        if (wherePos != -1) {
-            setClauseString = setAndWherePart.substring(0, wherePos).trim();
-            whereClause = setAndWherePart.substring(wherePos + " WHERE ".length()).trim();
-            if (whereClause.isEmpty()) {
-                System.err.println(localizationService.getMessage("error_empty_clause", "WHERE"));
-                return;
-            }
+        if (rowCount == 0) {
+            out.println(localizationService.getMessage("message_select_0_rows"));
         } else {
-            setClauseString = setAndWherePart.trim();
+            String row_count_msg_key = rowCount == 1 ? "message_row_singular" : "message_row_plural";
+            out.println("(" + rowCount + " " + localizationService.getMessage(row_count_msg_key) + ")");
         }
-        if (setClauseString.isEmpty()) {
-            System.err.println(localizationService.getMessage("error_empty_clause", "SET"));
-            return;
+    }
+
+    /**
+     * 打开的查询结果：输出列的名称和位置、结果行的游标，以及游标读取的读视图。关闭时先关闭游标，再关闭读视图。
+     */
+    private static final class QueryResult implements AutoCloseable {
+        final List<String> headers;
+        final RowCursor rows;
+        final int[] positions;
+        private final ReadView[] views;
+
+        QueryResult(List<String> headers, RowCursor rows, int[] positions, ReadView... views) {
+            this.headers = headers;
+            this.rows = rows;
+            this.positions = positions;
+            this.views = views;
         }
-        Map<String, String> setValues = new LinkedHashMap<>();
-        if (!setClauseString.isEmpty()) {
-            List<String> assignmentStrings = new ArrayList<>();
-            StringBuilder currentAssignment = new StringBuilder();
-            boolean inQuotes = false;
-            for (char c : setClauseString.toCharArray()) {
-                if (c == '"') {
-                    inQuotes = !inQuotes;
-                    currentAssignment.append(c);
-                } else if (c == ',' && !inQuotes) {
-                    assignmentStrings.add(currentAssignment.toString().trim());
-                    currentAssignment.setLength(0);
-                } else {
-                    currentAssignment.append(c);
-                }
-            }
-            assignmentStrings.add(currentAssignment.toString().trim());
-            for (String assignment : assignmentStrings) {
-                String[] parts = assignment.split("=", 2);
-                if (parts.length != 2) {
-                    System.err.println(localizationService.getMessage("error_invalid_syntax") + "SET format: <col>=<val>,...");
-                    return;
-                }
-                setValues.put(parts[0].trim(), parts[1].trim());
+
+        @Override
+        public void close() {
+            rows.close();
+            for (ReadView view : views) {
+                view.close();
             }
         }
-        if (setValues.isEmpty()) {
-            System.err.println(localizationService.getMessage("error_invalid_syntax") + "No assignments in SET.");
-            return;
-        }
-        Database currentDb = dbManager.ensureCurrentDatabaseSelected();
-        Table table = currentDb.getTable(tableName)
-            .orElseThrow(() -> new IllegalArgumentException(localizationService.getMessage("error_table_not_found", tableName, currentDb.getName())));
-        Map<Column, String> validatedSetOperations = new LinkedHashMap<>();
-        for (Map.Entry<String, String> entry : setValues.entrySet()) {
-            String colNameToSet = entry.getKey();
-            Column tableColumn = table.getColumn(colNameToSet)
-                .orElseThrow(() -> new IllegalArgumentException(localizationService.getMessage("error_column_not_found_set", colNameToSet, tableName)));
-            validatedSetOperations.put(tableColumn, entry.getValue());
-        }
-        List<Row> rowsToUpdate = new ArrayList<>();
-        if (whereClause != null) {
-            String[] whereParts = whereClause.split("=", 2);
-             if (whereParts.length != 2) {
-                System.err.println(localizationService.getMessage("error_invalid_syntax") + "WHERE format: <col> = <val>");
+    }
+
+    // 绑定 SELECT 的条件和排序列，由查询规划选择执行方式
+    private QueryPlan planSelect(Table table, ColumnScope scope, Statement.Select select) {
+        Expression filter = select.getWhere() == null ? null : select.getWhere().bind(scope);
+        Column orderByColumn = select.getOrderBy() == null ? null : scope.column(requireColumn(scope, select.getOrderBy().getColumn()));
+        int limit = select.getLimit() == null ? -1 : select.getLimit();
+        return table.plan(filter, orderByColumn, select.isDescending(), limit, select.getOffset());
+    }
+
+    /**
+     * EXPLAIN：显示查询规划为 SELECT、UPDATE 或 DELETE 选择的计划和估算的代价，不执行语句。
+     */
+    private void executeExplain(Statement.Explain explain) {
+        Database currentDb = dbManager.ensureCurrentDatabaseSelected(session);
+        Statement statement = explain.getStatement();
+        Table table;
+        QueryPlan plan;
+        String operation = null;
+        if (statement instanceof Statement.Select) {
+            Statement.Select select = (Statement.Select) statement;
+            table = requireTable(currentDb, select.getTable());
+            if (select.getJoin() != null) {
+                explainJoin(currentDb, table, select);
                 return;
             }
-            String filterColumnName = whereParts[0].trim();
-            String filterValueString = whereParts[1].trim();
-            Column filterColumn = table.getColumn(filterColumnName)
-                .orElseThrow(() -> new IllegalArgumentException(localizationService.getMessage("error_column_not_found_where", filterColumnName, tableName)));
-            Object filterValue;
-            if (filterValueString.equalsIgnoreCase("NULL")) {
-                filterValue = null;
-            } else if (filterValueString.startsWith("\"") && filterValueString.endsWith("\"") && filterValueString.length() >= 2) {
-                filterValue = filterColumn.convertValue(filterValueString.substring(1, filterValueString.length() - 1));
-            } else {
-                filterValue = filterColumn.convertValue(filterValueString);
+            ColumnScope scope = ColumnScope.of(table, select.getAlias());
+            if (select.isAggregate()) {
+                explainAggregate(table, scope, select);
+                return;
             }
-            for (Row row : table.getRows()) {
-                Object rowVal = row.getValue(filterColumn.getName());
-                if ((filterValue == null && rowVal == null) || (filterValue != null && filterValue.equals(rowVal))) {
-                    rowsToUpdate.add(row);
-                }
+            plan = planSelect(table, scope, select);
+        } else {
+            // UPDATE / DELETE 只需要找出要修改的行
+            boolean isUpdate = statement instanceof Statement.Update;
+            String tableName = isUpdate ? ((Statement.Update) statement).getTable() : ((Statement.Delete) statement).getTable();
+            Expression where = isUpdate ? ((Statement.Update) statement).getWhere() : ((Statement.Delete) statement).getWhere();
+            table = requireTable(currentDb, tableName);
+            plan = table.plan(where == null ? null : where.bind(table), null, false, -1, 0);
+            operation = isUpdate ? "Update" : "Delete";
+        }
+        // UPDATE / DELETE 在写锁内查找行，不并行扫描；有 LIMIT 或不过滤的不排序查询逐批读取结果，也不并行
+        boolean parallel = operation == null && plan.isParallelCandidate();
+        List<String> lines = plan.explain(operation, parallel ? scanWorkers(table, plan) : 1);
+        lines.forEach(out::println);
+        out.println(localizationService.getMessage("message_explain_estimate",
+            String.format(Locale.ROOT, "%.2f", plan.getCost()), Math.round(plan.getRows())));
+    }
+
+    // 聚合查询的计划：哈希聚合作为根节点，下面是读取行的访问路径；分组之后的排序和 LIMIT 作为根节点的说明
+    private void explainAggregate(Table table, ColumnScope scope, Statement.Select select) {
+        AggregateQuery query = new AggregateQuery(scope, select);
+        QueryPlan plan = planAggregate(table, scope, select);
+        List<String> lines = plan.explain("Hash Aggregate", scanWorkers(table, plan));
+        addAggregateDetails(lines, query, select);
+        lines.forEach(out::println);
+        out.println(localizationService.getMessage("message_explain_estimate",
+            String.format(Locale.ROOT, "%.2f", plan.getCost()), Math.round(plan.getRows())));
+    }
+
+    private static void addAggregateDetails(List<String> lines, AggregateQuery query, Statement.Select select) {
+        int details = 1;
+        if (!query.groupNames.isEmpty()) {
+            lines.add(details++, "  Group Key: " + String.join(", ", query.groupNames));
+        }
+        if (select.getOrderBy() != null) {
+            lines.add(details++, "  Sort Key: " + select.getOrderBy() + (select.isDescending() ? " DESC" : " ASC"));
+        }
+        if (select.getLimit() != null) {
+            lines.add(details++, "  Limit: " + select.getLimit());
+        }
+        if (select.getOffset() > 0) {
+            lines.add(details, "  Offset: " + select.getOffset());
+        }
+    }
+
+    // 连接查询的计划：连接节点下面是两张表的访问路径；聚合时哈希聚合作为根节点，否则排序和 LIMIT 在连接节点之上
+    private void explainJoin(Database db, Table left, Statement.Select select) {
+        Table right = requireTable(db, select.getJoin().getTable());
+        ColumnScope scope = ColumnScope.of(left, select.getAlias()).join(right, select.getJoin().getAlias());
+        JoinPlan plan = planJoin(left, right, select);
+        List<String> lines;
+        double rows = plan.getRows();
+        if (select.isAggregate()) {
+            AggregateQuery query = new AggregateQuery(scope, select);
+            lines = plan.explain("Hash Aggregate", null, -1, 0);
+            addAggregateDetails(lines, query, select);
+        } else {
+            selectedPositions(scope, select); // 检查选择的列
+            String sortKey = select.getOrderBy() == null ? null
+                : scope.name(requireColumn(scope, select.getOrderBy().getColumn())) + (select.isDescending() ? " DESC" : " ASC");
+            int limit = select.getLimit() == null ? -1 : select.getLimit();
+            lines = plan.explain(null, sortKey, limit, select.getOffset());
+            rows = Math.max(0, rows - select.getOffset());
+            if (limit >= 0) {
+                rows = Math.min(rows, limit);
             }
+        }
+        lines.forEach(out::println);
+        out.println(localizationService.getMessage("message_explain_estimate",
+            String.format(Locale.ROOT, "%.2f", plan.getCost()), Math.round(rows)));
+    }
+
+    // 计划的顺序扫描并行执行时的线程数
+    private int scanWorkers(Table table, QueryPlan plan) {
+        if (plan.getAccess().getType() != QueryPlan.AccessType.SEQ_SCAN) {
+            return 1;
+        }
+        ParallelScan parallel = dbManager.getParallelScan();
+        return parallel.workersFor(table.scanPartitions(parallel));
+    }
+
+    private void executeDelete(Statement.Delete delete) throws IOException {
+        Database currentDb = dbManager.ensureCurrentDatabaseSelected(session);
+        Table table = requireTable(currentDb, delete.getTable());
+        Expression filter = delete.getWhere() == null ? null : delete.getWhere().bind(table);
+        // 在表的写锁内查找并删除，其他会话不能在两者之间修改这些行
+        Function<Table, WalRecord> change = locked -> {
+            List<Long> rowIds = locked.findRowIds(filter);
+            return rowIds.isEmpty() ? null : WalRecord.delete(locked.getName(), rowIds);
+        };
+        if (queueInTransaction(table.getName(), change)) {
+            return;
+        }
+        WalRecord deletion = dbManager.applyChange(currentDb, table.getName(), change);
+        if (deletion != null) {
+            int deletedCount = deletion.getRowIds().size();
+            String singularPluralKey = deletedCount == 1 ? "message_row_singular" : "message_row_plural";
+            out.println(localizationService.getMessage("message_rows_deleted", deletedCount, localizationService.getMessage(singularPluralKey)));
         } else {
-            rowsToUpdate.addAll(table.getRows());
+            out.println(localizationService.getMessage("message_rows_affected_0"));
+        }
+    }
+
+    private void executeUpdate(Statement.Update update) throws IOException {
+        String tableName = update.getTable();
+        Database currentDb = dbManager.ensureCurrentDatabaseSelected(session);
+        Table table = requireTable(currentDb, tableName);
+        // 先转换所有新值，避免部分行更新后才发现类型错误
+        Map<String, Object> newValues = new LinkedHashMap<>();
+        for (Map.Entry<String, Expression> assignment : update.getAssignments().entrySet()) {
+            String colNameToSet = assignment.getKey();
+            Column columnToUpdate = table.getColumn(colNameToSet)
+                .orElseThrow(() -> new IllegalArgumentException(localizationService.getMessage("error_column_not_found_set", colNameToSet, tableName)));
+            Expression value = assignment.getValue().bind(table); // 参数只能出现在 PREPARE 中，这里会报错
+            newValues.put(columnToUpdate.getName(), columnToUpdate.convertValue(((Expression.Literal) value).getValue()));
         }
-        if (rowsToUpdate.isEmpty()) {
-            System.out.println(localizationService.getMessage("message_rows_affected_0"));
+        Expression filter = update.getWhere() == null ? null : update.getWhere().bind(table);
+        // 在表的写锁内查找并更新，其他会话不能在两者之间修改这些行
+        Function<Table, WalRecord> change = locked -> {
+            List<Long> rowIds = locked.findRowIds(filter);
+            return rowIds.isEmpty() ? null : WalRecord.update(locked.getName(), rowIds, newValues);
+        };
+        if (queueInTransaction(table.getName(), change)) {
             return;
         }
-        int updatedCount = 0;
-        try {
-            for (Row row : rowsToUpdate) {
-                boolean rowChanged = false;
-                for (Map.Entry<Column, String> operation : validatedSetOperations.entrySet()) {
-                    Column columnToUpdate = operation.getKey();
-                    String rawNewValue = operation.getValue();
-                    Object actualNewValue;
-                    if (rawNewValue.equalsIgnoreCase("NULL")) {
-                        actualNewValue = null;
-                    } else if (rawNewValue.startsWith("\"") && rawNewValue.endsWith("\"") && rawNewValue.length() >=2) {
-                        actualNewValue = rawNewValue.substring(1, rawNewValue.length() -1 );
-                    } else {
-                        actualNewValue = rawNewValue;
-                    }
-                    row.updateValue(columnToUpdate, actualNewValue);
-                    rowChanged = true; 
-                }
-                if(rowChanged) updatedCount++;
-            }
-            if (updatedCount > 0) {
-                 dbManager.saveCurrentDatabase();
-            }
-            String singularPluralKey = updatedCount == 1 ? "message_row_singular" : "message_row_plural";
-            System.out.println(localizationService.getMessage("message_rows_updated", updatedCount, localizationService.getMessage(singularPluralKey)));
-        } catch (IllegalArgumentException e) {
-            System.err.println(localizationService.getMessage("error_prefix") + e.getMessage());
+        WalRecord result = dbManager.applyChange(currentDb, table.getName(), change);
+        if (result == null) {
+            out.println(localizationService.getMessage("message_rows_affected_0"));
+            return;
         }
+        int updatedCount = result.getRowIds().size();
+        String singularPluralKey = updatedCount == 1 ? "message_row_singular" : "message_row_plural";
+        out.println(localizationService.getMessage("message_rows_updated", updatedCount, localizationService.getMessage(singularPluralKey)));
     }
 
     private void handleHelp() {
-        System.out.println(localizationService.getMessage("help_header"));
-        System.out.println(localizationService.getMessage("help_separator"));
-        System.out.println(localizationService.getMessage("help_db_management"));
-        System.out.println(localizationService.getMessage("help_create_db"));
-        System.out.println(localizationService.getMessage("help_drop_db"));
-        System.out.println(localizationService.getMessage("help_use_db"));
-        System.out.println(localizationService.getMessage("help_show_dbs"));
-        System.out.println(localizationService.getMessage("help_table_management"));
-        System.out.println(localizationService.getMessage("help_create_table"));
-        System.out.println(localizationService.getMessage("help_supported_types"));
-        System.out.println(localizationService.getMessage("help_show_tables"));
-        System.out.println(localizationService.getMessage("help_data_manipulation"));
-        System.out.println(localizationService.getMessage("help_insert_into"));
-        System.out.println(localizationService.getMessage("help_insert_notes"));
-        System.out.println(localizationService.getMessage("help_select"));
-        System.out.println(localizationService.getMessage("help_select_notes"));
-        System.out.println(localizationService.getMessage("help_update"));
-        System.out.println(localizationService.getMessage("help_update_notes"));
-        System.out.println(localizationService.getMessage("help_delete"));
-        System.out.println(localizationService.getMessage("help_delete_notes"));
-        System.out.println(localizationService.getMessage("help_utility"));
-        System.out.println(localizationService.getMessage("help_help"));
-        System.out.println(localizationService.getMessage("help_set_language"));
-        System.out.println(localizationService.getMessage("help_exit"));
-        System.out.println(localizationService.getMessage("help_separator"));
+        out.println(localizationService.getMessage("help_header"));
+        out.println(localizationService.getMessage("help_separator"));
+        out.println(localizationService.getMessage("help_db_management"));
+        out.println(localizationService.getMessage("help_create_db"));
+        out.println(localizationService.getMessage("help_drop_db"));
+        out.println(localizationService.getMessage("help_use_db"));
+        out.println(localizationService.getMessage("help_show_dbs"));
+        out.println(localizationService.getMessage("help_checkpoint"));
+        out.println(localizationService.getMessage("help_show_checkpoints"));
+        out.println(localizationService.getMessage("help_alter_db"));
+        out.println(localizationService.getMessage("help_export_db"));
+        out.println(localizationService.getMessage("help_table_management"));
+        out.println(localizationService.getMessage("help_create_table"));
+        out.println(localizationService.getMessage("help_supported_types"));
+        out.println(localizationService.getMessage("help_show_tables"));
+        out.println(localizationService.getMessage("help_create_index"));
+        out.println(localizationService.getMessage("help_drop_index"));
+        out.println(localizationService.getMessage("help_show_indexes"));
+        out.println(localizationService.getMessage("help_analyze"));
+        out.println(localizationService.getMessage("help_show_statistics"));
+        out.println(localizationService.getMessage("help_data_manipulation"));
+        out.println(localizationService.getMessage("help_insert_into"));
+        out.println(localizationService.getMessage("help_insert_notes"));
+        out.println(localizationService.getMessage("help_select"));
+        out.println(localizationService.getMessage("help_select_notes"));
+        out.println(localizationService.getMessage("help_aggregate_notes"));
+        out.println(localizationService.getMessage("help_join_notes"));
+        out.println(localizationService.getMessage("help_update"));
+        out.println(localizationService.getMessage("help_update_notes"));
+        out.println(localizationService.getMessage("help_delete"));
+        out.println(localizationService.getMessage("help_delete_notes"));
+        out.println(localizationService.getMessage("help_where_notes"));
+        out.println(localizationService.getMessage("help_explain"));
+        out.println(localizationService.getMessage("help_explain_notes"));
+        out.println(localizationService.getMessage("help_copy"));
+        out.println(localizationService.getMessage("help_copy_notes"));
+        out.println(localizationService.getMessage("help_prepare"));
+        out.println(localizationService.getMessage("help_execute"));
+        out.println(localizationService.getMessage("help_deallocate"));
+        out.println(localizationService.getMessage("help_prepare_notes"));
+        out.println(localizationService.getMessage("help_declare"));
+        out.println(localizationService.getMessage("help_fetch"));
+        out.println(localizationService.getMessage("help_close"));
+        out.println(localizationService.getMessage("help_cursor_notes"));
+        out.println(localizationService.getMessage("help_transactions"));
+        out.println(localizationService.getMessage("help_begin"));
+        out.println(localizationService.getMessage("help_commit"));
+        out.println(localizationService.getMessage("help_rollback"));
+        out.println(localizationService.getMessage("help_utility"));
+        out.println(localizationService.getMessage("help_help"));
+        out.println(localizationService.getMessage("help_set_language"));
+        out.println(localizationService.getMessage("help_set_output_format"));
+        out.println(localizationService.getMessage("help_output_format_notes"));
+        out.println(localizationService.getMessage("help_exit"));
+        out.println(localizationService.getMessage("help_separator"));
     }
 
     private void shutdown() {
-        System.out.println(localizationService.getMessage("exit_message"));
+        out.println(localizationService.getMessage("exit_message"));
         dbManager.shutdown();
-        scanner.close();
-        System.out.println(localizationService.getMessage("goodbye_message"));
+        out.println(localizationService.getMessage("goodbye_message"));
+    }
+
+    // 服务器模式：在前台接受连接，进程退出时（如 Ctrl+C）保存所有数据库。port 非 null 时覆盖配置的端口
+    private static void startServer(String port) {
+        DBManager dbManager = new DBManager();
+        if (port != null) {
+            try {
+                dbManager.getConfig().setServerPort(Integer.parseInt(port));
+            } catch (IllegalArgumentException e) {
+                System.err.println("Invalid server port: " + port);
+                dbManager.shutdown();
+                System.exit(1);
+            }
+        }
+        JsonDBServer server = new JsonDBServer(dbManager);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            dbManager.shutdown();
+        }, "jsondb-shutdown"));
+        try {
+            server.start();
+        } catch (IOException e) {
+            System.err.println("Failed to start server: " + e.getMessage());
+            System.exit(1);
+        }
     }
 
     // Helper method to convert byte array to hex string for thumbprint comparison
@@ -784,6 +1412,10 @@ public class JsonDBCLI {
         System.out.println(signatureMessage);
         // --- X.509 自签名检查结束 ---
 
+        if (args.length > 0 && "--server".equals(args[0])) {
+            startServer(args.length > 1 ? args[1] : null);
+            return;
+        }
         JsonDBCLI cli = new JsonDBCLI();
         cli.start();
     }
@@ -0,0 +1,161 @@
+package com.prelinamontelli.jsondb;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * TCP 服务器模式：多个客户端并发连接到同一个 {@link DBManager}，每个连接有自己的 {@link Session}。
+ * <p>
+ * 协议按行进行：客户端每行发送一条与命令行界面相同的命令（以分号结尾），
+ * 服务器返回命令的输出，并以只包含一个 "." 的行表示本次响应结束。输出中以 "." 开头的行会多加一个 "."。
+ * 连接建立后服务器先发送欢迎信息和结束标记；客户端发送 QUIT; 或关闭连接即结束会话。
+ */
+public class JsonDBServer {
+    private final DBManager dbManager;
+    private final DBConfig config;
+    private final ThreadPoolExecutor sessionExecutor;
+    private volatile ServerSocket serverSocket;
+
+    public JsonDBServer(DBManager dbManager) {
+        this.dbManager = dbManager;
+        this.config = dbManager.getConfig();
+        AtomicInteger threadCounter = new AtomicInteger();
+        // 每个连接占用一个线程；连接数达到上限时拒绝新的连接，而不是排队
+        this.sessionExecutor = new ThreadPoolExecutor(config.getServerMaxConnections(), config.getServerMaxConnections(),
+            60, TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "jsondb-session-" + threadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        sessionExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 监听配置的地址和端口并接受连接，直到 {@link #stop()} 被调用。
+     * @throws IOException 如果无法监听端口
+     */
+    public void start() throws IOException {
+        serverSocket = new ServerSocket(config.getServerPort(), 50, InetAddress.getByName(config.getServerHost()));
+        System.out.println("JsonDB server listening on " + serverSocket.getLocalSocketAddress()
+            + " (max " + config.getServerMaxConnections() + " connections).");
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (SocketException e) {
+                break; // stop() 关闭了监听套接字
+            }
+            try {
+                sessionExecutor.execute(() -> serve(socket));
+            } catch (RejectedExecutionException e) {
+                rejectBusy(socket);
+            }
+        }
+    }
+
+    public void stop() {
+        ServerSocket listening = serverSocket;
+        if (listening != null) {
+            try {
+                listening.close();
+            } catch (IOException e) {
+                System.err.println("Failed to close server socket: " + e.getMessage());
+            }
+        }
+        sessionExecutor.shutdownNow();
+    }
+
+    private void serve(Socket socket) {
+        Session session = dbManager.openSession();
+        try (Socket client = socket) {
+            ResponseOutputStream response = new ResponseOutputStream(new BufferedOutputStream(client.getOutputStream(), 1 << 16));
+            PrintStream out = new PrintStream(response, false, StandardCharsets.UTF_8.name());
+            Scanner in = new Scanner(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+            JsonDBCLI processor = new JsonDBCLI(dbManager, session, out, out, () -> {
+                try {
+                    response.endResponse();
+                } catch (IOException e) {
+                    throw new IllegalStateException("Failed to write response to client: " + e.getMessage(), e);
+                }
+            });
+            processor.run(in);
+            out.flush();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Session " + session.getId() + " ended with error: " + e.getMessage());
+        } finally {
+            dbManager.closeSession(session);
+        }
+    }
+
+    private void rejectBusy(Socket socket) {
+        try (Socket client = socket) {
+            PrintStream out = new PrintStream(client.getOutputStream(), true, StandardCharsets.UTF_8.name());
+            out.println("Error: server is busy (" + config.getServerMaxConnections() + " connections), try again later.");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        } catch (IOException e) {
+            // 客户端已经断开
+        }
+    }
+
+    /**
+     * 按协议输出响应：以 "." 开头的行多加一个 "."，{@link #endResponse()} 写出只包含 "." 的结束行。
+     */
+    private static final class ResponseOutputStream extends FilterOutputStream {
+        private boolean atLineStart = true;
+
+        ResponseOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (atLineStart && b == '.') {
+                out.write('.');
+            }
+            out.write(b);
+            atLineStart = b == '\n';
+        }
+
+        // 整块写出两个需要转义的点之间的字节，FilterOutputStream 默认逐个字节调用 write(int)
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            int start = off;
+            for (int i = off; i < off + len; i++) {
+                if (atLineStart && b[i] == '.') {
+                    out.write(b, start, i - start);
+                    out.write('.');
+                    start = i;
+                }
+                atLineStart = b[i] == '\n';
+            }
+            out.write(b, start, off + len - start);
+        }
+
+        void endResponse() throws IOException {
+            if (!atLineStart) {
+                out.write('\n');
+            }
+            out.write('.');
+            out.write('\n');
+            out.flush();
+            atLineStart = true;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.prelinamontelli.jsondb;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+
+/**
+ * JSON 快照：通过 Jackson 序列化写出，通过 {@link DatabaseReader} 流式读取。
+ */
+final class JsonSnapshotCodec implements SnapshotCodec {
+    private final ObjectWriter writer;
+    private final DatabaseReader reader;
+
+    JsonSnapshotCodec(ObjectMapper objectMapper, PageStore pageStore) {
+        this.writer = objectMapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        this.reader = new DatabaseReader(objectMapper, pageStore);
+    }
+
+    @Override
+    public void write(Database image, OutputStream out) throws IOException {
+        writer.writeValue(out, image);
+        out.flush();
+    }
+
+    @Override
+    public Database read(Path file) throws IOException {
+        return reader.read(file);
+    }
+}
@@ -0,0 +1,261 @@
+package com.prelinamontelli.jsondb;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.LongPredicate;
+
+/**
+ * 有序索引，基于红黑树 ({@link TreeMap})，按列类型的比较规则排序。
+ * 支持等值查找、O(log n) 定位的范围扫描，以及按序遍历（用于 ORDER BY ... LIMIT）。
+ * NULL 不参与排序，单独保存；按序遍历时 NULL 视为最大值（升序在最后，降序在最前）。
+ */
+public class OrderedIndex implements TableIndex {
+    private static final long[] EMPTY = new long[0];
+
+    private final IndexDefinition definition;
+    private final TreeMap<Object, RowIdList> entries;
+    private final RowIdList nullRowIds = new RowIdList();
+
+    public OrderedIndex(IndexDefinition definition, Column column) {
+        this.definition = definition;
+        this.entries = new TreeMap<>(column::compareValues);
+    }
+
+    @Override
+    public IndexDefinition getDefinition() {
+        return definition;
+    }
+
+    @Override
+    public void insert(Object key, long rowId) {
+        if (key == null) {
+            nullRowIds.add(rowId);
+        } else {
+            entries.computeIfAbsent(key, k -> new RowIdList()).add(rowId);
+        }
+    }
+
+    /**
+     * 先按键排序并合并相同的键。索引为空时（建表后的首次批量导入）由排好序的数据线性构建红黑树，
+     * 否则按键顺序逐个插入，相同的键只查找一次树。
+     */
+    @Override
+    public void insertAll(Object[] keys, long[] rowIds) {
+        Integer[] order = new Integer[keys.length];
+        int count = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == null) {
+                nullRowIds.add(rowIds[i]);
+            } else {
+                order[count++] = i;
+            }
+        }
+        Comparator<? super Object> comparator = entries.comparator();
+        Arrays.sort(order, 0, count, (left, right) -> comparator.compare(keys[left], keys[right]));
+        List<Map.Entry<Object, RowIdList>> grouped = new ArrayList<>();
+        RowIdList current = null;
+        Object currentKey = null;
+        for (int i = 0; i < count; i++) {
+            Object key = keys[order[i]];
+            if (current == null || comparator.compare(currentKey, key) != 0) {
+                currentKey = key;
+                current = new RowIdList();
+                grouped.add(new AbstractMap.SimpleImmutableEntry<>(key, current));
+            }
+            current.add(rowIds[order[i]]);
+        }
+        if (entries.isEmpty()) {
+            entries.putAll(new SortedEntries(grouped, comparator));
+            return;
+        }
+        for (Map.Entry<Object, RowIdList> entry : grouped) {
+            RowIdList existing = entries.putIfAbsent(entry.getKey(), entry.getValue());
+            if (existing != null) {
+                existing.addAll(entry.getValue());
+            }
+        }
+    }
+
+    @Override
+    public void remove(Object key, long rowId) {
+        if (key == null) {
+            nullRowIds.remove(rowId);
+            return;
+        }
+        RowIdList rowIds = entries.get(key);
+        if (rowIds != null && rowIds.remove(rowId) && rowIds.size() == 0) {
+            entries.remove(key);
+        }
+    }
+
+    @Override
+    public long[] lookup(Object key) {
+        if (key == null) {
+            return nullRowIds.toArray();
+        }
+        RowIdList rowIds = entries.get(key);
+        return rowIds == null ? EMPTY : rowIds.toArray();
+    }
+
+    @Override
+    public int count(Object key) {
+        if (key == null) {
+            return nullRowIds.size();
+        }
+        RowIdList rowIds = entries.get(key);
+        return rowIds == null ? 0 : rowIds.size();
+    }
+
+    @Override
+    public int distinctKeys() {
+        return entries.size() + (nullRowIds.size() > 0 ? 1 : 0);
+    }
+
+    /**
+     * @return 最小的非 NULL 键，索引中没有非 NULL 键时返回 null
+     */
+    public Object minKey() {
+        return entries.isEmpty() ? null : entries.firstKey();
+    }
+
+    /**
+     * @return 最大的非 NULL 键，索引中没有非 NULL 键时返回 null
+     */
+    public Object maxKey() {
+        return entries.isEmpty() ? null : entries.lastKey();
+    }
+
+    @Override
+    public void clear() {
+        entries.clear();
+        nullRowIds.clear();
+    }
+
+    /**
+     * 按键顺序遍历范围内的行 ID，不包含 NULL。
+     * @param lower 下界，null 表示不受限
+     * @param upper 上界，null 表示不受限
+     * @param consumer 返回 false 时停止遍历
+     */
+    public void forEachInRange(Object lower, boolean lowerInclusive, Object upper, boolean upperInclusive,
+                               boolean descending, LongPredicate consumer) {
+        NavigableMap<Object, RowIdList> range = entries;
+        if (lower != null && upper != null) {
+            if (entries.comparator().compare(lower, upper) > 0) {
+                return;
+            }
+            range = entries.subMap(lower, lowerInclusive, upper, upperInclusive);
+        } else if (lower != null) {
+            range = entries.tailMap(lower, lowerInclusive);
+        } else if (upper != null) {
+            range = entries.headMap(upper, upperInclusive);
+        }
+        if (descending) {
+            range = range.descendingMap();
+        }
+        for (Map.Entry<Object, RowIdList> entry : range.entrySet()) {
+            if (!forEach(entry.getValue(), consumer)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 按排序顺序遍历所有行 ID（包含 NULL）。
+     * @param consumer 返回 false 时停止遍历
+     */
+    public void forEachInOrder(boolean descending, LongPredicate consumer) {
+        if (descending && !forEach(nullRowIds, consumer)) {
+            return;
+        }
+        boolean[] completed = {true};
+        forEachInRange(null, true, null, true, descending, rowId -> {
+            if (!consumer.test(rowId)) {
+                completed[0] = false;
+                return false;
+            }
+            return true;
+        });
+        if (!descending && completed[0]) {
+            forEach(nullRowIds, consumer);
+        }
+    }
+
+    private static boolean forEach(RowIdList rowIds, LongPredicate consumer) {
+        for (int i = 0; i < rowIds.size(); i++) {
+            if (!consumer.test(rowIds.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 已按键排好序且键不重复的条目。{@link TreeMap#putAll} 遇到比较器相同的 {@link SortedMap}
+     * 且自身为空时按序线性构建，只用到 size 和 entrySet 的迭代器，其余的视图方法不需要支持。
+     */
+    private static final class SortedEntries extends AbstractMap<Object, RowIdList> implements SortedMap<Object, RowIdList> {
+        private final List<Map.Entry<Object, RowIdList>> sorted;
+        private final Comparator<? super Object> comparator;
+
+        SortedEntries(List<Map.Entry<Object, RowIdList>> sorted, Comparator<? super Object> comparator) {
+            this.sorted = sorted;
+            this.comparator = comparator;
+        }
+
+        @Override
+        public Comparator<? super Object> comparator() {
+            return comparator;
+        }
+
+        @Override
+        public Set<Map.Entry<Object, RowIdList>> entrySet() {
+            return new AbstractSet<Map.Entry<Object, RowIdList>>() {
+                @Override
+                public Iterator<Map.Entry<Object, RowIdList>> iterator() {
+                    return sorted.iterator();
+                }
+
+                @Override
+                public int size() {
+                    return sorted.size();
+                }
+            };
+        }
+
+        @Override
+        public SortedMap<Object, RowIdList> subMap(Object fromKey, Object toKey) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public SortedMap<Object, RowIdList> headMap(Object toKey) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public SortedMap<Object, RowIdList> tailMap(Object fromKey) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Object firstKey() {
+            return sorted.get(0).getKey();
+        }
+
+        @Override
+        public Object lastKey() {
+            return sorted.get(sorted.size() - 1).getKey();
+        }
+    }
+}
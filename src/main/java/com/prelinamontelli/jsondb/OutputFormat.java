@@ -0,0 +1,21 @@
+package com.prelinamontelli.jsondb;
+
+/**
+ * 查询结果的输出格式，可以按会话选择。
+ */
+public enum OutputFormat {
+    TABLE,   // 按列对齐的表格，末尾是行数
+    CSV,     // 表头和逗号分隔的值，NULL 是空字段，可以用 COPY 导入
+    NDJSON;  // 每行一个 JSON 对象，键是列名
+
+    /**
+     * @throws IllegalArgumentException 如果名称不是已知的格式
+     */
+    public static OutputFormat fromName(String name) {
+        try {
+            return valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException | NullPointerException e) {
+            throw new IllegalArgumentException("Unknown output format '" + name + "'. Supported formats: TABLE, CSV, NDJSON.");
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.prelinamontelli.jsondb;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 由固定大小的页组成的临时文件，通过 {@link BufferPool} 按需映射。
+ * 按字节偏移读写；宽度为 2 的幂且按自身宽度对齐的值不会跨页。
+ * 文件只是列数据在堆外的存放位置，持久化仍由快照和 WAL 负责，关闭时删除。
+ */
+final class PageFile {
+    private final int id;
+    private final Path path;
+    private final FileChannel channel;
+    private final int pageSize;
+    private final int pageShift;
+    private final BufferPool pool;
+
+    PageFile(int id, Path path, int pageSize, BufferPool pool) throws IOException {
+        this.id = id;
+        this.path = path;
+        this.pageSize = pageSize;
+        this.pageShift = Integer.numberOfTrailingZeros(pageSize);
+        this.pool = pool;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    int getId() {
+        return id;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    // 由缓冲池在页不在池中时调用；READ_WRITE 映射超出文件末尾时会扩展文件
+    MappedByteBuffer map(int pageNo) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_WRITE, (long) pageNo << pageShift, pageSize);
+    }
+
+    private MappedByteBuffer pageAt(long position) {
+        return pool.page(this, (int) (position >>> pageShift));
+    }
+
+    private int offsetOf(long position) {
+        return (int) (position & (pageSize - 1));
+    }
+
+    byte getByte(long position) {
+        return pageAt(position).get(offsetOf(position));
+    }
+
+    void putByte(long position, byte value) {
+        pageAt(position).put(offsetOf(position), value);
+    }
+
+    int getInt(long position) {
+        return pageAt(position).getInt(offsetOf(position));
+    }
+
+    void putInt(long position, int value) {
+        pageAt(position).putInt(offsetOf(position), value);
+    }
+
+    long getLong(long position) {
+        return pageAt(position).getLong(offsetOf(position));
+    }
+
+    void putLong(long position, long value) {
+        pageAt(position).putLong(offsetOf(position), value);
+    }
+
+    double getDouble(long position) {
+        return pageAt(position).getDouble(offsetOf(position));
+    }
+
+    void putDouble(long position, double value) {
+        pageAt(position).putDouble(offsetOf(position), value);
+    }
+
+    // 可以跨页的字节序列
+    void readBytes(long position, byte[] target) {
+        int done = 0;
+        while (done < target.length) {
+            long current = position + done;
+            int offset = offsetOf(current);
+            int length = Math.min(target.length - done, pageSize - offset);
+            ByteBuffer view = pageAt(current).duplicate(); // 共享的页不能修改 position
+            view.position(offset);
+            view.get(target, done, length);
+            done += length;
+        }
+    }
+
+    void writeBytes(long position, byte[] source) {
+        int done = 0;
+        while (done < source.length) {
+            long current = position + done;
+            int offset = offsetOf(current);
+            int length = Math.min(source.length - done, pageSize - offset);
+            ByteBuffer view = pageAt(current).duplicate();
+            view.position(offset);
+            view.put(source, done, length);
+            done += length;
+        }
+    }
+
+    /**
+     * 把前 length 个字节复制到另一个文件的开头，由操作系统在内核中完成复制。
+     */
+    void copyTo(PageFile target, long length) {
+        try {
+            long copied = 0;
+            while (copied < length) {
+                copied += channel.transferTo(copied, length - copied, target.channel.position(copied));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to copy " + path + " to " + target.path, e);
+        }
+    }
+
+    /**
+     * 从缓冲池中丢弃此文件的页，关闭并删除文件。
+     */
+    void delete() {
+        pool.invalidate(this);
+        try {
+            channel.close();
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            System.err.println("Failed to delete page file " + path + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.prelinamontelli.jsondb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 分页存储模式下所有页文件的目录和共享的缓冲池。
+ * 每个列向量使用自己的页文件，表的大小受磁盘而不是 Java 堆限制。
+ */
+final class PageStore {
+    private static final String EXTENSION = ".pages";
+
+    private final Path directory;
+    private final int pageSize;
+    private final BufferPool pool;
+    private final AtomicInteger nextFileId = new AtomicInteger();
+
+    /**
+     * @param pageSize 页大小（字节），必须是不小于 4096 的 2 的幂
+     * @param poolBytes 缓冲池中同时映射的页的总字节数上限
+     */
+    PageStore(Path directory, int pageSize, long poolBytes) throws IOException {
+        if (pageSize < 4096 || Integer.bitCount(pageSize) != 1) {
+            throw new IllegalArgumentException("Page size must be a power of two of at least 4096 bytes.");
+        }
+        this.directory = directory;
+        this.pageSize = pageSize;
+        this.pool = new BufferPool((int) Math.max(1, Math.min(Integer.MAX_VALUE, poolBytes / pageSize)));
+        Files.createDirectories(directory);
+        // 页文件不需要跨进程保留，清理上次运行遗留的文件
+        File[] staleFiles = directory.toFile().listFiles((dir, name) -> name.endsWith(EXTENSION));
+        if (staleFiles != null) {
+            for (File staleFile : staleFiles) {
+                Files.deleteIfExists(staleFile.toPath());
+            }
+        }
+    }
+
+    PageFile createFile() {
+        int id = nextFileId.incrementAndGet();
+        try {
+            return new PageFile(id, directory.resolve(id + EXTENSION), pageSize, pool);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create page file in " + directory, e);
+        }
+    }
+
+    int getPageSize() {
+        return pageSize;
+    }
+
+    BufferPool getPool() {
+        return pool;
+    }
+}
@@ -0,0 +1,185 @@
+package com.prelinamontelli.jsondb;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 分页存储模式下的值向量：值按固定宽度保存在页文件中，只有 NULL 位图留在堆上。
+ * INTEGER 占 4 字节、DOUBLE 占 8 字节、BOOLEAN 占 1 字节；STRING 槽位保存 8 字节的偏移量，
+ * 指向另一个只追加的页文件中的字符串（4 字节长度加 UTF-8 字节）。更新字符串时旧值成为垃圾，压缩时回收。
+ */
+final class PagedColumnVector extends ColumnVector {
+    private final DataType type;
+    private final PageStore pageStore;
+    private final int width;
+    private PageFile values;
+    private PageFile strings; // 仅 STRING 列
+    private long stringsEnd;
+    private int capacity;
+
+    PagedColumnVector(DataType type, PageStore pageStore) {
+        this.type = type;
+        this.pageStore = pageStore;
+        this.width = widthOf(type);
+        this.values = pageStore.createFile();
+        this.strings = type == DataType.STRING ? pageStore.createFile() : null;
+    }
+
+    private static int widthOf(DataType type) {
+        switch (type) {
+            case INTEGER:
+                return Integer.BYTES;
+            case DOUBLE:
+            case STRING:
+                return Long.BYTES;
+            case BOOLEAN:
+                return 1;
+            default:
+                throw new IllegalStateException("Unsupported data type: " + type);
+        }
+    }
+
+    @Override
+    protected long estimateValueBytes() {
+        return 64; // 值在堆外
+    }
+
+    @Override
+    protected Object getNonNull(int slot) {
+        long position = (long) slot * width;
+        switch (type) {
+            case INTEGER:
+                return values.getInt(position);
+            case DOUBLE:
+                return values.getDouble(position);
+            case BOOLEAN:
+                return values.getByte(position) != 0;
+            case STRING:
+                return readString(values.getLong(position));
+            default:
+                throw new IllegalStateException("Unsupported data type: " + type);
+        }
+    }
+
+    @Override
+    int getInt(int slot) {
+        return type == DataType.INTEGER ? values.getInt((long) slot * width) : super.getInt(slot);
+    }
+
+    @Override
+    double getDouble(int slot) {
+        switch (type) {
+            case INTEGER:
+                return values.getInt((long) slot * width);
+            case DOUBLE:
+                return values.getDouble((long) slot * width);
+            default:
+                return super.getDouble(slot);
+        }
+    }
+
+    @Override
+    protected void setNonNull(int slot, Object value) {
+        long position = (long) slot * width;
+        switch (type) {
+            case INTEGER:
+                values.putInt(position, ((Number) value).intValue());
+                break;
+            case DOUBLE:
+                values.putDouble(position, ((Number) value).doubleValue());
+                break;
+            case BOOLEAN:
+                values.putByte(position, (byte) ((Boolean) value ? 1 : 0));
+                break;
+            case STRING:
+                long offset = appendString(strings, stringsEnd, (String) value);
+                stringsEnd = offset + Integer.BYTES + strings.getInt(offset);
+                values.putLong(position, offset);
+                break;
+            default:
+                throw new IllegalStateException("Unsupported data type: " + type);
+        }
+    }
+
+    @Override
+    protected void clearValue(int slot) {
+        // NULL 由位图表示，页中的旧值不再被读取
+    }
+
+    // 追加到字符串文件末尾，返回偏移量；长度字段按 4 字节对齐，不会跨页
+    private static long appendString(PageFile file, long end, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        long position = (end + 3) & ~3L;
+        file.putInt(position, bytes.length);
+        file.writeBytes(position + Integer.BYTES, bytes);
+        return position;
+    }
+
+    private String readString(long position) {
+        byte[] bytes = new byte[strings.getInt(position)];
+        strings.readBytes(position + Integer.BYTES, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    protected void ensureCapacity(int capacity) {
+        // 页在第一次访问时映射，文件随之增长
+        this.capacity = Math.max(this.capacity, capacity);
+    }
+
+    @Override
+    protected void retainValues(int[] keptSlots) {
+        // keptSlots 升序，keptSlots[i] >= i，可以原地向前移动；nulls 此时仍按旧槽位编号
+        if (type == DataType.STRING) {
+            retainStrings(keptSlots);
+            return;
+        }
+        byte[] value = new byte[width];
+        for (int i = 0; i < keptSlots.length; i++) {
+            if (keptSlots[i] != i) {
+                values.readBytes((long) keptSlots[i] * width, value);
+                values.writeBytes((long) i * width, value);
+            }
+        }
+        capacity = keptSlots.length;
+    }
+
+    // 只把仍被引用的字符串复制到新文件，回收更新和删除留下的垃圾
+    private void retainStrings(int[] keptSlots) {
+        PageFile retained = pageStore.createFile();
+        long retainedEnd = 0;
+        for (int i = 0; i < keptSlots.length; i++) {
+            int slot = keptSlots[i];
+            if (nulls.get(slot)) {
+                continue;
+            }
+            long position = appendString(retained, retainedEnd, readString(values.getLong((long) slot * width)));
+            retainedEnd = position + Integer.BYTES + retained.getInt(position);
+            values.putLong((long) i * width, position);
+        }
+        strings.delete();
+        strings = retained;
+        stringsEnd = retainedEnd;
+        capacity = keptSlots.length;
+    }
+
+    @Override
+    ColumnVector copy(int size) {
+        PagedColumnVector copy = new PagedColumnVector(type, pageStore);
+        values.copyTo(copy.values, (long) size * width);
+        if (strings != null) {
+            strings.copyTo(copy.strings, stringsEnd);
+            copy.stringsEnd = stringsEnd;
+        }
+        copy.nulls = nulls.get(0, size);
+        copy.capacity = size;
+        return copy;
+    }
+
+    @Override
+    void release() {
+        values.delete();
+        if (strings != null) {
+            strings.delete();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.prelinamontelli.jsondb;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * 大表查询的并行扫描：{@link Table} 把视图中的行按行 ID 范围分成若干分区，在共享的 ForkJoin 线程池上分别扫描、过滤和聚合，
+ * 再按分区顺序合并各分区的部分结果。行数少于阈值的表仍在调用线程中顺序扫描，避免任务调度的开销。
+ * 由 {@link DBManager} 按 {@link DBConfig} 创建，所有会话共用。
+ */
+final class ParallelScan implements AutoCloseable {
+    private static final int PARTITIONS_PER_WORKER = 4; // 分区扫描的快慢不均时由工作窃取平衡
+
+    private final int parallelism;
+    private final long minRows;
+    private final ForkJoinPool pool; // parallelism 为 1 时为 null
+
+    /**
+     * @param parallelism 扫描线程数，1 表示总是顺序扫描
+     * @param minRows 并行扫描的最小行数
+     */
+    ParallelScan(int parallelism, long minRows) {
+        if (parallelism <= 0 || minRows <= 0) {
+            throw new IllegalArgumentException("Parallelism and minimum row count must be positive.");
+        }
+        this.parallelism = parallelism;
+        this.minRows = minRows;
+        this.pool = parallelism == 1 ? null : new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("jsondb-scan-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+    }
+
+    /**
+     * @param rows 要扫描的行数
+     * @param minPartitionRows 每个分区至少的行数
+     * @return 分区数，1 表示在调用线程中顺序扫描
+     */
+    int partitionsFor(long rows, int minPartitionRows) {
+        if (pool == null || rows < minRows) {
+            return 1;
+        }
+        return (int) Math.max(1, Math.min((long) parallelism * PARTITIONS_PER_WORKER, rows / minPartitionRows));
+    }
+
+    /**
+     * @return 扫描给定数量的分区时同时工作的线程数
+     */
+    int workersFor(int partitions) {
+        return Math.min(parallelism, partitions);
+    }
+
+    /**
+     * 对分区 [0, partitions) 分别执行 leaf，并按分区顺序两两合并部分结果（左边分区的结果是 merge 的第一个参数）。
+     * 分区数大于 1 时在线程池上执行，调用线程等待全部完成；任务中的异常在调用线程中重新抛出。
+     */
+    <R> R run(int partitions, IntFunction<R> leaf, BinaryOperator<R> merge) {
+        if (partitions <= 1 || pool == null) {
+            R result = leaf.apply(0);
+            for (int partition = 1; partition < partitions; partition++) {
+                result = merge.apply(result, leaf.apply(partition));
+            }
+            return result;
+        }
+        try {
+            return pool.invoke(new PartitionTask<>(leaf, merge, 0, partitions));
+        } catch (RuntimeException e) {
+            throw unwrap(e);
+        }
+    }
+
+    /**
+     * 在线程池上异步执行 task，用 {@link #join} 取得结果；没有线程池时在调用线程中立即执行。
+     * 用于边扫描边输出的查询：调用者按顺序等待各分区的结果，同时只提交有限个分区，内存不随表的大小增长。
+     */
+    <R> ForkJoinTask<R> submit(Supplier<R> task) {
+        ForkJoinTask<R> forked = ForkJoinTask.adapt(task::get);
+        if (pool == null) {
+            forked.invoke();
+            return forked;
+        }
+        return pool.submit(forked);
+    }
+
+    /**
+     * 等待 {@link #submit} 提交的任务完成并返回结果；任务中的异常在调用线程中重新抛出。
+     */
+    <R> R join(ForkJoinTask<R> task) {
+        try {
+            return task.join();
+        } catch (RuntimeException e) {
+            throw unwrap(e);
+        }
+    }
+
+    // 在其他线程中抛出的异常由 ForkJoinTask 包装成同类型的新异常，取出原来的异常以保留错误信息
+    private static RuntimeException unwrap(RuntimeException e) {
+        Throwable cause = e.getCause();
+        return cause instanceof RuntimeException && cause.getClass() == e.getClass() ? (RuntimeException) cause : e;
+    }
+
+    @Override
+    public void close() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    // 把分区范围二分，左半部分交给其他线程，右半部分在当前线程中执行
+    private static final class PartitionTask<R> extends RecursiveTask<R> {
+        private static final long serialVersionUID = 1L;
+        private final IntFunction<R> leaf;
+        private final BinaryOperator<R> merge;
+        private final int from;
+        private final int to;
+
+        PartitionTask(IntFunction<R> leaf, BinaryOperator<R> merge, int from, int to) {
+            this.leaf = leaf;
+            this.merge = merge;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected R compute() {
+            if (to - from == 1) {
+                return leaf.apply(from);
+            }
+            int mid = (from + to) >>> 1;
+            PartitionTask<R> left = new PartitionTask<>(leaf, merge, from, mid);
+            left.fork();
+            R right = new PartitionTask<>(leaf, merge, mid, to).compute();
+            return merge.apply(left.join(), right);
+        }
+    }
+}
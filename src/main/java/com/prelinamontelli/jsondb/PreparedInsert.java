@@ -0,0 +1,108 @@
+package com.prelinamontelli.jsondb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 绑定到表的 INSERT 语句（可以是多行 VALUES），也是 PREPARE 缓存的执行计划。
+ * 表和列在准备时解析一次，常量值预先转换为列类型；值的位置上可以是参数 $1、$2 ...，
+ * 在每次执行时按位置代入。计划绑定到准备时的表实例，表被删除或重建后需要重新准备。
+ */
+final class PreparedInsert {
+    private final Table table;
+    private final List<List<Expression>> tuples; // 解析得到的值，用于重新准备
+    private final Object[][] template;           // 已转换的常量值或 Expression.Parameter
+    private final int parameterCount;
+
+    private PreparedInsert(Table table, List<List<Expression>> tuples, Object[][] template, int parameterCount) {
+        this.table = table;
+        this.tuples = tuples;
+        this.template = template;
+        this.parameterCount = parameterCount;
+    }
+
+    /**
+     * 为表准备 INSERT 的值列表。
+     * @param tuples {@link Statement.Insert#getRows()}，值是字面量或参数
+     * @throws IllegalArgumentException 如果值的个数与列数不符或常量无法转换为列类型
+     */
+    static PreparedInsert prepare(Table table, List<List<Expression>> tuples) {
+        List<Column> columns = table.getColumnDefinitions();
+        Object[][] template = new Object[tuples.size()][];
+        int parameterCount = 0;
+        for (int r = 0; r < tuples.size(); r++) {
+            List<Expression> tuple = tuples.get(r);
+            if (tuple.size() != columns.size()) {
+                throw new IllegalArgumentException("Column count mismatch in row " + (r + 1) + ". Table " + table.getName()
+                    + " has " + columns.size() + " columns, but " + tuple.size() + " values were provided.");
+            }
+            template[r] = new Object[columns.size()];
+            for (int i = 0; i < columns.size(); i++) {
+                Expression value = tuple.get(i);
+                if (value instanceof Expression.Parameter) {
+                    template[r][i] = value;
+                    parameterCount = Math.max(parameterCount, ((Expression.Parameter) value).getIndex());
+                } else {
+                    template[r][i] = columns.get(i).convertValue(((Expression.Literal) value).getValue());
+                }
+            }
+        }
+        return new PreparedInsert(table, tuples, template, parameterCount);
+    }
+
+    /**
+     * @return 计划是否仍然适用于表的当前实例（表没有被删除或重建）
+     */
+    boolean isValidFor(Table current) {
+        return current == table;
+    }
+
+    String getTableName() {
+        return table.getName();
+    }
+
+    List<List<Expression>> getTuples() {
+        return tuples;
+    }
+
+    int getParameterCount() {
+        return parameterCount;
+    }
+
+    int getRowCount() {
+        return template.length;
+    }
+
+    /**
+     * 代入参数，生成要插入的行（按列定义顺序，已转换为列类型）。
+     * @param arguments 参数值（字面量），arguments.get(0) 对应 $1
+     * @throws IllegalArgumentException 如果参数个数不符、参数不是字面量或参数值无法转换为列类型
+     */
+    List<Object[]> bind(List<Expression> arguments) {
+        if (arguments.size() != parameterCount) {
+            throw new IllegalArgumentException("Expected " + parameterCount + " parameters but got " + arguments.size() + ".");
+        }
+        for (Expression argument : arguments) {
+            if (!(argument instanceof Expression.Literal)) {
+                throw new IllegalArgumentException("Parameter values must be literals, got " + argument + ".");
+            }
+        }
+        List<Column> columns = table.getColumnDefinitions();
+        List<Object[]> rows = new ArrayList<>(template.length);
+        for (Object[] rowTemplate : template) {
+            Object[] values = rowTemplate.clone();
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] instanceof Expression.Parameter) {
+                    int index = ((Expression.Parameter) values[i]).getIndex();
+                    try {
+                        values[i] = columns.get(i).convertValue(((Expression.Literal) arguments.get(index - 1)).getValue());
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("Parameter $" + index + ": " + e.getMessage(), e);
+                    }
+                }
+            }
+            rows.add(values);
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,285 @@
+package com.prelinamontelli.jsondb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * {@link QueryPlanner} 为单表查询选出的物理计划：访问路径、访问路径之外逐行求值的剩余条件，以及排序、LIMIT 和 OFFSET。
+ * 计划只记录索引名称，由 {@link Table} 在执行时重新查找；规划之后索引被删除时执行退回到列向量扫描，结果不变。
+ * 代价的单位是取出一行并求值条件的代价。
+ */
+final class QueryPlan {
+
+    enum AccessType {
+        SEQ_SCAN("Seq Scan"),
+        KEY_LOOKUP("Key Lookup"),
+        INDEX_LOOKUP("Index Lookup"),
+        INDEX_RANGE_SCAN("Index Range Scan"),
+        INDEX_INTERSECTION("Index Intersection"),
+        INDEX_ORDER_SCAN("Index Order Scan");
+
+        private final String label;
+
+        AccessType(String label) {
+            this.label = label;
+        }
+
+        String getLabel() {
+            return label;
+        }
+    }
+
+    /**
+     * 访问路径：找出候选行的方式。除顺序扫描外，访问路径给出的行恰好满足它所使用的条件。
+     */
+    static final class Access {
+        private final AccessType type;
+        private final String indexName;            // KEY_LOOKUP 时是唯一列名，SEQ_SCAN 和 INDEX_INTERSECTION 时为 null
+        private final WhereCondition condition;    // 访问条件；SEQ_SCAN 时是列向量扫描的条件，可以为 null
+        private final List<Expression> predicates; // condition 对应的 WHERE 子条件，用于计算剩余条件和显示
+        private final List<Access> inputs;         // INDEX_INTERSECTION 求交集的各个索引访问
+        private final double rows;
+        private final double cost;
+
+        Access(AccessType type, String indexName, WhereCondition condition, List<Expression> predicates,
+               List<Access> inputs, double rows, double cost) {
+            this.type = type;
+            this.indexName = indexName;
+            this.condition = condition;
+            this.predicates = predicates;
+            this.inputs = inputs;
+            this.rows = rows;
+            this.cost = cost;
+        }
+
+        AccessType getType() {
+            return type;
+        }
+
+        String getIndexName() {
+            return indexName;
+        }
+
+        WhereCondition getCondition() {
+            return condition;
+        }
+
+        List<Expression> getPredicates() {
+            return predicates;
+        }
+
+        List<Access> getInputs() {
+            return inputs;
+        }
+
+        double getRows() {
+            return rows;
+        }
+
+        double getCost() {
+            return cost;
+        }
+
+        /**
+         * @return 候选行来自唯一键或索引（而不是扫描所有行）
+         */
+        boolean usesIndex() {
+            return type != AccessType.SEQ_SCAN && (type != AccessType.INDEX_ORDER_SCAN || condition != null);
+        }
+
+        /**
+         * @return 访问路径使用的所有单列条件；交集时是各个输入的条件
+         */
+        List<WhereCondition> conditions() {
+            if (type == AccessType.INDEX_INTERSECTION) {
+                List<WhereCondition> conditions = new ArrayList<>();
+                for (Access input : inputs) {
+                    conditions.add(input.condition);
+                }
+                return conditions;
+            }
+            return condition == null ? Collections.emptyList() : Collections.singletonList(condition);
+        }
+    }
+
+    private final String tableName;
+    private final Access access;
+    private final Expression residual; // 访问路径没有用到的 WHERE 子条件，null 表示没有
+    private final Column orderBy;
+    private final boolean descending;
+    private final int limit;
+    private final int offset;
+    private final boolean sorted;      // 需要在访问路径之后排序（按有序索引顺序访问时不需要）
+    private final double filteredRows; // 满足全部条件的行数（LIMIT 之前）
+    private final double cost;
+
+    QueryPlan(String tableName, Access access, Expression residual, Column orderBy, boolean descending, int limit, int offset,
+              boolean sorted, double filteredRows, double cost) {
+        this.tableName = tableName;
+        this.access = access;
+        this.residual = residual;
+        this.orderBy = orderBy;
+        this.descending = descending;
+        this.limit = limit;
+        this.offset = offset;
+        this.sorted = sorted;
+        this.filteredRows = filteredRows;
+        this.cost = cost;
+    }
+
+    Access getAccess() {
+        return access;
+    }
+
+    Expression getResidual() {
+        return residual;
+    }
+
+    Column getOrderBy() {
+        return orderBy;
+    }
+
+    boolean isDescending() {
+        return descending;
+    }
+
+    int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return 返回之前跳过的行数
+     */
+    int getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return 顺序扫描是否按分区并行执行（表的行数还要达到并行阈值）。排序时要读取所有满足条件的行；不排序时只有没有 LIMIT 并且要求值条件的扫描并行，
+     *         有 LIMIT 或不过滤的扫描逐批读取，第一行不需要等待分区扫描
+     */
+    boolean isParallelCandidate() {
+        if (access.usesIndex()) {
+            return false;
+        }
+        return orderBy != null || (limit < 0 && (access.getCondition() != null || residual != null));
+    }
+
+    /**
+     * @return 估算的结果行数
+     */
+    double getRows() {
+        double rows = Math.max(0, filteredRows - offset);
+        return limit < 0 ? rows : Math.min(rows, limit);
+    }
+
+    /**
+     * @return 估算的总代价
+     */
+    double getCost() {
+        return cost;
+    }
+
+    /**
+     * 以缩进的树形文本显示计划，每个节点带有估算的代价和行数。
+     * @param operation UPDATE / DELETE 时作为根节点显示的操作名称，SELECT 时为 null
+     * @param workers 顺序扫描并行执行时的线程数，1 表示不并行
+     */
+    List<String> explain(String operation, int workers) {
+        List<String> lines = new ArrayList<>();
+        int depth = 0;
+        if (operation != null) {
+            lines.add(operation + " on " + tableName);
+            depth++;
+        }
+        explain(lines, depth, workers);
+        return lines;
+    }
+
+    /**
+     * 把计划的各个节点从第 depth 层开始加入 lines，用于显示 {@link JoinPlan} 的输入。
+     */
+    void explain(List<String> lines, int depth, int workers) {
+        if (limit >= 0 || offset > 0) {
+            lines.add(node(depth++, limitLabel(limit, offset), cost, getRows()));
+        }
+        if (orderBy != null && sorted) {
+            lines.add(node(depth++, "Sort: " + orderBy.getName() + (descending ? " DESC" : " ASC"), cost, filteredRows));
+        }
+        explainAccess(lines, depth, access, true, workers);
+    }
+
+    private void explainAccess(List<String> lines, int depth, Access node, boolean top, int workers) {
+        boolean parallel = top && node.type == AccessType.SEQ_SCAN && workers > 1;
+        StringBuilder label = new StringBuilder(parallel ? "Parallel " : "").append(node.type.getLabel());
+        if (top) {
+            label.append(" on ").append(tableName);
+        }
+        if (parallel) {
+            label.append(" (workers=").append(workers).append(')');
+        }
+        if (node.type == AccessType.KEY_LOOKUP) {
+            label.append(" using key ").append(node.indexName);
+        } else if (node.indexName != null) {
+            label.append(" using ").append(node.indexName);
+        }
+        if (node.type == AccessType.INDEX_ORDER_SCAN) {
+            label.append(descending ? " (descending)" : " (ascending)");
+        }
+        // 顶层节点显示剩余条件过滤之后的行数；按索引顺序访问时取满 LIMIT（加上 OFFSET 跳过的行）即停止
+        double rows = !top ? node.rows : node.type == AccessType.INDEX_ORDER_SCAN ? Math.min(filteredRows, (double) limit + offset) : filteredRows;
+        lines.add(node(depth, label.toString(), node.cost, rows));
+        String indent = detailIndent(depth);
+        if (!node.predicates.isEmpty() && node.inputs.isEmpty()) {
+            String title = node.type == AccessType.SEQ_SCAN ? "Vector Filter: " : "Index Cond: ";
+            lines.add(indent + title + join(node.predicates));
+        }
+        if (top && residual != null) {
+            lines.add(indent + "Filter: " + residual);
+        }
+        for (Access input : node.inputs) {
+            explainAccess(lines, depth + 1, input, false, 1);
+        }
+    }
+
+    // LIMIT / OFFSET 节点的名称
+    static String limitLabel(int limit, int offset) {
+        String label = limit >= 0 ? "Limit " + limit : "Offset " + offset;
+        return limit >= 0 && offset > 0 ? label + " Offset " + offset : label;
+    }
+
+    // 第 depth 层节点的一行：节点名称、估算的代价和行数
+    static String node(int depth, String label, double cost, double rows) {
+        return indent(depth) + (depth == 0 ? "" : "-> ") + label
+            + String.format(Locale.ROOT, "  (cost=%.2f rows=%d)", cost, Math.round(rows));
+    }
+
+    // 第 depth 层节点的说明行（条件等）的缩进
+    static String detailIndent(int depth) {
+        return indent(depth) + (depth == 0 ? "  " : "     ");
+    }
+
+    private static String indent(int depth) {
+        StringBuilder indent = new StringBuilder();
+        for (int i = 1; i < depth; i++) {
+            indent.append("   ");
+        }
+        if (depth > 0) {
+            indent.append("  ");
+        }
+        return indent.toString();
+    }
+
+    private static String join(List<Expression> predicates) {
+        StringBuilder text = new StringBuilder();
+        for (Expression predicate : predicates) {
+            if (text.length() > 0) {
+                text.append(" AND ");
+            }
+            text.append(predicate);
+        }
+        return text.toString();
+    }
+}
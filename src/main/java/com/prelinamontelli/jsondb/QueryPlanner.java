@@ -0,0 +1,308 @@
+package com.prelinamontelli.jsondb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 基于代价的单表查询规划。对 WHERE 的每个 AND 子条件列出可用的访问路径（唯一键查找、哈希 / 有序索引等值查找、
+ * 有序索引范围扫描、列向量扫描），用表的行数和 {@link ColumnStatistics} 估算每条路径返回的行数和代价，
+ * 再考虑多个索引结果求交集，以及 ORDER BY ... LIMIT 时按有序索引顺序访问以省去排序，选出总代价最低的计划。
+ * 调用者持有表的读锁或写锁。
+ */
+final class QueryPlanner {
+    // 代价的单位：取出一行的所有列并求值剩余条件
+    private static final double ROW_COST = 1.0;
+    private static final double VECTOR_ROW_COST = 0.1;  // 列向量扫描中比较一个值
+    private static final double LOOKUP_COST = 1.0;      // 一次哈希查找，或有序索引中每层树节点
+    private static final double INDEX_ENTRY_COST = 0.2; // 从索引读出一个行 ID
+    private static final double SORT_COST = 0.05;       // 排序中的一次比较
+    private static final double DEFAULT_SELECTIVITY = 1.0 / 3; // 无法估算的条件
+
+    private final Table table;
+    private final double rowCount;
+    private final Map<String, ColumnStatistics> statistics = new HashMap<>();
+
+    private QueryPlanner(Table table) {
+        this.table = table;
+        this.rowCount = table.getRowCount();
+    }
+
+    /**
+     * @param filter 绑定到表的条件，null 表示全部行
+     * @param orderBy 排序列，null 表示按表中顺序
+     * @param limit 最多返回的行数，负数表示不限制
+     * @param offset 返回之前跳过的行数
+     */
+    static QueryPlan plan(Table table, Expression filter, Column orderBy, boolean descending, int limit, int offset) {
+        return new QueryPlanner(table).plan(filter, orderBy, descending, limit, offset);
+    }
+
+    private QueryPlan plan(Expression filter, Column orderBy, boolean descending, int limit, int offset) {
+        List<Expression> conjuncts = filter == null ? Collections.emptyList() : filter.conjuncts();
+        double filteredRows = rowCount * selectivity(filter);
+        QueryPlan.Access best = seqScan(conjuncts);
+        List<QueryPlan.Access> probes = new ArrayList<>(); // 每个子条件上代价最低的索引访问，用于求交集
+        for (Expression conjunct : conjuncts) {
+            WhereCondition condition = conjunct.toWhereCondition();
+            if (condition == null) {
+                continue;
+            }
+            QueryPlan.Access cheapest = null;
+            for (QueryPlan.Access candidate : indexAccesses(conjunct, condition)) {
+                if (cheapest == null || candidate.getCost() < cheapest.getCost()) {
+                    cheapest = candidate;
+                }
+            }
+            if (cheapest == null) {
+                continue;
+            }
+            if (cheapest.getCost() < best.getCost()) {
+                best = cheapest;
+            }
+            if (cheapest.getType() != QueryPlan.AccessType.KEY_LOOKUP) {
+                probes.add(cheapest);
+            }
+        }
+        QueryPlan.Access intersection = intersection(probes);
+        if (intersection != null && intersection.getCost() < best.getCost()) {
+            best = intersection;
+        }
+        double cost = best.getCost();
+        boolean sorted = orderBy != null;
+        if (orderBy != null) {
+            // 排序时需要前 limit + offset 行，跳过的行也要读取
+            int needed = limit < 0 ? -1 : (int) Math.min(Integer.MAX_VALUE, (long) limit + offset);
+            cost += sortCost(filteredRows, needed);
+            QueryPlan.Access ordered = needed >= 0 ? orderScan(conjuncts, orderBy, needed, filteredRows) : null;
+            if (ordered != null && ordered.getCost() < cost) {
+                best = ordered;
+                cost = ordered.getCost();
+                sorted = false;
+            }
+        }
+        return new QueryPlan(table.getName(), best, residual(conjuncts, best), orderBy, descending, limit, offset, sorted,
+            filteredRows, cost);
+    }
+
+    // 顺序扫描：可以用列向量求值的子条件中选择率最低的一个先在列向量上过滤，其余条件逐行求值
+    private QueryPlan.Access seqScan(List<Expression> conjuncts) {
+        QueryPlan.Access best = new QueryPlan.Access(QueryPlan.AccessType.SEQ_SCAN, null, null,
+            Collections.emptyList(), Collections.emptyList(), rowCount, rowCount * ROW_COST);
+        for (Expression conjunct : conjuncts) {
+            WhereCondition condition = conjunct.toWhereCondition();
+            if (condition == null) {
+                continue;
+            }
+            double rows = rowCount * conditionSelectivity(condition);
+            double cost = rowCount * VECTOR_ROW_COST + rows * ROW_COST;
+            if (cost < best.getCost()) {
+                best = new QueryPlan.Access(QueryPlan.AccessType.SEQ_SCAN, null, condition,
+                    Collections.singletonList(conjunct), Collections.emptyList(), rows, cost);
+            }
+        }
+        return best;
+    }
+
+    // 一个子条件上所有可用的唯一键和索引访问
+    private List<QueryPlan.Access> indexAccesses(Expression conjunct, WhereCondition condition) {
+        List<QueryPlan.Access> accesses = new ArrayList<>();
+        String columnName = condition.getColumn().getName();
+        List<Expression> predicates = Collections.singletonList(conjunct);
+        double rows = rowCount * conditionSelectivity(condition);
+        if (!condition.isRange() && condition.getValue() != null && table.hasUniqueKey(columnName)) {
+            accesses.add(new QueryPlan.Access(QueryPlan.AccessType.KEY_LOOKUP, columnName, condition, predicates,
+                Collections.emptyList(), rows, LOOKUP_COST + rows * ROW_COST));
+        }
+        for (TableIndex index : table.indexesOn(columnName)) {
+            IndexDefinition definition = index.getDefinition();
+            boolean ordered = definition.getType() == IndexType.ORDERED;
+            double probe = ordered ? treeDepth() : LOOKUP_COST;
+            if (!condition.isRange()) {
+                accesses.add(new QueryPlan.Access(QueryPlan.AccessType.INDEX_LOOKUP, definition.getName(), condition, predicates,
+                    Collections.emptyList(), rows, probe + rows * (INDEX_ENTRY_COST + ROW_COST)));
+            } else if (ordered) {
+                // 范围内的行 ID 按键顺序读出，还要按行 ID 排序恢复表中顺序
+                accesses.add(new QueryPlan.Access(QueryPlan.AccessType.INDEX_RANGE_SCAN, definition.getName(), condition, predicates,
+                    Collections.emptyList(), rows, probe + rows * (INDEX_ENTRY_COST + ROW_COST) + sortCost(rows, -1)));
+            }
+        }
+        return accesses;
+    }
+
+    /**
+     * 多个索引访问的行 ID 求交集：按返回行数从少到多加入，只需要取出交集中的行。
+     * 加入更多索引使总代价下降时才继续加入。
+     * @return 少于两个可用的索引访问，或求交集不比单个索引便宜时返回 null
+     */
+    private QueryPlan.Access intersection(List<QueryPlan.Access> probes) {
+        if (probes.size() < 2) {
+            return null;
+        }
+        List<QueryPlan.Access> sorted = new ArrayList<>(probes);
+        sorted.sort(Comparator.comparingDouble(QueryPlan.Access::getRows));
+        QueryPlan.Access best = null;
+        List<QueryPlan.Access> inputs = new ArrayList<>();
+        List<Expression> predicates = new ArrayList<>();
+        double inputCost = 0;
+        double selectivity = 1;
+        for (QueryPlan.Access probe : sorted) {
+            // 作为交集的输入时只读出行 ID，不取出行
+            QueryPlan.Access input = new QueryPlan.Access(probe.getType(), probe.getIndexName(), probe.getCondition(),
+                probe.getPredicates(), Collections.emptyList(), probe.getRows(), probe.getCost() - probe.getRows() * ROW_COST);
+            inputs.add(input);
+            predicates.addAll(input.getPredicates());
+            inputCost += input.getCost();
+            selectivity *= conditionSelectivity(input.getCondition());
+            if (inputs.size() < 2) {
+                continue;
+            }
+            double rows = rowCount * selectivity;
+            double cost = inputCost + rows * ROW_COST;
+            if (best != null && cost >= best.getCost()) {
+                break;
+            }
+            best = new QueryPlan.Access(QueryPlan.AccessType.INDEX_INTERSECTION, null, null,
+                new ArrayList<>(predicates), new ArrayList<>(inputs), rows, cost);
+        }
+        return best;
+    }
+
+    /**
+     * ORDER BY ... LIMIT 时按排序列上的有序索引顺序访问行，取满 limit 行即停止；排序列上的范围条件可以限定遍历的范围。
+     * @return 排序列上没有有序索引时返回 null
+     */
+    private QueryPlan.Access orderScan(List<Expression> conjuncts, Column orderBy, int limit, double filteredRows) {
+        TableIndex orderedIndex = null;
+        for (TableIndex index : table.indexesOn(orderBy.getName())) {
+            if (index.getDefinition().getType() == IndexType.ORDERED) {
+                orderedIndex = index;
+                break;
+            }
+        }
+        if (orderedIndex == null) {
+            return null;
+        }
+        Expression rangePredicate = null;
+        WhereCondition range = null;
+        for (Expression conjunct : conjuncts) {
+            WhereCondition condition = conjunct.toWhereCondition();
+            if (condition != null && condition.isRange() && condition.getColumn().getName().equals(orderBy.getName())
+                    && (range == null || conditionSelectivity(condition) < conditionSelectivity(range))) {
+                rangePredicate = conjunct;
+                range = condition;
+            }
+        }
+        double scanned = range == null ? rowCount : rowCount * conditionSelectivity(range);
+        double remaining = scanned == 0 ? 0 : Math.min(1, filteredRows / scanned); // 遍历到的行中满足其余条件的比例
+        double visited = remaining == 0 ? scanned : Math.min(scanned, limit / remaining);
+        return new QueryPlan.Access(QueryPlan.AccessType.INDEX_ORDER_SCAN, orderedIndex.getDefinition().getName(), range,
+            rangePredicate == null ? Collections.emptyList() : Collections.singletonList(rangePredicate),
+            Collections.emptyList(), visited, treeDepth() + visited * (INDEX_ENTRY_COST + ROW_COST));
+    }
+
+    // 访问路径没有用到的子条件，由执行时逐行求值
+    private static Expression residual(List<Expression> conjuncts, QueryPlan.Access access) {
+        Set<Expression> used = Collections.newSetFromMap(new IdentityHashMap<>());
+        used.addAll(access.getPredicates());
+        List<Expression> remaining = new ArrayList<>();
+        for (Expression conjunct : conjuncts) {
+            if (!used.contains(conjunct)) {
+                remaining.add(conjunct);
+            }
+        }
+        if (remaining.isEmpty()) {
+            return null;
+        }
+        return remaining.size() == 1 ? remaining.get(0) : new Expression.And(remaining);
+    }
+
+    private double treeDepth() {
+        return LOOKUP_COST * Math.max(1, Math.log(rowCount + 1) / Math.log(2));
+    }
+
+    // rows 行排序的代价；有 limit 时用大小为 limit 的堆
+    private static double sortCost(double rows, int limit) {
+        if (rows <= 1) {
+            return 0;
+        }
+        double heapSize = limit >= 0 && limit < rows ? limit + 2 : rows;
+        return rows * Math.log(heapSize) / Math.log(2) * SORT_COST;
+    }
+
+    /**
+     * 估算条件的选择率（满足条件的行所占的比例）。AND 的各部分视为相互独立，单列条件使用列的统计信息，
+     * 其他条件使用默认值。
+     */
+    private double selectivity(Expression predicate) {
+        if (predicate == null) {
+            return 1;
+        }
+        if (predicate instanceof Expression.And) {
+            double selectivity = 1;
+            for (Expression operand : ((Expression.And) predicate).getOperands()) {
+                selectivity *= selectivity(operand);
+            }
+            return selectivity;
+        }
+        if (predicate instanceof Expression.Or) {
+            double none = 1;
+            for (Expression operand : ((Expression.Or) predicate).getOperands()) {
+                none *= 1 - selectivity(operand);
+            }
+            return 1 - none;
+        }
+        if (predicate instanceof Expression.Not) {
+            return 1 - selectivity(((Expression.Not) predicate).getOperand());
+        }
+        WhereCondition condition = predicate.toWhereCondition();
+        if (condition != null) {
+            return conditionSelectivity(condition);
+        }
+        if (predicate instanceof Expression.IsNull) {
+            Expression operand = ((Expression.IsNull) predicate).getOperand();
+            if (operand instanceof Expression.ColumnRef) {
+                return 1 - statistics(((Expression.ColumnRef) operand).getColumn()).equalitySelectivity(null); // IS NOT NULL
+            }
+        }
+        if (predicate instanceof Expression.Comparison) {
+            Expression.Comparison comparison = (Expression.Comparison) predicate;
+            Expression left = comparison.getLeft();
+            Expression right = comparison.getRight();
+            if (left instanceof Expression.ColumnRef && right instanceof Expression.ColumnRef) {
+                return comparison.getOperator() == Expression.Comparison.Operator.EQ
+                    ? ColumnStatistics.DEFAULT_EQUALITY_SELECTIVITY : DEFAULT_SELECTIVITY;
+            }
+            Expression.ColumnRef column = (Expression.ColumnRef) (left instanceof Expression.ColumnRef ? left : right);
+            Object value = ((Expression.Literal) (left instanceof Expression.ColumnRef ? right : left)).getValue();
+            if (value == null) {
+                return 0; // 与 NULL 的比较永远不成立（= NULL 和 != NULL 已在绑定时改写为 IS [NOT] NULL）
+            }
+            ColumnStatistics columnStatistics = statistics(column.getColumn());
+            return clamp(1 - columnStatistics.equalitySelectivity(value) - columnStatistics.equalitySelectivity(null));
+        }
+        return DEFAULT_SELECTIVITY;
+    }
+
+    private double conditionSelectivity(WhereCondition condition) {
+        ColumnStatistics columnStatistics = statistics(condition.getColumn());
+        if (!condition.isRange()) {
+            return clamp(columnStatistics.equalitySelectivity(condition.getValue()));
+        }
+        return clamp(columnStatistics.rangeSelectivity(condition.getLowerBound(), condition.isLowerInclusive(),
+            condition.getUpperBound(), condition.isUpperInclusive()));
+    }
+
+    private ColumnStatistics statistics(Column column) {
+        return statistics.computeIfAbsent(column.getName(), table::columnStatistics);
+    }
+
+    private static double clamp(double selectivity) {
+        return Math.max(0, Math.min(1, selectivity));
+    }
+}
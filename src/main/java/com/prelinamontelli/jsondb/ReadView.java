@@ -0,0 +1,47 @@
+package com.prelinamontelli.jsondb;
+
+/**
+ * 表在某个版本上的一致只读视图 (MVCC)。视图打开之后提交的插入、更新和删除对它不可见，
+ * 通过视图的查询不在整个扫描期间持有表锁，长时间的查询不会阻塞写入，也不会看到修改到一半的行。
+ * 用完必须关闭，表才能回收只有这个视图还需要的旧版本。
+ */
+final class ReadView implements AutoCloseable {
+    private final Table table;
+    private final long version;   // 视图看到表版本号不大于此值的所有修改
+    private final long nextRowId; // 行 ID 不小于此值的行是视图打开之后插入的
+    private boolean closed;
+
+    ReadView(Table table, long version, long nextRowId) {
+        this.table = table;
+        this.version = version;
+        this.nextRowId = nextRowId;
+    }
+
+    Table getTable() {
+        return table;
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    long getNextRowId() {
+        return nextRowId;
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            table.closeReadView(this);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ReadView{" +
+               "table='" + table.getName() + '\'' +
+               ", version=" + version +
+               '}';
+    }
+}
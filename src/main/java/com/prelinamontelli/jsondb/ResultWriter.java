@@ -0,0 +1,317 @@
+package com.prelinamontelli.jsondb;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 按 {@link OutputFormat} 输出查询结果。每个值先追加到一个复用的缓冲区中，缓冲区达到 flushChars 个字符时整块写出，
+ * 而不是逐个值写入输出流：控制台的 System.out 每次写入都要加锁并在换行时刷新，逐个值写出时输出往往比查询本身慢得多。
+ * 结果从游标逐行读取，除了表格格式用于计算列宽的前几行之外不保存已经输出的行。
+ * 一个会话使用一个实例，不能并发使用。
+ */
+abstract class ResultWriter {
+    private final int flushChars;
+    private StringBuilder buffer;
+    private PrintStream out;
+
+    private ResultWriter(int flushChars) {
+        this.flushChars = flushChars;
+        this.buffer = new StringBuilder(flushChars + 1024);
+    }
+
+    /**
+     * @param flushChars 缓冲区写出的阈值（字符数）
+     * @param alignRows 表格格式在确定列宽之前读取的行数，之后更宽的值超出列宽，不再对齐
+     */
+    static ResultWriter create(OutputFormat format, int flushChars, int alignRows) {
+        switch (format) {
+            case CSV:
+                return new CsvWriter(flushChars);
+            case NDJSON:
+                return new NdjsonWriter(flushChars);
+            default:
+                return new TableWriter(flushChars, alignRows);
+        }
+    }
+
+    abstract OutputFormat getFormat();
+
+    /**
+     * 输出表头和游标中的所有行。
+     * @param positions 各输出列在结果行中的位置
+     * @return 输出的行数
+     */
+    final long write(PrintStream target, List<String> headers, RowCursor rows, int[] positions) {
+        out = target;
+        try {
+            long count = render(headers, rows, positions);
+            flush();
+            return count;
+        } finally {
+            out = null;
+            if (buffer.capacity() > 4 * flushChars) {
+                buffer = new StringBuilder(flushChars + 1024); // 不长期保留很长的行撑大的缓冲区
+            } else {
+                buffer.setLength(0);
+            }
+        }
+    }
+
+    abstract long render(List<String> headers, RowCursor rows, int[] positions);
+
+    StringBuilder buffer() {
+        return buffer;
+    }
+
+    // 结束一行；缓冲区达到阈值时写出
+    void endLine() {
+        buffer.append('\n');
+        if (buffer.length() >= flushChars) {
+            flush();
+        }
+    }
+
+    private void flush() {
+        if (buffer.length() > 0) {
+            out.append(buffer);
+            buffer.setLength(0);
+        }
+    }
+
+    // 表格中显示的值
+    private static String text(Object value) {
+        return value == null ? "NULL" : value.toString();
+    }
+
+    /**
+     * 按列对齐的表格：列宽取表头和前 alignRows 行中最长的值，列之间用 " | " 分隔。
+     */
+    private static final class TableWriter extends ResultWriter {
+        private final int alignRows;
+
+        TableWriter(int flushChars, int alignRows) {
+            super(flushChars);
+            this.alignRows = alignRows;
+        }
+
+        @Override
+        OutputFormat getFormat() {
+            return OutputFormat.TABLE;
+        }
+
+        @Override
+        long render(List<String> headers, RowCursor rows, int[] positions) {
+            int[] widths = new int[headers.size()];
+            for (int i = 0; i < widths.length; i++) {
+                widths[i] = headers.get(i).length();
+            }
+            List<String[]> pending = new ArrayList<>();
+            while (pending.size() < alignRows && rows.hasNext()) {
+                String[] cells = cells(rows.next(), positions);
+                for (int i = 0; i < cells.length; i++) {
+                    widths[i] = Math.max(widths[i], cells[i].length());
+                }
+                pending.add(cells);
+            }
+            appendCells(headers.toArray(new String[0]), widths);
+            StringBuilder buffer = buffer();
+            for (int i = 0; i < widths.length; i++) {
+                if (i > 0) {
+                    buffer.append("-+-");
+                }
+                for (int j = 0; j < widths[i]; j++) {
+                    buffer.append('-');
+                }
+            }
+            endLine();
+            long count = 0;
+            for (String[] cells : pending) {
+                appendCells(cells, widths);
+                count++;
+            }
+            pending.clear();
+            while (rows.hasNext()) {
+                appendCells(cells(rows.next(), positions), widths);
+                count++;
+            }
+            return count;
+        }
+
+        private static String[] cells(Object[] row, int[] positions) {
+            String[] cells = new String[positions.length];
+            for (int i = 0; i < positions.length; i++) {
+                cells[i] = text(row[positions[i]]);
+            }
+            return cells;
+        }
+
+        // 最后一列不补空格，行尾没有多余的空白
+        private void appendCells(String[] cells, int[] widths) {
+            StringBuilder buffer = buffer();
+            for (int i = 0; i < cells.length; i++) {
+                if (i > 0) {
+                    buffer.append(" | ");
+                }
+                buffer.append(cells[i]);
+                if (i < cells.length - 1) {
+                    for (int j = cells[i].length(); j < widths[i]; j++) {
+                        buffer.append(' ');
+                    }
+                }
+            }
+            endLine();
+        }
+    }
+
+    /**
+     * CSV：第一行是表头。与 {@link CopyReader} 的规则一致，NULL 是不加引号的空字段；空字符串、首尾有空白，
+     * 或者包含逗号、引号和换行的值加引号，值中的引号写成两个引号。
+     */
+    private static final class CsvWriter extends ResultWriter {
+
+        CsvWriter(int flushChars) {
+            super(flushChars);
+        }
+
+        @Override
+        OutputFormat getFormat() {
+            return OutputFormat.CSV;
+        }
+
+        @Override
+        long render(List<String> headers, RowCursor rows, int[] positions) {
+            StringBuilder buffer = buffer();
+            for (int i = 0; i < headers.size(); i++) {
+                if (i > 0) {
+                    buffer.append(',');
+                }
+                appendField(buffer, headers.get(i));
+            }
+            endLine();
+            long count = 0;
+            while (rows.hasNext()) {
+                Object[] row = rows.next();
+                for (int i = 0; i < positions.length; i++) {
+                    if (i > 0) {
+                        buffer.append(',');
+                    }
+                    Object value = row[positions[i]];
+                    if (value instanceof String) {
+                        appendField(buffer, (String) value);
+                    } else if (value != null) {
+                        buffer.append(value);
+                    }
+                }
+                endLine();
+                count++;
+            }
+            return count;
+        }
+
+        private static void appendField(StringBuilder buffer, String value) {
+            boolean quote = value.isEmpty() || Character.isWhitespace(value.charAt(0))
+                || Character.isWhitespace(value.charAt(value.length() - 1));
+            for (int i = 0; i < value.length() && !quote; i++) {
+                char c = value.charAt(i);
+                quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!quote) {
+                buffer.append(value);
+                return;
+            }
+            buffer.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"') {
+                    buffer.append('"');
+                }
+                buffer.append(c);
+            }
+            buffer.append('"');
+        }
+    }
+
+    /**
+     * NDJSON：每行一个 JSON 对象，键是列名，按选择列表的顺序排列。NULL 是 null；DOUBLE 的 NaN 和无穷大不是合法的 JSON 数字，写成字符串。
+     */
+    private static final class NdjsonWriter extends ResultWriter {
+
+        NdjsonWriter(int flushChars) {
+            super(flushChars);
+        }
+
+        @Override
+        OutputFormat getFormat() {
+            return OutputFormat.NDJSON;
+        }
+
+        @Override
+        long render(List<String> headers, RowCursor rows, int[] positions) {
+            String[] keys = new String[headers.size()]; // 每个键（含引号和冒号）只转义一次
+            for (int i = 0; i < keys.length; i++) {
+                StringBuilder key = new StringBuilder();
+                appendString(key, headers.get(i));
+                keys[i] = key.append(':').toString();
+            }
+            StringBuilder buffer = buffer();
+            long count = 0;
+            while (rows.hasNext()) {
+                Object[] row = rows.next();
+                buffer.append('{');
+                for (int i = 0; i < positions.length; i++) {
+                    if (i > 0) {
+                        buffer.append(',');
+                    }
+                    buffer.append(keys[i]);
+                    appendValue(buffer, row[positions[i]]);
+                }
+                buffer.append('}');
+                endLine();
+                count++;
+            }
+            return count;
+        }
+
+        private static void appendValue(StringBuilder buffer, Object value) {
+            if (value == null || value instanceof Boolean || value instanceof Integer || value instanceof Long) {
+                buffer.append(value);
+            } else if (value instanceof Double && Double.isFinite((Double) value)) {
+                buffer.append(value);
+            } else {
+                appendString(buffer, value.toString());
+            }
+        }
+
+        private static void appendString(StringBuilder buffer, String value) {
+            buffer.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '"':
+                        buffer.append("\\\"");
+                        break;
+                    case '\\':
+                        buffer.append("\\\\");
+                        break;
+                    case '\n':
+                        buffer.append("\\n");
+                        break;
+                    case '\r':
+                        buffer.append("\\r");
+                        break;
+                    case '\t':
+                        buffer.append("\\t");
+                        break;
+                    default:
+                        if (c < 0x20) {
+                            buffer.append(String.format("\\u%04x", (int) c));
+                        } else {
+                            buffer.append(c);
+                        }
+                }
+            }
+            buffer.append('"');
+        }
+    }
+}
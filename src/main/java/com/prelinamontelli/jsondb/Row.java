@@ -1,78 +1,58 @@
 package com.prelinamontelli.jsondb;
 
-import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonValue;
 
-import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
 
+/**
+ * 表中一行的轻量视图。数据保存在表的 {@link ColumnStore} 中，视图只记录行 ID 和缓存的槽位，
+ * 读取时直接访问列向量，因此始终反映该行的当前值。行被删除后再读取会抛出 {@link IllegalStateException}。
+ */
 public class Row {
-    // 使用 LinkedHashMap 保持列的插入顺序，这对于 SELECT * 等操作很重要
-    private final Map<String, Object> data;
+    private final ColumnStore store;
+    private final long rowId;
+    private int slot;
+    private int generation;
 
-    public Row() {
-        this.data = new LinkedHashMap<>();
+    Row(ColumnStore store, long rowId, int slot) {
+        this.store = store;
+        this.rowId = rowId;
+        this.slot = slot;
+        this.generation = store.generation();
     }
 
-    @JsonCreator
-    public Row(Map<String, Object> data) {
-        this.data = new LinkedHashMap<>(data);
+    public long getRowId() {
+        return rowId;
     }
 
+    /**
+     * @return 行数据的副本（列名 -> 值，按列定义顺序）
+     */
     @JsonValue
     public Map<String, Object> getData() {
-        return data;
+        return store.materialize(currentSlot());
     }
 
     public Object getValue(String columnName) {
-        return data.get(columnName);
-    }
-
-    public void setValue(String columnName, Object value) {
-        data.put(columnName, value);
+        int columnIndex = store.columnIndex(columnName);
+        return columnIndex < 0 ? null : store.get(currentSlot(), columnIndex);
     }
 
-    /**
-     * 根据列定义验证并设置值。
-     * @param column 列定义
-     * @param value 要设置的值
-     * @throws IllegalArgumentException 如果值无效或列不存在
-     */
-    public void validateAndSetValue(Column column, Object value) {
-        if (column == null) {
-            throw new IllegalArgumentException("Column definition cannot be null.");
-        }
-        Object convertedValue = column.convertValue(value);
-        if (convertedValue != null && !column.isValidValue(convertedValue)) {
-            throw new IllegalArgumentException(
-                "Invalid value '" + value + "' for column '" + column.getName() + "' of type " + column.getType()
-            );
-        }
-        data.put(column.getName(), convertedValue);
+    public boolean hasColumn(String columnName) {
+        return store.columnIndex(columnName) >= 0;
     }
 
-    /**
-     * 更新行中给定列的现有值，执行验证和类型转换。
-     * @param column 列定义。
-     * @param newValue 要设置的新值。
-     * @throws IllegalArgumentException 如果列在行中不存在（如果行来自表，则不应发生此情况），或者新值对于列类型无效。
-     */
-    public void updateValue(Column column, Object newValue) {
-        if (column == null) {
-            throw new IllegalArgumentException("Column definition cannot be null for update.");
+    // 存储压缩后槽位会变化，此时按行 ID 重新定位
+    private int currentSlot() {
+        if (generation != store.generation()) {
+            slot = store.slotOf(rowId);
+            generation = store.generation();
         }
-        Object convertedValue = column.convertValue(newValue);
-        if (convertedValue != null && !column.isValidValue(convertedValue)) {
-            throw new IllegalArgumentException(
-                "Invalid new value '" + newValue + "' for column '" + column.getName() + "' of type " + column.getType()
-            );
+        if (slot < 0 || !store.isLive(slot) || store.rowIdAt(slot) != rowId) {
+            throw new IllegalStateException("Row " + rowId + " has been deleted.");
         }
-        data.put(column.getName(), convertedValue);
-    }
-
-    public boolean hasColumn(String columnName) {
-        return data.containsKey(columnName);
+        return slot;
     }
     
     @Override
@@ -80,18 +60,19 @@ public class Row {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Row row = (Row) o;
-        return Objects.equals(data, row.data);
+        return Objects.equals(getData(), row.getData());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(data);
+        return Objects.hash(getData());
     }
 
     @Override
     public String toString() {
         return "Row{" +
-               "data=" + data +
+               "rowId=" + rowId +
+               ", data=" + getData() +
                '}';
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,149 @@
+package com.prelinamontelli.jsondb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * 查询结果的游标：调用者取下一行时才读取下一批，不事先生成整个结果，所以第一行的延迟和占用的内存与结果的行数无关。
+ * 子类用 {@link #fetch} 逐批产生行；{@link #skip} 默认读取并丢弃跳过的行，子类可以把跳过下推到扫描中，不组装跳过的行。
+ * 游标只在取行时短暂读取表，不持有锁；读视图由打开游标的调用者负责关闭，关闭之前先调用 {@link #close}。
+ */
+abstract class RowCursor implements Iterator<Object[]> {
+    private List<Object[]> batch = Collections.emptyList();
+    private int position;
+    private boolean finished;
+
+    /**
+     * @return 下一批行（可以为空），没有更多的行时返回 null
+     */
+    abstract List<Object[]> fetch();
+
+    /**
+     * 跳过尚未读取的 count 行。默认逐批读取并丢弃。
+     */
+    void skipUnread(int count) {
+        while (count > 0) {
+            List<Object[]> next = fetch();
+            if (next == null) {
+                finished = true;
+                return;
+            }
+            if (next.size() > count) {
+                batch = next;
+                position = count;
+                return;
+            }
+            count -= next.size();
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (position == batch.size()) {
+            List<Object[]> next = finished ? null : fetch();
+            if (next == null) {
+                finished = true;
+                return false;
+            }
+            batch = next;
+            position = 0;
+        }
+        return true;
+    }
+
+    @Override
+    public Object[] next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return batch.get(position++);
+    }
+
+    /**
+     * 停止游标在后台进行的读取（例如并行扫描中已经提交的分区），等待它们结束。读视图关闭之前必须先关闭游标；
+     * 默认没有后台读取，不需要做任何事。
+     */
+    void close() {
+    }
+
+    /**
+     * @return 接下来的最多 max 行：当前批次中剩余的行，不会为了凑满 max 而读取下一批；没有更多的行时返回空列表
+     */
+    List<Object[]> nextBatch(int max) {
+        if (!hasNext()) {
+            return Collections.emptyList();
+        }
+        int end = (int) Math.min(batch.size(), (long) position + max);
+        List<Object[]> rows = new ArrayList<>(batch.subList(position, end));
+        position = end;
+        return rows;
+    }
+
+    /**
+     * 跳过接下来的 count 行，行数不足时跳过所有的行。
+     */
+    void skip(int count) {
+        int inBatch = Math.min(count, batch.size() - position);
+        position += inBatch;
+        if (count > inBatch && !finished) {
+            skipUnread(count - inBatch);
+        }
+    }
+
+    /**
+     * @param max 最多产生的行数，负数表示不限制
+     * @return 从这个游标中取最多 max 行的游标，取满之后不再读取
+     */
+    RowCursor limit(int max) {
+        if (max < 0) {
+            return this;
+        }
+        RowCursor source = this;
+        return new RowCursor() {
+            private int remaining = max;
+
+            @Override
+            List<Object[]> fetch() {
+                if (remaining == 0) {
+                    return null;
+                }
+                List<Object[]> rows = source.nextBatch(remaining);
+                remaining -= rows.size();
+                return rows.isEmpty() ? null : rows;
+            }
+
+            @Override
+            void skipUnread(int count) {
+                int skipped = Math.min(count, remaining);
+                source.skip(skipped);
+                remaining -= skipped;
+            }
+
+            @Override
+            void close() {
+                source.close();
+            }
+        };
+    }
+
+    /**
+     * @return 依次产生 rows 中各行的游标
+     */
+    static RowCursor of(List<Object[]> rows) {
+        return new RowCursor() {
+            private boolean fetched;
+
+            @Override
+            List<Object[]> fetch() {
+                if (fetched) {
+                    return null;
+                }
+                fetched = true;
+                return rows;
+            }
+        };
+    }
+}
@@ -0,0 +1,57 @@
+package com.prelinamontelli.jsondb;
+
+import java.util.Arrays;
+
+/**
+ * 索引条目使用的升序、无装箱的行 ID 列表。行 ID 单调递增，插入通常发生在末尾，因此追加是均摊 O(1) 的。
+ */
+final class RowIdList {
+    private long[] values = new long[2];
+    private int size;
+
+    void add(long rowId) {
+        int index = Arrays.binarySearch(values, 0, size, rowId);
+        if (index >= 0) {
+            return;
+        }
+        int insertAt = -index - 1;
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        System.arraycopy(values, insertAt, values, insertAt + 1, size - insertAt);
+        values[insertAt] = rowId;
+        size++;
+    }
+
+    void addAll(RowIdList other) {
+        for (int i = 0; i < other.size; i++) {
+            add(other.values[i]);
+        }
+    }
+
+    boolean remove(long rowId) {
+        int index = Arrays.binarySearch(values, 0, size, rowId);
+        if (index < 0) {
+            return false;
+        }
+        System.arraycopy(values, index + 1, values, index, size - index - 1);
+        size--;
+        return true;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long get(int index) {
+        return values[index];
+    }
+
+    long[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+}
@@ -0,0 +1,19 @@
+package com.prelinamontelli.jsondb;
+
+/**
+ * 行的一个旧版本 (MVCC)。表在更新或删除行之前把旧值保存为版本，同一行的版本从新到旧链接，
+ * 打开的 {@link ReadView} 据此重建它所在版本上的行值。不再被任何读视图需要的版本由表回收。
+ */
+final class RowVersion {
+    final long rowId;
+    final long supersededAt; // 使这些值失效的表版本号：版本号小于它的读视图看到这些值
+    final Object[] values;   // 按列定义顺序的旧值
+    volatile RowVersion older; // 读视图不加锁地沿链读取，回收时由写入者截断
+
+    RowVersion(long rowId, long supersededAt, Object[] values, RowVersion older) {
+        this.rowId = rowId;
+        this.supersededAt = supersededAt;
+        this.values = values;
+        this.older = older;
+    }
+}
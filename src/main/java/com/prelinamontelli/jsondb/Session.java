@@ -0,0 +1,47 @@
+package com.prelinamontelli.jsondb;
+
+/**
+ * 一个客户端会话的状态。命令行界面使用 {@link DBManager} 的默认会话，服务器模式下每个连接一个会话。
+ */
+public class Session {
+    private final long id;
+    private volatile String currentDatabaseName; // 当前选择的数据库名，未选择时为 null
+    private volatile Transaction transaction; // BEGIN 开始的事务，不在事务中时为 null
+
+    Session(long id) {
+        this.id = id;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getCurrentDatabaseName() {
+        return currentDatabaseName;
+    }
+
+    void setCurrentDatabaseName(String currentDatabaseName) {
+        this.currentDatabaseName = currentDatabaseName;
+    }
+
+    public boolean isInTransaction() {
+        return transaction != null;
+    }
+
+    Transaction getTransaction() {
+        return transaction;
+    }
+
+    void setTransaction(Transaction transaction) {
+        this.transaction = transaction;
+    }
+
+    @Override
+    public String toString() {
+        return "Session{" +
+               "id=" + id +
+               ", currentDatabase='" + currentDatabaseName + '\'' +
+               ", inTransaction=" + isInTransaction() +
+               '}';
+    }
+}
@@ -0,0 +1,21 @@
+package com.prelinamontelli.jsondb;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+
+/**
+ * 数据库快照的编码与解码，每种 {@link StorageFormat} 一个实现。
+ * 原子替换、fsync 等文件层面的处理由 {@link DBManager} 负责。
+ */
+interface SnapshotCodec {
+    /**
+     * 把快照写入输出流。实现必须刷新自己的缓冲，但不能关闭 out。
+     */
+    void write(Database image, OutputStream out) throws IOException;
+
+    /**
+     * @throws IOException 如果文件无法读取或内容无效
+     */
+    Database read(Path file) throws IOException;
+}
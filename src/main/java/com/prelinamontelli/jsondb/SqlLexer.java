@@ -0,0 +1,103 @@
+package com.prelinamontelli.jsondb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 把一条语句切分为 {@link Token}。字符串可以用双引号或单引号包围，引号内连续两个引号表示一个引号。
+ * 标识符由字母、数字、下划线组成，不以数字开头。末尾总是一个 {@link Token.Type#END}。
+ */
+final class SqlLexer {
+    private SqlLexer() {
+    }
+
+    /**
+     * @throws IllegalArgumentException 如果字符串没有结束或遇到无法识别的字符
+     */
+    static List<Token> tokenize(String sql) {
+        List<Token> tokens = new ArrayList<>();
+        int length = sql.length();
+        int i = 0;
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '"' || c == '\'') {
+                int start = i;
+                StringBuilder text = new StringBuilder();
+                i++;
+                while (true) {
+                    if (i >= length) {
+                        throw new IllegalArgumentException("Unterminated string starting at position " + (start + 1) + ".");
+                    }
+                    char next = sql.charAt(i);
+                    if (next == c) {
+                        if (i + 1 < length && sql.charAt(i + 1) == c) {
+                            text.append(c); // 两个引号表示一个引号
+                            i += 2;
+                            continue;
+                        }
+                        i++;
+                        break;
+                    }
+                    text.append(next);
+                    i++;
+                }
+                tokens.add(new Token(Token.Type.STRING, text.toString(), start));
+            } else if (Character.isDigit(c) || (c == '.' && i + 1 < length && Character.isDigit(sql.charAt(i + 1)))) {
+                int start = i;
+                while (i < length && Character.isDigit(sql.charAt(i))) {
+                    i++;
+                }
+                if (i < length && sql.charAt(i) == '.') {
+                    i++;
+                    while (i < length && Character.isDigit(sql.charAt(i))) {
+                        i++;
+                    }
+                }
+                if (i < length && (sql.charAt(i) == 'e' || sql.charAt(i) == 'E')) {
+                    int exponent = i + 1;
+                    if (exponent < length && (sql.charAt(exponent) == '+' || sql.charAt(exponent) == '-')) {
+                        exponent++;
+                    }
+                    if (exponent < length && Character.isDigit(sql.charAt(exponent))) {
+                        i = exponent;
+                        while (i < length && Character.isDigit(sql.charAt(i))) {
+                            i++;
+                        }
+                    }
+                }
+                tokens.add(new Token(Token.Type.NUMBER, sql.substring(start, i), start));
+            } else if (Character.isLetter(c) || c == '_') {
+                int start = i;
+                while (i < length && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '_')) {
+                    i++;
+                }
+                tokens.add(new Token(Token.Type.IDENTIFIER, sql.substring(start, i), start));
+            } else if (c == '$') {
+                int start = i;
+                i++;
+                while (i < length && Character.isDigit(sql.charAt(i))) {
+                    i++;
+                }
+                if (i == start + 1) {
+                    throw new IllegalArgumentException("Invalid parameter at position " + (start + 1) + ". Parameters are written $1, $2, ...");
+                }
+                tokens.add(new Token(Token.Type.PARAMETER, sql.substring(start + 1, i), start));
+            } else {
+                String twoChars = i + 1 < length ? sql.substring(i, i + 2) : "";
+                if (twoChars.equals("<=") || twoChars.equals(">=") || twoChars.equals("!=") || twoChars.equals("<>")) {
+                    tokens.add(new Token(Token.Type.SYMBOL, twoChars, i));
+                    i += 2;
+                } else if ("(),.*;=<>-".indexOf(c) >= 0) {
+                    tokens.add(new Token(Token.Type.SYMBOL, String.valueOf(c), i));
+                    i++;
+                } else {
+                    throw new IllegalArgumentException("Unexpected character '" + c + "' at position " + (i + 1) + ".");
+                }
+            }
+        }
+        tokens.add(new Token(Token.Type.END, "", length));
+        return tokens;
+    }
+}
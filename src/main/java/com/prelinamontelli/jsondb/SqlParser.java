@@ -0,0 +1,493 @@
+package com.prelinamontelli.jsondb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 递归下降的语句解析器，把 {@link SqlLexer} 的词法单元解析为 {@link Statement}。
+ * 关键字不区分大小写。选择列表中的每一项是列名或聚合函数 COUNT(*)、COUNT / SUM / AVG / MIN / MAX(列名)。
+ * FROM 之后是一张表，或者 {@code 表 [[AS] 别名] [INNER] JOIN 表 [[AS] 别名] ON 条件} 连接的两张表；
+ * 列名都可以写成 {@code 表名或别名.列名}。WHERE 和 ON 条件的语法：
+ * <pre>
+ * condition := and_condition (OR and_condition)*
+ * and_condition := not_condition (AND not_condition)*
+ * not_condition := NOT not_condition | '(' condition ')' | predicate
+ * predicate := operand (= | != | &lt;&gt; | &lt; | &lt;= | &gt; | &gt;=) operand
+ *            | operand [NOT] BETWEEN operand AND operand
+ *            | operand IS [NOT] NULL
+ * operand := [表名或别名 .] 列名 | 字符串 | [-] 数字 | NULL | TRUE | FALSE
+ * </pre>
+ */
+final class SqlParser {
+    // 可以跟在 FROM 的表名之后的关键字，不能作为不带 AS 的别名
+    private static final Set<String> CLAUSE_KEYWORDS = new HashSet<>(Arrays.asList(
+        "JOIN", "INNER", "ON", "WHERE", "GROUP", "ORDER", "LIMIT", "OFFSET"));
+
+    private final List<Token> tokens;
+    private int position;
+
+    private SqlParser(String sql) {
+        this.tokens = SqlLexer.tokenize(sql);
+    }
+
+    /**
+     * 解析一条 SELECT、INSERT、UPDATE、DELETE、PREPARE、EXECUTE、DEALLOCATE、DECLARE、FETCH、CLOSE 或 EXPLAIN 语句，
+     * 末尾的分号可以省略。
+     * @throws IllegalArgumentException 如果语法错误，信息中包含出错的位置
+     */
+    static Statement parse(String sql) {
+        SqlParser parser = new SqlParser(sql);
+        Statement statement = parser.statement();
+        parser.acceptSymbol(";");
+        parser.expectEnd();
+        return statement;
+    }
+
+    private Statement statement() {
+        Token first = peek();
+        if (first.isKeyword("SELECT")) {
+            return select();
+        } else if (first.isKeyword("INSERT")) {
+            return insert();
+        } else if (first.isKeyword("UPDATE")) {
+            return update();
+        } else if (first.isKeyword("DELETE")) {
+            return delete();
+        } else if (first.isKeyword("PREPARE")) {
+            next();
+            String name = identifier("statement name");
+            expectKeyword("AS");
+            if (!peek().isKeyword("INSERT")) {
+                throw error("INSERT (only INSERT statements can be prepared)");
+            }
+            return new Statement.Prepare(name, insert());
+        } else if (first.isKeyword("EXECUTE")) {
+            next();
+            String name = identifier("statement name");
+            List<Expression> arguments = new ArrayList<>();
+            if (peek().isSymbol("(")) {
+                arguments = valueList();
+            }
+            return new Statement.Execute(name, arguments);
+        } else if (first.isKeyword("DEALLOCATE")) {
+            next();
+            acceptKeyword("PREPARE");
+            if (acceptKeyword("ALL")) {
+                return new Statement.Deallocate(null);
+            }
+            return new Statement.Deallocate(identifier("statement name"));
+        } else if (first.isKeyword("DECLARE")) {
+            next();
+            String name = identifier("cursor name");
+            expectKeyword("CURSOR");
+            expectKeyword("FOR");
+            if (!peek().isKeyword("SELECT")) {
+                throw error("SELECT (only SELECT statements can be declared as cursors)");
+            }
+            return new Statement.Declare(name, select());
+        } else if (first.isKeyword("FETCH")) {
+            next();
+            int count = 1;
+            if (acceptKeyword("ALL")) {
+                count = -1;
+            } else if (peek().getType() == Token.Type.NUMBER) {
+                count = rowCount("FETCH");
+            }
+            if (!acceptKeyword("FROM")) {
+                acceptKeyword("IN");
+            }
+            return new Statement.Fetch(identifier("cursor name"), count);
+        } else if (first.isKeyword("CLOSE")) {
+            next();
+            if (acceptKeyword("ALL")) {
+                return new Statement.Close(null);
+            }
+            return new Statement.Close(identifier("cursor name"));
+        } else if (first.isKeyword("EXPLAIN")) {
+            next();
+            Token explained = peek();
+            if (explained.isKeyword("SELECT")) {
+                return new Statement.Explain(select());
+            } else if (explained.isKeyword("UPDATE")) {
+                return new Statement.Explain(update());
+            } else if (explained.isKeyword("DELETE")) {
+                return new Statement.Explain(delete());
+            }
+            throw error("SELECT, UPDATE or DELETE after EXPLAIN");
+        }
+        throw error("SELECT, INSERT, UPDATE, DELETE, PREPARE, EXECUTE, DEALLOCATE, DECLARE, FETCH, CLOSE or EXPLAIN");
+    }
+
+    private Statement.Select select() {
+        expectKeyword("SELECT");
+        List<Statement.SelectItem> items = null;
+        if (!acceptSymbol("*")) {
+            items = new ArrayList<>();
+            do {
+                items.add(selectItem());
+            } while (acceptSymbol(","));
+        }
+        expectKeyword("FROM");
+        String table = identifier("table name");
+        String alias = alias();
+        Statement.Join join = null;
+        if (peek().isKeyword("JOIN") || peek().isKeyword("INNER")) {
+            acceptKeyword("INNER");
+            expectKeyword("JOIN");
+            String joinedTable = identifier("table name");
+            String joinedAlias = alias();
+            expectKeyword("ON");
+            join = new Statement.Join(joinedTable, joinedAlias, condition());
+        }
+        Expression where = acceptKeyword("WHERE") ? condition() : null;
+        List<String> groupBy = new ArrayList<>();
+        if (acceptKeyword("GROUP")) {
+            expectKeyword("BY");
+            do {
+                groupBy.add(columnReference("column name"));
+            } while (acceptSymbol(","));
+        }
+        Statement.SelectItem orderBy = null;
+        boolean descending = false;
+        if (acceptKeyword("ORDER")) {
+            expectKeyword("BY");
+            orderBy = selectItem();
+            if (acceptKeyword("DESC")) {
+                descending = true;
+            } else {
+                acceptKeyword("ASC");
+            }
+        }
+        Integer limit = acceptKeyword("LIMIT") ? rowCount("LIMIT") : null;
+        int offset = acceptKeyword("OFFSET") ? rowCount("OFFSET") : 0;
+        return new Statement.Select(items, table, alias, join, where, groupBy, orderBy, descending, limit, offset);
+    }
+
+    // LIMIT、OFFSET 或 FETCH 之后的行数
+    private int rowCount(String clause) {
+        Token count = peek();
+        if (count.getType() != Token.Type.NUMBER) {
+            throw error("a row count after " + clause);
+        }
+        next();
+        try {
+            return Integer.parseInt(count.getText());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + clause + " '" + count.getText() + "'. It must be a non-negative integer.");
+        }
+    }
+
+    // 表名之后的 [AS] 别名，没有别名时返回 null
+    private String alias() {
+        if (acceptKeyword("AS")) {
+            return identifier("alias");
+        }
+        Token token = peek();
+        if (token.getType() == Token.Type.IDENTIFIER && !CLAUSE_KEYWORDS.contains(token.getText().toUpperCase(Locale.ROOT))) {
+            next();
+            return token.getText();
+        }
+        return null;
+    }
+
+    // 列名，或者用表名 / 别名限定的列名 t.c
+    private String columnReference(String what) {
+        String name = identifier(what);
+        if (acceptSymbol(".")) {
+            return name + "." + identifier("column name");
+        }
+        return name;
+    }
+
+    // 列名，或者 COUNT(*) / COUNT(列) / SUM(列) / AVG(列) / MIN(列) / MAX(列)
+    private Statement.SelectItem selectItem() {
+        Token token = peek();
+        AggregateFunction function = aggregateFunction(token);
+        if (function == null || !tokens.get(position + 1).isSymbol("(")) {
+            return new Statement.SelectItem(null, columnReference("column name"));
+        }
+        next();
+        next();
+        String column = null;
+        if (function != AggregateFunction.COUNT || !acceptSymbol("*")) {
+            column = columnReference(function == AggregateFunction.COUNT ? "column name or *" : "column name");
+        }
+        expectSymbol(")");
+        return new Statement.SelectItem(function, column);
+    }
+
+    private static AggregateFunction aggregateFunction(Token token) {
+        for (AggregateFunction function : AggregateFunction.values()) {
+            if (token.isKeyword(function.name())) {
+                return function;
+            }
+        }
+        return null;
+    }
+
+    private Statement.Insert insert() {
+        expectKeyword("INSERT");
+        expectKeyword("INTO");
+        String table = identifier("table name");
+        expectKeyword("VALUES");
+        List<List<Expression>> rows = new ArrayList<>();
+        do {
+            rows.add(valueList());
+        } while (acceptSymbol(","));
+        return new Statement.Insert(table, rows);
+    }
+
+    private Statement.Update update() {
+        expectKeyword("UPDATE");
+        String table = identifier("table name");
+        expectKeyword("SET");
+        Map<String, Expression> assignments = new LinkedHashMap<>();
+        do {
+            String column = identifier("column name");
+            expectSymbol("=");
+            assignments.put(column, value());
+        } while (acceptSymbol(","));
+        Expression where = acceptKeyword("WHERE") ? condition() : null;
+        return new Statement.Update(table, assignments, where);
+    }
+
+    private Statement.Delete delete() {
+        expectKeyword("DELETE");
+        expectKeyword("FROM");
+        String table = identifier("table name");
+        Expression where = acceptKeyword("WHERE") ? condition() : null;
+        return new Statement.Delete(table, where);
+    }
+
+    // '(' [value (',' value)*] ')'
+    private List<Expression> valueList() {
+        expectSymbol("(");
+        List<Expression> values = new ArrayList<>();
+        if (!acceptSymbol(")")) {
+            do {
+                values.add(value());
+            } while (acceptSymbol(","));
+            expectSymbol(")");
+        }
+        return values;
+    }
+
+    // INSERT / SET / EXECUTE 中的值：字面量、参数，或者（与旧语法兼容）不带引号的单词，作为文本
+    private Expression value() {
+        Token token = peek();
+        if (token.getType() == Token.Type.PARAMETER) {
+            next();
+            return parameter(token);
+        }
+        if (token.getType() == Token.Type.IDENTIFIER && !isLiteralKeyword(token)) {
+            next();
+            return new Expression.Literal(token.getText(), false);
+        }
+        return literal();
+    }
+
+    // ---------------------------------------------------------------- 条件
+
+    private Expression condition() {
+        List<Expression> operands = new ArrayList<>();
+        operands.add(andCondition());
+        while (acceptKeyword("OR")) {
+            operands.add(andCondition());
+        }
+        return operands.size() == 1 ? operands.get(0) : new Expression.Or(operands);
+    }
+
+    private Expression andCondition() {
+        List<Expression> operands = new ArrayList<>();
+        operands.add(notCondition());
+        while (acceptKeyword("AND")) {
+            operands.add(notCondition());
+        }
+        return operands.size() == 1 ? operands.get(0) : new Expression.And(operands);
+    }
+
+    private Expression notCondition() {
+        if (acceptKeyword("NOT")) {
+            return new Expression.Not(notCondition());
+        }
+        if (acceptSymbol("(")) {
+            Expression inner = condition();
+            expectSymbol(")");
+            return inner;
+        }
+        return predicate();
+    }
+
+    private Expression predicate() {
+        Expression left = operand();
+        if (acceptKeyword("IS")) {
+            boolean negated = acceptKeyword("NOT");
+            expectKeyword("NULL");
+            return new Expression.IsNull(left, negated);
+        }
+        boolean negated = acceptKeyword("NOT");
+        if (acceptKeyword("BETWEEN")) {
+            Expression low = operand();
+            expectKeyword("AND");
+            Expression high = operand();
+            Expression between = new Expression.Between(left, low, high);
+            return negated ? new Expression.Not(between) : between;
+        }
+        if (negated) {
+            throw error("BETWEEN");
+        }
+        Expression.Comparison.Operator operator = comparisonOperator();
+        return new Expression.Comparison(operator, left, operand());
+    }
+
+    private Expression.Comparison.Operator comparisonOperator() {
+        Token token = peek();
+        if (token.getType() == Token.Type.SYMBOL) {
+            switch (token.getText()) {
+                case "=":
+                    next();
+                    return Expression.Comparison.Operator.EQ;
+                case "!=":
+                case "<>":
+                    next();
+                    return Expression.Comparison.Operator.NE;
+                case "<":
+                    next();
+                    return Expression.Comparison.Operator.LT;
+                case "<=":
+                    next();
+                    return Expression.Comparison.Operator.LE;
+                case ">":
+                    next();
+                    return Expression.Comparison.Operator.GT;
+                case ">=":
+                    next();
+                    return Expression.Comparison.Operator.GE;
+                default:
+                    break;
+            }
+        }
+        throw error("a comparison operator (=, !=, <, <=, >, >=), BETWEEN or IS");
+    }
+
+    private Expression operand() {
+        Token token = peek();
+        if (token.getType() == Token.Type.IDENTIFIER && !isLiteralKeyword(token)) {
+            return new Expression.ColumnRef(columnReference("column name"));
+        }
+        if (token.getType() == Token.Type.PARAMETER) {
+            next();
+            return parameter(token);
+        }
+        return literal();
+    }
+
+    private Expression literal() {
+        Token token = peek();
+        if (token.getType() == Token.Type.STRING) {
+            next();
+            return new Expression.Literal(token.getText(), true);
+        }
+        if (token.getType() == Token.Type.NUMBER) {
+            next();
+            return new Expression.Literal(token.getText(), false);
+        }
+        if (token.isSymbol("-") && tokens.get(position + 1).getType() == Token.Type.NUMBER) {
+            next();
+            return new Expression.Literal("-" + next().getText(), false);
+        }
+        if (token.isKeyword("NULL")) {
+            next();
+            return new Expression.Literal(null, false);
+        }
+        if (token.isKeyword("TRUE") || token.isKeyword("FALSE")) {
+            next();
+            return new Expression.Literal(token.isKeyword("TRUE"), false);
+        }
+        throw error("a value");
+    }
+
+    private static boolean isLiteralKeyword(Token token) {
+        return token.isKeyword("NULL") || token.isKeyword("TRUE") || token.isKeyword("FALSE");
+    }
+
+    private static Expression parameter(Token token) {
+        try {
+            int index = Integer.parseInt(token.getText());
+            if (index >= 1) {
+                return new Expression.Parameter(index);
+            }
+        } catch (NumberFormatException e) {
+            // 下面统一报告
+        }
+        throw new IllegalArgumentException("Invalid parameter $" + token.getText() + " at position " + (token.getPosition() + 1) + ". Parameters are numbered from $1.");
+    }
+
+    // ---------------------------------------------------------------- 词法单元
+
+    private Token peek() {
+        return tokens.get(position);
+    }
+
+    private Token next() {
+        Token token = tokens.get(position);
+        if (token.getType() != Token.Type.END) {
+            position++;
+        }
+        return token;
+    }
+
+    private boolean acceptKeyword(String keyword) {
+        if (peek().isKeyword(keyword)) {
+            next();
+            return true;
+        }
+        return false;
+    }
+
+    private void expectKeyword(String keyword) {
+        if (!acceptKeyword(keyword)) {
+            throw error(keyword);
+        }
+    }
+
+    private boolean acceptSymbol(String symbol) {
+        if (peek().isSymbol(symbol)) {
+            next();
+            return true;
+        }
+        return false;
+    }
+
+    private void expectSymbol(String symbol) {
+        if (!acceptSymbol(symbol)) {
+            throw error("'" + symbol + "'");
+        }
+    }
+
+    private String identifier(String what) {
+        Token token = peek();
+        if (token.getType() != Token.Type.IDENTIFIER) {
+            throw error(what);
+        }
+        next();
+        return token.getText();
+    }
+
+    private void expectEnd() {
+        if (peek().getType() != Token.Type.END) {
+            throw error("end of statement");
+        }
+    }
+
+    private IllegalArgumentException error(String expected) {
+        Token token = peek();
+        return new IllegalArgumentException("Syntax error at position " + (token.getPosition() + 1) + ": expected " + expected + " but found " + token + ".");
+    }
+}
@@ -0,0 +1,360 @@
+package com.prelinamontelli.jsondb;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link SqlParser} 产生的语句语法树。语句只记录名称和未绑定的表达式，表和列在执行时解析。
+ */
+abstract class Statement {
+
+    /**
+     * SELECT &lt;列或聚合&gt; FROM &lt;表&gt; [[AS] 别名] [JOIN &lt;表&gt; [[AS] 别名] ON ...] [WHERE ...] [GROUP BY &lt;列&gt;, ...]
+     * [ORDER BY &lt;列或聚合&gt; [ASC|DESC]] [LIMIT n] [OFFSET m]。列名可以用表名或别名限定
+     */
+    static final class Select extends Statement {
+        private final List<SelectItem> items; // null 表示 *
+        private final String table;
+        private final String alias; // 没有别名时为 null
+        private final Join join;    // 没有 JOIN 时为 null
+        private final Expression where;
+        private final List<String> groupBy;  // 没有 GROUP BY 时为空
+        private final SelectItem orderBy;
+        private final boolean descending;
+        private final Integer limit;
+        private final int offset;   // 没有 OFFSET 时为 0
+
+        Select(List<SelectItem> items, String table, String alias, Join join, Expression where, List<String> groupBy,
+               SelectItem orderBy, boolean descending, Integer limit, int offset) {
+            this.items = items;
+            this.table = table;
+            this.alias = alias;
+            this.join = join;
+            this.where = where;
+            this.groupBy = groupBy;
+            this.orderBy = orderBy;
+            this.descending = descending;
+            this.limit = limit;
+            this.offset = offset;
+        }
+
+        List<SelectItem> getItems() {
+            return items;
+        }
+
+        String getTable() {
+            return table;
+        }
+
+        String getAlias() {
+            return alias;
+        }
+
+        Join getJoin() {
+            return join;
+        }
+
+        Expression getWhere() {
+            return where;
+        }
+
+        List<String> getGroupBy() {
+            return groupBy;
+        }
+
+        SelectItem getOrderBy() {
+            return orderBy;
+        }
+
+        boolean isDescending() {
+            return descending;
+        }
+
+        Integer getLimit() {
+            return limit;
+        }
+
+        int getOffset() {
+            return offset;
+        }
+
+        /**
+         * @return 查询按组输出（有 GROUP BY，或者选择列表 / ORDER BY 中有聚合函数）
+         */
+        boolean isAggregate() {
+            if (!groupBy.isEmpty() || (orderBy != null && orderBy.isAggregate())) {
+                return true;
+            }
+            if (items != null) {
+                for (SelectItem item : items) {
+                    if (item.isAggregate()) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * FROM 中的 [INNER] JOIN &lt;表&gt; [[AS] 别名] ON &lt;条件&gt;
+     */
+    static final class Join {
+        private final String table;
+        private final String alias; // 没有别名时为 null
+        private final Expression on;
+
+        Join(String table, String alias, Expression on) {
+            this.table = table;
+            this.alias = alias;
+            this.on = on;
+        }
+
+        String getTable() {
+            return table;
+        }
+
+        String getAlias() {
+            return alias;
+        }
+
+        Expression getOn() {
+            return on;
+        }
+    }
+
+    /**
+     * 选择列表或 ORDER BY 中的一项：列名，或者聚合函数调用（COUNT(*) 时列名为 null）。
+     */
+    static final class SelectItem {
+        private final AggregateFunction function; // 普通列时为 null
+        private final String column;
+
+        SelectItem(AggregateFunction function, String column) {
+            this.function = function;
+            this.column = column;
+        }
+
+        AggregateFunction getFunction() {
+            return function;
+        }
+
+        String getColumn() {
+            return column;
+        }
+
+        boolean isAggregate() {
+            return function != null;
+        }
+
+        /**
+         * @return 与 other 是否是同一列或同一个聚合（列名不区分大小写）
+         */
+        boolean matches(SelectItem other) {
+            return function == other.function && (column == null ? other.column == null : column.equalsIgnoreCase(other.column));
+        }
+
+        @Override
+        public String toString() {
+            return function == null ? column : function + "(" + (column == null ? "*" : column) + ")";
+        }
+    }
+
+    /**
+     * INSERT INTO &lt;表&gt; VALUES (...), (...) ...，值是字面量或参数 $n
+     */
+    static final class Insert extends Statement {
+        private final String table;
+        private final List<List<Expression>> rows;
+
+        Insert(String table, List<List<Expression>> rows) {
+            this.table = table;
+            this.rows = rows;
+        }
+
+        String getTable() {
+            return table;
+        }
+
+        List<List<Expression>> getRows() {
+            return rows;
+        }
+    }
+
+    /**
+     * UPDATE &lt;表&gt; SET &lt;列&gt; = &lt;值&gt;, ... [WHERE ...]
+     */
+    static final class Update extends Statement {
+        private final String table;
+        private final Map<String, Expression> assignments; // 按书写顺序
+        private final Expression where;
+
+        Update(String table, Map<String, Expression> assignments, Expression where) {
+            this.table = table;
+            this.assignments = assignments;
+            this.where = where;
+        }
+
+        String getTable() {
+            return table;
+        }
+
+        Map<String, Expression> getAssignments() {
+            return assignments;
+        }
+
+        Expression getWhere() {
+            return where;
+        }
+    }
+
+    /**
+     * DELETE FROM &lt;表&gt; [WHERE ...]
+     */
+    static final class Delete extends Statement {
+        private final String table;
+        private final Expression where;
+
+        Delete(String table, Expression where) {
+            this.table = table;
+            this.where = where;
+        }
+
+        String getTable() {
+            return table;
+        }
+
+        Expression getWhere() {
+            return where;
+        }
+    }
+
+    /**
+     * PREPARE &lt;名称&gt; AS &lt;INSERT 语句&gt;
+     */
+    static final class Prepare extends Statement {
+        private final String name;
+        private final Insert insert;
+
+        Prepare(String name, Insert insert) {
+            this.name = name;
+            this.insert = insert;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        Insert getInsert() {
+            return insert;
+        }
+    }
+
+    /**
+     * EXECUTE &lt;名称&gt; [(参数, ...)]，参数是字面量
+     */
+    static final class Execute extends Statement {
+        private final String name;
+        private final List<Expression> arguments;
+
+        Execute(String name, List<Expression> arguments) {
+            this.name = name;
+            this.arguments = arguments;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        List<Expression> getArguments() {
+            return arguments;
+        }
+    }
+
+    /**
+     * DEALLOCATE &lt;名称&gt; | ALL
+     */
+    static final class Deallocate extends Statement {
+        private final String name; // null 表示 ALL
+
+        Deallocate(String name) {
+            this.name = name;
+        }
+
+        String getName() {
+            return name;
+        }
+    }
+
+    /**
+     * DECLARE &lt;名称&gt; CURSOR FOR &lt;SELECT 语句&gt;
+     */
+    static final class Declare extends Statement {
+        private final String name;
+        private final Select select;
+
+        Declare(String name, Select select) {
+            this.name = name;
+            this.select = select;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        Select getSelect() {
+            return select;
+        }
+    }
+
+    /**
+     * FETCH [n | ALL] [FROM] &lt;名称&gt;
+     */
+    static final class Fetch extends Statement {
+        private final String name;
+        private final int count; // 负数表示 ALL
+
+        Fetch(String name, int count) {
+            this.name = name;
+            this.count = count;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        int getCount() {
+            return count;
+        }
+    }
+
+    /**
+     * CLOSE &lt;名称&gt; | ALL
+     */
+    static final class Close extends Statement {
+        private final String name; // null 表示 ALL
+
+        Close(String name) {
+            this.name = name;
+        }
+
+        String getName() {
+            return name;
+        }
+    }
+
+    /**
+     * EXPLAIN &lt;SELECT | UPDATE | DELETE 语句&gt;
+     */
+    static final class Explain extends Statement {
+        private final Statement statement;
+
+        Explain(Statement statement) {
+            this.statement = statement;
+        }
+
+        Statement getStatement() {
+            return statement;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.prelinamontelli.jsondb;
+
+/**
+ * 数据库快照文件的存储格式，可以按数据库选择。
+ */
+public enum StorageFormat {
+    JSON(".json"),     // 缩进的 JSON，便于人工查看和编辑
+    BINARY(".jdb");    // 按列编码的二进制格式，表结构只写一次，可选块压缩
+
+    private final String fileExtension;
+
+    StorageFormat(String fileExtension) {
+        this.fileExtension = fileExtension;
+    }
+
+    public String getFileExtension() {
+        return fileExtension;
+    }
+
+    /**
+     * @throws IllegalArgumentException 如果名称不是已知的格式
+     */
+    public static StorageFormat fromName(String name) {
+        try {
+            return valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException | NullPointerException e) {
+            throw new IllegalArgumentException("Unknown storage format '" + name + "'. Supported formats: JSON, BINARY.");
+        }
+    }
+}
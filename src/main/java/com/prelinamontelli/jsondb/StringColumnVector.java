@@ -0,0 +1,123 @@
+package com.prelinamontelli.jsondb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * STRING 列的值向量，使用字典编码：每个槽位保存一个 int 编码，相同的字符串只保存一份。
+ * 字典只增不减，压缩 ({@link #retain(int[])}) 时会丢弃不再被引用的条目。
+ */
+final class StringColumnVector extends ColumnVector {
+    private int[] codes = new int[0];
+    private List<String> dictionary = new ArrayList<>();
+    private Map<String, Integer> codeByValue = new HashMap<>();
+    private long dictionaryBytes; // 字典中字符串及其映射条目的估算大小
+
+    @Override
+    protected long estimateValueBytes() {
+        return 16 + 4L * codes.length + dictionaryBytes;
+    }
+
+    // 一个字典条目：String 对象和字符数组、列表引用、HashMap 条目和装箱的编码
+    private static long entryBytes(String value) {
+        return 40 + 2L * value.length() + 8 + 48 + 16;
+    }
+
+    @Override
+    protected Object getNonNull(int slot) {
+        return dictionary.get(codes[slot]);
+    }
+
+    @Override
+    protected void setNonNull(int slot, Object value) {
+        codes[slot] = encode((String) value);
+    }
+
+    @Override
+    protected void clearValue(int slot) {
+        codes[slot] = 0;
+    }
+
+    private int encode(String value) {
+        Integer code = codeByValue.get(value);
+        if (code == null) {
+            code = dictionary.size();
+            dictionary.add(value);
+            codeByValue.put(value, code);
+            dictionaryBytes += entryBytes(value);
+        }
+        return code;
+    }
+
+    @Override
+    protected void ensureCapacity(int capacity) {
+        if (capacity > codes.length) {
+            codes = Arrays.copyOf(codes, grow(codes.length, capacity));
+        }
+    }
+
+    @Override
+    protected void retainValues(int[] keptSlots) {
+        // nulls 在 retainValues 之后才会被替换，此时仍按旧槽位编号
+        int[] retained = new int[Math.max(keptSlots.length, INITIAL_CAPACITY)];
+        List<String> retainedDictionary = new ArrayList<>();
+        Map<String, Integer> retainedCodes = new HashMap<>();
+        long retainedBytes = 0;
+        for (int i = 0; i < keptSlots.length; i++) {
+            int slot = keptSlots[i];
+            if (nulls.get(slot)) {
+                continue;
+            }
+            String value = dictionary.get(codes[slot]);
+            Integer code = retainedCodes.get(value);
+            if (code == null) {
+                code = retainedDictionary.size();
+                retainedDictionary.add(value);
+                retainedCodes.put(value, code);
+                retainedBytes += entryBytes(value);
+            }
+            retained[i] = code;
+        }
+        codes = retained;
+        dictionary = retainedDictionary;
+        codeByValue = retainedCodes;
+        dictionaryBytes = retainedBytes;
+    }
+
+    @Override
+    ColumnVector copy(int size) {
+        StringColumnVector copy = new StringColumnVector();
+        copy.codes = Arrays.copyOf(codes, size);
+        copy.dictionary = new ArrayList<>(dictionary);
+        copy.codeByValue = new HashMap<>(codeByValue);
+        copy.dictionaryBytes = dictionaryBytes;
+        copy.nulls = nulls.get(0, size);
+        return copy;
+    }
+
+    @Override
+    void scan(WhereCondition condition, int from, int to, BitSet matches) {
+        if (scanNullEquality(condition, from, to, matches)) {
+            return;
+        }
+        if (condition.isRange()) {
+            super.scan(condition, from, to, matches);
+            return;
+        }
+        // 等值条件只需比较字典编码
+        Integer code = codeByValue.get((String) condition.getValue());
+        if (code == null) {
+            return;
+        }
+        int target = code;
+        for (int slot = from; slot < to; slot++) {
+            if (codes[slot] == target && !nulls.get(slot)) {
+                matches.set(slot);
+            }
+        }
+    }
+}
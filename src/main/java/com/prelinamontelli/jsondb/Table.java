@@ -1,26 +1,84 @@
 package com.prelinamontelli.jsondb;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.IntFunction;
+import java.util.function.LongPredicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
+@JsonPropertyOrder({"name", "columns", "nextRowId", "rowIds", "rows", "indexes", "statistics"}) // 行之前写出列和行 ID，便于流式加载
 public class Table {
     private final String name;
     // 使用 LinkedHashMap 保持列的定义顺序，并允许通过名称快速查找列
     private final Map<String, Column> columns;
-    private final List<Row> rows;
+    // 列式存储，行 ID 单调递增且从不复用，槽位顺序即插入顺序（也是行 ID 升序）
+    private final ColumnStore store;
+    private long nextRowId;
+    // 主键 / 唯一列名 -> (非 NULL 列值 -> 行 ID)，用于 O(1) 的唯一性检查和按键查找
+    private final Map<String, Map<Object, Long>> uniqueKeys;
+    // 索引名称 -> 索引，按创建顺序保存
+    private final Map<String, TableIndex> indexes;
+    // ANALYZE 收集、之后随修改增量维护的统计信息，没有 ANALYZE 过时为 null
+    private TableStatistics statistics;
+    // 表数据本身不做同步：修改在写锁内进行（见 DBManager#applyChange），读取通过 read / readOptimistic
+    private final StampedLock lock = new StampedLock();
+    // MVCC：每次修改后递增的表版本号，以及有读视图打开时被更新 / 删除的行的旧版本（行 ID -> 最新的旧版本）
+    private volatile long version;
+    private final ConcurrentSkipListMap<Long, RowVersion> rowVersions = new ConcurrentSkipListMap<>();
+    private final ArrayDeque<RowVersion> versionQueue = new ArrayDeque<>(); // 按 supersededAt 升序，只在写锁内访问
+    private final Set<ReadView> openViews = ConcurrentHashMap.newKeySet();
+    private boolean storageReleased; // 已请求释放存储；有读视图打开时推迟到最后一个视图关闭。在 openViews 上同步
+    private static final int VIEW_BATCH_ROWS = 4096; // 通过读视图查询时每次乐观读处理的行数
+    // 提交事务期间记录的撤销操作，逆序执行可恢复到事务开始前的内容；不在事务中时为 null。只在写锁内访问
+    private List<Runnable> undoLog;
+    // 开始记录撤销日志时统计信息的副本：ColumnDistribution 移除值时不收缩最值、直方图边界和基数草图，撤销修改不能还原它们
+    private TableStatistics undoStatistics;
 
+    /**
+     * @param rows 行数据（列名 -> 值），会按列类型验证和转换
+     * @param rowIds 与 rows 一一对应的升序行 ID；为 null 时（旧版本保存的文件）按顺序从 0 开始分配
+     * @param nextRowId 下一个分配的行 ID；为 null 时取现有最大行 ID + 1
+     */
     @JsonCreator
-    public Table(@JsonProperty("name") String name, 
-                 @JsonProperty("columns") List<Column> columnList, 
-                 @JsonProperty("rows") List<Row> rows) {
+    public Table(@JsonProperty("name") String name,
+                 @JsonProperty("columns") List<Column> columnList,
+                 @JsonProperty("rows") List<Map<String, Object>> rows,
+                 @JsonProperty("rowIds") List<Long> rowIds,
+                 @JsonProperty("nextRowId") Long nextRowId,
+                 @JsonProperty("indexes") List<IndexDefinition> indexDefinitions) {
+        this(name, columnList, rows, rowIds, nextRowId, indexDefinitions, null);
+    }
+
+    /**
+     * @param pageStore 非 null 时使用分页存储模式，列值保存在堆外的页文件中
+     */
+    Table(String name, List<Column> columnList, List<Map<String, Object>> rows, List<Long> rowIds,
+          Long nextRowId, List<IndexDefinition> indexDefinitions, PageStore pageStore) {
         if (name == null || name.trim().isEmpty()) {
             throw new IllegalArgumentException("Table name cannot be null or empty.");
         }
@@ -29,19 +87,65 @@ public class Table {
         }
         this.name = name.trim();
         this.columns = new LinkedHashMap<>();
+        this.uniqueKeys = new HashMap<>();
+        boolean hasPrimaryKey = false;
         for (Column col : columnList) {
             if (this.columns.containsKey(col.getName())) {
                 throw new IllegalArgumentException("Duplicate column name: " + col.getName() + " in table " + this.name);
             }
+            if (col.isPrimaryKey()) {
+                if (hasPrimaryKey) {
+                    throw new IllegalArgumentException("Table " + this.name + " cannot have more than one primary key column.");
+                }
+                hasPrimaryKey = true;
+            }
             this.columns.put(col.getName(), col);
+            if (col.requiresUniqueValues()) {
+                this.uniqueKeys.put(col.getName(), new HashMap<>());
+            }
+        }
+        this.store = new ColumnStore(new ArrayList<>(this.columns.values()), pageStore);
+        this.indexes = new LinkedHashMap<>();
+        List<Map<String, Object>> initialRows = rows == null ? new ArrayList<>() : rows;
+        if (rowIds != null && rowIds.size() != initialRows.size()) {
+            throw new IllegalArgumentException("Table " + this.name + " has " + initialRows.size() + " rows but " + rowIds.size() + " row ids.");
+        }
+        for (int i = 0; i < initialRows.size(); i++) {
+            insertRow(rowIds == null ? Long.valueOf(i) : rowIds.get(i), initialRows.get(i));
+        }
+        if (nextRowId != null) {
+            advanceNextRowId(nextRowId);
         }
-        this.rows = rows == null ? new ArrayList<>() : new ArrayList<>(rows);
+        if (indexDefinitions != null) {
+            for (IndexDefinition definition : indexDefinitions) {
+                createIndex(definition);
+            }
+        }
+    }
+
+    public Table(String name, List<Column> columnList, List<Map<String, Object>> rows) {
+        this(name, columnList, rows, null, null, null);
     }
 
     public Table(String name, List<Column> columnList) {
         this(name, columnList, new ArrayList<>());
     }
 
+    Table(String name, List<Column> columnList, PageStore pageStore) {
+        this(name, columnList, null, null, null, null, pageStore);
+    }
+
+    // 供 snapshot() 使用：复制列向量（基本类型数组的内存拷贝），共享唯一键和索引对象，不重建索引
+    private Table(Table source) {
+        this.name = source.name;
+        this.columns = new LinkedHashMap<>(source.columns);
+        this.store = source.store.copy();
+        this.nextRowId = source.nextRowId;
+        this.uniqueKeys = source.uniqueKeys;
+        this.indexes = new LinkedHashMap<>(source.indexes);
+        this.statistics = source.statistics == null ? null : source.statistics.copy();
+    }
+
     public String getName() {
         return name;
     }
@@ -55,51 +159,1637 @@ public class Table {
         return Optional.ofNullable(columns.get(columnName));
     }
 
+    /**
+     * @return 按表中顺序排列的所有行的视图
+     */
+    @JsonProperty("rows")
     public List<Row> getRows() {
-        return rows; // 返回副本以防止外部修改？目前直接返回，后续可考虑
+        List<Row> result = new ArrayList<>(store.liveCount());
+        for (int slot = 0; slot < store.size(); slot++) {
+            if (store.isLive(slot)) {
+                result.add(new Row(store, store.rowIdAt(slot), slot));
+            }
+        }
+        return result;
     }
 
-    public void addRow(Row row) {
+    /**
+     * @return 与 {@link #getRows()} 顺序一致的行 ID
+     */
+    @JsonProperty("rowIds")
+    public List<Long> getRowIds() {
+        List<Long> result = new ArrayList<>(store.liveCount());
+        for (int slot = 0; slot < store.size(); slot++) {
+            if (store.isLive(slot)) {
+                result.add(store.rowIdAt(slot));
+            }
+        }
+        return result;
+    }
+
+    @JsonProperty("nextRowId")
+    public long getNextRowId() {
+        return nextRowId;
+    }
+
+    /**
+     * 释放表数据占用的堆外资源（分页存储模式下删除页文件）。用于不再使用的快照副本和被卸载或删除的表。
+     * 还有读视图打开时（例如会话中 DECLARE 的游标），释放推迟到最后一个视图关闭，之后不能再打开新的视图。
+     */
+    void releaseStorage() {
+        synchronized (openViews) {
+            if (storageReleased) {
+                return;
+            }
+            storageReleased = true;
+            if (!openViews.isEmpty()) {
+                return;
+            }
+        }
+        store.release();
+    }
+
+    /**
+     * @return 表上是否有打开的读视图
+     */
+    boolean hasOpenReadViews() {
+        return !openViews.isEmpty();
+    }
+
+    // 供快照编码按列读取数据，调用者不能修改返回的存储
+    ColumnStore columnStore() {
+        return store;
+    }
+
+    /**
+     * 在表的读锁内执行只读操作。多个读取者互不阻塞，只与同一表上的写入互斥。
+     * reader 返回的结果在锁释放后使用，因此不能包含 {@link Row} 这样的延迟视图。
+     */
+    <T> T read(Supplier<T> reader) {
+        long stamp = lock.readLock();
+        try {
+            return reader.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 先不加锁地以乐观读执行 reader，完成后确认期间没有写入；有写入（或因读到修改到一半的数据而出错）时在读锁内重新执行。
+     * 只适合按键查找这类很短的读取：reader 可能看到不一致的中间状态，不能有副作用。
+     * 分页存储模式下直接使用读锁，过期的偏移量可能指向页文件中已被压缩掉的位置。
+     */
+    <T> T readOptimistic(Supplier<T> reader) {
+        long stamp = store.isPaged() ? 0 : lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T result = reader.get();
+                if (lock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                if (lock.validate(stamp)) {
+                    throw e; // 与并发写入无关的错误
+                }
+            }
+        }
+        return read(reader);
+    }
+
+    // 修改表时持有写锁。StampedLock 不可重入，持有写锁期间不能再调用 read 或 readOptimistic
+    StampedLock lock() {
+        return lock;
+    }
+
+    /**
+     * 开始记录撤销日志，之后的插入、更新和删除都可以由 {@link #endUndoLog(boolean)} 撤销。
+     * 记录期间推迟存储压缩，使已删除的行可以原地恢复。调用者持有写锁直到结束记录。
+     */
+    void beginUndoLog() {
+        undoLog = new ArrayList<>();
+        undoStatistics = statistics == null ? null : statistics.copy();
+    }
+
+    /**
+     * 结束撤销日志。rollback 为 true 时逆序撤销记录期间的所有修改（已分配的行 ID 不会复用）。
+     */
+    void endUndoLog(boolean rollback) {
+        List<Runnable> log = undoLog;
+        TableStatistics savedStatistics = undoStatistics;
+        undoLog = null;
+        undoStatistics = null;
+        if (log == null) {
+            return;
+        }
+        if (rollback && !log.isEmpty()) {
+            for (int i = log.size() - 1; i >= 0; i--) {
+                log.get(i).run();
+            }
+            statistics = savedStatistics; // 撤销的修改既不计入分布，也不计入修改计数
+            publishChange();
+        }
+        store.compactIfSparse();
+    }
+
+    /**
+     * 打开表在当前版本上的读视图。只在登记视图的瞬间与写入互斥（先尝试乐观读），之后的查询不持有锁。
+     */
+    ReadView openReadView() {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            ReadView view = registerView(version, nextRowId);
+            if (lock.validate(stamp)) {
+                return view; // 之后获得写锁的写入者一定能看到这个视图，会为它保存旧版本
+            }
+            unregisterView(view);
+        }
+        stamp = lock.readLock();
+        try {
+            return registerView(version, nextRowId);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @throws IllegalStateException 如果表所在的数据库已被卸载或删除
+     */
+    private ReadView registerView(long viewVersion, long viewNextRowId) {
+        synchronized (openViews) {
+            if (storageReleased) {
+                throw new IllegalStateException("Table '" + name + "' is no longer available, its database was unloaded or dropped.");
+            }
+            ReadView view = new ReadView(this, viewVersion, viewNextRowId);
+            openViews.add(view);
+            return view;
+        }
+    }
+
+    // 注销视图；它是推迟释放的表上最后一个视图时释放存储
+    private void unregisterView(ReadView view) {
+        synchronized (openViews) {
+            if (!openViews.remove(view) || !storageReleased || !openViews.isEmpty()) {
+                return;
+            }
+        }
+        store.release();
+    }
+
+    // 由 ReadView#close 调用。写锁空闲时顺便回收旧版本，否则留给下一次写入
+    void closeReadView(ReadView view) {
+        unregisterView(view);
+        long stamp = lock.tryWriteLock();
+        if (stamp != 0) {
+            try {
+                pruneVersions();
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    private void requireOwnView(ReadView view) {
+        if (view.getTable() != this) {
+            throw new IllegalArgumentException("Read view of table '" + view.getTable().getName() + "' cannot be used on table '" + name + "'.");
+        }
+    }
+
+    // 更新或删除行之前为打开的读视图保存旧值，没有读视图时不需要旧版本。调用者持有写锁
+    private void saveVersions(List<Long> rowIds, int[] slots) {
+        if (openViews.isEmpty()) {
+            return;
+        }
+        long supersededAt = version + 1;
+        for (int i = 0; i < slots.length; i++) {
+            long rowId = rowIds.get(i);
+            RowVersion newest = rowVersions.get(rowId);
+            if (newest != null && newest.supersededAt == supersededAt) {
+                continue; // 参数中重复的行 ID
+            }
+            RowVersion saved = new RowVersion(rowId, supersededAt, store.values(slots[i]), newest);
+            rowVersions.put(rowId, saved);
+            versionQueue.addLast(saved);
+        }
+    }
+
+    // 修改完成后推进表版本号，之后打开的读视图能看到这次修改
+    private void publishChange() {
+        version++;
+        pruneVersions();
+    }
+
+    /**
+     * 回收所有打开的读视图都不再需要的旧版本：版本只对版本号小于其 supersededAt 的视图可见。调用者持有写锁。
+     */
+    private void pruneVersions() {
+        if (versionQueue.isEmpty()) {
+            return;
+        }
+        long oldestView = Long.MAX_VALUE;
+        for (ReadView view : openViews) {
+            oldestView = Math.min(oldestView, view.getVersion());
+        }
+        while (!versionQueue.isEmpty() && versionQueue.peekFirst().supersededAt <= oldestView) {
+            RowVersion expired = versionQueue.pollFirst();
+            // 队列按时间排序，expired 是它所在链上最旧的版本
+            RowVersion newer = rowVersions.get(expired.rowId);
+            if (newer == expired) {
+                rowVersions.remove(expired.rowId, expired);
+                continue;
+            }
+            while (newer != null && newer.older != expired) {
+                newer = newer.older;
+            }
+            if (newer != null) {
+                newer.older = null;
+            }
+        }
+    }
+
+    /**
+     * @return 为打开的读视图保存了旧版本的行数
+     */
+    int versionedRowCount() {
+        return rowVersions.size();
+    }
+
+    /**
+     * 在表的读锁内为查询生成执行计划，见 {@link QueryPlanner}。
+     * @param filter 绑定到此表的条件，null 表示全部行
+     * @param offset 返回之前跳过的行数
+     */
+    QueryPlan plan(Expression filter, Column orderBy, boolean descending, int limit, int offset) {
+        return read(() -> QueryPlanner.plan(this, filter, orderBy, descending, limit, offset));
+    }
+
+    /**
+     * 在读视图的版本上执行查询计划，返回结果行的游标。结果是视图打开时的一致状态：之后插入的行不可见，之后更新或删除的行从旧版本中重建。
+     * 不排序时游标按 {@link #scan} 逐批读取，OFFSET 下推到扫描中，取满 LIMIT 即停止，第一行不需要等待整个扫描；
+     * 没有 LIMIT 的过滤扫描在行数达到并行阈值时按行 ID 范围分区，由 parallel 的线程池提前扫描后面的分区，按分区顺序产生结果
+     * （见 {@link QueryPlan#isParallelCandidate}）。
+     * 排序时需要读取所有满足条件的行：行数达到并行阈值的顺序扫描同样分区并行扫描，每个分区只保留前 limit + offset 行。
+     * @param plan 由 {@link #plan} 为此表生成的计划
+     * @param parallel 并行扫描使用的线程池，null 表示总是顺序扫描
+     * @return 结果行所有列的值（按列定义顺序）的游标，在关闭视图之前读取
+     */
+    RowCursor select(ReadView view, QueryPlan plan, ParallelScan parallel) {
+        requireOwnView(view);
+        int offset = plan.getOffset();
+        if (plan.getOrderBy() == null) {
+            RowCursor rows = parallel != null && plan.isParallelCandidate() ? partitionedScan(view, plan, parallel) : scan(view, plan);
+            rows.skip(offset);
+            return rows.limit(plan.getLimit());
+        }
+        int max = plan.getLimit() < 0 ? Integer.MAX_VALUE : (int) Math.min(Integer.MAX_VALUE, (long) plan.getLimit() + offset);
+        List<Object[]> sorted = max == 0 ? new ArrayList<>() : sortedRows(view, plan, max, parallel);
+        return RowCursor.of(sorted.subList(Math.min(offset, sorted.size()), sorted.size()));
+    }
+
+    // 按计划排序之后的前 max 行
+    private List<Object[]> sortedRows(ReadView view, QueryPlan plan, int max, ParallelScan parallel) {
+        QueryPlan.Access access = plan.getAccess();
+        Expression residual = plan.getResidual();
+        Column orderBy = plan.getOrderBy();
+        boolean descending = plan.isDescending();
+        if (access.getType() == QueryPlan.AccessType.INDEX_ORDER_SCAN) {
+            // 视图打开之后表没有修改时视图就是当前状态，可以按有序索引顺序取前 max 行而不需要排序
+            List<Object[]> current = read(() -> version == view.getVersion() ? orderScan(access, residual, descending, max) : null);
+            if (current != null) {
+                return current;
+            }
+        }
+        int columnIndex = store.columnIndex(orderBy.getName());
+        Comparator<SnapshotRow> order = Comparator.comparing(row -> row.values[columnIndex], nullsLast(orderBy));
+        if (descending) {
+            order = order.reversed();
+        }
+        order = order.thenComparingLong(row -> row.rowId);
+        List<SnapshotRow> matches = new ArrayList<>();
+        if (access.usesIndex()) {
+            List<Long> candidates = access.getType() == QueryPlan.AccessType.KEY_LOOKUP
+                ? readOptimistic(() -> candidateRowIds(view, access))
+                : read(() -> candidateRowIds(view, access));
+            for (int from = 0; from < candidates.size(); from += VIEW_BATCH_ROWS) {
+                List<Long> batch = candidates.subList(from, Math.min(candidates.size(), from + VIEW_BATCH_ROWS));
+                matches.addAll(readOptimistic(() -> resolveRows(view, batch, access.conditions(), residual)));
+            }
+        } else {
+            WhereCondition condition = access.getCondition();
+            long[] bounds = read(() -> partitionBounds(view, parallel));
+            Comparator<SnapshotRow> partitionOrder = order;
+            // 每个分区只保留前 max 行，合并之后再取前 max 行
+            IntFunction<List<SnapshotRow>> leaf = partition -> {
+                List<SnapshotRow> rows = scanPartition(view, bounds[partition], bounds[partition + 1], condition, residual);
+                return bounds.length == 2 ? rows : topN(rows, partitionOrder, max);
+            };
+            matches = bounds.length == 2 ? leaf.apply(0) : parallel.run(bounds.length - 1, leaf, (left, right) -> {
+                left.addAll(right);
+                return left;
+            });
+        }
+        matches = topN(matches, order, max);
+        List<Object[]> result = new ArrayList<>(Math.min(matches.size(), max));
+        for (SnapshotRow row : matches) {
+            if (result.size() == max) {
+                break;
+            }
+            result.add(row.values);
+        }
+        return result;
+    }
+
+    /**
+     * 在读视图的版本上按计划的访问路径和条件把行加入聚合，计划中的排序和 LIMIT 不适用。与 {@link #select} 一样按行 ID 分批，
+     * 但聚合器有状态、批次不能重做，所以扫描的每一批在读锁内执行（索引访问仍然先乐观读取行，再在锁外加入聚合）。
+     * 并行扫描时每个分区使用自己的部分聚合器，最后合并到 aggregator 中。
+     * @param plan 由 {@link #plan} 为此表生成的计划
+     * @param parallel 并行扫描使用的线程池，null 表示总是顺序扫描
+     */
+    void aggregate(ReadView view, QueryPlan plan, HashAggregator aggregator, ParallelScan parallel) {
+        requireOwnView(view);
+        QueryPlan.Access access = plan.getAccess();
+        Expression residual = plan.getResidual();
+        if (access.usesIndex()) {
+            List<Long> candidates = access.getType() == QueryPlan.AccessType.KEY_LOOKUP
+                ? readOptimistic(() -> candidateRowIds(view, access))
+                : read(() -> candidateRowIds(view, access));
+            for (int from = 0; from < candidates.size(); from += VIEW_BATCH_ROWS) {
+                List<Long> batch = candidates.subList(from, Math.min(candidates.size(), from + VIEW_BATCH_ROWS));
+                for (SnapshotRow row : readOptimistic(() -> resolveRows(view, batch, access.conditions(), residual))) {
+                    aggregator.add(row.values);
+                }
+            }
+        } else {
+            WhereCondition condition = access.getCondition();
+            long[] bounds = read(() -> partitionBounds(view, parallel));
+            if (bounds.length == 2) {
+                aggregatePartition(view, bounds[0], bounds[1], condition, residual, aggregator);
+            } else {
+                aggregator.merge(parallel.run(bounds.length - 1, partition -> aggregatePartition(view, bounds[partition],
+                    bounds[partition + 1], condition, residual, aggregator.newPartial()), HashAggregator::merge));
+            }
+        }
+    }
+
+    /**
+     * 在读视图的版本上按计划的访问路径和条件逐批读取行的游标；计划中的排序、LIMIT 和 OFFSET 不适用。
+     * 每取一批做一次乐观读，只有与写入冲突的批次才在读锁内重做，取行之间不持有锁，可以在其间读取其他表或者同一张表的读视图。
+     * 顺序扫描时跳过的行只求值条件，不组装整行。
+     * @param plan 由 {@link #plan} 为此表生成的计划
+     * @return 行所有列的值（按列定义顺序）的游标，在关闭视图之前读取
+     */
+    RowCursor scan(ReadView view, QueryPlan plan) {
+        requireOwnView(view);
+        QueryPlan.Access access = plan.getAccess();
+        Expression residual = plan.getResidual();
+        if (access.usesIndex()) {
+            return new RowCursor() {
+                private List<Long> candidates;
+                private int from;
+
+                @Override
+                List<Object[]> fetch() {
+                    if (candidates == null) {
+                        candidates = access.getType() == QueryPlan.AccessType.KEY_LOOKUP
+                            ? readOptimistic(() -> candidateRowIds(view, access))
+                            : read(() -> candidateRowIds(view, access));
+                    }
+                    if (from >= candidates.size()) {
+                        return null;
+                    }
+                    List<Long> batch = candidates.subList(from, Math.min(candidates.size(), from + VIEW_BATCH_ROWS));
+                    from += VIEW_BATCH_ROWS;
+                    return snapshotValues(readOptimistic(() -> resolveRows(view, batch, access.conditions(), residual)));
+                }
+            };
+        }
+        WhereCondition condition = access.getCondition();
+        long last = view.getNextRowId() - 1;
+        return new RowCursor() {
+            private long after = -1;
+            private int pendingSkip; // 还要在扫描中跳过的行数
+
+            @Override
+            List<Object[]> fetch() {
+                if (after >= last) {
+                    return null;
+                }
+                long scannedUpTo = after;
+                int skip = pendingSkip;
+                ViewBatch batch = readOptimistic(() -> scanRows(view, scannedUpTo, last + 1, condition, residual, skip));
+                after = batch.lastRowId;
+                pendingSkip -= batch.skipped;
+                return snapshotValues(batch.rows);
+            }
+
+            @Override
+            void skipUnread(int count) {
+                pendingSkip = (int) Math.min(Integer.MAX_VALUE, (long) pendingSkip + count);
+            }
+        };
+    }
+
+    // 顺序扫描的分区在线程池上扫描，游标按分区顺序产生各分区满足条件的行。同时最多有线程数个分区已提交而未读取，
+    // 读取一个分区时提交下一个；表的行数低于并行阈值时与 scan 相同
+    private RowCursor partitionedScan(ReadView view, QueryPlan plan, ParallelScan parallel) {
+        long[] bounds = read(() -> partitionBounds(view, parallel));
+        if (bounds.length == 2) {
+            return scan(view, plan);
+        }
+        WhereCondition condition = plan.getAccess().getCondition();
+        Expression residual = plan.getResidual();
+        int partitions = bounds.length - 1;
+        int window = parallel.workersFor(partitions);
+        return new RowCursor() {
+            private final ArrayDeque<ForkJoinTask<List<SnapshotRow>>> pending = new ArrayDeque<>();
+            private int submitted;
+
+            @Override
+            List<Object[]> fetch() {
+                while (pending.size() < window && submitted < partitions) {
+                    int partition = submitted++;
+                    pending.addLast(parallel.submit(() -> scanPartition(view, bounds[partition], bounds[partition + 1], condition, residual)));
+                }
+                ForkJoinTask<List<SnapshotRow>> next = pending.pollFirst();
+                return next == null ? null : snapshotValues(parallel.join(next));
+            }
+
+            @Override
+            void close() {
+                submitted = partitions;
+                for (ForkJoinTask<List<SnapshotRow>> task : pending) {
+                    task.cancel(false);
+                }
+                for (ForkJoinTask<List<SnapshotRow>> task : pending) {
+                    task.quietlyJoin(); // 已经开始的分区扫描读取视图，要在视图关闭之前结束
+                }
+                pending.clear();
+            }
+        };
+    }
+
+    /**
+     * 在读视图的版本上按列值查找行，用于索引嵌套循环连接：对 keys 中的每个值，找出列值等于它并且满足 filter 的行。
+     * 用唯一键表或索引找出当前列值相等的行，视图打开之后被修改或删除的行按它们在视图中的值匹配；
+     * 列上已经没有唯一键或索引时（规划之后被删除）退回到列向量扫描，结果不变。NULL 不等于任何值。
+     * 整批键在一次乐观读中查找。
+     * @param filter 绑定到此表的条件，null 表示不过滤
+     * @return 与 keys 一一对应的匹配行所有列的值
+     */
+    List<List<Object[]>> lookup(ReadView view, Column column, List<Object> keys, Expression filter) {
+        requireOwnView(view);
+        int columnIndex = store.columnIndex(column.getName());
+        return readOptimistic(() -> {
+            // 视图打开之后被修改或删除的行不能按当前值查找，按视图中的值分组
+            Set<Long> changed = new HashSet<>();
+            Map<Object, List<Object[]>> changedRows = new HashMap<>();
+            for (RowVersion newest : rowVersions.values()) {
+                if (newest.supersededAt > view.getVersion()) {
+                    changed.add(newest.rowId);
+                    Object[] values = valuesAt(view, newest.rowId);
+                    if (values != null && values[columnIndex] != null) {
+                        changedRows.computeIfAbsent(values[columnIndex], value -> new ArrayList<>()).add(values);
+                    }
+                }
+            }
+            List<List<Object[]>> results = new ArrayList<>(keys.size());
+            for (Object key : keys) {
+                List<Object[]> rows = new ArrayList<>();
+                if (key != null) {
+                    WhereCondition condition = WhereCondition.equalTo(column, key);
+                    List<Long> rowIds = indexLookup(condition);
+                    for (long rowId : rowIds == null ? scanRowIds(condition) : rowIds) {
+                        Object[] values = changed.contains(rowId) ? null : valuesAt(view, rowId);
+                        if (values != null && (filter == null || filter.test(values))) {
+                            rows.add(values);
+                        }
+                    }
+                    for (Object[] values : changedRows.getOrDefault(key, Collections.emptyList())) {
+                        if (filter == null || filter.test(values)) {
+                            rows.add(values);
+                        }
+                    }
+                }
+                results.add(rows);
+            }
+            return results;
+        });
+    }
+
+    /**
+     * @return 顺序扫描此表时的分区数，1 表示不并行
+     */
+    int scanPartitions(ParallelScan parallel) {
+        return parallel == null ? 1 : read(() -> parallel.partitionsFor(store.size(), VIEW_BATCH_ROWS));
+    }
+
+    // 视图中的行按槽位均分为分区的行 ID 边界：分区 i 是行 ID 范围 (bounds[i], bounds[i + 1]]，最后一个边界是视图的最大行 ID。在读锁内调用
+    private long[] partitionBounds(ReadView view, ParallelScan parallel) {
+        long end = view.getNextRowId();
+        int slots = store.firstSlotAfter(end - 1);
+        int partitions = parallel == null ? 1 : parallel.partitionsFor(slots, VIEW_BATCH_ROWS);
+        long[] bounds = new long[partitions + 1];
+        bounds[0] = -1;
+        for (int i = 1; i < partitions; i++) {
+            bounds[i] = store.rowIdAt((int) ((long) slots * i / partitions)) - 1;
+        }
+        bounds[partitions] = end - 1;
+        return bounds;
+    }
+
+    // 逐批扫描行 ID 范围 (after, last] 中满足条件的行
+    private List<SnapshotRow> scanPartition(ReadView view, long after, long last, WhereCondition condition, Expression residual) {
+        List<SnapshotRow> rows = new ArrayList<>();
+        while (after < last) {
+            long scannedUpTo = after;
+            ViewBatch batch = readOptimistic(() -> scanRows(view, scannedUpTo, last + 1, condition, residual, 0));
+            rows.addAll(batch.rows);
+            after = batch.lastRowId;
+        }
+        return rows;
+    }
+
+    // 把行 ID 范围 (after, last] 中满足条件的行逐批加入聚合
+    private HashAggregator aggregatePartition(ReadView view, long after, long last, WhereCondition condition, Expression residual,
+                                              HashAggregator aggregator) {
+        while (after < last) {
+            long scannedUpTo = after;
+            after = read(() -> aggregateRows(view, scannedUpTo, last + 1, condition, residual, aggregator));
+        }
+        return aggregator;
+    }
+
+    // 按有序索引顺序（范围条件限定遍历范围）读取当前状态下的前 max 行。在读锁内调用；索引已被删除时返回 null
+    private List<Object[]> orderScan(QueryPlan.Access access, Expression residual, boolean descending, int max) {
+        TableIndex index = indexes.get(access.getIndexName());
+        if (!(index instanceof OrderedIndex)) {
+            return null;
+        }
+        List<Object[]> result = new ArrayList<>();
+        LongPredicate collect = rowId -> {
+            Object[] values = store.values(store.slotOf(rowId));
+            if (residual == null || residual.test(values)) {
+                result.add(values);
+            }
+            return result.size() < max;
+        };
+        WhereCondition range = access.getCondition();
+        if (range == null) {
+            ((OrderedIndex) index).forEachInOrder(descending, collect);
+        } else {
+            ((OrderedIndex) index).forEachInRange(range.getLowerBound(), range.isLowerInclusive(),
+                range.getUpperBound(), range.isUpperInclusive(), descending, collect);
+        }
+        return result;
+    }
+
+    // 使用索引的访问路径的候选行 ID（升序）：当前满足访问条件的行，加上视图打开之后被修改或删除、旧值可能满足条件的行
+    private List<Long> candidateRowIds(ReadView view, QueryPlan.Access access) {
+        List<Long> current = accessRowIds(access);
+        TreeSet<Long> candidates = null;
+        for (RowVersion newest : rowVersions.values()) {
+            if (newest.supersededAt > view.getVersion()) {
+                if (candidates == null) {
+                    candidates = new TreeSet<>(current);
+                }
+                candidates.add(newest.rowId);
+            }
+        }
+        return candidates == null ? current : new ArrayList<>(candidates);
+    }
+
+    // 在视图中读取给定的行并求值访问条件和剩余条件。在读锁或乐观读中调用
+    private List<SnapshotRow> resolveRows(ReadView view, List<Long> rowIds, List<WhereCondition> conditions, Expression residual) {
+        int[] columnIndexes = new int[conditions.size()];
+        for (int i = 0; i < columnIndexes.length; i++) {
+            columnIndexes[i] = store.columnIndex(conditions.get(i).getColumn().getName());
+        }
+        List<SnapshotRow> rows = new ArrayList<>();
+        for (long rowId : rowIds) {
+            Object[] values = valuesAt(view, rowId);
+            if (values == null || (residual != null && !residual.test(values))) {
+                continue;
+            }
+            boolean matches = true;
+            for (int i = 0; i < columnIndexes.length && matches; i++) {
+                matches = conditions.get(i).matchesValue(values[columnIndexes[i]]);
+            }
+            if (matches) {
+                rows.add(new SnapshotRow(rowId, values));
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * 在视图中扫描行 ID 在 (after, end) 中的下一批行（最多 VIEW_BATCH_ROWS 个槽位），跳过前 skip 个满足条件的行。在读锁或乐观读中调用。
+     * 当前值仍与视图一致的行用列向量扫描求值，视图打开之后被修改或删除的行用旧版本中的值求值。
+     * 这一批中没有旧版本时行按槽位顺序产生，没有剩余条件的跳过的行不组装整行。
+     */
+    private ViewBatch scanRows(ReadView view, long after, long end, WhereCondition condition, Expression residual, int skip) {
+        int first = store.firstSlotAfter(after);
+        int last = batchEnd(first, end);
+        long lastRowId = batchLastRowId(last, end);
+        Map<Long, Object[]> olderValues = olderValues(view, after, lastRowId);
+        int columnIndex = condition == null ? -1 : store.columnIndex(condition.getColumn().getName());
+        BitSet matches = condition == null ? null : store.scan(condition, first, last);
+        List<SnapshotRow> rows = new ArrayList<>();
+        int skipped = 0;
+        boolean skipInline = olderValues.isEmpty();
+        for (int slot = first; slot < last; slot++) {
+            long rowId = store.rowIdAt(slot);
+            if (store.isLive(slot) && (matches == null || matches.get(slot)) && !olderValues.containsKey(rowId)) {
+                if (skipInline && skipped < skip && residual == null) {
+                    skipped++;
+                    continue;
+                }
+                Object[] values = store.values(slot);
+                if (residual == null || residual.test(values)) {
+                    if (skipInline && skipped < skip) {
+                        skipped++;
+                    } else {
+                        rows.add(new SnapshotRow(rowId, values));
+                    }
+                }
+            }
+        }
+        if (!olderValues.isEmpty()) {
+            for (Map.Entry<Long, Object[]> entry : olderValues.entrySet()) {
+                Object[] values = entry.getValue().clone();
+                if ((condition == null || condition.matchesValue(values[columnIndex])) && (residual == null || residual.test(values))) {
+                    rows.add(new SnapshotRow(entry.getKey(), values));
+                }
+            }
+            rows.sort(Comparator.comparingLong(row -> row.rowId));
+            int dropped = Math.min(skip, rows.size());
+            rows = new ArrayList<>(rows.subList(dropped, rows.size()));
+            skipped = dropped;
+        }
+        return new ViewBatch(rows, lastRowId, skipped);
+    }
+
+    /**
+     * 把视图中行 ID 在 (after, end) 中的下一批行加入聚合，返回这一批覆盖到的最大行 ID。在读锁内调用。
+     * 没有剩余条件时，当前值仍与视图一致的行从列向量中直接读取基本类型值，不组装整行。
+     */
+    private long aggregateRows(ReadView view, long after, long end, WhereCondition condition, Expression residual,
+                               HashAggregator aggregator) {
+        int first = store.firstSlotAfter(after);
+        int last = batchEnd(first, end);
+        long lastRowId = batchLastRowId(last, end);
+        Map<Long, Object[]> olderValues = olderValues(view, after, lastRowId);
+        int columnIndex = condition == null ? -1 : store.columnIndex(condition.getColumn().getName());
+        BitSet matches = condition == null ? null : store.scan(condition, first, last);
+        for (int slot = first; slot < last; slot++) {
+            if (!store.isLive(slot) || (matches != null && !matches.get(slot))
+                || (!olderValues.isEmpty() && olderValues.containsKey(store.rowIdAt(slot)))) {
+                continue;
+            }
+            if (residual == null) {
+                aggregator.add(store, slot);
+            } else {
+                Object[] values = store.values(slot);
+                if (residual.test(values)) {
+                    aggregator.add(values);
+                }
+            }
+        }
+        for (Object[] values : olderValues.values()) {
+            if ((condition == null || condition.matchesValue(values[columnIndex])) && (residual == null || residual.test(values))) {
+                aggregator.add(values);
+            }
+        }
+        return lastRowId;
+    }
+
+    // 从槽位 first 开始的一批槽位的结束位置（不含）：最多 VIEW_BATCH_ROWS 个，只包含行 ID 小于 end 的行
+    private int batchEnd(int first, long end) {
+        int last = first;
+        while (last < store.size() && last - first < VIEW_BATCH_ROWS && store.rowIdAt(last) < end) {
+            last++;
+        }
+        return last;
+    }
+
+    // 结束于槽位 last 的批次覆盖到的最大行 ID；之后没有视图中的行时是 end - 1，使旧版本中已删除的行也被包括
+    private long batchLastRowId(int last, long end) {
+        boolean more = last < store.size() && store.rowIdAt(last) < end;
+        return more ? store.rowIdAt(last - 1) : end - 1;
+    }
+
+    // 行 ID 在 (after, lastRowId] 中、视图打开之后被修改或删除的行在视图中的值
+    private Map<Long, Object[]> olderValues(ReadView view, long after, long lastRowId) {
+        Map<Long, Object[]> olderValues = new HashMap<>();
+        for (RowVersion newest : rowVersions.subMap(after, false, lastRowId, true).values()) {
+            RowVersion visible = visibleVersion(view, newest);
+            if (visible != null) {
+                olderValues.put(visible.rowId, visible.values);
+            }
+        }
+        return olderValues;
+    }
+
+    // 行在视图中的值，行在视图中不存在时返回 null。在读锁或乐观读中调用
+    private Object[] valuesAt(ReadView view, long rowId) {
+        if (rowId >= view.getNextRowId()) {
+            return null;
+        }
+        RowVersion visible = visibleVersion(view, rowVersions.get(rowId));
+        if (visible != null) {
+            return visible.values.clone();
+        }
+        int slot = store.slotOf(rowId);
+        return slot >= 0 && store.isLive(slot) ? store.values(slot) : null;
+    }
+
+    // 链上对视图可见的版本，即视图打开之后第一次修改之前的值；视图打开之后行没有被修改时返回 null
+    private static RowVersion visibleVersion(ReadView view, RowVersion newest) {
+        RowVersion visible = null;
+        for (RowVersion candidate = newest; candidate != null && candidate.supersededAt > view.getVersion(); candidate = candidate.older) {
+            visible = candidate;
+        }
+        return visible;
+    }
+
+    private static List<Object[]> snapshotValues(List<SnapshotRow> rows) {
+        List<Object[]> values = new ArrayList<>(rows.size());
+        for (SnapshotRow row : rows) {
+            values.add(row.values);
+        }
+        return values;
+    }
+
+    private List<Object[]> valuesOf(List<Long> rowIds) {
+        List<Object[]> values = new ArrayList<>(rowIds.size());
+        for (long rowId : rowIds) {
+            values.add(store.values(requireSlot(rowId)));
+        }
+        return values;
+    }
+
+    // 读视图中的一行
+    private static final class SnapshotRow {
+        final long rowId;
+        final Object[] values;
+
+        SnapshotRow(long rowId, Object[] values) {
+            this.rowId = rowId;
+            this.values = values;
+        }
+    }
+
+    private static final class ViewBatch {
+        final List<SnapshotRow> rows;
+        final long lastRowId; // 这一批覆盖到的最大行 ID
+        final int skipped;    // 跳过的满足条件的行数
+
+        ViewBatch(List<SnapshotRow> rows, long lastRowId, int skipped) {
+            this.rows = rows;
+            this.lastRowId = lastRowId;
+            this.skipped = skipped;
+        }
+    }
+
+    @JsonIgnore
+    public int getRowCount() {
+        return store.liveCount();
+    }
+
+    public Optional<Row> getRow(long rowId) {
+        int slot = store.slotOf(rowId);
+        return slot < 0 ? Optional.empty() : Optional.of(new Row(store, rowId, slot));
+    }
+
+    /**
+     * @return 给定行 ID 对应的行视图，顺序与参数一致
+     * @throws IllegalArgumentException 如果某个行 ID 不存在
+     */
+    public List<Row> getRows(List<Long> rowIds) {
+        List<Row> result = new ArrayList<>(rowIds.size());
+        for (long rowId : rowIds) {
+            result.add(new Row(store, rowId, requireSlot(rowId)));
+        }
+        return result;
+    }
+
+    public Row addRow(Row row) {
         if (row == null) {
             throw new IllegalArgumentException("Row cannot be null.");
         }
-        // 验证 row 是否包含所有必需的列，并且值的类型是否正确
         // 确保 row 中的列名与表定义的列名完全匹配
-        if (row.getData().size() != columns.size()) {
+        Map<String, Object> data = row.getData();
+        if (data.size() != columns.size() || !data.keySet().containsAll(columns.keySet())) {
              throw new IllegalArgumentException(
-                String.format("Row column count (%d) does not match table column count (%d) for table '%s'. Provided columns: %s, Expected columns: %s", 
-                row.getData().size(), columns.size(), name, row.getData().keySet(), columns.keySet()));
+                String.format("Row columns %s do not match table columns %s for table '%s'.", data.keySet(), columns.keySet(), name));
         }
+        return addRow(data);
+    }
 
-        Row validatedRow = new Row();
+    // 方便地通过 Map 创建并添加行
+    public Row addRow(Map<String, Object> rowData) {
+        if (rowData == null) {
+            throw new IllegalArgumentException("Row data cannot be null.");
+        }
+        long rowId = insertRow(null, rowData);
+        return new Row(store, rowId, store.slotOf(rowId));
+    }
+
+    /**
+     * 验证并插入一行。所有检查都在修改表之前完成，失败时表保持不变。
+     * @param rowId 要使用的行 ID（重放 WAL 时），null 表示分配新的行 ID
+     * @return 插入行的行 ID
+     * @throws IllegalArgumentException 如果值无效或主键为 NULL
+     * @throws IllegalStateException 如果违反主键 / 唯一约束，或行 ID 不大于已有的行 ID
+     */
+    long insertRow(Long rowId, Map<String, Object> rowData) {
+        Object[] values = new Object[columns.size()];
+        int i = 0;
         for (Column tableColumn : columns.values()) {
-            String colName = tableColumn.getName();
-            if (!row.hasColumn(colName)) {
-                throw new IllegalArgumentException(
-                    String.format("Missing column '%s' in a row for table '%s'.", colName, name)
-                );
+            values[i++] = rowData.get(tableColumn.getName()); // 缺少的列取 NULL
+        }
+        return insertValues(rowId, values);
+    }
+
+    /**
+     * 与 {@link #insertRow(Long, Map)} 相同，但值按列定义顺序给出，供流式加载直接填充而不构建行 Map。
+     * values 中的原始值会被原地替换为转换后的值。
+     */
+    long insertValues(Long rowId, Object[] values) {
+        long id = rowId == null ? nextRowId : rowId;
+        if (id < nextRowId) {
+            // 槽位顺序必须与行 ID 顺序一致，只能追加比现有行都大的行 ID
+            throw new IllegalStateException("Row id " + id + " is not greater than existing row ids in table '" + name + "'.");
+        }
+        if (values.length != columns.size()) {
+            throw new IllegalArgumentException("Expected " + columns.size() + " values for table '" + name + "' but got " + values.length + ".");
+        }
+        int i = 0;
+        for (Column tableColumn : columns.values()) {
+            values[i] = convertForColumn(tableColumn, values[i]);
+            i++;
+        }
+        checkUniqueKeys(values);
+        int slot = store.append(id, values);
+        nextRowId = id + 1;
+        i = 0;
+        for (Column tableColumn : columns.values()) {
+            Object value = values[i++];
+            Map<Object, Long> keys = uniqueKeys.get(tableColumn.getName());
+            if (keys != null && value != null) {
+                keys.put(value, id);
             }
-            Object value = row.getValue(colName);
-            // 使用 Row 内部的 validateAndSetValue，它会调用 Column 的 convertValue 和 isValidValue
-            validatedRow.validateAndSetValue(tableColumn, value);
         }
-        rows.add(validatedRow); // 添加经过验证和转换的行
+        for (TableIndex index : indexes.values()) {
+            index.insert(store.get(slot, store.columnIndex(index.getDefinition().getColumn())), id);
+        }
+        if (statistics != null) {
+            statistics.rowAdded(values);
+        }
+        if (undoLog != null) {
+            undoLog.add(() -> deleteSlot(id, store.slotOf(id)));
+        }
+        publishChange();
+        return id;
     }
-    
-    // 方便地通过 Map 创建并添加行
-    public void addRow(Map<String, Object> rowData) {
-        if (rowData == null) {
-            throw new IllegalArgumentException("Row data cannot be null.");
+
+    /**
+     * 批量追加行（COPY）。先转换所有值，并检查主键 / 唯一约束（包括这批行之间的重复），全部通过之后才修改表，
+     * 失败时表保持不变。列值依次追加到列存储，索引在所有行追加之后统一更新，表版本只推进一次。
+     * @param firstRowId 第一行使用的行 ID（重放 WAL 时），null 表示从下一个行 ID 开始分配；之后的行依次加一
+     * @param rows 按列定义顺序的值，get 可以每次返回新的数组
+     * @return 第一行的行 ID
+     * @throws IllegalArgumentException 如果值无效或主键为 NULL
+     * @throws IllegalStateException 如果违反主键 / 唯一约束，或行 ID 不大于已有的行 ID
+     */
+    long appendRows(Long firstRowId, List<Object[]> rows) {
+        long first = firstRowId == null ? nextRowId : firstRowId;
+        if (first < nextRowId) {
+            throw new IllegalStateException("Row id " + first + " is not greater than existing row ids in table '" + name + "'.");
+        }
+        List<Column> columnList = new ArrayList<>(columns.values());
+        List<Integer> keyColumns = new ArrayList<>();
+        for (int i = 0; i < columnList.size(); i++) {
+            if (columnList.get(i).requiresUniqueValues()) {
+                keyColumns.add(i);
+            }
+        }
+        if (!keyColumns.isEmpty()) {
+            List<Set<Object>> batchKeys = new ArrayList<>();
+            for (int i = 0; i < keyColumns.size(); i++) {
+                batchKeys.add(new HashSet<>());
+            }
+            for (Object[] raw : rows) {
+                Object[] values = convertRow(raw);
+                checkUniqueKeys(values);
+                for (int k = 0; k < keyColumns.size(); k++) {
+                    Object value = values[keyColumns.get(k)];
+                    if (value != null && !batchKeys.get(k).add(value)) {
+                        throw duplicateKey(columnList.get(keyColumns.get(k)), value);
+                    }
+                }
+            }
+        } else {
+            for (Object[] raw : rows) {
+                convertRow(raw); // 只验证类型
+            }
+        }
+        int firstSlot = store.size();
+        long id = first;
+        for (Object[] raw : rows) {
+            Object[] values = convertRow(raw);
+            store.append(id, values);
+            for (int column : keyColumns) {
+                if (values[column] != null) {
+                    uniqueKeys.get(columnList.get(column).getName()).put(values[column], id);
+                }
+            }
+            if (statistics != null) {
+                statistics.rowAdded(values);
+            }
+            id++;
+        }
+        nextRowId = Math.max(nextRowId, id);
+        if (!indexes.isEmpty()) {
+            // 索引在所有行写入之后批量维护
+            long[] appendedRowIds = new long[store.size() - firstSlot];
+            for (int slot = firstSlot; slot < store.size(); slot++) {
+                appendedRowIds[slot - firstSlot] = store.rowIdAt(slot);
+            }
+            for (TableIndex index : indexes.values()) {
+                int columnIndex = store.columnIndex(index.getDefinition().getColumn());
+                Object[] keys = new Object[appendedRowIds.length];
+                for (int slot = firstSlot; slot < store.size(); slot++) {
+                    keys[slot - firstSlot] = store.get(slot, columnIndex);
+                }
+                index.insertAll(keys, appendedRowIds);
+            }
+        }
+        if (undoLog != null) {
+            for (long rowId = first; rowId < id; rowId++) {
+                long appended = rowId;
+                undoLog.add(() -> deleteSlot(appended, store.slotOf(appended)));
+            }
+        }
+        publishChange();
+        return first;
+    }
+
+    // 按列类型原地转换一行的值，已转换的值保持不变
+    private Object[] convertRow(Object[] values) {
+        if (values.length != columns.size()) {
+            throw new IllegalArgumentException("Expected " + columns.size() + " values for table '" + name + "' but got " + values.length + ".");
         }
-        Row newRow = new Row();
+        int i = 0;
         for (Column tableColumn : columns.values()) {
-            String colName = tableColumn.getName();
-            Object value = rowData.get(colName); // 允许 null 值，validateAndSetValue 会处理
-            // 如果列在 rowData 中不存在，则 value 将为 null
-            // validateAndSetValue 内部会调用 column.convertValue 和 column.isValidValue
-            newRow.validateAndSetValue(tableColumn, value);
+            values[i] = convertForColumn(tableColumn, values[i]);
+            i++;
+        }
+        return values;
+    }
+
+    /**
+     * 把按顺序分配的临时行 ID 替换为文件中保存的行 ID。用于流式加载在读到 "rowIds" 之前已经读入行的旧文件，
+     * 此时表中还没有索引，也没有删除过的行。
+     * @param ids 与现有行一一对应的升序行 ID
+     * @throws IllegalArgumentException 如果数量不一致或行 ID 不是严格升序
+     */
+    void reassignRowIds(long[] ids) {
+        if (ids.length != store.liveCount() || store.size() != store.liveCount()) {
+            throw new IllegalArgumentException("Table " + name + " has " + store.liveCount() + " rows but " + ids.length + " row ids.");
+        }
+        if (!indexes.isEmpty()) {
+            throw new IllegalStateException("Cannot reassign row ids of table '" + name + "' after indexes were built.");
+        }
+        for (int i = 1; i < ids.length; i++) {
+            if (ids[i] <= ids[i - 1]) {
+                throw new IllegalArgumentException("Row ids of table '" + name + "' must be strictly increasing.");
+            }
+        }
+        store.reassignRowIds(ids);
+        for (Map<Object, Long> keys : uniqueKeys.values()) {
+            // 临时行 ID 等于槽位编号
+            keys.replaceAll((value, provisionalId) -> ids[(int) (long) provisionalId]);
+        }
+        if (ids.length > 0) {
+            nextRowId = Math.max(nextRowId, ids[ids.length - 1] + 1);
+        }
+        publishChange();
+    }
+
+    // 行 ID 只增不减：文件中保存的 nextRowId 可能大于现有最大行 ID + 1（末尾的行已被删除）
+    void advanceNextRowId(long rowId) {
+        nextRowId = Math.max(nextRowId, rowId);
+    }
+
+    /**
+     * 按行 ID 原地更新行。所有检查都在修改表之前完成，失败时表保持不变。
+     * @param rowIds 要更新的行 ID
+     * @param values 列名 -> 新值，会按列类型进行验证和转换
+     * @throws IllegalArgumentException 如果列不存在、行 ID 不存在或值无效
+     * @throws IllegalStateException 如果更新会违反主键 / 唯一约束
+     */
+    public void updateRows(List<Long> rowIds, Map<String, Object> values) {
+        Map<Column, Object> resolved = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            Column column = getColumn(entry.getKey()).orElseThrow(() ->
+                new IllegalArgumentException("Column '" + entry.getKey() + "' not found in table '" + name + "'."));
+            resolved.put(column, convertForColumn(column, entry.getValue()));
+        }
+        int[] slots = new int[rowIds.size()];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = requireSlot(rowIds.get(i));
+        }
+        for (Map.Entry<Column, Object> entry : resolved.entrySet()) {
+            Column column = entry.getKey();
+            if (!column.requiresUniqueValues() || rowIds.isEmpty()) {
+                continue;
+            }
+            Object newValue = entry.getValue();
+            if (newValue == null) {
+                checkNotNullKey(column);
+                continue;
+            }
+            Long owner = uniqueKeys.get(column.getName()).get(newValue);
+            // 多行被设置为同一个值必然重复；单行时只允许值原本就属于这一行
+            if (rowIds.size() > 1 || (owner != null && owner != rowIds.get(0).longValue())) {
+                throw duplicateKey(column, newValue);
+            }
+        }
+        saveVersions(rowIds, slots);
+        if (undoLog != null) {
+            for (int i = 0; i < slots.length; i++) {
+                long rowId = rowIds.get(i);
+                Object[] before = store.values(slots[i]);
+                undoLog.add(() -> {
+                    int slot = store.slotOf(rowId);
+                    for (Column column : resolved.keySet()) {
+                        String columnName = column.getName();
+                        int columnIndex = store.columnIndex(columnName);
+                        setValue(slot, rowId, columnIndex, uniqueKeys.get(columnName), indexesOn(columnName), before[columnIndex]);
+                    }
+                });
+            }
+        }
+        for (Map.Entry<Column, Object> entry : resolved.entrySet()) {
+            String columnName = entry.getKey().getName();
+            int columnIndex = store.columnIndex(columnName);
+            Map<Object, Long> keys = uniqueKeys.get(columnName);
+            List<TableIndex> columnIndexes = indexesOn(columnName);
+            for (int i = 0; i < slots.length; i++) {
+                setValue(slots[i], rowIds.get(i), columnIndex, keys, columnIndexes, entry.getValue());
+            }
+        }
+        publishChange();
+    }
+
+    // 修改一个值，并同步该列的唯一键表和索引
+    private void setValue(int slot, long rowId, int columnIndex, Map<Object, Long> keys, List<TableIndex> columnIndexes, Object newValue) {
+        Object oldValue = store.get(slot, columnIndex);
+        if (Objects.equals(oldValue, newValue)) {
+            return;
+        }
+        store.set(slot, columnIndex, newValue);
+        if (statistics != null) {
+            statistics.valueChanged(columnIndex, oldValue, newValue);
+        }
+        if (keys != null) {
+            if (oldValue != null) {
+                keys.remove(oldValue, rowId);
+            }
+            if (newValue != null) {
+                keys.put(newValue, rowId);
+            }
+        }
+        for (TableIndex index : columnIndexes) {
+            index.remove(oldValue, rowId);
+            index.insert(newValue, rowId);
+        }
+    }
+
+    /**
+     * 按行 ID 删除行，每行 O(1)（加上索引维护），不依赖 {@link Row#equals(Object)}，也不移动其他行。
+     * 已删除的槽位累积过多时整体压缩一次（记录撤销日志期间推迟到记录结束）。
+     * @return 删除的行数
+     * @throws IllegalArgumentException 如果某个行 ID 不存在
+     */
+    public int deleteRows(List<Long> rowIds) {
+        int[] slots = new int[rowIds.size()];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = requireSlot(rowIds.get(i));
+        }
+        saveVersions(rowIds, slots);
+        int deleted = 0;
+        for (long rowId : rowIds) {
+            int slot = store.slotOf(rowId);
+            if (slot < 0) {
+                continue; // 参数中重复的行 ID
+            }
+            deleteSlot(rowId, slot);
+            if (undoLog != null) {
+                undoLog.add(() -> undeleteSlot(rowId, slot));
+            }
+            deleted++;
+        }
+        if (undoLog == null) {
+            store.compactIfSparse();
+        }
+        publishChange();
+        return deleted;
+    }
+
+    // 删除一行，并从唯一键表、索引和统计信息中移除它的值
+    private void deleteSlot(long rowId, int slot) {
+        if (statistics != null) {
+            statistics.rowRemoved(store.values(slot));
+        }
+        for (Map.Entry<String, Map<Object, Long>> entry : uniqueKeys.entrySet()) {
+            Object value = store.get(slot, store.columnIndex(entry.getKey()));
+            if (value != null) {
+                entry.getValue().remove(value, rowId);
+            }
+        }
+        for (TableIndex index : indexes.values()) {
+            index.remove(store.get(slot, store.columnIndex(index.getDefinition().getColumn())), rowId);
+        }
+        store.delete(slot);
+    }
+
+    // 撤销 deleteSlot：槽位中的值在压缩之前一直保留
+    private void undeleteSlot(long rowId, int slot) {
+        store.undelete(slot);
+        if (statistics != null) {
+            statistics.rowAdded(store.values(slot));
+        }
+        for (Map.Entry<String, Map<Object, Long>> entry : uniqueKeys.entrySet()) {
+            Object value = store.get(slot, store.columnIndex(entry.getKey()));
+            if (value != null) {
+                entry.getValue().put(value, rowId);
+            }
+        }
+        for (TableIndex index : indexes.values()) {
+            index.insert(store.get(slot, store.columnIndex(index.getDefinition().getColumn())), rowId);
+        }
+    }
+
+    /**
+     * 查找指定列等于给定值的行 ID（表中顺序）。NULL 只与 NULL 相等。
+     */
+    public List<Long> findRowIds(Column column, Object value) {
+        return findRowIds(WhereCondition.equalTo(column, value));
+    }
+
+    /**
+     * 查找满足条件的行 ID（表中顺序）。主键 / 唯一列上的等值条件直接查唯一键表，
+     * 其他等值条件优先使用哈希索引，范围条件使用有序索引，没有可用索引时扫描列向量。
+     */
+    public List<Long> findRowIds(WhereCondition condition) {
+        List<Long> rowIds = indexLookup(condition);
+        if (rowIds != null) {
+            return rowIds;
+        }
+        return scanRowIds(condition);
+    }
+
+    /**
+     * 查找满足绑定到此表的条件的行 ID（表中顺序），访问路径由 {@link QueryPlanner} 按代价选择。调用者持有表锁。
+     * @param filter 条件，null 表示全部行
+     */
+    List<Long> findRowIds(Expression filter) {
+        return findRowIds(QueryPlanner.plan(this, filter, null, false, -1, 0));
+    }
+
+    /**
+     * 按计划的访问路径查找行 ID（表中顺序），再逐行求值剩余条件。忽略计划中的排序和 LIMIT。调用者持有表锁。
+     */
+    List<Long> findRowIds(QueryPlan plan) {
+        return filterRowIds(accessRowIds(plan.getAccess()), plan.getResidual());
+    }
+
+    // 当前满足访问条件的行 ID（升序）。在读锁或乐观读中调用。计划中的索引已被删除时改为扫描列向量
+    private List<Long> accessRowIds(QueryPlan.Access access) {
+        WhereCondition condition = access.getCondition();
+        switch (access.getType()) {
+            case KEY_LOOKUP: {
+                Map<Object, Long> keys = uniqueKeys.get(access.getIndexName());
+                if (keys == null) {
+                    return scanRowIds(condition);
+                }
+                List<Long> rowIds = new ArrayList<>(1);
+                Long rowId = keys.get(condition.getValue());
+                if (rowId != null) {
+                    rowIds.add(rowId);
+                }
+                return rowIds;
+            }
+            case INDEX_LOOKUP:
+            case INDEX_RANGE_SCAN:
+            case INDEX_ORDER_SCAN: {
+                if (condition == null) {
+                    return getRowIds();
+                }
+                TableIndex index = indexes.get(access.getIndexName());
+                if (index == null || (condition.isRange() && !(index instanceof OrderedIndex))) {
+                    return scanRowIds(condition);
+                }
+                List<Long> rowIds = new ArrayList<>();
+                if (!condition.isRange()) {
+                    for (long rowId : index.lookup(condition.getValue())) {
+                        rowIds.add(rowId);
+                    }
+                    return rowIds;
+                }
+                ((OrderedIndex) index).forEachInRange(condition.getLowerBound(), condition.isLowerInclusive(),
+                    condition.getUpperBound(), condition.isUpperInclusive(), false, rowIds::add);
+                Collections.sort(rowIds); // 索引按键排序，调用者需要表中顺序（行 ID 升序）
+                return rowIds;
+            }
+            case INDEX_INTERSECTION: {
+                List<Long> rowIds = null;
+                for (QueryPlan.Access input : access.getInputs()) {
+                    rowIds = rowIds == null ? accessRowIds(input) : intersect(rowIds, accessRowIds(input));
+                    if (rowIds.isEmpty()) {
+                        break;
+                    }
+                }
+                return rowIds;
+            }
+            default:
+                return condition == null ? getRowIds() : scanRowIds(condition);
+        }
+    }
+
+    // 两个升序行 ID 列表的交集
+    private static List<Long> intersect(List<Long> left, List<Long> right) {
+        List<Long> result = new ArrayList<>(Math.min(left.size(), right.size()));
+        int i = 0;
+        int j = 0;
+        while (i < left.size() && j < right.size()) {
+            int comparison = Long.compare(left.get(i), right.get(j));
+            if (comparison == 0) {
+                result.add(left.get(i));
+                i++;
+                j++;
+            } else if (comparison < 0) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return result;
+    }
+
+    // 用列向量扫描查找满足条件的行 ID（升序）
+    private List<Long> scanRowIds(WhereCondition condition) {
+        List<Long> rowIds = new ArrayList<>();
+        BitSet matches = store.scan(condition);
+        for (int slot = matches.nextSetBit(0); slot >= 0; slot = matches.nextSetBit(slot + 1)) {
+            rowIds.add(store.rowIdAt(slot));
+        }
+        return rowIds;
+    }
+
+    /**
+     * @return 列的统计信息，供查询规划估算选择率。调用者持有表锁
+     */
+    ColumnStatistics columnStatistics(String columnName) {
+        TableIndex index = null;
+        OrderedIndex orderedIndex = null;
+        for (TableIndex candidate : indexesOn(columnName)) {
+            if (index == null) {
+                index = candidate;
+            }
+            if (orderedIndex == null && candidate instanceof OrderedIndex) {
+                orderedIndex = (OrderedIndex) candidate;
+            }
+        }
+        ColumnDistribution distribution = statistics == null ? null : statistics.get(store.columnIndex(columnName));
+        return new ColumnStatistics(columns.get(columnName), store.liveCount(), uniqueKeys.get(columnName), index, orderedIndex,
+            distribution);
+    }
+
+    /**
+     * 扫描所有行，重新收集每列的统计信息（NULL 比例、最小值 / 最大值、等深直方图和不同值估算）。
+     * 之后的修改增量维护这些统计，直到再次 ANALYZE。调用者持有写锁（见 DBManager#applyChange）。
+     */
+    void analyze() {
+        List<Column> columnList = getColumnDefinitions();
+        ColumnDistribution.Builder[] builders = new ColumnDistribution.Builder[columnList.size()];
+        for (int i = 0; i < builders.length; i++) {
+            builders[i] = new ColumnDistribution.Builder(columnList.get(i), store.liveCount());
+        }
+        long rows = 0;
+        for (int slot = 0; slot < store.size(); slot++) {
+            if (!store.isLive(slot)) {
+                continue;
+            }
+            for (int i = 0; i < builders.length; i++) {
+                builders[i].accept(store.get(slot, i));
+            }
+            rows++;
+        }
+        statistics = TableStatistics.of(columnList, builders, rows);
+    }
+
+    /**
+     * @return ANALYZE 收集的统计信息，没有 ANALYZE 过时为 null。调用者持有表锁
+     */
+    @JsonProperty("statistics")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    TableStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * 恢复快照文件中保存的统计信息。在所有行加载之后调用，加载的行不会重复计入统计。
+     * @throws IllegalArgumentException 如果统计信息的列与表的列不一致
+     */
+    void restoreStatistics(TableStatistics saved) {
+        statistics = saved == null ? null : saved.bind(getColumnDefinitions());
+    }
+
+    /**
+     * @return 列是主键或唯一列，等值条件可以直接查唯一键表
+     */
+    boolean hasUniqueKey(String columnName) {
+        return uniqueKeys.containsKey(columnName);
+    }
+
+    private List<Long> filterRowIds(List<Long> rowIds, Expression residual) {
+        if (residual == null) {
+            return rowIds;
+        }
+        List<Long> matches = new ArrayList<>();
+        for (long rowId : rowIds) {
+            if (residual.test(store.values(store.slotOf(rowId)))) {
+                matches.add(rowId);
+            }
+        }
+        return matches;
+    }
+
+    // 用唯一键表或索引查找满足条件的行 ID（升序）；没有可用的唯一键或索引时返回 null
+    private List<Long> indexLookup(WhereCondition condition) {
+        String columnName = condition.getColumn().getName();
+        List<Long> rowIds = new ArrayList<>();
+        if (!condition.isRange()) {
+            Map<Object, Long> keys = uniqueKeys.get(columnName);
+            if (keys != null && condition.getValue() != null) {
+                Long rowId = keys.get(condition.getValue());
+                if (rowId != null) {
+                    rowIds.add(rowId);
+                }
+                return rowIds;
+            }
+            Optional<TableIndex> index = findIndex(columnName, IndexType.HASH);
+            if (!index.isPresent()) {
+                index = findIndex(columnName, IndexType.ORDERED);
+            }
+            if (index.isPresent()) {
+                for (long rowId : index.get().lookup(condition.getValue())) {
+                    rowIds.add(rowId);
+                }
+                return rowIds;
+            }
+        } else {
+            Optional<TableIndex> index = findIndex(columnName, IndexType.ORDERED);
+            if (index.isPresent()) {
+                ((OrderedIndex) index.get()).forEachInRange(
+                    condition.getLowerBound(), condition.isLowerInclusive(),
+                    condition.getUpperBound(), condition.isUpperInclusive(),
+                    false, rowIds::add);
+                Collections.sort(rowIds); // 索引按键排序，调用者需要表中顺序（行 ID 升序）
+                return rowIds;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 查找满足条件的行 ID，按 orderBy 列排序后截取前 limit 个。
+     * 如果排序列上有有序索引，则按索引顺序遍历并在取满 limit 行后停止，不需要全量排序。
+     * @param condition 过滤条件，null 表示全部行
+     * @param orderBy 排序列，null 表示按表中顺序
+     * @param limit 最多返回的行数，负数表示不限制
+     */
+    public List<Long> selectRowIds(WhereCondition condition, Column orderBy, boolean descending, int limit) {
+        int max = limit < 0 ? Integer.MAX_VALUE : limit;
+        List<Long> result = new ArrayList<>();
+        if (max == 0) {
+            return result;
+        }
+        if (orderBy == null) {
+            if (condition == null) {
+                for (int slot = 0; slot < store.size() && result.size() < max; slot++) {
+                    if (store.isLive(slot)) {
+                        result.add(store.rowIdAt(slot));
+                    }
+                }
+                return result;
+            }
+            List<Long> matches = findRowIds(condition);
+            return matches.size() > max ? new ArrayList<>(matches.subList(0, max)) : matches;
+        }
+        Optional<TableIndex> orderedIndex = findIndex(orderBy.getName(), IndexType.ORDERED);
+        if (orderedIndex.isPresent()) {
+            OrderedIndex index = (OrderedIndex) orderedIndex.get();
+            if (condition == null) {
+                index.forEachInOrder(descending, rowId -> result.add(rowId) && result.size() < max);
+                return result;
+            }
+            if (condition.isRange() && condition.getColumn().getName().equals(orderBy.getName())) {
+                index.forEachInRange(condition.getLowerBound(), condition.isLowerInclusive(),
+                    condition.getUpperBound(), condition.isUpperInclusive(),
+                    descending, rowId -> result.add(rowId) && result.size() < max);
+                return result;
+            }
+            List<Long> matches = findRowIds(condition);
+            if (matches.size() * 8L >= store.liveCount()) {
+                // 匹配行较多：按索引顺序遍历并跳过不匹配的行，比排序更便宜
+                int columnIndex = store.columnIndex(condition.getColumn().getName());
+                index.forEachInOrder(descending, rowId -> {
+                    if (condition.matchesValue(store.get(store.slotOf(rowId), columnIndex))) {
+                        result.add(rowId);
+                    }
+                    return result.size() < max;
+                });
+                return result;
+            }
+            return sortRowIds(matches, orderBy, descending, max);
+        }
+        List<Long> candidates = condition == null ? getRowIds() : findRowIds(condition);
+        return sortRowIds(candidates, orderBy, descending, max);
+    }
+
+    // 没有可用有序索引时的回退路径：有 limit 时用大小为 limit 的堆选出前 N 行，否则全量排序
+    private List<Long> sortRowIds(List<Long> rowIds, Column orderBy, boolean descending, int max) {
+        int columnIndex = store.columnIndex(orderBy.getName());
+        Comparator<Long> order = Comparator.comparing(rowId -> store.get(store.slotOf(rowId), columnIndex), nullsLast(orderBy));
+        if (descending) {
+            order = order.reversed();
+        }
+        return topN(rowIds, order.thenComparing(Comparator.naturalOrder()), max); // 相同值保持表中顺序
+    }
+
+    // 按列的类型比较值，NULL 视为最大值
+    private static Comparator<Object> nullsLast(Column column) {
+        return (left, right) -> {
+            if (left == null || right == null) {
+                return left == null ? (right == null ? 0 : 1) : -1;
+            }
+            return column.compareValues(left, right);
+        };
+    }
+
+    // 按 order 排序后的前 max 个元素：max 小于元素个数时用大小为 max 的堆，否则全量排序
+    private static <T> List<T> topN(List<T> items, Comparator<T> order, int max) {
+        if (max >= items.size()) {
+            List<T> sorted = new ArrayList<>(items);
+            sorted.sort(order);
+            return sorted;
+        }
+        PriorityQueue<T> topN = new PriorityQueue<>(max + 1, order.reversed());
+        for (T item : items) {
+            topN.offer(item);
+            if (topN.size() > max) {
+                topN.poll();
+            }
+        }
+        List<T> sorted = new ArrayList<>(topN);
+        sorted.sort(order);
+        return sorted;
+    }
+
+    /**
+     * 在表上创建索引，并根据现有行构建索引内容。
+     * @throws IllegalArgumentException 如果列不存在
+     * @throws IllegalStateException 如果同名索引已存在
+     */
+    public void createIndex(IndexDefinition definition) {
+        if (definition == null) {
+            throw new IllegalArgumentException("Index definition cannot be null.");
+        }
+        if (!columns.containsKey(definition.getColumn())) {
+            throw new IllegalArgumentException("Column '" + definition.getColumn() + "' not found in table '" + name + "'.");
+        }
+        if (indexes.containsKey(definition.getName())) {
+            throw new IllegalStateException("Index '" + definition.getName() + "' already exists on table '" + name + "'.");
+        }
+        TableIndex index = newIndex(definition);
+        int columnIndex = store.columnIndex(definition.getColumn());
+        for (int slot = 0; slot < store.size(); slot++) {
+            if (store.isLive(slot)) {
+                index.insert(store.get(slot, columnIndex), store.rowIdAt(slot));
+            }
+        }
+        indexes.put(definition.getName(), index);
+    }
+
+    public boolean dropIndex(String indexName) {
+        if (indexName == null) return false;
+        return indexes.remove(indexName.trim()) != null;
+    }
+
+    public boolean hasIndex(String indexName) {
+        return indexName != null && indexes.containsKey(indexName.trim());
+    }
+
+    @JsonProperty("indexes")
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    public List<IndexDefinition> getIndexDefinitions() {
+        return indexes.values().stream().map(TableIndex::getDefinition).collect(Collectors.toList());
+    }
+
+    /**
+     * @return 建立在给定列上的指定类型的索引
+     */
+    public Optional<TableIndex> findIndex(String columnName, IndexType type) {
+        for (TableIndex index : indexes.values()) {
+            IndexDefinition definition = index.getDefinition();
+            if (definition.getColumn().equals(columnName) && definition.getType() == type) {
+                return Optional.of(index);
+            }
+        }
+        return Optional.empty();
+    }
+
+    List<TableIndex> indexesOn(String columnName) {
+        return indexes.values().stream()
+            .filter(index -> index.getDefinition().getColumn().equals(columnName))
+            .collect(Collectors.toList());
+    }
+
+    private TableIndex newIndex(IndexDefinition definition) {
+        switch (definition.getType()) {
+            case HASH:
+                return new HashIndex(definition);
+            case ORDERED:
+                return new OrderedIndex(definition, columns.get(definition.getColumn()));
+            default:
+                throw new IllegalArgumentException("Unsupported index type: " + definition.getType());
+        }
+    }
+
+    // 按列类型转换并验证值
+    private static Object convertForColumn(Column column, Object value) {
+        Object convertedValue = column.convertValue(value);
+        if (convertedValue != null && !column.isValidValue(convertedValue)) {
+            throw new IllegalArgumentException(
+                "Invalid value '" + value + "' for column '" + column.getName() + "' of type " + column.getType()
+            );
+        }
+        return convertedValue;
+    }
+
+    // 检查新行（按列定义顺序的值）中主键 / 唯一列的值是否与已有行冲突
+    private void checkUniqueKeys(Object[] values) {
+        int i = 0;
+        for (Column column : columns.values()) {
+            Object value = values[i++];
+            Map<Object, Long> keys = uniqueKeys.get(column.getName());
+            if (keys == null) {
+                continue;
+            }
+            if (value == null) {
+                checkNotNullKey(column);
+            } else if (keys.containsKey(value)) {
+                throw duplicateKey(column, value);
+            }
+        }
+    }
+
+    private void checkNotNullKey(Column column) {
+        if (column.isPrimaryKey()) {
+            throw new IllegalArgumentException("Primary key column '" + column.getName() + "' in table '" + name + "' cannot be NULL.");
+        }
+    }
+
+    private IllegalStateException duplicateKey(Column column, Object value) {
+        String constraint = column.isPrimaryKey() ? "primary key" : "unique";
+        return new IllegalStateException("Duplicate value '" + value + "' for " + constraint + " column '" + column.getName() + "' in table '" + name + "'.");
+    }
+
+    /**
+     * @return 表占用堆内存的粗略估算（字节）：列存储，加上唯一键表和索引中每行的条目
+     */
+    @JsonIgnore
+    public long getEstimatedSizeBytes() {
+        long perRowKeyBytes = 64L * uniqueKeys.size() + 24L * indexes.size();
+        return store.estimateSizeBytes() + perRowKeyBytes * store.liveCount();
+    }
+
+    /**
+     * 返回独立的表副本，供后台 checkpoint 序列化。列向量按数组整体复制，副本不会观察到之后的变更。
+     */
+    Table snapshot() {
+        return new Table(this); // 快照只用于序列化，只会读取共享索引的定义
+    }
+
+    private int requireSlot(long rowId) {
+        int slot = store.slotOf(rowId);
+        if (slot < 0) {
+            throw new IllegalArgumentException("Row id " + rowId + " not found in table '" + name + "'.");
         }
-        rows.add(newRow);
+        return slot;
     }
 
     @Override
@@ -109,12 +1799,12 @@ public class Table {
         Table table = (Table) o;
         return name.equals(table.name) &&
                Objects.equals(columns, table.columns) &&
-               Objects.equals(rows, table.rows);
+               Objects.equals(getRows(), table.getRows());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(name, columns, rows);
+        return Objects.hash(name, columns, getRowCount());
     }
 
     @Override
@@ -122,7 +1812,7 @@ public class Table {
         return "Table{" +
                "name='" + name + '\'' +
                ", columns=" + columns.values() +
-               ", rows_count=" + rows.size() +
+               ", rows_count=" + store.liveCount() +
                '}';
     }
-} 
\ No newline at end of file
+}
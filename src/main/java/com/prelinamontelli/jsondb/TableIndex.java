@@ -0,0 +1,39 @@
+package com.prelinamontelli.jsondb;
+
+/**
+ * 表上单列索引的公共接口。索引把列值映射到行 ID。
+ */
+public interface TableIndex {
+    IndexDefinition getDefinition();
+
+    void insert(Object key, long rowId);
+
+    /**
+     * 批量插入，keys[i] 对应 rowIds[i]。用于批量导入在所有行写入之后一次性维护索引，
+     * 实现可以据此选择比逐条插入更快的方式。
+     */
+    default void insertAll(Object[] keys, long[] rowIds) {
+        for (int i = 0; i < keys.length; i++) {
+            insert(keys[i], rowIds[i]);
+        }
+    }
+
+    void remove(Object key, long rowId);
+
+    /**
+     * @return 列值等于 key 的行 ID（升序，即表中顺序），没有匹配时返回空数组
+     */
+    long[] lookup(Object key);
+
+    /**
+     * @return 列值等于 key 的行数，供查询计划估算选择率
+     */
+    int count(Object key);
+
+    /**
+     * @return 索引中不同键的个数（NULL 也算一个键）
+     */
+    int distinctKeys();
+
+    void clear();
+}
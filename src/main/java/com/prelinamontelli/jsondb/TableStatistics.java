@@ -0,0 +1,132 @@
+package com.prelinamontelli.jsondb;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 表的统计信息：ANALYZE 时的行数、之后的修改次数，以及每列的 {@link ColumnDistribution}（按列定义顺序）。
+ * 由 {@link Table} 在每次插入、更新和删除时增量维护，随表结构一起持久化。只在持有表锁时访问。
+ */
+@JsonPropertyOrder({"analyzedRows", "modifications", "columns"})
+final class TableStatistics {
+    private final long analyzedRows;
+    private long modifications;
+    private final String[] names;
+    private final ColumnDistribution[] distributions;
+
+    private TableStatistics(long analyzedRows, long modifications, String[] names, ColumnDistribution[] distributions) {
+        this.analyzedRows = analyzedRows;
+        this.modifications = modifications;
+        this.names = names;
+        this.distributions = distributions;
+    }
+
+    /**
+     * 从快照文件加载，使用之前需要调用 {@link #bind(List)}。
+     */
+    @JsonCreator
+    TableStatistics(@JsonProperty("analyzedRows") long analyzedRows,
+                    @JsonProperty("modifications") long modifications,
+                    @JsonProperty("columns") Map<String, ColumnDistribution> columns) {
+        this(analyzedRows, modifications, columns == null ? new String[0] : columns.keySet().toArray(new String[0]),
+            columns == null ? new ColumnDistribution[0] : columns.values().toArray(new ColumnDistribution[0]));
+    }
+
+    /**
+     * 扫描收集的统计信息。
+     * @param builders 按列定义顺序，已接收所有行的值
+     */
+    static TableStatistics of(List<Column> columns, ColumnDistribution.Builder[] builders, long rows) {
+        String[] names = new String[columns.size()];
+        ColumnDistribution[] distributions = new ColumnDistribution[columns.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = columns.get(i).getName();
+            distributions[i] = builders[i].build();
+        }
+        return new TableStatistics(rows, 0, names, distributions);
+    }
+
+    /**
+     * 按表的列定义重新排列从文件读到的各列统计，并转换其中的值。
+     * @throws IllegalArgumentException 如果统计信息的列与表的列不一致
+     */
+    TableStatistics bind(List<Column> columns) {
+        if (columns.size() != names.length) {
+            throw new IllegalArgumentException("Statistics cover " + names.length + " columns but the table has " + columns.size() + ".");
+        }
+        Map<String, ColumnDistribution> byName = new LinkedHashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            byName.put(names[i], distributions[i]);
+        }
+        String[] boundNames = new String[columns.size()];
+        ColumnDistribution[] bound = new ColumnDistribution[columns.size()];
+        for (int i = 0; i < bound.length; i++) {
+            Column column = columns.get(i);
+            bound[i] = byName.get(column.getName());
+            if (bound[i] == null) {
+                throw new IllegalArgumentException("Statistics are missing column '" + column.getName() + "'.");
+            }
+            bound[i].bind(column);
+            boundNames[i] = column.getName();
+        }
+        return new TableStatistics(analyzedRows, modifications, boundNames, bound);
+    }
+
+    TableStatistics copy() {
+        ColumnDistribution[] copies = new ColumnDistribution[distributions.length];
+        for (int i = 0; i < copies.length; i++) {
+            copies[i] = distributions[i].copy();
+        }
+        return new TableStatistics(analyzedRows, modifications, names, copies);
+    }
+
+    @JsonProperty("analyzedRows")
+    long getAnalyzedRows() {
+        return analyzedRows;
+    }
+
+    @JsonProperty("modifications")
+    long getModifications() {
+        return modifications;
+    }
+
+    @JsonProperty("columns")
+    Map<String, ColumnDistribution> getColumns() {
+        Map<String, ColumnDistribution> columns = new LinkedHashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            columns.put(names[i], distributions[i]);
+        }
+        return columns;
+    }
+
+    ColumnDistribution get(int columnIndex) {
+        return distributions[columnIndex];
+    }
+
+    // 以下方法的 values 按列定义顺序
+
+    void rowAdded(Object[] values) {
+        for (int i = 0; i < distributions.length; i++) {
+            distributions[i].add(values[i]);
+        }
+        modifications++;
+    }
+
+    void rowRemoved(Object[] values) {
+        for (int i = 0; i < distributions.length; i++) {
+            distributions[i].remove(values[i]);
+        }
+        modifications++;
+    }
+
+    void valueChanged(int columnIndex, Object oldValue, Object newValue) {
+        distributions[columnIndex].remove(oldValue);
+        distributions[columnIndex].add(newValue);
+        modifications++;
+    }
+}
@@ -0,0 +1,63 @@
+package com.prelinamontelli.jsondb;
+
+import java.util.Locale;
+
+/**
+ * {@link SqlLexer} 产生的词法单元。关键字不单独区分，作为标识符由 {@link SqlParser} 按名称（不区分大小写）识别。
+ */
+final class Token {
+    enum Type {
+        IDENTIFIER, // 名称或关键字
+        STRING,     // 双引号或单引号包围的字符串，text 为去掉引号后的内容
+        NUMBER,     // 不带符号的整数或小数，text 为原文
+        PARAMETER,  // $1、$2 ...，text 为编号
+        SYMBOL,     // 标点和运算符：( ) , . * ; = != <> < <= > >= -
+        END         // 输入结束
+    }
+
+    private final Type type;
+    private final String text;
+    private final int position; // 在语句中的起始位置（从 0 开始），用于错误信息
+
+    Token(Type type, String text, int position) {
+        this.type = type;
+        this.text = text;
+        this.position = position;
+    }
+
+    Type getType() {
+        return type;
+    }
+
+    String getText() {
+        return text;
+    }
+
+    int getPosition() {
+        return position;
+    }
+
+    boolean isKeyword(String keyword) {
+        return type == Type.IDENTIFIER && text.equalsIgnoreCase(keyword);
+    }
+
+    boolean isSymbol(String symbol) {
+        return type == Type.SYMBOL && text.equals(symbol);
+    }
+
+    @Override
+    public String toString() {
+        switch (type) {
+            case END:
+                return "end of statement";
+            case STRING:
+                return "\"" + text + "\"";
+            case PARAMETER:
+                return "$" + text;
+            case IDENTIFIER:
+                return "'" + text + "'";
+            default:
+                return "'" + text.toUpperCase(Locale.ROOT) + "'";
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.prelinamontelli.jsondb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 一个会话中由 BEGIN 开始的显式事务。事务内的数据变更只排队，不修改表；
+ * COMMIT 时在所有相关表的写锁内依次生成并应用，作为一条 WAL 记录写入并只同步一次，ROLLBACK 时直接丢弃。
+ */
+final class Transaction {
+    private final String databaseName;
+    private final List<PendingChange> changes = new ArrayList<>();
+
+    Transaction(String databaseName) {
+        this.databaseName = databaseName;
+    }
+
+    String getDatabaseName() {
+        return databaseName;
+    }
+
+    void add(String tableName, Function<Table, WalRecord> change) {
+        changes.add(new PendingChange(tableName, change));
+    }
+
+    List<PendingChange> getChanges() {
+        return Collections.unmodifiableList(changes);
+    }
+
+    int size() {
+        return changes.size();
+    }
+
+    // 排队的一条语句：提交时在表的写锁内根据表的当前状态生成变更记录
+    static final class PendingChange {
+        final String tableName;
+        final Function<Table, WalRecord> change;
+
+        PendingChange(String tableName, Function<Table, WalRecord> change) {
+            this.tableName = tableName;
+            this.change = change;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.prelinamontelli.jsondb;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 预写日志 (WAL) 中的一条行级操作记录。
+ * 每条记录序列化为一行 JSON，重放时按 LSN 顺序应用到最近一次快照之上。
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class WalRecord {
+    public enum Type {
+        CREATE_TABLE,
+        CREATE_INDEX,
+        DROP_INDEX,
+        INSERT,
+        UPDATE,
+        DELETE,
+        COPY,       // COPY 或多行 INSERT 批量追加的行，行 ID 从 rowId 开始连续分配
+        ANALYZE,    // 重新收集表的统计信息；结果只取决于表的内容，重放时得到相同的统计
+        TRANSACTION // 一个事务中的所有数据变更，整体写成一行，重放时要么全部应用，要么（尾部不完整时）全部丢弃
+    }
+
+    private long lsn;
+    private final Type type;
+    private final String table;
+    private final List<Column> columns;          // CREATE_TABLE
+    private Map<String, Object> row;             // INSERT
+    private Long rowId;                          // INSERT：分配给新行的行 ID，重放时沿用；COPY：第一行的行 ID
+    private final List<Object[]> rows;           // COPY：按列定义顺序的值
+    private final List<Long> rowIds;             // UPDATE / DELETE：受影响行的行 ID
+    private final Map<String, Object> values;    // UPDATE：列名 -> 已转换的新值
+    private final IndexDefinition index;         // CREATE_INDEX / DROP_INDEX
+    private final List<WalRecord> records;       // TRANSACTION：按执行顺序排列的 INSERT / UPDATE / DELETE 记录
+
+    public WalRecord(long lsn, Type type, String table, List<Column> columns, Map<String, Object> row,
+                     Long rowId, List<Long> rowIds, Map<String, Object> values, IndexDefinition index) {
+        this(lsn, type, table, columns, row, rowId, rowIds, values, index, null, null);
+    }
+
+    @JsonCreator
+    public WalRecord(@JsonProperty("lsn") long lsn,
+                     @JsonProperty("type") Type type,
+                     @JsonProperty("table") String table,
+                     @JsonProperty("columns") List<Column> columns,
+                     @JsonProperty("row") Map<String, Object> row,
+                     @JsonProperty("rowId") Long rowId,
+                     @JsonProperty("rowIds") List<Long> rowIds,
+                     @JsonProperty("values") Map<String, Object> values,
+                     @JsonProperty("index") IndexDefinition index,
+                     @JsonProperty("records") List<WalRecord> records,
+                     @JsonProperty("rows") List<Object[]> rows) {
+        if (type == null) {
+            throw new IllegalArgumentException("WAL record type cannot be null.");
+        }
+        if (type == Type.TRANSACTION) {
+            if (records == null) {
+                throw new IllegalArgumentException("WAL transaction record must contain records.");
+            }
+        } else if (table == null || table.trim().isEmpty()) {
+            throw new IllegalArgumentException("WAL record table cannot be null or empty.");
+        }
+        this.lsn = lsn;
+        this.type = type;
+        this.table = table;
+        this.columns = columns;
+        this.row = row;
+        this.rowId = rowId;
+        this.rowIds = rowIds;
+        this.values = values;
+        this.index = index;
+        this.records = records;
+        this.rows = rows;
+    }
+
+    public static WalRecord createTable(String table, List<Column> columns) {
+        return new WalRecord(0, Type.CREATE_TABLE, table, new ArrayList<>(columns), null, null, null, null, null);
+    }
+
+    public static WalRecord createIndex(String table, IndexDefinition index) {
+        return new WalRecord(0, Type.CREATE_INDEX, table, null, null, null, null, null, index);
+    }
+
+    public static WalRecord dropIndex(String table, IndexDefinition index) {
+        return new WalRecord(0, Type.DROP_INDEX, table, null, null, null, null, null, index);
+    }
+
+    public static WalRecord insert(String table, Map<String, Object> row) {
+        return new WalRecord(0, Type.INSERT, table, null, new LinkedHashMap<>(row), null, null, null, null);
+    }
+
+    public static WalRecord update(String table, List<Long> rowIds, Map<String, Object> values) {
+        return new WalRecord(0, Type.UPDATE, table, null, null, null, new ArrayList<>(rowIds), new LinkedHashMap<>(values), null);
+    }
+
+    public static WalRecord delete(String table, List<Long> rowIds) {
+        return new WalRecord(0, Type.DELETE, table, null, null, null, new ArrayList<>(rowIds), null, null);
+    }
+
+    /**
+     * @param records 事务中已应用的数据变更记录，按执行顺序
+     */
+    public static WalRecord transaction(List<WalRecord> records) {
+        return new WalRecord(0, Type.TRANSACTION, null, null, null, null, null, null, null, new ArrayList<>(records), null);
+    }
+
+    public static WalRecord analyze(String table) {
+        return new WalRecord(0, Type.ANALYZE, table, null, null, null, null, null, null);
+    }
+
+    /**
+     * @param rows 按列定义顺序的值。不会被复制：在记录写入日志之前必须保持不变
+     */
+    public static WalRecord copy(String table, List<Object[]> rows) {
+        return new WalRecord(0, Type.COPY, table, null, null, null, null, null, null, null, rows);
+    }
+
+    /**
+     * 将此记录应用（或重放）到给定数据库上。
+     * @throws IllegalStateException 如果记录引用的表不存在
+     */
+    public void applyTo(Database db) {
+        if (type == Type.TRANSACTION) {
+            for (WalRecord record : records) {
+                record.applyTo(db);
+            }
+            return;
+        }
+        if (type == Type.CREATE_TABLE) {
+            db.createTable(table, columns);
+            return;
+        }
+        Table target = db.getTable(table).orElseThrow(() ->
+            new IllegalStateException("WAL record " + lsn + " references unknown table '" + table + "' in database '" + db.getName() + "'."));
+        switch (type) {
+            case CREATE_INDEX:
+                target.createIndex(index);
+                break;
+            case DROP_INDEX:
+                target.dropIndex(index.getName());
+                break;
+            case INSERT:
+                rowId = target.insertRow(rowId, row);
+                row = target.getRow(rowId).get().getData(); // 记录转换后的值，而不是原始输入
+                break;
+            case UPDATE:
+                target.updateRows(rowIds, values);
+                break;
+            case DELETE:
+                target.deleteRows(rowIds);
+                break;
+            case COPY:
+                rowId = target.appendRows(rowId, rows);
+                break;
+            case ANALYZE:
+                target.analyze();
+                break;
+            default:
+                throw new IllegalStateException("Unsupported WAL record type: " + type);
+        }
+    }
+
+    // 事务中的记录没有自己的 LSN（为 0），随外层的 TRANSACTION 记录写入，序列化时省略
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    public long getLsn() {
+        return lsn;
+    }
+
+    void setLsn(long lsn) {
+        this.lsn = lsn;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public List<Column> getColumns() {
+        return columns;
+    }
+
+    public Map<String, Object> getRow() {
+        return row;
+    }
+
+    public Long getRowId() {
+        return rowId;
+    }
+
+    public List<Long> getRowIds() {
+        return rowIds;
+    }
+
+    public Map<String, Object> getValues() {
+        return values;
+    }
+
+    public IndexDefinition getIndex() {
+        return index;
+    }
+
+    public List<WalRecord> getRecords() {
+        return records;
+    }
+
+    public List<Object[]> getRows() {
+        return rows;
+    }
+
+    @Override
+    public String toString() {
+        return "WalRecord{" +
+               "lsn=" + lsn +
+               ", type=" + type +
+               ", table='" + table + '\'' +
+               '}';
+    }
+}
@@ -0,0 +1,7 @@
+package com.prelinamontelli.jsondb;
+
+public enum WalSyncMode {
+    ALWAYS,   // 每次提交都 fsync，最强持久性
+    GROUP,    // 组提交：并发提交共享一次 fsync
+    NONE      // 只写入操作系统缓存，由 checkpoint / 关闭时落盘
+}
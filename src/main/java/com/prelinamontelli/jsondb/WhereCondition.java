@@ -0,0 +1,131 @@
+package com.prelinamontelli.jsondb;
+
+/**
+ * 单列 WHERE 条件：{@code <col> = | < | <= | > | >= <val>} 或 {@code <col> BETWEEN <low> AND <high>}。
+ * 条件值在构造时已经按列类型转换。与 SQL 一致，范围比较对 NULL 永远不成立，只有 {@code = NULL} 匹配 NULL。
+ */
+public class WhereCondition {
+    public enum Operator {
+        EQ("="),
+        LT("<"),
+        LE("<="),
+        GT(">"),
+        GE(">="),
+        BETWEEN("BETWEEN");
+
+        private final String symbol;
+
+        Operator(String symbol) {
+            this.symbol = symbol;
+        }
+
+        public String getSymbol() {
+            return symbol;
+        }
+    }
+
+    private final Column column;
+    private final Operator operator;
+    private final Object value;      // EQ/LT/LE/GT/GE 的比较值；BETWEEN 的下界
+    private final Object upperValue; // BETWEEN 的上界
+
+    public WhereCondition(Column column, Operator operator, Object value, Object upperValue) {
+        if (column == null || operator == null) {
+            throw new IllegalArgumentException("Condition column and operator cannot be null.");
+        }
+        if (operator != Operator.EQ && value == null) {
+            throw new IllegalArgumentException("Operator " + operator.getSymbol() + " cannot be used with NULL on column '" + column.getName() + "'.");
+        }
+        if (operator == Operator.BETWEEN && upperValue == null) {
+            throw new IllegalArgumentException("BETWEEN requires a non-NULL upper bound on column '" + column.getName() + "'.");
+        }
+        this.column = column;
+        this.operator = operator;
+        this.value = value;
+        this.upperValue = upperValue;
+    }
+
+    public static WhereCondition equalTo(Column column, Object value) {
+        return new WhereCondition(column, Operator.EQ, value, null);
+    }
+
+    public Column getColumn() {
+        return column;
+    }
+
+    public Operator getOperator() {
+        return operator;
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    public Object getUpperValue() {
+        return upperValue;
+    }
+
+    public boolean isRange() {
+        return operator != Operator.EQ;
+    }
+
+    /**
+     * @return 范围下界（不受限时为 null）
+     */
+    public Object getLowerBound() {
+        return operator == Operator.GT || operator == Operator.GE || operator == Operator.BETWEEN ? value : null;
+    }
+
+    public boolean isLowerInclusive() {
+        return operator != Operator.GT;
+    }
+
+    /**
+     * @return 范围上界（不受限时为 null）
+     */
+    public Object getUpperBound() {
+        if (operator == Operator.BETWEEN) {
+            return upperValue;
+        }
+        return operator == Operator.LT || operator == Operator.LE ? value : null;
+    }
+
+    public boolean isUpperInclusive() {
+        return operator != Operator.LT;
+    }
+
+    public boolean matches(Row row) {
+        return matchesValue(row.getValue(column.getName()));
+    }
+
+    public boolean matchesValue(Object rowValue) {
+        if (operator == Operator.EQ) {
+            return (value == null && rowValue == null) || (value != null && value.equals(rowValue));
+        }
+        if (rowValue == null) {
+            return false;
+        }
+        switch (operator) {
+            case LT:
+                return column.compareValues(rowValue, value) < 0;
+            case LE:
+                return column.compareValues(rowValue, value) <= 0;
+            case GT:
+                return column.compareValues(rowValue, value) > 0;
+            case GE:
+                return column.compareValues(rowValue, value) >= 0;
+            case BETWEEN:
+                return column.compareValues(rowValue, value) >= 0 && column.compareValues(rowValue, upperValue) <= 0;
+            default:
+                throw new IllegalStateException("Unsupported operator: " + operator);
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (operator == Operator.BETWEEN) {
+            return column.getName() + " BETWEEN " + value + " AND " + upperValue;
+        }
+        return column.getName() + " " + operator.getSymbol() + " " + (value == null ? "NULL" : value);
+    }
+}
@@ -0,0 +1,376 @@
+package com.prelinamontelli.jsondb;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 单个数据库的追加式预写日志。
+ * 每次变更只追加一行 JSON 记录，写入成本与变更大小成正比，而不是与数据库大小成正比。
+ * 持久性由 {@link WalSyncMode} 控制；GROUP 模式下并发提交者共享同一次 fsync。
+ * <p>
+ * 日志由一个活动段 {@code <db>.wal} 和若干已封存段 {@code <db>.wal.<lastLsn>} 组成。
+ * checkpoint 开始时封存活动段，快照落盘后删除其 LSN 不超过快照的封存段。
+ */
+public class WriteAheadLog implements Closeable {
+    private static final byte NEWLINE = '\n';
+
+    private final Path path;
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter recordWriter;
+    private final WalSyncMode syncMode;
+    private final long groupCommitDelayMillis;
+    private final Object lock = new Object();
+
+    // 以下字段均由 lock 保护
+    private FileChannel channel;
+    private long lastLsn;
+    private long syncedLsn;
+    private boolean syncInProgress;
+    private long sizeBytes;
+    private long recordCount;
+
+    public WriteAheadLog(Path path, ObjectMapper objectMapper, DBConfig config) throws IOException {
+        this.path = path;
+        this.objectMapper = objectMapper;
+        this.recordWriter = objectMapper.writer().without(SerializationFeature.INDENT_OUTPUT);
+        this.syncMode = config.getWalSyncMode();
+        this.groupCommitDelayMillis = config.getWalGroupCommitDelayMillis();
+        this.channel = openActiveSegment();
+        this.sizeBytes = channel.size();
+    }
+
+    private FileChannel openActiveSegment() throws IOException {
+        FileChannel opened = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        opened.position(opened.size());
+        return opened;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * 依次读取所有封存段和活动段，对快照之后的记录逐条回调。遇到不完整或损坏的记录（崩溃时写了一半，或一条记录跨越了段的边界）时停止，
+     * 并把日志截断到最后一条完整记录之后：该段截断并按实际的最后 LSN 重新命名，之后的段中的记录与已读取的记录不连续，
+     * 不能重放，一并删除。这样后续追加不会落在垃圾数据之后，新记录的 LSN 也不会与被丢弃的记录混在一起。
+     * 封存段中丢失的记录都已包含在快照中时（段的 LSN 不超过 snapshotLsn）记录仍然连续，继续读取之后的段。
+     * @param snapshotLsn 快照包含的最后一个 LSN，不超过它的记录不回调
+     * @return 读取到的最大 LSN，如果日志为空则为 0
+     */
+    public long recover(long snapshotLsn, Consumer<WalRecord> consumer) throws IOException {
+        Consumer<WalRecord> replay = record -> {
+            if (record.getLsn() > snapshotLsn) {
+                consumer.accept(record);
+            }
+        };
+        synchronized (lock) {
+            long maxLsn = 0;
+            boolean torn = false;
+            for (Path segment : listSealedSegments()) {
+                if (torn) {
+                    Files.delete(segment);
+                    continue;
+                }
+                long[] result;
+                try (FileChannel sealed = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    result = readSegment(sealed, segment, replay);
+                    if (result[0] < sealed.size() && sealedSegmentLsn(segment) > snapshotLsn) {
+                        torn = true;
+                        sealed.truncate(result[0]);
+                        sealed.force(false);
+                    }
+                }
+                maxLsn = Math.max(maxLsn, result[1]);
+                if (torn && result[2] == 0) {
+                    Files.delete(segment);
+                } else if (torn && result[1] != sealedSegmentLsn(segment)) {
+                    Files.move(segment, path.resolveSibling(path.getFileName() + "." + result[1]), StandardCopyOption.ATOMIC_MOVE);
+                }
+            }
+            long[] result = torn ? new long[] {0, 0, 0} : readSegment(channel, path, replay);
+            long validLength = result[0];
+            maxLsn = Math.max(maxLsn, result[1]);
+            if (validLength < channel.size()) {
+                channel.truncate(validLength);
+                channel.force(false);
+            }
+            channel.position(validLength);
+            sizeBytes = validLength;
+            recordCount = result[2];
+            lastLsn = Math.max(lastLsn, maxLsn);
+            syncedLsn = lastLsn;
+            return maxLsn;
+        }
+    }
+
+    // 返回 {有效字节数, 最大 LSN, 记录数}
+    private long[] readSegment(FileChannel segmentChannel, Path segmentPath, Consumer<WalRecord> consumer) throws IOException {
+        long validLength = 0;
+        long count = 0;
+        long maxLsn = 0;
+        long size = segmentChannel.size();
+        segmentChannel.position(0);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(segmentChannel), StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            long lineBytes = line.getBytes(StandardCharsets.UTF_8).length + 1L;
+            if (validLength + lineBytes > size) {
+                break; // 最后一行没有换行符，说明写入未完成
+            }
+            if (line.trim().isEmpty()) {
+                validLength += lineBytes;
+                continue;
+            }
+            WalRecord record;
+            try {
+                record = objectMapper.readValue(line, WalRecord.class);
+            } catch (IOException e) {
+                System.err.println("Ignoring corrupt WAL tail in " + segmentPath.getFileName() + " at offset " + validLength + ": " + e.getMessage());
+                break;
+            }
+            consumer.accept(record);
+            maxLsn = Math.max(maxLsn, record.getLsn());
+            validLength += lineBytes;
+            count++;
+        }
+        return new long[] {validLength, maxLsn, count};
+    }
+
+    /**
+     * 确保下一个分配的 LSN 大于给定值（例如快照中记录的 LSN）。
+     */
+    public void advanceLsn(long lsn) {
+        synchronized (lock) {
+            if (lsn > lastLsn) {
+                lastLsn = lsn;
+                syncedLsn = Math.max(syncedLsn, lsn);
+            }
+        }
+    }
+
+    /**
+     * 为记录分配 LSN 并追加到日志末尾。此方法只保证数据交给了操作系统，持久化请调用 {@link #sync(long)}。
+     * @return 分配给该记录的 LSN
+     */
+    public long append(WalRecord record) throws IOException {
+        synchronized (lock) {
+            long lsn = lastLsn + 1;
+            record.setLsn(lsn);
+            byte[] json = recordWriter.writeValueAsBytes(record);
+            ByteBuffer buffer = ByteBuffer.allocate(json.length + 1);
+            buffer.put(json).put(NEWLINE).flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            lastLsn = lsn;
+            sizeBytes += json.length + 1;
+            recordCount++;
+            return lsn;
+        }
+    }
+
+    /**
+     * 按配置的同步策略保证 LSN 及之前的记录已经持久化。
+     */
+    public void sync(long lsn) throws IOException {
+        switch (syncMode) {
+            case NONE:
+                return;
+            case ALWAYS:
+                forceUpTo(lsn);
+                return;
+            case GROUP:
+                groupSync(lsn);
+                return;
+            default:
+                throw new IllegalStateException("Unsupported WAL sync mode: " + syncMode);
+        }
+    }
+
+    private void forceUpTo(long lsn) throws IOException {
+        long target;
+        FileChannel toForce;
+        synchronized (lock) {
+            if (syncedLsn >= lsn) {
+                return;
+            }
+            target = lastLsn;
+            toForce = channel;
+        }
+        force(toForce);
+        synchronized (lock) {
+            syncedLsn = Math.max(syncedLsn, target);
+        }
+    }
+
+    // 组提交：第一个到达的提交者成为 leader 执行 fsync，其余提交者等待；
+    // leader fsync 期间到达的记录会由下一个 leader 一并落盘。
+    private void groupSync(long lsn) throws IOException {
+        synchronized (lock) {
+            while (syncedLsn < lsn && syncInProgress) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for WAL group commit.", e);
+                }
+            }
+            if (syncedLsn >= lsn) {
+                return;
+            }
+            syncInProgress = true;
+        }
+        try {
+            if (groupCommitDelayMillis > 0) {
+                try {
+                    Thread.sleep(groupCommitDelayMillis); // 等待更多提交者加入本组
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            long target;
+            FileChannel toForce;
+            synchronized (lock) {
+                target = lastLsn;
+                toForce = channel;
+            }
+            force(toForce);
+            synchronized (lock) {
+                syncedLsn = Math.max(syncedLsn, target);
+            }
+        } finally {
+            synchronized (lock) {
+                syncInProgress = false;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private static void force(FileChannel toForce) throws IOException {
+        try {
+            toForce.force(false);
+        } catch (ClosedChannelException e) {
+            // 段已被 rotate() 封存，封存前已经 fsync 过
+        }
+    }
+
+    /**
+     * 封存当前活动段并开始一个新的活动段。封存段以其最后一个 LSN 命名。
+     * 调用者需保证此时没有并发的变更写入（checkpoint 在数据库变更锁内调用）。
+     */
+    public void rotate() throws IOException {
+        synchronized (lock) {
+            if (sizeBytes == 0) {
+                return;
+            }
+            channel.force(false);
+            channel.close();
+            Path sealed = path.resolveSibling(path.getFileName() + "." + lastLsn);
+            Files.move(path, sealed, StandardCopyOption.ATOMIC_MOVE);
+            channel = openActiveSegment();
+            sizeBytes = 0;
+            recordCount = 0;
+            syncedLsn = lastLsn;
+        }
+    }
+
+    /**
+     * 删除所有最后 LSN 不超过给定值的封存段（这些记录已包含在快照中）。
+     */
+    public void deleteSealedSegmentsUpTo(long lsn) throws IOException {
+        for (Path segment : listSealedSegments()) {
+            if (sealedSegmentLsn(segment) <= lsn) {
+                Files.deleteIfExists(segment);
+            }
+        }
+    }
+
+    // 按 LSN 升序返回封存段
+    private List<Path> listSealedSegments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        String prefix = path.getFileName() + ".";
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(path.toAbsolutePath().getParent(), prefix + "*")) {
+            for (Path candidate : stream) {
+                if (sealedSegmentLsn(candidate) >= 0) {
+                    segments.add(candidate);
+                }
+            }
+        }
+        segments.sort((a, b) -> Long.compare(sealedSegmentLsn(a), sealedSegmentLsn(b)));
+        return segments;
+    }
+
+    private long sealedSegmentLsn(Path segment) {
+        String fileName = segment.getFileName().toString();
+        String suffix = fileName.substring(path.getFileName().toString().length() + 1);
+        try {
+            return Long.parseLong(suffix);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public long getLastLsn() {
+        synchronized (lock) {
+            return lastLsn;
+        }
+    }
+
+    /**
+     * @return 活动段的字节数（自上次 checkpoint 以来写入的日志量）
+     */
+    public long getSizeBytes() {
+        synchronized (lock) {
+            return sizeBytes;
+        }
+    }
+
+    /**
+     * @return 活动段中的记录数（自上次 checkpoint 以来的变更数）
+     */
+    public long getRecordCount() {
+        synchronized (lock) {
+            return recordCount;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (channel.isOpen()) {
+                channel.force(false);
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * 关闭并删除所有日志段（用于 DROP DATABASE）。
+     */
+    public void delete() throws IOException {
+        close();
+        for (Path segment : listSealedSegments()) {
+            Files.deleteIfExists(segment);
+        }
+        Files.deleteIfExists(path);
+    }
+}
@@ -0,0 +1,134 @@
+package com.prelinamontelli.jsondb;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class AnalyzePersistenceTest {
+    private static final int ROWS = 10_000;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void analyzeChangesEstimatesAndIsReplayedFromWal() throws IOException {
+        DBManager manager = new DBManager(directory, new DBConfig());
+        try {
+            Database db = create(manager, "db", StorageFormat.JSON);
+            Table table = db.getTable("t").get();
+            assertNull(table.getStatistics());
+            // 没有统计信息时等值条件估算为 10%，之后按不同值个数估算为约 1/7
+            assertEquals(ROWS / 10, Math.round(estimate(table, "c = 3")));
+            manager.applyChange(db, WalRecord.analyze("t"));
+            assertEquals(ROWS / 7.0, estimate(table, "c = 3"), ROWS / 70.0);
+            manager.applyChange(db, WalRecord.delete("t", table.getRowIds().subList(0, 10)));
+
+            // 在关闭前复制数据文件，模拟崩溃：快照中没有统计信息，靠重放 ANALYZE 记录重新收集
+            Path crashed = Files.createDirectory(directory.resolve("crashed"));
+            for (String file : Arrays.asList("db" + StorageFormat.JSON.getFileExtension(), "db.wal")) {
+                Files.copy(directory.resolve(file), crashed.resolve(file));
+            }
+            DBManager recovered = new DBManager(crashed, new DBConfig());
+            try {
+                Table replayed = recovered.getDatabase("db").get().getTable("t").get();
+                assertStatisticsEqual(table.getStatistics(), replayed.getStatistics());
+                assertEquals(10, replayed.getStatistics().getModifications());
+                assertEquals(estimate(table, "c = 3"), estimate(replayed, "c = 3"));
+            } finally {
+                recovered.shutdown();
+            }
+        } finally {
+            manager.shutdown();
+        }
+    }
+
+    @Test
+    void statisticsSurviveCheckpointInBothFormats() throws IOException {
+        for (StorageFormat format : StorageFormat.values()) {
+            String name = "db_" + format.name().toLowerCase(Locale.ROOT);
+            TableStatistics expected;
+            DBManager manager = new DBManager(directory, new DBConfig());
+            try {
+                Database db = create(manager, name, format);
+                manager.applyChange(db, WalRecord.analyze("t"));
+                manager.applyChange(db, WalRecord.insert("t", row(ROWS + 1)));
+                manager.saveDatabase(db);
+                expected = db.getTable("t").get().getStatistics();
+            } finally {
+                manager.shutdown();
+            }
+            Files.delete(directory.resolve(name + ".wal")); // 只从快照读取
+
+            manager = new DBManager(directory, new DBConfig());
+            try {
+                TableStatistics loaded = manager.getDatabase(name).get().getTable("t").get().getStatistics();
+                assertStatisticsEqual(expected, loaded);
+                assertEquals(1, loaded.getModifications(), format.name());
+            } finally {
+                manager.shutdown();
+            }
+        }
+    }
+
+    private static Database create(DBManager manager, String name, StorageFormat format) throws IOException {
+        manager.createDatabase(name, format);
+        Database db = manager.getDatabase(name).get();
+        manager.applyChange(db, WalRecord.createTable("t", Arrays.asList(
+            new Column("id", DataType.INTEGER, true, false),
+            new Column("c", DataType.INTEGER, false, false),
+            new Column("name", DataType.STRING, false, false))));
+        List<Object[]> rows = new ArrayList<>();
+        for (int id = 1; id <= ROWS; id++) {
+            Map<String, Object> row = row(id);
+            rows.add(new Object[] {row.get("id"), row.get("c"), row.get("name")});
+        }
+        manager.applyChange(db, WalRecord.copy("t", rows));
+        return db;
+    }
+
+    private static Map<String, Object> row(int id) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("id", id);
+        row.put("c", id % 7);
+        row.put("name", id % 4 == 0 ? null : "name-" + id % 300);
+        return row;
+    }
+
+    private static double estimate(Table table, String condition) {
+        Expression filter = ((Statement.Select) SqlParser.parse("SELECT * FROM t WHERE " + condition)).getWhere().bind(table);
+        return table.plan(filter, null, false, -1, 0).getRows();
+    }
+
+    private static void assertStatisticsEqual(TableStatistics expected, TableStatistics actual) {
+        assertNotNull(actual);
+        assertEquals(expected.getAnalyzedRows(), actual.getAnalyzedRows());
+        assertEquals(expected.getModifications(), actual.getModifications());
+        assertEquals(expected.getColumns().keySet(), actual.getColumns().keySet());
+        for (int column = 0; column < expected.getColumns().size(); column++) {
+            ColumnDistribution distribution = expected.get(column);
+            ColumnDistribution loaded = actual.get(column);
+            assertEquals(distribution.getRows(), loaded.getRows());
+            assertEquals(distribution.getNulls(), loaded.getNulls());
+            assertEquals(distribution.getMin(), loaded.getMin());
+            assertEquals(distribution.getMax(), loaded.getMax());
+            assertEquals(distribution.getBounds(), loaded.getBounds());
+            assertArrayEquals(distribution.getCounts(), loaded.getCounts());
+            assertArrayEquals(distribution.getSketch(), loaded.getSketch());
+            assertEquals(distribution.getDistinctCount(), loaded.getDistinctCount());
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.prelinamontelli.jsondb;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinarySnapshotCodecTest {
+    private static final int ROWS = 5000;
+
+    @TempDir
+    Path directory;
+
+    private Table table;
+
+    @BeforeEach
+    void setUp() {
+        table = new Table("emp", Arrays.asList(
+            new Column("id", DataType.INTEGER, true, false),
+            new Column("name", DataType.STRING, false, true),
+            new Column("dept", DataType.STRING, false, false),
+            new Column("salary", DataType.DOUBLE, false, false),
+            new Column("delta", DataType.INTEGER, false, false),
+            new Column("active", DataType.BOOLEAN, false, false)));
+        for (int id = 1; id <= ROWS; id++) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("id", id);
+            row.put("name", id % 100 == 0 ? null : "名字-" + id);
+            row.put("dept", "dept-" + id % 5);
+            row.put("salary", id % 7 == 0 ? null : id * 0.25);
+            row.put("delta", id % 2 == 0 ? -id : Integer.MAX_VALUE - id);
+            row.put("active", id % 3 == 0 ? null : id % 3 == 1);
+            table.insertRow(null, row);
+        }
+        List<Long> deleted = new ArrayList<>();
+        for (int id = 10; id <= ROWS; id += 10) {
+            deleted.addAll(table.findRowIds(table.getColumn("id").get(), id));
+        }
+        table.deleteRows(deleted);
+        table.createIndex(new IndexDefinition("dept_idx", "dept", IndexType.HASH));
+        table.createIndex(new IndexDefinition("salary_idx", "salary", IndexType.ORDERED));
+    }
+
+    @Test
+    void roundTripsWithAndWithoutCompression() throws IOException {
+        table.analyze();
+        table.deleteRows(table.findRowIds(table.getColumn("id").get(), 1)); // 修改计数也要保存
+        Path plain = write(false, "plain.jsdb");
+        Path compressed = write(true, "compressed.jsdb");
+        assertTrue(Files.size(compressed) < Files.size(plain) / 2, Files.size(compressed) + " vs " + Files.size(plain));
+
+        for (Path file : Arrays.asList(plain, compressed)) {
+            Database loaded = new BinarySnapshotCodec(false, null).read(file);
+            assertEquals("db", loaded.getName());
+            assertEquals(99, loaded.getLastLsn());
+            Table copy = loaded.getTable("emp").get();
+            assertTableEquals(table, copy);
+            TableStatistics expected = table.getStatistics();
+            TableStatistics actual = copy.getStatistics();
+            assertEquals(expected.getAnalyzedRows(), actual.getAnalyzedRows());
+            assertEquals(expected.getModifications(), actual.getModifications());
+            for (int column = 0; column < table.getColumnDefinitions().size(); column++) {
+                ColumnDistribution distribution = expected.get(column);
+                ColumnDistribution loadedDistribution = actual.get(column);
+                assertEquals(distribution.getNulls(), loadedDistribution.getNulls());
+                assertEquals(distribution.getMin(), loadedDistribution.getMin());
+                assertEquals(distribution.getMax(), loadedDistribution.getMax());
+                assertEquals(distribution.getBounds(), loadedDistribution.getBounds());
+                assertArrayEquals(distribution.getCounts(), loadedDistribution.getCounts());
+                assertArrayEquals(distribution.getSketch(), loadedDistribution.getSketch());
+            }
+        }
+    }
+
+    @Test
+    void readsVersionOneFilesWithoutStatistics() throws IOException {
+        // 版本 1 的文件与版本 2 相同，只是每个表末尾没有统计信息的标志字节
+        byte[] bytes = Files.readAllBytes(write(false, "v2.jsdb"));
+        assertEquals(2, bytes[4]);
+        assertEquals(0, bytes[bytes.length - 1]);
+        byte[] v1 = Arrays.copyOf(bytes, bytes.length - 1);
+        v1[4] = 1;
+        Path file = directory.resolve("v1.jsdb");
+        Files.write(file, v1);
+
+        Table copy = new BinarySnapshotCodec(false, null).read(file).getTable("emp").get();
+        assertTableEquals(table, copy);
+        assertNull(copy.getStatistics());
+    }
+
+    @Test
+    void rejectsInvalidFiles() throws IOException {
+        byte[] bytes = Files.readAllBytes(write(true, "valid.jsdb"));
+        assertInvalid(Arrays.copyOf(bytes, bytes.length / 2), "truncated");
+        byte[] version = bytes.clone();
+        version[4] = 3;
+        assertInvalid(version, "Unsupported binary database format version 3.");
+        byte[] magic = bytes.clone();
+        magic[0] = '{';
+        assertInvalid(magic, "Not a binary database file.");
+    }
+
+    private Path write(boolean compress, String name) throws IOException {
+        Path file = directory.resolve(name);
+        try (OutputStream out = Files.newOutputStream(file)) {
+            new BinarySnapshotCodec(compress, null).write(new Database("db", Collections.singletonMap("emp", table), 99L, null), out);
+        }
+        return file;
+    }
+
+    private void assertInvalid(byte[] bytes, String message) throws IOException {
+        Path file = directory.resolve("invalid.jsdb");
+        Files.write(file, bytes);
+        IOException error = assertThrows(IOException.class, () -> new BinarySnapshotCodec(false, null).read(file));
+        assertTrue(error.getMessage().contains(message), error.getMessage());
+    }
+
+    private static void assertTableEquals(Table expected, Table actual) {
+        assertEquals(expected.getColumnDefinitions().size(), actual.getColumnDefinitions().size());
+        for (int i = 0; i < expected.getColumnDefinitions().size(); i++) {
+            Column column = expected.getColumnDefinitions().get(i);
+            Column loaded = actual.getColumnDefinitions().get(i);
+            assertEquals(column.getName(), loaded.getName());
+            assertEquals(column.getType(), loaded.getType());
+            assertEquals(column.isPrimaryKey(), loaded.isPrimaryKey());
+            assertEquals(column.isUnique(), loaded.isUnique());
+        }
+        assertEquals(expected.getRowIds(), actual.getRowIds());
+        assertEquals(expected.getNextRowId(), actual.getNextRowId());
+        List<Row> expectedRows = expected.getRows();
+        List<Row> actualRows = actual.getRows();
+        assertEquals(expectedRows.size(), actualRows.size());
+        for (int i = 0; i < expectedRows.size(); i++) {
+            for (Column column : expected.getColumnDefinitions()) {
+                assertEquals(expectedRows.get(i).getValue(column.getName()), actualRows.get(i).getValue(column.getName()));
+            }
+        }
+        assertEquals(expected.getIndexDefinitions(), actual.getIndexDefinitions());
+        Column dept = actual.getColumn("dept").get();
+        assertEquals(expected.findRowIds(expected.getColumn("dept").get(), "dept-3"), actual.findRowIds(dept, "dept-3"));
+    }
+}
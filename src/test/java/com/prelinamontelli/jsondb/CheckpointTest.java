@@ -0,0 +1,142 @@
+package com.prelinamontelli.jsondb;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CheckpointTest {
+    private static final int ROWS = 2000;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void backgroundCheckpointsReplaceSnapshotAtomically() throws Exception {
+        DBConfig config = new DBConfig();
+        config.setCheckpointWalRecords(50);
+        DBManager manager = new DBManager(directory, config);
+        Path snapshot = directory.resolve("db" + StorageFormat.JSON.getFileExtension());
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicInteger reads = new AtomicInteger();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        // 写入期间反复读取快照文件：原子替换保证读到的总是完整的 JSON，不会是写了一半的文件
+        Thread reader = new Thread(() -> {
+            ObjectMapper mapper = new ObjectMapper();
+            while (!done.get()) {
+                try {
+                    if (Files.exists(snapshot)) {
+                        mapper.readTree(new String(Files.readAllBytes(snapshot), StandardCharsets.UTF_8));
+                        reads.incrementAndGet();
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }
+        });
+        try {
+            manager.createDatabase("db");
+            Database db = manager.getDatabase("db").get();
+            manager.applyChange(db, WalRecord.createTable("t", Arrays.asList(
+                new Column("id", DataType.INTEGER, true, false),
+                new Column("name", DataType.STRING, false, false))));
+            reader.start();
+            for (int id = 1; id <= ROWS; id++) {
+                manager.applyChange(db, WalRecord.insert("t", row(id)));
+            }
+            // 检查点在后台线程上执行，写入不等待它
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (manager.getCheckpointStats("db").map(CheckpointStats::getCheckpointCount).orElse(0L) < 2
+                && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            CheckpointStats stats = manager.getCheckpointStats("db").get();
+            assertTrue(stats.getCheckpointCount() >= 2, String.valueOf(stats.getCheckpointCount()));
+            assertEquals(0, stats.getFailureCount());
+            assertTrue(stats.getLastCheckpointLsn() > 0);
+        } finally {
+            manager.shutdown();
+            done.set(true);
+            reader.join();
+        }
+        assertNull(failure.get(), String.valueOf(failure.get()));
+        assertTrue(reads.get() > 0);
+        assertFalse(Files.exists(directory.resolve(snapshot.getFileName() + ".tmp")));
+
+        Files.delete(directory.resolve("db.wal")); // 关闭时已写入快照，只从快照读取
+        DBManager reopened = new DBManager(directory, new DBConfig());
+        try {
+            assertEquals(ROWS, reopened.getDatabase("db").get().getTable("t").get().getRowCount());
+        } finally {
+            reopened.shutdown();
+        }
+    }
+
+    @Test
+    void startupDiscardsUnfinishedSnapshot() throws IOException {
+        DBManager manager = new DBManager(directory, new DBConfig());
+        try {
+            manager.createDatabase("db");
+            Database db = manager.getDatabase("db").get();
+            manager.applyChange(db, WalRecord.createTable("t", Arrays.asList(
+                new Column("id", DataType.INTEGER, true, false),
+                new Column("name", DataType.STRING, false, false))));
+            manager.applyChange(db, WalRecord.insert("t", row(1)));
+        } finally {
+            manager.shutdown();
+        }
+        // 模拟写快照时崩溃：临时文件只写了一半，目标文件还是上一次的快照
+        Path temp = directory.resolve("db" + StorageFormat.JSON.getFileExtension() + ".tmp");
+        Files.write(temp, "{\"name\":\"db\",\"tab".getBytes(StandardCharsets.UTF_8));
+
+        manager = new DBManager(directory, new DBConfig());
+        try {
+            assertFalse(Files.exists(temp));
+            assertEquals(1, manager.getDatabase("db").get().getTable("t").get().getRowCount());
+        } finally {
+            manager.shutdown();
+        }
+    }
+
+    @Test
+    void shutdownSkipsCleanDatabases() throws IOException {
+        DBManager manager = new DBManager(directory, new DBConfig());
+        long checkpoints;
+        try {
+            manager.createDatabase("db");
+            Database db = manager.getDatabase("db").get();
+            manager.applyChange(db, WalRecord.createTable("t", Arrays.asList(
+                new Column("id", DataType.INTEGER, true, false),
+                new Column("name", DataType.STRING, false, false))));
+            manager.applyChange(db, WalRecord.insert("t", row(1)));
+            manager.saveDatabase(db);
+            checkpoints = manager.getCheckpointStats("db").get().getCheckpointCount();
+        } finally {
+            manager.shutdown();
+        }
+        // 快照已包含所有变更，关闭时不再写一次
+        assertEquals(checkpoints, manager.getCheckpointStats("db").get().getCheckpointCount());
+    }
+
+    private static Map<String, Object> row(int id) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("id", id);
+        row.put("name", "name-" + id);
+        return row;
+    }
+}
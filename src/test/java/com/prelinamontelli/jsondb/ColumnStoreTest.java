@@ -0,0 +1,180 @@
+package com.prelinamontelli.jsondb;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Objects;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ColumnStoreTest {
+    private static final int ROWS = 300;
+
+    private final List<Column> columns = Arrays.asList(
+        new Column("i", DataType.INTEGER, false, false),
+        new Column("d", DataType.DOUBLE, false, false),
+        new Column("s", DataType.STRING, false, false),
+        new Column("b", DataType.BOOLEAN, false, false));
+    private ColumnStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new ColumnStore(columns, null);
+        for (int row = 0; row < ROWS; row++) {
+            store.append(10L * row, values(row));
+        }
+    }
+
+    @Test
+    void storesTypedValuesAndNulls() {
+        for (int row = 0; row < ROWS; row++) {
+            assertArrayEquals(values(row), store.values(row), "row " + row);
+            assertEquals(10L * row, store.rowIdAt(row));
+            assertEquals(row, store.slotOf(10L * row));
+        }
+        assertTrue(store.vector(0).isNull(0));
+        assertEquals(7, store.vector(0).getInt(7));
+        assertEquals(3.5, store.vector(1).getDouble(7));
+        store.set(7, 2, null);
+        assertNull(store.get(7, 2));
+        assertEquals(-1, store.slotOf(5));
+    }
+
+    @Test
+    void vectorScanMatchesRowByRowComparison() {
+        Object[] probes = {50, 12.5, "v42", true};
+        for (int column = 0; column < columns.size(); column++) {
+            for (WhereCondition.Operator operator : WhereCondition.Operator.values()) {
+                if (operator == WhereCondition.Operator.BETWEEN) {
+                    continue;
+                }
+                WhereCondition condition = new WhereCondition(columns.get(column), operator, probes[column], null);
+                assertEquals(expected(condition), store.scan(condition), condition.toString());
+            }
+            WhereCondition isNull = WhereCondition.equalTo(columns.get(column), null);
+            assertEquals(expected(isNull), store.scan(isNull), isNull.toString());
+        }
+        WhereCondition between = new WhereCondition(columns.get(0), WhereCondition.Operator.BETWEEN, 20, 40);
+        assertEquals(expected(between), store.scan(between));
+        // 只扫描一段槽位
+        WhereCondition all = new WhereCondition(columns.get(0), WhereCondition.Operator.GE, 0, null);
+        BitSet part = store.scan(all, 100, 200);
+        assertEquals(100 - countNulls(100, 200), part.cardinality());
+        assertEquals(100, part.nextSetBit(0));
+        assertEquals(200, part.length());
+    }
+
+    @Test
+    void deletedSlotsAreSkippedAndCompacted() {
+        WhereCondition all = new WhereCondition(columns.get(0), WhereCondition.Operator.GE, 0, null);
+        int matches = store.scan(all).cardinality();
+        store.delete(1);
+        assertFalse(store.isLive(1));
+        assertEquals(-1, store.slotOf(10));
+        assertEquals(matches - 1, store.scan(all).cardinality());
+        store.undelete(1);
+        assertTrue(store.isLive(1));
+        assertEquals(1, store.slotOf(10));
+
+        // 删除超过一半的槽位之后压缩，剩下的行保持顺序和值
+        for (int row = 0; row < ROWS; row++) {
+            if (row % 3 != 0) {
+                store.delete(row);
+            }
+        }
+        int generation = store.generation();
+        store.compactIfSparse();
+        assertEquals(generation + 1, store.generation());
+        assertEquals(ROWS / 3, store.size());
+        assertEquals(ROWS / 3, store.liveCount());
+        for (int slot = 0; slot < store.size(); slot++) {
+            int row = slot * 3;
+            assertArrayEquals(values(row), store.values(slot));
+            assertEquals(slot, store.slotOf(10L * row));
+        }
+        assertEquals(2, store.firstSlotAfter(30));
+        assertEquals(store.size(), store.firstSlotAfter(10L * ROWS));
+    }
+
+    @Test
+    void compactionWaitsUntilMostSlotsAreDeleted() {
+        for (int row = 0; row < ROWS / 2; row++) {
+            store.delete(row);
+        }
+        store.compactIfSparse();
+        assertEquals(ROWS, store.size());
+        assertEquals(0, store.generation());
+    }
+
+    // 每列每 11 行有一个 NULL，其余值由行号决定
+    private static Object[] values(int row) {
+        boolean isNull = row % 11 == 0;
+        return new Object[] {
+            isNull ? null : row % 100,
+            isNull ? null : row / 2.0,
+            isNull ? null : "v" + row,
+            isNull ? null : row % 2 == 0
+        };
+    }
+
+    private BitSet expected(WhereCondition condition) {
+        int column = columns.indexOf(condition.getColumn());
+        BitSet matches = new BitSet();
+        for (int slot = 0; slot < store.size(); slot++) {
+            Object value = values(slot)[column];
+            boolean match;
+            if (condition.getValue() == null) {
+                match = value == null;
+            } else if (value == null) {
+                match = false;
+            } else {
+                int comparison = compare(value, condition.getValue());
+                switch (condition.getOperator()) {
+                    case EQ:
+                        match = comparison == 0;
+                        break;
+                    case LT:
+                        match = comparison < 0;
+                        break;
+                    case LE:
+                        match = comparison <= 0;
+                        break;
+                    case GT:
+                        match = comparison > 0;
+                        break;
+                    case GE:
+                        match = comparison >= 0;
+                        break;
+                    default:
+                        match = comparison >= 0 && compare(value, condition.getUpperValue()) <= 0;
+                }
+            }
+            if (match && store.isLive(slot)) {
+                matches.set(slot);
+            }
+        }
+        return matches;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compare(Object value, Object other) {
+        return ((Comparable<Object>) value).compareTo(Objects.requireNonNull(other));
+    }
+
+    private static int countNulls(int from, int to) {
+        int nulls = 0;
+        for (int row = from; row < to; row++) {
+            if (row % 11 == 0) {
+                nulls++;
+            }
+        }
+        return nulls;
+    }
+}
@@ -0,0 +1,129 @@
+package com.prelinamontelli.jsondb;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CopyTest {
+    private static final int ROWS = 20_000; // 多于一个解析块
+
+    @TempDir
+    Path directory;
+
+    private DBManager manager;
+    private Database db;
+    private Table table;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        DBConfig config = new DBConfig();
+        config.setCopyParseThreads(3);
+        manager = new DBManager(directory, config);
+        manager.createDatabase("db");
+        db = manager.getDatabase("db").get();
+        manager.applyChange(db, WalRecord.createTable("t", Arrays.asList(
+            new Column("id", DataType.INTEGER, true, false),
+            new Column("name", DataType.STRING, false, false),
+            new Column("score", DataType.DOUBLE, false, false))));
+        table = db.getTable("t").get();
+        Map<String, Object> row = new HashMap<>();
+        row.put("id", 0);
+        row.put("name", "existing");
+        manager.applyChange(db, WalRecord.insert("t", row));
+    }
+
+    @AfterEach
+    void tearDown() {
+        manager.shutdown();
+    }
+
+    @Test
+    void copiesCsvWithHeaderAndQuotedFields() throws IOException {
+        StringBuilder csv = new StringBuilder("score,id,name\n");
+        for (int id = 1; id <= ROWS; id++) {
+            csv.append(id * 0.5).append(',').append(id).append(',').append(name(id)).append('\n');
+        }
+        Path file = write("data.csv", csv.toString());
+
+        assertEquals(ROWS, manager.copyFrom(db, "t", file, CopyFormat.CSV, true));
+        assertEquals(ROWS + 1, table.getRowCount());
+        List<Row> rows = table.getRows();
+        assertEquals("a, \"quoted\"\nline", rows.get(7).getValue("name"));
+        assertEquals(null, rows.get(3).getValue("name")); // 空字段为 NULL
+        assertEquals("plain 1", rows.get(1).getValue("name"));
+        assertEquals(ROWS, rows.get(ROWS).getValue("id"));
+        assertEquals(ROWS * 0.5, rows.get(ROWS).getValue("score"));
+        assertEquals(1, table.findRowIds(table.getColumn("id").get(), 7).size()); // 主键索引也已更新
+    }
+
+    @Test
+    void copiesNdjsonByFieldName() throws IOException {
+        Path file = write("data.ndjson", "{\"name\": \"x\", \"id\": 1, \"ignored\": true}\n\n{\"id\": 2, \"score\": 1.5}\n");
+
+        assertEquals(2, manager.copyFrom(db, "t", file, CopyFormat.NDJSON, false));
+        assertEquals(Arrays.asList("0,existing,null", "1,x,null", "2,null,1.5"), rows());
+    }
+
+    @Test
+    void failedCopyLeavesTableUnchanged() throws IOException {
+        List<String> before = rows();
+        long lsn = db.getLastLsn();
+        StringBuilder lines = new StringBuilder();
+        for (int id = 1; id <= ROWS; id++) {
+            lines.append(id).append(",n,1\n");
+        }
+        String valid = lines.toString();
+
+        // 错误出现在最后一个解析块中
+        assertCopyFails(valid + "x,n,1\n", "Line " + (ROWS + 1) + ":");
+        assertCopyFails(valid + (ROWS + 1) + ",n\n", "expected 3 fields but found 2");
+        assertCopyFails(valid + "0,n,1\n", "Duplicate value '0'"); // 与表中已有的行冲突
+        assertCopyFails(valid + "5,n,1\n", "Duplicate value '5'"); // 文件内部重复
+        assertCopyFails(valid + (ROWS + 1) + ",\"open\n", "unterminated quoted field");
+
+        assertEquals(before, rows());
+        assertEquals(lsn, db.getLastLsn());
+        assertEquals(1, table.findRowIds(table.getColumn("id").get(), 0).size());
+        assertTrue(table.findRowIds(table.getColumn("id").get(), 5).isEmpty());
+    }
+
+    private void assertCopyFails(String csv, String message) throws IOException {
+        Path file = write("bad.csv", csv);
+        RuntimeException error = assertThrows(RuntimeException.class, () -> manager.copyFrom(db, "t", file, CopyFormat.CSV, false));
+        assertTrue(error.getMessage().contains(message), error.getMessage());
+    }
+
+    private static String name(int id) {
+        if (id == 7) {
+            return "\"a, \"\"quoted\"\"\nline\"";
+        }
+        return id == 3 ? "" : "plain " + id;
+    }
+
+    private Path write(String name, String content) throws IOException {
+        return Files.write(directory.resolve(name), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private List<String> rows() {
+        List<String> rows = new ArrayList<>();
+        for (Row row : table.getRows()) {
+            rows.add(row.getValue("id") + "," + row.getValue("name") + "," + row.getValue("score"));
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,109 @@
+package com.prelinamontelli.jsondb;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class DBManagerEvictionTest {
+    private static final int ROWS = 2000;
+
+    @TempDir
+    Path directory;
+
+    private DBManager manager;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        // 三个内容相同的数据库，内存预算只够同时加载两个
+        DBManager setup = new DBManager(directory, config(0));
+        long size;
+        try {
+            for (String name : Arrays.asList("a", "b", "c")) {
+                setup.createDatabase(name);
+                Database db = setup.getDatabase(name).get();
+                setup.applyChange(db, WalRecord.createTable("t", Arrays.asList(
+                    new Column("id", DataType.INTEGER, true, false),
+                    new Column("name", DataType.STRING, false, false))));
+                for (int id = 1; id <= ROWS; id++) {
+                    Map<String, Object> row = new HashMap<>();
+                    row.put("id", id);
+                    row.put("name", "name-" + id);
+                    setup.applyChange(db, WalRecord.insert("t", row));
+                }
+            }
+            size = setup.getDatabase("a").get().getEstimatedSizeBytes();
+        } finally {
+            setup.shutdown();
+        }
+        manager = new DBManager(directory, config(size * 5 / 2));
+    }
+
+    @AfterEach
+    void tearDown() {
+        manager.shutdown();
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedDatabaseOverBudget() {
+        Database a = database("a");
+        Database b = database("b");
+        assertSame(a, database("a")); // a 比 b 更近被访问
+        Database c = database("c");
+
+        assertSame(a, database("a"));
+        assertSame(c, database("c"));
+        Database reloaded = database("b");
+        assertNotSame(b, reloaded);
+        assertEquals(ROWS, reloaded.getTable("t").get().getRowCount());
+    }
+
+    @Test
+    void evictionCheckpointsUnsavedChangesFirst() throws IOException {
+        Database a = database("a");
+        manager.applyChange(a, WalRecord.delete("t", a.getTable("t").get().getRowIds().subList(0, 10)));
+        database("b");
+        database("c");
+
+        Database reloaded = database("a");
+        assertNotSame(a, reloaded);
+        assertEquals(ROWS - 10, reloaded.getTable("t").get().getRowCount());
+        assertEquals(reloaded.getLastLsn(), manager.getCheckpointStats("a").get().getLastCheckpointLsn());
+    }
+
+    @Test
+    void keepsDatabaseInUseBySession() {
+        Session session = manager.openSession();
+        manager.useDatabase(session, "a");
+        Database a = database("a");
+        database("b");
+        database("c");
+        database("b");
+        assertSame(a, database("a"));
+
+        // 切换走之后不再受保护
+        manager.useDatabase(session, "b");
+        database("c");
+        assertNotSame(a, database("a"));
+    }
+
+    private Database database(String name) {
+        return manager.getDatabase(name).get();
+    }
+
+    private static DBConfig config(long memoryBudgetBytes) {
+        DBConfig config = new DBConfig();
+        config.setMemoryBudgetBytes(memoryBudgetBytes);
+        return config;
+    }
+}
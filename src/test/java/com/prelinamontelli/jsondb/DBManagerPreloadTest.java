@@ -0,0 +1,116 @@
+package com.prelinamontelli.jsondb;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class DBManagerPreloadTest {
+    private static final int DATABASES = 6;
+
+    @TempDir
+    Path directory;
+
+    private final List<String> names = new ArrayList<>();
+    private long databaseSize;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        DBManager setup = new DBManager(directory, new DBConfig());
+        try {
+            for (int i = 0; i < DATABASES; i++) {
+                String name = "d" + i;
+                names.add(name);
+                setup.createDatabase(name);
+                Database db = setup.getDatabase(name).get();
+                setup.applyChange(db, WalRecord.createTable("t", Arrays.asList(
+                    new Column("id", DataType.INTEGER, true, false),
+                    new Column("owner", DataType.STRING, false, false))));
+                for (int id = 1; id <= 100 + i; id++) {
+                    Map<String, Object> row = new HashMap<>();
+                    row.put("id", id);
+                    row.put("owner", name);
+                    setup.applyChange(db, WalRecord.insert("t", row));
+                }
+            }
+            databaseSize = setup.getDatabase("d0").get().getEstimatedSizeBytes();
+        } finally {
+            setup.shutdown();
+        }
+    }
+
+    @Test
+    void preloadsAllDatabasesInParallel() throws IOException {
+        DBConfig config = new DBConfig();
+        config.setPreloadDatabases(Collections.singletonList(DBConfig.PRELOAD_ALL));
+        config.setStartupLoadThreads(4);
+        DBManager manager = new DBManager(directory, config);
+        try {
+            deleteFiles(); // 预加载的数据库不再需要读取文件
+            for (int i = 0; i < DATABASES; i++) {
+                Table table = manager.getDatabase("d" + i).get().getTable("t").get();
+                assertEquals(100 + i, table.getRowCount());
+                assertEquals(Collections.nCopies(100 + i, "d" + i), owners(table));
+            }
+        } finally {
+            manager.shutdown();
+        }
+    }
+
+    @Test
+    void loadsLazilyWithoutPreload() throws IOException {
+        DBManager manager = new DBManager(directory, new DBConfig());
+        try {
+            deleteFiles();
+            assertThrows(IllegalStateException.class, () -> manager.getDatabase("d0"));
+        } finally {
+            manager.shutdown();
+        }
+    }
+
+    @Test
+    void stopsPreloadingAtMemoryBudget() throws IOException {
+        DBConfig config = new DBConfig();
+        config.setPreloadDatabases(Arrays.asList("d0", "missing", "d1", "d2", "d3"));
+        config.setStartupLoadThreads(1);
+        config.setMemoryBudgetBytes(databaseSize * 3 / 2);
+        DBManager manager = new DBManager(directory, config);
+        try {
+            deleteFiles();
+            // 加载 d0 和 d1 之后超出预算，跳过其余的数据库，再卸载到预算以内，列表中靠前的 d0 保留
+            assertEquals(100, manager.getDatabase("d0").get().getTable("t").get().getRowCount());
+            for (String name : Arrays.asList("d1", "d2", "d3")) {
+                assertThrows(IllegalStateException.class, () -> manager.getDatabase(name), name);
+            }
+        } finally {
+            manager.shutdown();
+        }
+    }
+
+    private void deleteFiles() throws IOException {
+        for (String name : names) {
+            Files.delete(directory.resolve(name + StorageFormat.JSON.getFileExtension()));
+            Files.deleteIfExists(directory.resolve(name + ".wal"));
+        }
+    }
+
+    private static List<String> owners(Table table) {
+        List<String> owners = new ArrayList<>();
+        for (Row row : table.getRows()) {
+            owners.add((String) row.getValue("owner"));
+        }
+        return owners;
+    }
+}
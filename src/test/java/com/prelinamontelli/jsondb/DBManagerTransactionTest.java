@@ -0,0 +1,203 @@
+package com.prelinamontelli.jsondb;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DBManagerTransactionTest {
+    private static final String DB = "shop";
+
+    @TempDir
+    Path directory;
+
+    private DBConfig config;
+    private DBManager manager;
+    private Session session;
+    private Database db;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        config = new DBConfig();
+        config.setWalSyncMode(WalSyncMode.ALWAYS);
+        manager = new DBManager(directory, config);
+        manager.createDatabase(DB);
+        session = manager.openSession();
+        manager.useDatabase(session, DB);
+        db = manager.getDatabase(DB).get();
+        manager.applyChange(db, WalRecord.createTable("users", Arrays.asList(
+            new Column("id", DataType.INTEGER, true, false),
+            new Column("email", DataType.STRING, false, true),
+            new Column("score", DataType.INTEGER, false, false))));
+        manager.applyChange(db, WalRecord.createIndex("users", new IndexDefinition("score_idx", "score", IndexType.ORDERED)));
+        manager.applyChange(db, WalRecord.insert("users", row(1, "a@x", 10)));
+        manager.applyChange(db, WalRecord.insert("users", row(2, "b@x", 20)));
+    }
+
+    @AfterEach
+    void tearDown() {
+        manager.shutdown();
+    }
+
+    @Test
+    void failedCommitRestoresRowsIndexesAndUniqueKeys() throws IOException {
+        long lsnBefore = db.getLastLsn();
+        manager.beginTransaction(session);
+        queueUpdate(1, "email", "c@x");
+        queueUpdate(1, "score", 99);
+        manager.queueChange(session, "users", table -> WalRecord.delete("users", table.findRowIds(column("id"), 2)));
+        manager.queueChange(session, "users", table -> WalRecord.insert("users", row(3, "d@x", 30)));
+        manager.queueChange(session, "users", table -> WalRecord.insert("users", row(1, "e@x", 40))); // 主键重复
+
+        IllegalStateException error = assertThrows(IllegalStateException.class, () -> manager.commit(session));
+        assertTrue(error.getMessage().startsWith("Transaction rolled back:"), error.getMessage());
+        assertFalse(session.isInTransaction());
+
+        assertEquals(Arrays.asList("1,a@x,10", "2,b@x,20"), rows());
+        Table users = table();
+        assertEquals(1, users.findRowIds(column("score"), 10).size());
+        assertTrue(users.findRowIds(column("score"), 99).isEmpty());
+        assertTrue(users.findRowIds(column("id"), 3).isEmpty());
+        assertEquals(1, users.findRowIds(column("email"), "a@x").size());
+        assertEquals(lsnBefore, db.getLastLsn());
+
+        // 唯一键表也已恢复：原来的值仍然被占用，事务中写入的值已经释放
+        assertThrows(IllegalStateException.class, () -> manager.applyChange(db, WalRecord.insert("users", row(5, "a@x", 50))));
+        assertThrows(IllegalStateException.class, () -> manager.applyChange(db, WalRecord.insert("users", row(2, "f@x", 50))));
+        manager.applyChange(db, WalRecord.insert("users", row(3, "c@x", 30)));
+        manager.applyChange(db, WalRecord.insert("users", row(4, "d@x", 40)));
+        assertEquals(Arrays.asList("1,a@x,10", "2,b@x,20", "3,c@x,30", "4,d@x,40"), rows());
+    }
+
+    @Test
+    void failedCommitWritesNoTransactionRecord() throws IOException {
+        long walBytes = Files.size(directory.resolve(DB + ".wal"));
+        manager.beginTransaction(session);
+        manager.queueChange(session, "users", table -> WalRecord.insert("users", row(3, "c@x", 30)));
+        manager.queueChange(session, "users", table -> WalRecord.insert("users", row(4, "a@x", 40))); // 唯一键重复
+        assertThrows(IllegalStateException.class, () -> manager.commit(session));
+
+        assertEquals(walBytes, Files.size(directory.resolve(DB + ".wal")));
+        assertFalse(walRecordTypes().contains("TRANSACTION"));
+
+        // 不经过 checkpoint 重新打开（相当于崩溃后恢复），重放 WAL 得到同样的内容
+        DBManager recovered = new DBManager(directory, config);
+        try {
+            Table users = recovered.getDatabase(DB).get().getTable("users").get();
+            assertEquals(Arrays.asList("1,a@x,10", "2,b@x,20"), rows(users));
+        } finally {
+            recovered.shutdown();
+        }
+    }
+
+    @Test
+    void commitWritesOneTransactionRecordThatReplays() throws IOException {
+        manager.beginTransaction(session);
+        queueUpdate(1, "score", 11);
+        manager.queueChange(session, "users", table -> WalRecord.delete("users", table.findRowIds(column("id"), 2)));
+        manager.queueChange(session, "users", table -> WalRecord.insert("users", row(3, "b@x", 30)));
+        assertEquals(3, manager.commit(session).size());
+
+        assertEquals(Arrays.asList("1,a@x,11", "3,b@x,30"), rows());
+        assertEquals(1, Collections.frequency(walRecordTypes(), "TRANSACTION"));
+        JsonNode transaction = walRecords().get(walRecords().size() - 1);
+        assertEquals(db.getLastLsn(), transaction.get("lsn").asLong());
+        assertEquals(3, transaction.get("records").size());
+        for (JsonNode record : transaction.get("records")) {
+            assertFalse(record.has("lsn"), record.toString()); // 事务中的记录没有自己的 LSN
+        }
+        DBManager recovered = new DBManager(directory, config);
+        try {
+            Table users = recovered.getDatabase(DB).get().getTable("users").get();
+            assertEquals(Arrays.asList("1,a@x,11", "3,b@x,30"), rows(users));
+            assertEquals(1, users.findRowIds(column("score"), 11).size());
+        } finally {
+            recovered.shutdown();
+        }
+    }
+
+    @Test
+    void rollbackDiscardsQueuedChanges() throws IOException {
+        long lsnBefore = db.getLastLsn();
+        manager.beginTransaction(session);
+        queueUpdate(1, "score", 99);
+        manager.queueChange(session, "users", table -> WalRecord.insert("users", row(3, "c@x", 30)));
+        assertEquals(2, manager.rollback(session));
+
+        assertFalse(session.isInTransaction());
+        assertEquals(Arrays.asList("1,a@x,10", "2,b@x,20"), rows());
+        assertEquals(lsnBefore, db.getLastLsn());
+        assertThrows(IllegalStateException.class, () -> manager.commit(session));
+    }
+
+    private void queueUpdate(int id, String columnName, Object value) {
+        manager.queueChange(session, "users", table ->
+            WalRecord.update("users", table.findRowIds(column("id"), id), Collections.singletonMap(columnName, value)));
+    }
+
+    private Table table() {
+        return db.getTable("users").get();
+    }
+
+    private Column column(String name) {
+        return table().getColumn(name).get();
+    }
+
+    private List<String> rows() {
+        return rows(table());
+    }
+
+    private static List<String> rows(Table table) {
+        List<String> rows = new ArrayList<>();
+        for (Row row : table.getRows()) {
+            rows.add(row.getValue("id") + "," + row.getValue("email") + "," + row.getValue("score"));
+        }
+        Collections.sort(rows);
+        return rows;
+    }
+
+    private List<String> walRecordTypes() throws IOException {
+        List<String> types = new ArrayList<>();
+        for (JsonNode record : walRecords()) {
+            types.add(record.get("type").asText());
+        }
+        return types;
+    }
+
+    private List<JsonNode> walRecords() throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        List<JsonNode> records = new ArrayList<>();
+        for (String line : Files.readAllLines(directory.resolve(DB + ".wal"), StandardCharsets.UTF_8)) {
+            if (!line.trim().isEmpty()) {
+                records.add(objectMapper.readTree(line));
+            }
+        }
+        return records;
+    }
+
+    private static Map<String, Object> row(int id, String email, int score) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("id", id);
+        row.put("email", email);
+        row.put("score", score);
+        return row;
+    }
+}
@@ -0,0 +1,135 @@
+package com.prelinamontelli.jsondb;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DatabaseReaderTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final DatabaseReader reader = new DatabaseReader(objectMapper, null);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsWhatJacksonWrites() throws IOException {
+        Table table = new Table("emp", Arrays.asList(
+            new Column("id", DataType.INTEGER, true, false),
+            new Column("name", DataType.STRING, false, true),
+            new Column("salary", DataType.DOUBLE, false, false),
+            new Column("active", DataType.BOOLEAN, false, false)));
+        for (int id = 1; id <= 20_000; id++) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("id", id);
+            row.put("name", id % 10 == 0 ? null : "name \"" + id + "\"\n");
+            row.put("salary", id * 1.5);
+            row.put("active", id % 2 == 0);
+            table.insertRow(null, row);
+        }
+        table.deleteRows(table.findRowIds(table.getColumn("id").get(), 5)); // 行 ID 不再连续
+        table.createIndex(new IndexDefinition("salary_idx", "salary", IndexType.ORDERED));
+        table.analyze();
+        Path file = directory.resolve("db.json");
+        try (OutputStream out = Files.newOutputStream(file)) {
+            new JsonSnapshotCodec(objectMapper, null).write(new Database("db", Collections.singletonMap("emp", table), 42L, null), out);
+        }
+
+        Database loaded = reader.read(file);
+        assertEquals("db", loaded.getName());
+        assertEquals(42, loaded.getLastLsn());
+        Table copy = loaded.getTable("emp").get();
+        assertEquals(table.getRowIds(), copy.getRowIds());
+        assertEquals(table.getNextRowId(), copy.getNextRowId());
+        assertEquals(rows(table), rows(copy));
+        assertEquals(table.getIndexDefinitions(), copy.getIndexDefinitions());
+        assertEquals(table.findRowIds(new WhereCondition(table.getColumn("salary").get(), WhereCondition.Operator.LT, 30.0, null)),
+            copy.findRowIds(new WhereCondition(copy.getColumn("salary").get(), WhereCondition.Operator.LT, 30.0, null)));
+        assertNotNull(copy.getStatistics());
+        assertEquals(table.getStatistics().get(1).getNulls(), copy.getStatistics().get(1).getNulls());
+        // 唯一键表也已重建
+        Map<String, Object> duplicate = new HashMap<>();
+        duplicate.put("id", 20_001);
+        duplicate.put("name", "name \"7\"\n");
+        assertThrows(IllegalStateException.class, () -> copy.insertRow(null, duplicate));
+    }
+
+    @Test
+    void acceptsRowsBeforeColumnsAndUnknownFields() throws IOException {
+        Table table = read("{\"comment\": {\"x\": [1, 2]}, \"name\": \"db\", \"tables\": {\"t\": {"
+            + "\"rows\": [{\"id\": 1, \"extra\": [true], \"v\": \"a\"}, {\"id\": \"2\", \"v\": null}],"
+            + "\"columns\": [{\"name\": \"id\", \"type\": \"INTEGER\", \"primaryKey\": true}, {\"name\": \"v\", \"type\": \"STRING\"}],"
+            + "\"rowIds\": [3, 8], \"nextRowId\": 10}}, \"lastLsn\": 7}");
+        assertEquals(Arrays.asList(3L, 8L), table.getRowIds());
+        assertEquals(10, table.getNextRowId());
+        assertEquals(Arrays.asList("1,a", "2,null"), rows(table));
+    }
+
+    @Test
+    void rowIdsAfterRowsReplaceSequentialIds() throws IOException {
+        Table table = read("{\"name\": \"db\", \"tables\": {\"t\": {"
+            + "\"columns\": [{\"name\": \"id\", \"type\": \"INTEGER\"}],"
+            + "\"rows\": [{\"id\": 1}, {\"id\": 2}], \"rowIds\": [4, 9]}}}");
+        assertEquals(Arrays.asList(4L, 9L), table.getRowIds());
+        assertEquals(Collections.singletonList(9L), table.findRowIds(table.getColumn("id").get(), 2));
+    }
+
+    @Test
+    void rejectsInconsistentFiles() {
+        String columns = "\"columns\": [{\"name\": \"id\", \"type\": \"INTEGER\", \"primaryKey\": true}]";
+        assertInvalid("{\"name\": \"db\", \"tables\": {\"t\": {" + columns + ", \"rowIds\": [1], \"rows\": [{\"id\": 1}, {\"id\": 2}]}}}",
+            "more rows than row ids");
+        assertInvalid("{\"name\": \"db\", \"tables\": {\"t\": {" + columns + ", \"rowIds\": [1, 2], \"rows\": [{\"id\": 1}]}}}",
+            "1 rows but 2 row ids");
+        assertInvalid("{\"name\": \"db\", \"tables\": {\"t\": {" + columns + ", \"rows\": [{\"id\": 1}, {\"id\": 1}]}}}",
+            "Duplicate value");
+        assertInvalid("{\"name\": \"db\", \"tables\": {\"t\": {" + columns + ", \"rows\": [{\"id\": \"one\"}]}}}", null);
+        assertInvalid("{\"name\": \"db\", \"tables\": {\"t\": {" + columns + ", \"rows\": [{\"id\": {\"x\": 1}}]}}}",
+            "for a column value");
+        assertInvalid("[]", "Expected START_OBJECT");
+    }
+
+    private Table read(String json) throws IOException {
+        Path file = directory.resolve("db.json");
+        Files.write(file, json.getBytes(StandardCharsets.UTF_8));
+        return reader.read(file).getTable("t").get();
+    }
+
+    private void assertInvalid(String json, String message) {
+        IOException error = assertThrows(IOException.class, () -> read(json));
+        if (message != null) {
+            assertTrue(error.getMessage().contains(message), error.getMessage());
+        }
+    }
+
+    private static List<String> rows(Table table) {
+        List<String> rows = new ArrayList<>();
+        for (Row row : table.getRows()) {
+            StringBuilder text = new StringBuilder();
+            for (Column column : table.getColumnDefinitions()) {
+                if (text.length() > 0) {
+                    text.append(',');
+                }
+                text.append(row.getValue(column.getName()));
+            }
+            rows.add(text.toString());
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,107 @@
+package com.prelinamontelli.jsondb;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ExpressionTest {
+    private Table table;
+
+    @BeforeEach
+    void setUp() {
+        table = new Table("t", Arrays.asList(
+            new Column("id", DataType.INTEGER, true, false),
+            new Column("score", DataType.INTEGER, false, false),
+            new Column("bonus", DataType.INTEGER, false, false)));
+        insert(1, 5, 5);
+        insert(2, 7, null);
+        insert(3, null, 7);
+    }
+
+    @Test
+    void comparisonWithNullColumnValueIsUnknown() {
+        Object[] nullScore = {3, null, 7};
+        assertNull(where("score = 5").evaluate(nullScore));
+        assertNull(where("score != 5").evaluate(nullScore));
+        assertNull(where("NOT score = 5").evaluate(nullScore));
+        assertNull(where("score = bonus").evaluate(nullScore));
+        assertNull(where("score != bonus").evaluate(nullScore));
+    }
+
+    @Test
+    void notEqualAndNegatedEqualityExcludeNullRows() {
+        assertEquals(Collections.singletonList(2), select("score != 5"));
+        assertEquals(Collections.singletonList(2), select("score <> 5"));
+        assertEquals(Collections.singletonList(2), select("5 != score"));
+        assertEquals(Collections.singletonList(2), select("NOT score = 5"));
+        assertEquals(Collections.singletonList(2), select("NOT (score = 5)"));
+        assertEquals(Collections.singletonList(2), select("NOT (score < 6)"));
+        assertEquals(Collections.emptyList(), select("score != bonus"));
+        assertEquals(Collections.emptyList(), select("NOT score = bonus"));
+    }
+
+    @Test
+    void nullLiteralEqualityMeansIsNull() {
+        assertInstanceOf(Expression.IsNull.class, where("score = NULL"));
+        assertEquals(Collections.singletonList(3), select("score = NULL"));
+        assertEquals(Collections.singletonList(3), select("NULL = score"));
+        assertEquals(Arrays.asList(1, 2), select("score != NULL"));
+        assertEquals(Arrays.asList(1, 2), select("score <> NULL"));
+        assertEquals(Arrays.asList(1, 2), select("NOT score = NULL"));
+        // 与 NULL 的范围比较仍然是未知
+        assertEquals(Collections.emptyList(), select("score < NULL"));
+        assertEquals(Collections.emptyList(), select("NOT score < NULL"));
+    }
+
+    @Test
+    void nonIntegerEqualityIsUnknownForNullRows() {
+        assertEquals(Collections.emptyList(), select("score = 5.5"));
+        assertEquals(Arrays.asList(1, 2), select("score != 5.5"));
+        assertEquals(Arrays.asList(1, 2), select("NOT score = 5.5"));
+        assertEquals(Collections.emptyList(), select("NOT score != 5.5"));
+    }
+
+    @Test
+    void indexedColumnGivesSameResults() {
+        table.createIndex(new IndexDefinition("score_idx", "score", IndexType.ORDERED));
+        assertEquals(Collections.singletonList(2), select("score != 5"));
+        assertEquals(Collections.singletonList(2), select("NOT score = 5"));
+        assertEquals(Collections.singletonList(3), select("score = NULL"));
+        assertEquals(Arrays.asList(1, 2), select("score != NULL"));
+    }
+
+    private Expression where(String condition) {
+        Statement.Select select = (Statement.Select) SqlParser.parse("SELECT * FROM t WHERE " + condition);
+        return select.getWhere().bind(table);
+    }
+
+    private List<Integer> select(String condition) {
+        List<Integer> ids = new ArrayList<>();
+        try (ReadView view = table.openReadView()) {
+            RowCursor cursor = table.select(view, table.plan(where(condition), null, false, -1, 0), null);
+            while (cursor.hasNext()) {
+                ids.add((Integer) cursor.next()[0]);
+            }
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+
+    private void insert(int id, Integer score, Integer bonus) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("id", id);
+        row.put("score", score);
+        row.put("bonus", bonus);
+        table.insertRow(null, row);
+    }
+}
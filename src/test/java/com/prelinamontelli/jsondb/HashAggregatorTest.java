@@ -0,0 +1,171 @@
+package com.prelinamontelli.jsondb;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class HashAggregatorTest {
+    private static final int ROWS = 30_000;
+    private static final AggregateFunction[] FUNCTIONS = {
+        AggregateFunction.COUNT, AggregateFunction.COUNT, AggregateFunction.SUM, AggregateFunction.AVG,
+        AggregateFunction.MIN, AggregateFunction.MAX, AggregateFunction.SUM, AggregateFunction.MIN};
+
+    private Table table;
+    private ParallelScan parallel;
+
+    @BeforeEach
+    void setUp() {
+        table = new Table("t", Arrays.asList(
+            new Column("id", DataType.INTEGER, true, false),
+            new Column("dept", DataType.STRING, false, false),
+            new Column("age", DataType.INTEGER, false, false),
+            new Column("salary", DataType.DOUBLE, false, false)));
+        for (int id = 1; id <= ROWS; id++) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("id", id);
+            row.put("dept", id % 13 == 0 ? null : "d" + id % 5);
+            row.put("age", id % 11 == 0 ? null : 20 + id % 40);
+            row.put("salary", id % 17 == 0 ? null : id % 1000 * 0.5); // 0.5 的倍数，求和没有舍入误差
+            table.insertRow(null, row);
+        }
+        parallel = new ParallelScan(4, 1000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        parallel.close();
+    }
+
+    @Test
+    void aggregatesMatchRowByRowComputation() {
+        for (int[] groups : new int[][] {{1}, {2}, {3}, {1, 2}, {}}) {
+            List<List<Object>> expected = expected(groups, null);
+            assertEquals(expected, aggregate(groups, null, null), Arrays.toString(groups));
+            // 并行扫描合并部分聚合器之后，组的顺序与顺序扫描相同
+            assertEquals(expected, aggregate(groups, null, parallel), Arrays.toString(groups));
+        }
+        assertEquals(expected(new int[] {1}, "age >= 50"), aggregate(new int[] {1}, "age >= 50", parallel));
+    }
+
+    @Test
+    void emptyInputHasOneGlobalGroupAndNoGroupedRows() {
+        List<List<Object>> global = aggregate(new int[0], "id < 0", null);
+        assertEquals(1, global.size());
+        assertEquals(Arrays.asList(0L, 0L, null, null, null, null, null, null), global.get(0));
+        assertEquals(0, aggregate(new int[] {1}, "id < 0", parallel).size());
+    }
+
+    @Test
+    void ordersAndLimitsGroups() {
+        HashAggregator aggregator = aggregator(new int[] {1});
+        for (Row row : table.getRows()) {
+            aggregator.add(values(row));
+        }
+        // 按 COUNT(*) 从多到少取前两组；按分组列排序时 NULL 组排在最后
+        List<Object[]> top = aggregator.results(1, true, 2);
+        assertEquals(2, top.size());
+        List<Object> counts = new ArrayList<>();
+        for (List<Object> row : expected(new int[] {1}, null)) {
+            counts.add(row.get(1));
+        }
+        counts.sort(Collections.reverseOrder());
+        assertEquals(counts.subList(0, 2), Arrays.asList(top.get(0)[1], top.get(1)[1]));
+        List<Object> depts = new ArrayList<>();
+        for (Object[] row : aggregator.results(0, false, -1)) {
+            depts.add(row[0]);
+        }
+        assertEquals(Arrays.asList("d0", "d1", "d2", "d3", "d4", null), depts);
+    }
+
+    @Test
+    void rejectsSumOfStrings() {
+        assertThrows(IllegalArgumentException.class, () -> new HashAggregator(table.getColumnDefinitions(), new int[0],
+            new AggregateFunction[] {AggregateFunction.SUM}, new int[] {1}));
+    }
+
+    private List<List<Object>> aggregate(int[] groups, String condition, ParallelScan scan) {
+        Expression filter = condition == null ? null
+            : ((Statement.Select) SqlParser.parse("SELECT * FROM t WHERE " + condition)).getWhere().bind(table);
+        HashAggregator aggregator = aggregator(groups);
+        try (ReadView view = table.openReadView()) {
+            table.aggregate(view, table.plan(filter, null, false, -1, 0), aggregator, scan);
+        }
+        List<List<Object>> rows = new ArrayList<>();
+        for (Object[] row : aggregator.results(-1, false, -1)) {
+            rows.add(Arrays.asList(row));
+        }
+        return rows;
+    }
+
+    // COUNT(*), COUNT(age), SUM(age), AVG(salary), MIN(dept), MAX(salary), SUM(salary), MIN(age)
+    private HashAggregator aggregator(int[] groups) {
+        return new HashAggregator(table.getColumnDefinitions(), groups, FUNCTIONS, new int[] {-1, 2, 2, 3, 1, 3, 3, 2});
+    }
+
+    private List<List<Object>> expected(int[] groups, String condition) {
+        Map<List<Object>, List<Object[]>> byGroup = new LinkedHashMap<>();
+        for (Row row : table.getRows()) {
+            Object[] values = values(row);
+            if (condition != null && (values[2] == null || (Integer) values[2] < 50)) {
+                continue;
+            }
+            List<Object> key = new ArrayList<>();
+            for (int group : groups) {
+                key.add(values[group]);
+            }
+            byGroup.computeIfAbsent(key, k -> new ArrayList<>()).add(values);
+        }
+        if (groups.length == 0 && byGroup.isEmpty()) {
+            byGroup.put(new ArrayList<>(), new ArrayList<>());
+        }
+        List<List<Object>> results = new ArrayList<>();
+        for (Map.Entry<List<Object>, List<Object[]>> entry : byGroup.entrySet()) {
+            List<Object> result = new ArrayList<>(entry.getKey());
+            long ages = 0;
+            long ageSum = 0;
+            long salaries = 0;
+            double salarySum = 0;
+            String minDept = null;
+            Double maxSalary = null;
+            Integer minAge = null;
+            for (Object[] values : entry.getValue()) {
+                if (values[1] != null && (minDept == null || ((String) values[1]).compareTo(minDept) < 0)) {
+                    minDept = (String) values[1];
+                }
+                if (values[2] != null) {
+                    ages++;
+                    ageSum += (Integer) values[2];
+                    minAge = minAge == null ? (Integer) values[2] : Math.min(minAge, (Integer) values[2]);
+                }
+                if (values[3] != null) {
+                    salaries++;
+                    salarySum += (Double) values[3];
+                    maxSalary = maxSalary == null ? (Double) values[3] : Math.max(maxSalary, (Double) values[3]);
+                }
+            }
+            result.addAll(Arrays.asList((long) entry.getValue().size(), ages, ages == 0 ? null : ageSum,
+                salaries == 0 ? null : salarySum / salaries, minDept, maxSalary, salaries == 0 ? null : salarySum, minAge));
+            results.add(result);
+        }
+        return results;
+    }
+
+    private Object[] values(Row row) {
+        Object[] values = new Object[4];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = row.getValue(table.getColumnDefinitions().get(i).getName());
+        }
+        return values;
+    }
+}
@@ -0,0 +1,111 @@
+package com.prelinamontelli.jsondb;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HashIndexTest {
+    private static final int ROWS = 1000;
+
+    private Table table;
+    private Column dept;
+    private Column city;
+
+    @BeforeEach
+    void setUp() {
+        dept = new Column("dept", DataType.INTEGER, false, false);
+        city = new Column("city", DataType.STRING, false, false);
+        table = new Table("emp", Arrays.asList(new Column("id", DataType.INTEGER, true, false), dept, city));
+        for (int i = 1; i <= ROWS; i++) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("id", i);
+            row.put("dept", i % 13 == 0 ? null : i % 50);
+            row.put("city", "city-" + i % 7);
+            table.insertRow(null, row);
+        }
+    }
+
+    @Test
+    void lookupReturnsSameRowsAsScan() {
+        Map<Object, List<Long>> scanned = new HashMap<>();
+        List<Object> keys = new ArrayList<>(Arrays.asList(0, 7, 49, 50, -1, null));
+        for (Object key : keys) {
+            scanned.put(key, table.findRowIds(dept, key));
+        }
+        table.createIndex(new IndexDefinition("dept_idx", "dept", IndexType.HASH));
+        for (Object key : keys) {
+            assertEquals(scanned.get(key), table.findRowIds(dept, key), "dept = " + key);
+        }
+        assertTrue(table.findRowIds(dept, 50).isEmpty());
+        List<Long> nullDept = new ArrayList<>();
+        for (int id = 13; id <= ROWS; id += 13) {
+            nullDept.addAll(table.findRowIds(table.getColumn("id").get(), id));
+        }
+        assertEquals(nullDept, table.findRowIds(dept, null));
+    }
+
+    @Test
+    void indexFollowsInsertUpdateAndDelete() {
+        table.createIndex(new IndexDefinition("dept_idx", "dept", IndexType.HASH));
+        table.createIndex(new IndexDefinition("city_idx", "city", IndexType.HASH));
+        List<Long> dept7 = table.findRowIds(dept, 7);
+        table.updateRows(dept7.subList(0, 5), Collections.singletonMap("dept", 99));
+        table.deleteRows(dept7.subList(5, 10));
+        Map<String, Object> row = new HashMap<>();
+        row.put("id", ROWS + 1);
+        row.put("dept", 99);
+        row.put("city", "new");
+        long inserted = table.insertRow(null, row);
+
+        List<Long> expected99 = new ArrayList<>(dept7.subList(0, 5));
+        expected99.add(inserted);
+        assertEquals(expected99, table.findRowIds(dept, 99));
+        assertEquals(dept7.subList(10, dept7.size()), table.findRowIds(dept, 7));
+        assertEquals(Collections.singletonList(inserted), table.findRowIds(city, "new"));
+
+        // 删除索引后按列向量扫描，结果不变
+        assertTrue(table.dropIndex("dept_idx"));
+        assertEquals(expected99, table.findRowIds(dept, 99));
+        assertFalse(table.dropIndex("dept_idx"));
+    }
+
+    @Test
+    void plannerUsesIndexForSelectiveEquality() {
+        table.createIndex(new IndexDefinition("dept_idx", "dept", IndexType.HASH));
+        QueryPlan plan = table.plan(bind("dept = 7 AND city = \"city-0\""), null, false, -1, 0);
+        assertEquals(QueryPlan.AccessType.INDEX_LOOKUP, plan.getAccess().getType());
+        assertEquals("dept_idx", plan.getAccess().getIndexName());
+        List<Long> expected = new ArrayList<>();
+        for (long rowId : table.findRowIds(dept, 7)) {
+            if ("city-0".equals(table.getRow(rowId).get().getValue("city"))) {
+                expected.add(rowId);
+            }
+        }
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, table.findRowIds(plan));
+    }
+
+    @Test
+    void rejectsDuplicateNameAndUnknownColumn() {
+        table.createIndex(new IndexDefinition("dept_idx", "dept", IndexType.HASH));
+        assertThrows(IllegalStateException.class,
+            () -> table.createIndex(new IndexDefinition("dept_idx", "city", IndexType.HASH)));
+        assertThrows(IllegalArgumentException.class,
+            () -> table.createIndex(new IndexDefinition("salary_idx", "salary", IndexType.HASH)));
+    }
+
+    private Expression bind(String condition) {
+        return ((Statement.Select) SqlParser.parse("SELECT * FROM emp WHERE " + condition)).getWhere().bind(table);
+    }
+}
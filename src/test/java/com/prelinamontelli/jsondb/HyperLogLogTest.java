@@ -0,0 +1,91 @@
+package com.prelinamontelli.jsondb;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HyperLogLogTest {
+
+    @Test
+    void fewValuesUseSparseEncoding() {
+        HyperLogLog sketch = new HyperLogLog();
+        assertEquals(1, sketch.encode().length);
+        for (int i = 0; i < 10; i++) {
+            sketch.add(i);
+        }
+        byte[] data = sketch.encode();
+        assertEquals(1 + 10 * 3, data.length);
+        assertRoundTrip(sketch);
+        assertEquals(10, HyperLogLog.decode(data).estimate());
+    }
+
+    @Test
+    void manyValuesUsePackedEncoding() {
+        HyperLogLog sketch = new HyperLogLog();
+        for (int i = 0; i < 100_000; i++) {
+            sketch.add("value-" + i);
+        }
+        byte[] data = sketch.encode();
+        assertEquals(1 + (1 << HyperLogLog.PRECISION) * 6 / 8, data.length);
+        assertRoundTrip(sketch);
+        long estimate = HyperLogLog.decode(data).estimate();
+        assertTrue(Math.abs(estimate - 100_000) < 100_000 * 0.05, "estimate " + estimate);
+    }
+
+    @Test
+    void readsUncompressedRegistersOfOlderSnapshots() {
+        byte[] registers = new byte[1 << HyperLogLog.PRECISION];
+        registers[0] = 3;
+        registers[4095] = 53;
+        HyperLogLog sketch = HyperLogLog.decode(registers);
+        // 寄存器 0 = 3、寄存器 4095 = 53，每个写成 12 位编号和 6 位值
+        assertArrayEquals(new byte[] {1, 0x00, 0x00, (byte) 0xc0, (byte) 0xff, (byte) 0xfd, 0x40}, sketch.encode());
+        assertRoundTrip(sketch);
+        assertEquals(2, sketch.estimate());
+    }
+
+    @Test
+    void rejectsInvalidSketch() {
+        assertThrows(IllegalArgumentException.class, () -> HyperLogLog.decode(new byte[0]));
+        assertThrows(IllegalArgumentException.class, () -> HyperLogLog.decode(new byte[] {1, 0}));
+        assertThrows(IllegalArgumentException.class, () -> HyperLogLog.decode(new byte[] {9, 0, 0, 0}));
+        byte[] registers = new byte[1 << HyperLogLog.PRECISION];
+        registers[7] = 60;
+        assertThrows(IllegalArgumentException.class, () -> HyperLogLog.decode(registers));
+    }
+
+    @Test
+    void smallTableStatisticsStayCompactInJson() throws Exception {
+        Table table = new Table("t", Arrays.asList(
+            new Column("id", DataType.INTEGER, true, false),
+            new Column("name", DataType.STRING, false, false),
+            new Column("score", DataType.DOUBLE, false, false),
+            new Column("active", DataType.BOOLEAN, false, false),
+            new Column("rank", DataType.INTEGER, false, false)));
+        table.insertRow(null, Collections.singletonMap("id", 1));
+        table.insertRow(null, Collections.singletonMap("id", 2));
+        table.analyze();
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        ColumnDistribution distribution = table.getStatistics().get(0);
+        String json = objectMapper.writeValueAsString(distribution);
+        assertTrue(json.length() < 200, json);
+        ColumnDistribution loaded = objectMapper.readValue(json, ColumnDistribution.class);
+        assertArrayEquals(distribution.getSketch(), loaded.getSketch());
+        assertEquals(2, loaded.getDistinctCount());
+    }
+
+    private static void assertRoundTrip(HyperLogLog sketch) {
+        byte[] data = sketch.encode();
+        HyperLogLog decoded = HyperLogLog.decode(data);
+        assertArrayEquals(data, decoded.encode());
+        assertEquals(sketch.estimate(), decoded.estimate());
+    }
+}
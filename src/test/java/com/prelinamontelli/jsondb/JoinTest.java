@@ -0,0 +1,158 @@
+package com.prelinamontelli.jsondb;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiPredicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JoinTest {
+    private static final int EMPLOYEES = 5000;
+    private static final int DEPARTMENTS = 40;
+
+    private Table emp;
+    private Table dept;
+
+    @BeforeEach
+    void setUp() {
+        emp = new Table("emp", Arrays.asList(
+            new Column("id", DataType.INTEGER, true, false),
+            new Column("dept_id", DataType.INTEGER, false, false),
+            new Column("salary", DataType.INTEGER, false, false)));
+        for (int id = 1; id <= EMPLOYEES; id++) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("id", id);
+            // NULL 的连接键和不存在的部门都没有匹配的行
+            row.put("dept_id", id % 97 == 0 ? null : id % (DEPARTMENTS + 5));
+            row.put("salary", id % 100);
+            emp.insertRow(null, row);
+        }
+        dept = new Table("dept", Arrays.asList(
+            new Column("id", DataType.INTEGER, true, false),
+            new Column("region", DataType.STRING, false, false),
+            new Column("budget", DataType.INTEGER, false, false),
+            new Column("code", DataType.INTEGER, false, false)));
+        for (int id = 0; id < DEPARTMENTS; id++) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("id", id);
+            row.put("region", id % 4 == 0 ? "north" : "south");
+            row.put("budget", id * 2);
+            row.put("code", id); // 与 id 相同，但没有索引
+            dept.insertRow(null, row);
+        }
+    }
+
+    @Test
+    void hashJoinMatchesNestedLoopComputation() {
+        JoinPlan plan = plan("e.dept_id = d.id", null, 1000);
+        assertTrue(strategy(plan).startsWith("Hash Join"), strategy(plan));
+        assertEquals(expected((e, d) -> true), join(plan));
+
+        // 连接键写在另一边、剩余条件引用两张表、下推到一张表的条件
+        JoinPlan filtered = plan("d.id = e.dept_id AND e.salary > d.budget", "d.region = \"north\"", 1000);
+        assertEquals(expected((e, d) -> (Integer) e[2] > (Integer) d[2] && d[1].equals("north")), join(filtered));
+    }
+
+    @Test
+    void hashJoinWithSeveralBuildPassesGivesSameRows() {
+        // 连接列上没有索引，只能哈希连接；构建端（dept）每趟只能放 7 行，需要多趟
+        JoinPlan plan = plan("e.dept_id = d.code", null, 7);
+        List<String> explain = plan.explain(null, null, -1, 0);
+        assertTrue(explain.get(0).startsWith("Hash Join"), explain.get(0));
+        assertTrue(explain.contains("  Hash Build: dept (passes=6)"), explain.toString());
+        assertEquals(expected((e, d) -> true), join(plan));
+    }
+
+    @Test
+    void indexNestedLoopUsesInnerIndex() {
+        emp.createIndex(new IndexDefinition("emp_dept", "dept_id", IndexType.HASH));
+        // 外表只有几行，逐行在 emp 的索引中查找比扫描 emp 便宜
+        JoinPlan plan = plan("e.dept_id = d.id", "d.id < 3", 1000);
+        assertTrue(strategy(plan).startsWith("Index Nested Loop"), strategy(plan));
+        assertEquals(expected((e, d) -> (Integer) d[0] < 3), join(plan));
+
+        // 主键作为内表：收集统计信息之后 emp 的范围条件估算为 20 行，逐行查找 dept 的主键
+        emp.analyze();
+        JoinPlan byKey = plan("e.dept_id = d.id", "e.id <= 20", 1000);
+        assertTrue(strategy(byKey).startsWith("Index Nested Loop"), strategy(byKey));
+        assertEquals(expected((e, d) -> (Integer) e[0] <= 20), join(byKey));
+    }
+
+    @Test
+    void ordersAndLimitsJoinedRows() {
+        JoinPlan plan = plan("e.dept_id = d.id", null, 1000);
+        List<List<Object>> all = expected((e, d) -> true);
+        all.sort((a, b) -> ((Integer) b.get(2)).compareTo((Integer) a.get(2))); // 只比较排序列，相同工资的行顺序不定
+        List<List<Object>> top;
+        try (ReadView left = emp.openReadView(); ReadView right = dept.openReadView()) {
+            top = rows(plan.select(left, right, 2, emp.getColumn("salary").get(), true, 10, 5));
+        }
+        assertEquals(10, top.size());
+        for (int i = 0; i < top.size(); i++) {
+            assertEquals(all.get(i + 5).get(2), top.get(i).get(2));
+        }
+    }
+
+    @Test
+    void requiresEqualityBetweenTables() {
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class, () -> plan("e.salary > d.budget", null, 1000));
+        assertTrue(error.getMessage().startsWith("JOIN requires an equality"), error.getMessage());
+    }
+
+    private JoinPlan plan(String on, String where, int maxBuildRows) {
+        Statement.Select select = (Statement.Select) SqlParser.parse(
+            "SELECT * FROM emp e JOIN dept d ON " + on + (where == null ? "" : " WHERE " + where));
+        return JoinPlanner.plan(emp, "e", dept, "d", select.getJoin().getOn(), select.getWhere(), maxBuildRows);
+    }
+
+    private static String strategy(JoinPlan plan) {
+        return plan.explain(null, null, -1, 0).get(0);
+    }
+
+    private List<List<Object>> join(JoinPlan plan) {
+        try (ReadView left = emp.openReadView(); ReadView right = dept.openReadView()) {
+            List<List<Object>> rows = rows(plan.open(left, right));
+            rows.sort(JoinTest::compareIds);
+            return rows;
+        }
+    }
+
+    // 逐对比较两张表的所有行，按 (emp.id, dept.id) 排序
+    private List<List<Object>> expected(BiPredicate<Object[], Object[]> condition) {
+        List<List<Object>> rows = new ArrayList<>();
+        for (Row e : emp.getRows()) {
+            for (Row d : dept.getRows()) {
+                Object[] left = {e.getValue("id"), e.getValue("dept_id"), e.getValue("salary")};
+                Object[] right = {d.getValue("id"), d.getValue("region"), d.getValue("budget"), d.getValue("code")};
+                if (left[1] != null && left[1].equals(right[0]) && condition.test(left, right)) {
+                    List<Object> row = new ArrayList<>(Arrays.asList(left));
+                    row.addAll(Arrays.asList(right));
+                    rows.add(row);
+                }
+            }
+        }
+        rows.sort(JoinTest::compareIds);
+        return rows;
+    }
+
+    private static int compareIds(List<Object> a, List<Object> b) {
+        int byEmp = ((Integer) a.get(0)).compareTo((Integer) b.get(0));
+        return byEmp != 0 ? byEmp : ((Integer) a.get(3)).compareTo((Integer) b.get(3));
+    }
+
+    private static List<List<Object>> rows(RowCursor cursor) {
+        List<List<Object>> rows = new ArrayList<>();
+        while (cursor.hasNext()) {
+            rows.add(Arrays.asList(cursor.next()));
+        }
+        return rows;
+    }
+}
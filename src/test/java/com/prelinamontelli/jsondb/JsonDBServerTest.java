@@ -0,0 +1,150 @@
+package com.prelinamontelli.jsondb;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class JsonDBServerTest {
+    @TempDir
+    Path directory;
+
+    private DBManager manager;
+    private JsonDBServer server;
+    private Thread serverThread;
+    private int port;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        DBConfig config = new DBConfig();
+        config.setServerPort(port);
+        manager = new DBManager(directory, config);
+        server = new JsonDBServer(manager);
+        serverThread = new Thread(() -> {
+            try {
+                server.start();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        serverThread.setDaemon(true);
+        serverThread.start();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        server.stop();
+        serverThread.join(5000);
+        manager.shutdown();
+    }
+
+    @Test
+    void unstuffedResponsesKeepLinesStartingWithDot() throws Exception {
+        try (Client client = connect()) {
+            client.send("CREATE DATABASE db;");
+            client.send("USE db;");
+            client.send("CREATE TABLE t (id INTEGER PRIMARY KEY, name STRING);");
+            client.send("INSERT INTO t VALUES (1, \".\"), (2, \"..x\"), (3, \"a\");");
+            client.send("SET OUTPUT FORMAT CSV;");
+            // 值为 "." 的行如果不转义，会被当成响应结束标记
+            assertEquals(Arrays.asList("name", ".", "..x", "a"), client.send("SELECT name FROM t ORDER BY id;"));
+            assertEquals(Arrays.asList("id", "3"), client.send("SELECT id FROM t WHERE name = \"a\";"));
+        }
+    }
+
+    @Test
+    void eachConnectionHasItsOwnCurrentDatabase() throws Exception {
+        try (Client first = connect(); Client second = connect()) {
+            for (String name : Arrays.asList("a", "b")) {
+                first.send("CREATE DATABASE " + name + ";");
+                first.send("USE " + name + ";");
+                first.send("CREATE TABLE t (owner STRING);");
+                first.send("INSERT INTO t VALUES (\"" + name + "\");");
+            }
+            first.send("USE a;");
+            second.send("USE b;");
+            first.send("SET OUTPUT FORMAT CSV;");
+            second.send("SET OUTPUT FORMAT CSV;");
+
+            // 另一个连接切换数据库不影响当前连接
+            assertEquals(Arrays.asList("owner", "a"), first.send("SELECT owner FROM t;"));
+            assertEquals(Arrays.asList("owner", "b"), second.send("SELECT owner FROM t;"));
+            first.send("USE b;");
+            assertEquals(Arrays.asList("owner", "b"), first.send("SELECT owner FROM t;"));
+            second.send("USE a;");
+            assertEquals(Arrays.asList("owner", "b"), first.send("SELECT owner FROM t;"));
+            assertEquals(Arrays.asList("owner", "a"), second.send("SELECT owner FROM t;"));
+        }
+    }
+
+    private Client connect() throws Exception {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                Client client = new Client(new Socket("127.0.0.1", port));
+                client.readResponse(); // 欢迎信息
+                return client;
+            } catch (ConnectException e) {
+                if (attempt == 100) {
+                    throw e;
+                }
+                Thread.sleep(50); // 服务器线程还没有开始监听
+            }
+        }
+    }
+
+    private static final class Client implements AutoCloseable {
+        private final Socket socket;
+        private final BufferedReader in;
+        private final PrintWriter out;
+
+        Client(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            this.out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true);
+        }
+
+        List<String> send(String command) throws IOException {
+            out.println(command);
+            return readResponse();
+        }
+
+        // 读到只包含 "." 的结束行为止，去掉转义时多加的 "."
+        List<String> readResponse() throws IOException {
+            List<String> lines = new ArrayList<>();
+            while (true) {
+                String line = in.readLine();
+                assertNotNull(line, "connection closed before end of response");
+                if (line.equals(".")) {
+                    return lines;
+                }
+                lines.add(line.startsWith(".") ? line.substring(1) : line);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.println("QUIT;");
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.prelinamontelli.jsondb;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Scanner;
+import java.util.function.IntPredicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LimitAndCursorTest {
+    private static final int ROWS = 3000;
+    private static final String END = "<end>"; // 每条命令的输出之后写出的标记
+
+    @TempDir
+    Path directory;
+
+    private DBManager manager;
+    private JsonDBCLI cli;
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream errors = new ByteArrayOutputStream();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        manager = new DBManager(directory, new DBConfig());
+        PrintStream out = new PrintStream(output, true, StandardCharsets.UTF_8.name());
+        PrintStream err = new PrintStream(errors, true, StandardCharsets.UTF_8.name());
+        cli = new JsonDBCLI(manager, manager.openSession(), out, err, () -> out.println(END));
+        manager.createDatabase("db");
+        Database db = manager.getDatabase("db").get();
+        manager.applyChange(db, WalRecord.createTable("t", Arrays.asList(
+            new Column("id", DataType.INTEGER, true, false),
+            new Column("score", DataType.INTEGER, false, false))));
+        List<Object[]> rows = new ArrayList<>();
+        for (int id = 1; id <= ROWS; id++) {
+            rows.add(new Object[] {id, id % 50 == 0 ? null : id * 7 % 1000});
+        }
+        manager.applyChange(db, WalRecord.copy("t", rows));
+    }
+
+    @AfterEach
+    void tearDown() {
+        manager.shutdown();
+    }
+
+    @Test
+    void limitAndOffsetPageThroughResults() {
+        List<List<String>> results = run(
+            "SELECT id FROM t LIMIT 5;",
+            "SELECT id FROM t LIMIT 3 OFFSET 10;",
+            "SELECT id FROM t WHERE score < 100 LIMIT 4 OFFSET 2;",
+            "SELECT id, score FROM t WHERE score IS NOT NULL ORDER BY score DESC LIMIT 3 OFFSET 1;",
+            "SELECT id FROM t ORDER BY score LIMIT 2 OFFSET 2939;",
+            "SELECT id FROM t ORDER BY score DESC LIMIT 2;",
+            "SELECT id FROM t LIMIT 0;",
+            "SELECT id FROM t LIMIT 10 OFFSET 5000;");
+        assertEquals(Arrays.asList("1", "2", "3", "4", "5"), results.get(0));
+        assertEquals(Arrays.asList("11", "12", "13"), results.get(1));
+        assertEquals(ids(id -> id % 50 != 0 && id * 7 % 1000 < 100).subList(2, 6), results.get(2));
+        // 分数为 999 的是 857、1857、2857，998 的是 714、1714、2714；同一分数的行按行 ID 的顺序
+        assertEquals(Arrays.asList("1857,999", "2857,999", "714,998"), results.get(3));
+        // NULL 视为最大值：升序时在 2940 个非 NULL 的行之后，降序时在最前面
+        assertEquals(Arrays.asList("2857", "50"), results.get(4));
+        assertEquals(Arrays.asList("50", "100"), results.get(5));
+        assertEquals(Collections.emptyList(), results.get(6));
+        assertEquals(Collections.emptyList(), results.get(7));
+        assertEquals("", errors());
+    }
+
+    @Test
+    void cursorFetchesFromItsSnapshot() {
+        List<List<String>> results = run(
+            "DECLARE c CURSOR FOR SELECT id FROM t WHERE id <= 10 ORDER BY id DESC;",
+            "FETCH 3 FROM c;",
+            "DELETE FROM t WHERE id <= 5;",
+            "FETCH c;",
+            "FETCH ALL c;",
+            "FETCH 5 FROM c;",
+            "SELECT id FROM t WHERE id <= 10;",
+            "CLOSE c;",
+            "FETCH c;");
+        assertEquals(Arrays.asList("10", "9", "8"), results.get(1));
+        assertEquals(Collections.singletonList("7"), results.get(3));
+        // 删除之后的 FETCH 仍然看到 DECLARE 时的行
+        assertEquals(Arrays.asList("6", "5", "4", "3", "2", "1"), results.get(4));
+        assertEquals(Collections.emptyList(), results.get(5));
+        assertEquals(Arrays.asList("6", "7", "8", "9", "10"), results.get(6));
+        assertTrue(errors().length() > 0); // 关闭之后游标不存在
+    }
+
+    @Test
+    void unsortedCursorStreamsInBatches() {
+        List<List<String>> results = run(
+            "DECLARE c CURSOR FOR SELECT id FROM t WHERE score IS NOT NULL;",
+            "FETCH 1000 FROM c;",
+            "FETCH 1000 FROM c;",
+            "FETCH ALL FROM c;",
+            "CLOSE ALL;");
+        List<String> all = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            all.addAll(results.get(i));
+        }
+        assertEquals(1000, results.get(1).size());
+        assertEquals(ids(id -> id % 50 != 0), all);
+        assertEquals("", errors());
+    }
+
+    // 执行命令，返回每条命令输出的数据行（CSV 格式，去掉列名行）
+    private List<List<String>> run(String... commands) {
+        List<String> lines = new ArrayList<>(Arrays.asList("USE db;", "SET OUTPUT FORMAT CSV;"));
+        lines.addAll(Arrays.asList(commands));
+        output.reset();
+        cli.run(new Scanner(String.join("\n", lines) + "\n"));
+        List<List<String>> results = new ArrayList<>();
+        List<String> current = new ArrayList<>();
+        for (String line : new String(output.toByteArray(), StandardCharsets.UTF_8).split("\n", -1)) {
+            if (line.equals(END)) {
+                results.add(current);
+                current = new ArrayList<>();
+            } else {
+                current.add(line);
+            }
+        }
+        // 前三段是欢迎信息、USE 和 SET OUTPUT FORMAT
+        results = results.subList(3, results.size());
+        for (List<String> result : results) {
+            if (!result.isEmpty() && (result.get(0).equals("id") || result.get(0).equals("id,score"))) {
+                result.remove(0);
+            }
+        }
+        return results;
+    }
+
+    private String errors() {
+        return new String(errors.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static List<String> ids(IntPredicate condition) {
+        List<String> ids = new ArrayList<>();
+        for (int id = 1; id <= ROWS; id++) {
+            if (condition.test(id)) {
+                ids.add(String.valueOf(id));
+            }
+        }
+        return ids;
+    }
+}
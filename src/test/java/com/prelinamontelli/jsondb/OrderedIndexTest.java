@@ -0,0 +1,148 @@
+package com.prelinamontelli.jsondb;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class OrderedIndexTest {
+    private static final int ROWS = 2000;
+
+    private Table table;
+    private Column score;
+
+    @BeforeEach
+    void setUp() {
+        score = new Column("score", DataType.INTEGER, false, false);
+        table = new Table("t", Arrays.asList(new Column("id", DataType.INTEGER, true, false), score));
+        for (int id = 1; id <= ROWS; id++) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("id", id);
+            row.put("score", score(id));
+            table.insertRow(null, row);
+        }
+        table.createIndex(new IndexDefinition("score_idx", "score", IndexType.ORDERED));
+    }
+
+    @Test
+    void rangeConditionsMatchRowByRowEvaluation() {
+        assertEquals(ids(s -> s < 10), select("score < 10"));
+        assertEquals(ids(s -> s <= 10), select("score <= 10"));
+        assertEquals(ids(s -> s > 990), select("score > 990"));
+        assertEquals(ids(s -> s >= 990), select("score >= 990"));
+        assertEquals(ids(s -> s >= 100 && s <= 120), select("score BETWEEN 100 AND 120"));
+        assertEquals(ids(s -> s >= 6 && s <= 7), select("score > 5.5 AND score < 7.5"));
+        assertEquals(Collections.emptyList(), select("score BETWEEN 30 AND 20"));
+        assertEquals(Collections.emptyList(), select("score > 5000"));
+    }
+
+    @Test
+    void selectiveRangeUsesIndex() {
+        QueryPlan plan = table.plan(bind("score BETWEEN 100 AND 110"), null, false, -1, 0);
+        assertEquals(QueryPlan.AccessType.INDEX_RANGE_SCAN, plan.getAccess().getType());
+        assertEquals("score_idx", plan.getAccess().getIndexName());
+    }
+
+    @Test
+    void rangeFollowsUpdatesAndDeletes() {
+        List<Long> low = table.findRowIds(new WhereCondition(score, WhereCondition.Operator.LT, 5, null));
+        table.updateRows(low.subList(0, 3), Collections.singletonMap("score", 2000));
+        table.deleteRows(low.subList(3, 6));
+        assertEquals(low.subList(6, low.size()), table.findRowIds(new WhereCondition(score, WhereCondition.Operator.LT, 5, null)));
+        assertEquals(low.subList(0, 3), table.findRowIds(new WhereCondition(score, WhereCondition.Operator.GE, 2000, null)));
+    }
+
+    @Test
+    void orderByWithLimitReadsIndexInOrder() {
+        QueryPlan ascending = table.plan(null, score, false, 5, 2);
+        assertEquals(QueryPlan.AccessType.INDEX_ORDER_SCAN, ascending.getAccess().getType());
+        assertEquals(sortedScores(false).subList(2, 7), scores(ascending));
+
+        QueryPlan descending = table.plan(bind("score < 500"), score, true, 4, 0);
+        List<Integer> expected = new ArrayList<>();
+        for (int value : sortedScores(true)) {
+            if (value < 500 && expected.size() < 4) {
+                expected.add(value);
+            }
+        }
+        assertEquals(expected, scores(descending));
+    }
+
+    @Test
+    void orderByPutsNullsLastAscending() {
+        Map<String, Object> row = new HashMap<>();
+        row.put("id", ROWS + 1);
+        row.put("score", null);
+        table.insertRow(null, row);
+        List<Integer> ordered = scores(table.plan(null, score, false, -1, 0));
+        assertEquals(ROWS + 1, ordered.size());
+        assertEquals(sortedScores(false), ordered.subList(0, ROWS));
+        assertNull(ordered.get(ROWS));
+    }
+
+    // 每个值大约出现两次，顺序与 id 无关
+    private static int score(int id) {
+        return id * 7919 % 1000;
+    }
+
+    private Expression bind(String condition) {
+        return ((Statement.Select) SqlParser.parse("SELECT * FROM t WHERE " + condition)).getWhere().bind(table);
+    }
+
+    private List<Integer> select(String condition) {
+        List<Integer> ids = new ArrayList<>();
+        for (Object[] values : rows(table.plan(bind(condition), null, false, -1, 0))) {
+            ids.add((Integer) values[0]);
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+
+    private List<Integer> scores(QueryPlan plan) {
+        List<Integer> scores = new ArrayList<>();
+        for (Object[] values : rows(plan)) {
+            scores.add((Integer) values[1]);
+        }
+        return scores;
+    }
+
+    private List<Object[]> rows(QueryPlan plan) {
+        List<Object[]> rows = new ArrayList<>();
+        try (ReadView view = table.openReadView()) {
+            RowCursor cursor = table.select(view, plan, null);
+            while (cursor.hasNext()) {
+                rows.add(cursor.next());
+            }
+        }
+        return rows;
+    }
+
+    private static List<Integer> ids(IntPredicate matches) {
+        List<Integer> ids = new ArrayList<>();
+        for (int id = 1; id <= ROWS; id++) {
+            if (matches.test(score(id))) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    private static List<Integer> sortedScores(boolean descending) {
+        List<Integer> scores = new ArrayList<>();
+        for (int id = 1; id <= ROWS; id++) {
+            scores.add(score(id));
+        }
+        scores.sort(descending ? Comparator.reverseOrder() : Comparator.naturalOrder());
+        return scores;
+    }
+}
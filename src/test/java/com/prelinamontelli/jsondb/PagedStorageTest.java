@@ -0,0 +1,128 @@
+package com.prelinamontelli.jsondb;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PagedStorageTest {
+    private static final int ROWS = 3000;
+    private static final int PAGE_SIZE = 4096;
+
+    @TempDir
+    Path directory;
+
+    private final List<Column> columns = Arrays.asList(
+        new Column("id", DataType.INTEGER, true, false),
+        new Column("name", DataType.STRING, false, false),
+        new Column("salary", DataType.DOUBLE, false, false),
+        new Column("active", DataType.BOOLEAN, false, false));
+
+    @Test
+    void pagedTableMatchesHeapTable() throws IOException {
+        // 缓冲池只能同时映射两页，读写都会反复换页
+        PageStore pageStore = new PageStore(directory.resolve("pages"), PAGE_SIZE, 2L * PAGE_SIZE);
+        Table paged = new Table("t", columns, pageStore);
+        Table heap = new Table("t", columns);
+        for (Table table : Arrays.asList(paged, heap)) {
+            fill(table);
+            table.updateRows(table.findRowIds(new WhereCondition(columns.get(0), WhereCondition.Operator.LE, 100, null)),
+                Collections.singletonMap("name", "updated"));
+            List<Long> deleted = table.findRowIds(new WhereCondition(columns.get(0), WhereCondition.Operator.GT, 1000, null));
+            table.deleteRows(deleted.subList(0, deleted.size() - 10));
+            table.columnStore().compactIfSparse(); // 删除了大部分行，压缩后字符串复制到新的页文件
+        }
+        assertTrue(paged.columnStore().isPaged());
+        assertEquals(1010, paged.getRowCount());
+        assertEquals(rows(heap), rows(paged));
+        WhereCondition range = new WhereCondition(columns.get(2), WhereCondition.Operator.BETWEEN, 100.0, 200.0);
+        assertEquals(heap.findRowIds(range), paged.findRowIds(range));
+        assertTrue(pageStore.getPool().getMisses() > 100, "misses " + pageStore.getPool().getMisses());
+
+        paged.releaseStorage();
+        assertEquals(0, pageFiles(directory.resolve("pages")));
+    }
+
+    @Test
+    void pagedDatabaseSurvivesRestart() throws IOException {
+        DBConfig config = new DBConfig();
+        config.setPagedStorage(true);
+        config.setPageSizeBytes(PAGE_SIZE);
+        config.setBufferPoolBytes(4L * PAGE_SIZE);
+        List<String> expected;
+        DBManager manager = new DBManager(directory, config);
+        try {
+            manager.createDatabase("db");
+            Database db = manager.getDatabase("db").get();
+            manager.applyChange(db, WalRecord.createTable("t", columns));
+            for (int id = 1; id <= 500; id++) {
+                manager.applyChange(db, WalRecord.insert("t", row(id)));
+            }
+            manager.saveDatabase(db);
+            expected = rows(db.getTable("t").get());
+        } finally {
+            manager.shutdown();
+        }
+
+        manager = new DBManager(directory, config);
+        try {
+            Table table = manager.getDatabase("db").get().getTable("t").get();
+            assertTrue(table.columnStore().isPaged());
+            assertEquals(expected, rows(table));
+        } finally {
+            manager.shutdown();
+        }
+    }
+
+    @Test
+    void rejectsInvalidPageSize() {
+        assertThrows(IllegalArgumentException.class, () -> new PageStore(directory, 1000, 1 << 20));
+        assertThrows(IllegalArgumentException.class, () -> new PageStore(directory, 6144, 1 << 20));
+    }
+
+    private static void fill(Table table) {
+        for (int id = 1; id <= ROWS; id++) {
+            table.insertRow(null, row(id));
+        }
+    }
+
+    private static Map<String, Object> row(int id) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("id", id);
+        // 有的字符串比一页还长，写入时跨页
+        row.put("name", id % 500 == 0 ? String.join("", Collections.nCopies(PAGE_SIZE, "x")) : id % 11 == 0 ? null : "名字 " + id);
+        row.put("salary", id * 0.5);
+        row.put("active", id % 3 == 0 ? null : id % 2 == 0);
+        return row;
+    }
+
+    private static List<String> rows(Table table) {
+        List<String> rows = new ArrayList<>();
+        for (Row row : table.getRows()) {
+            rows.add(row.getValue("id") + "," + row.getValue("name") + "," + row.getValue("salary") + "," + row.getValue("active"));
+        }
+        return rows;
+    }
+
+    private static long pageFiles(Path pages) throws IOException {
+        if (!Files.exists(pages)) {
+            return 0;
+        }
+        try (Stream<Path> files = Files.list(pages)) {
+            return files.filter(file -> file.toString().endsWith(".pages")).count();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.prelinamontelli.jsondb;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ParallelScanTest {
+    private static final int ROWS = 50_000;
+
+    private Table table;
+    private ParallelScan parallel;
+
+    @BeforeEach
+    void setUp() {
+        table = new Table("t", Arrays.asList(
+            new Column("id", DataType.INTEGER, true, false),
+            new Column("group", DataType.INTEGER, false, false),
+            new Column("name", DataType.STRING, false, false)));
+        for (int id = 1; id <= ROWS; id++) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("id", id);
+            row.put("group", id % 10);
+            row.put("name", id % 9 == 0 ? null : "name-" + id % 1000);
+            table.insertRow(null, row);
+        }
+        // 删除一段连续的行和零散的行，分区中的行数不再相同
+        List<Long> deleted = new ArrayList<>(table.getRowIds().subList(10_000, 20_000));
+        for (int i = 30_000; i < ROWS; i += 7) {
+            deleted.add(table.getRowIds().get(i));
+        }
+        table.deleteRows(deleted);
+        table.updateRows(table.findRowIds(table.getColumn("group").get(), 3), Collections.singletonMap("name", "updated"));
+        parallel = new ParallelScan(4, 1000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        parallel.close();
+    }
+
+    @Test
+    void parallelScanReturnsRowsInSequentialOrder() {
+        for (String condition : Arrays.asList(null, "group = 3", "name IS NULL", "group < 5 AND name != \"name-7\"", "id > 45000",
+            "id < 0")) {
+            QueryPlan plan = plan(condition, null, -1, 0);
+            // 不过滤的扫描逐批读取，不分区
+            assertEquals(condition != null, plan.isParallelCandidate(), condition);
+            assertEquals(select(plan, null), select(plan, parallel), condition);
+        }
+    }
+
+    @Test
+    void sortedAndLimitedResultsMatch() {
+        for (int[] limit : new int[][] {{10, 0}, {10, 39_990}, {-1, 5}, {0, 0}}) {
+            QueryPlan sorted = plan("group != 1", "name", limit[0], limit[1]);
+            assertEquals(select(sorted, null), select(sorted, parallel), Arrays.toString(limit));
+            QueryPlan unsorted = plan("group != 1", null, limit[0], limit[1]);
+            assertEquals(select(unsorted, null), select(unsorted, parallel), Arrays.toString(limit));
+        }
+    }
+
+    @Test
+    void parallelScanReadsTheSnapshotOfItsView() {
+        QueryPlan plan = plan("group = 4", null, -1, 0);
+        try (ReadView view = table.openReadView()) {
+            List<List<Object>> expected = rows(table.select(view, plan, null));
+            // 视图打开之后的修改对并行扫描不可见
+            table.deleteRows(table.findRowIds(table.getColumn("group").get(), 4).subList(0, 100));
+            table.updateRows(table.findRowIds(table.getColumn("group").get(), 4), Collections.singletonMap("group", 5));
+            Map<String, Object> row = new HashMap<>();
+            row.put("id", ROWS + 1);
+            row.put("group", 4);
+            table.insertRow(null, row);
+            assertEquals(expected, rows(table.select(view, plan, parallel)));
+        }
+        assertEquals(Collections.singletonList(ROWS + 1), ids(select(plan, parallel)));
+    }
+
+    @Test
+    void rejectsInvalidSettings() {
+        assertThrows(IllegalArgumentException.class, () -> new ParallelScan(0, 1000));
+        assertThrows(IllegalArgumentException.class, () -> new ParallelScan(4, 0));
+    }
+
+    private QueryPlan plan(String condition, String orderBy, int limit, int offset) {
+        Expression filter = condition == null ? null
+            : ((Statement.Select) SqlParser.parse("SELECT * FROM t WHERE " + condition)).getWhere().bind(table);
+        return table.plan(filter, orderBy == null ? null : table.getColumn(orderBy).get(), false, limit, offset);
+    }
+
+    private List<List<Object>> select(QueryPlan plan, ParallelScan scan) {
+        try (ReadView view = table.openReadView()) {
+            return rows(table.select(view, plan, scan));
+        }
+    }
+
+    private static List<List<Object>> rows(RowCursor cursor) {
+        List<List<Object>> rows = new ArrayList<>();
+        while (cursor.hasNext()) {
+            rows.add(Arrays.asList(cursor.next()));
+        }
+        return rows;
+    }
+
+    private static List<Object> ids(List<List<Object>> rows) {
+        List<Object> ids = new ArrayList<>();
+        for (List<Object> row : rows) {
+            ids.add(row.get(0));
+        }
+        return ids;
+    }
+}
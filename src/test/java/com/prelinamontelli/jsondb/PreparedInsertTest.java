@@ -0,0 +1,146 @@
+package com.prelinamontelli.jsondb;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Scanner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PreparedInsertTest {
+    @TempDir
+    Path directory;
+
+    private DBManager manager;
+    private JsonDBCLI cli;
+    private final ByteArrayOutputStream errors = new ByteArrayOutputStream();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        manager = new DBManager(directory, new DBConfig());
+        PrintStream out = new PrintStream(new ByteArrayOutputStream(), true, StandardCharsets.UTF_8.name());
+        PrintStream err = new PrintStream(errors, true, StandardCharsets.UTF_8.name());
+        cli = new JsonDBCLI(manager, manager.openSession(), out, err, () -> { });
+        run("CREATE DATABASE db;",
+            "USE db;",
+            "CREATE TABLE t (id INTEGER PRIMARY KEY, name STRING, score DOUBLE);");
+    }
+
+    @AfterEach
+    void tearDown() {
+        manager.shutdown();
+    }
+
+    @Test
+    void bindsParametersByPosition() {
+        Table table = table();
+        Statement.Insert insert = (Statement.Insert) SqlParser.parse("INSERT INTO t VALUES ($1, \"a\", $2), ($3, $2, 1)");
+        PreparedInsert prepared = PreparedInsert.prepare(table, insert.getRows());
+        assertEquals(3, prepared.getParameterCount());
+        assertEquals(2, prepared.getRowCount());
+
+        List<Object[]> rows = prepared.bind(arguments("1, \"2.5\", 3"));
+        // 常量和参数都按列类型转换，同一个参数可以出现在不同类型的列中
+        assertEquals(Arrays.asList(1, "a", 2.5), Arrays.asList(rows.get(0)));
+        assertEquals(Arrays.asList(3, "2.5", 1.0), Arrays.asList(rows.get(1)));
+        // 每次执行得到新的数组，模板不被修改
+        assertEquals(Arrays.asList(5, "a", 2.5), Arrays.asList(prepared.bind(arguments("5, 2.5, 6")).get(0)));
+
+        IllegalArgumentException count = assertThrows(IllegalArgumentException.class,
+            () -> prepared.bind(arguments("1")));
+        assertEquals("Expected 3 parameters but got 1.", count.getMessage());
+        IllegalArgumentException type = assertThrows(IllegalArgumentException.class, () -> prepared.bind(arguments("1, \"x\", 3")));
+        assertTrue(type.getMessage().startsWith("Parameter $2: "), type.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> PreparedInsert.prepare(table,
+            ((Statement.Insert) SqlParser.parse("INSERT INTO t VALUES (1, \"a\", 1), (2, \"b\")")).getRows()));
+    }
+
+    @Test
+    void executeInsertsAllRowsOrNone() throws IOException {
+        run("PREPARE add AS INSERT INTO t VALUES ($1, $2, NULL), ($1 + 1, $2, 0.5);");
+        assertTrue(errors.size() > 0); // 参数只能直接作为值
+        errors.reset();
+
+        run("PREPARE add AS INSERT INTO t VALUES ($1, $2, NULL), ($3, $2, 0.5);",
+            "EXECUTE add(1, \"x\", 2);",
+            "EXECUTE add(3, \"y\", 4);");
+        assertEquals("", errors());
+        assertEquals(Arrays.asList("1,x,null", "2,x,0.5", "3,y,null", "4,y,0.5"), rows());
+
+        // 第二行与已有的行冲突、参数类型错误、参数个数不符：都不插入任何行
+        run("EXECUTE add(5, \"z\", 1);",
+            "EXECUTE add(\"six\", \"z\", 7);",
+            "EXECUTE add(5, \"z\");",
+            "INSERT INTO t VALUES (8, \"m\", 1), (8, \"n\", 2);");
+        String errors = errors();
+        assertTrue(errors.contains("Duplicate value '1' for primary key column 'id'"), errors);
+        assertTrue(errors.contains("Parameter $1: "), errors);
+        assertTrue(errors.contains("Expected 3 parameters but got 2."), errors);
+        assertTrue(errors.contains("Duplicate value '8'"), errors);
+        assertEquals(4, table().getRowCount());
+    }
+
+    @Test
+    void reprepareForAnotherTableInstanceAndDeallocate() throws IOException {
+        // 切换到另一个数据库中的同名表，列类型不同
+        run("PREPARE add AS INSERT INTO t VALUES ($1, \"2\", $2);",
+            "CREATE DATABASE other;",
+            "USE other;",
+            "CREATE TABLE t (id INTEGER PRIMARY KEY, name INTEGER, score STRING);",
+            "EXECUTE add(1, 3.5);");
+        assertEquals("", errors());
+        assertEquals(Collections.singletonList("1,2,3.5"), rows("other"));
+        assertEquals(2, table("other").getRows().get(0).getValue("name")); // 常量按新的列类型转换
+        assertEquals(0, table("db").getRowCount());
+
+        run("DEALLOCATE add;", "EXECUTE add(2, 1);");
+        assertTrue(errors.size() > 0);
+        assertEquals(1, table("other").getRowCount());
+    }
+
+    private static List<Expression> arguments(String values) {
+        return ((Statement.Execute) SqlParser.parse("EXECUTE p(" + values + ")")).getArguments();
+    }
+
+    // 同一个命令行实例执行所有命令，PREPARE 的语句在多次调用之间保留
+    private void run(String... commands) {
+        cli.run(new Scanner(String.join("\n", commands) + "\n"));
+    }
+
+    private String errors() {
+        return new String(errors.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private Table table() {
+        return table("db");
+    }
+
+    private Table table(String database) {
+        return manager.getDatabase(database).get().getTable("t").get();
+    }
+
+    private List<String> rows() {
+        return rows("db");
+    }
+
+    private List<String> rows(String database) {
+        List<String> rows = new ArrayList<>();
+        for (Row row : table(database).getRows()) {
+            rows.add(row.getValue("id") + "," + row.getValue("name") + "," + row.getValue("score"));
+        }
+        return rows;
+    }
+}
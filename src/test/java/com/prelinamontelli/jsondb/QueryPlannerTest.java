@@ -0,0 +1,130 @@
+package com.prelinamontelli.jsondb;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QueryPlannerTest {
+    private static final int ROWS = 10_000;
+
+    private Table table;
+    private Table unindexed;
+
+    @BeforeEach
+    void setUp() {
+        table = table();
+        table.createIndex(new IndexDefinition("a_idx", "a", IndexType.HASH));
+        table.createIndex(new IndexDefinition("b_idx", "b", IndexType.ORDERED));
+        unindexed = table();
+    }
+
+    @Test
+    void choosesAccessByEstimatedCost() {
+        assertAccess(null, QueryPlan.AccessType.SEQ_SCAN, null);
+        assertAccess("id = 5", QueryPlan.AccessType.KEY_LOOKUP, null);
+        assertAccess("a = 5", QueryPlan.AccessType.INDEX_LOOKUP, "a_idx");
+        assertAccess("b BETWEEN 10 AND 20", QueryPlan.AccessType.INDEX_RANGE_SCAN, "b_idx");
+        // 范围覆盖了几乎所有行，逐行读取索引比顺序扫描更贵
+        assertAccess("b > 5", QueryPlan.AccessType.SEQ_SCAN, null);
+        assertAccess("c = 3", QueryPlan.AccessType.SEQ_SCAN, null);
+        // 主键等值最多一行，比索引等值更便宜
+        assertAccess("a = 5 AND id = 105", QueryPlan.AccessType.KEY_LOOKUP, null);
+        // OR 不能用单个索引
+        assertAccess("a = 5 OR c = 3", QueryPlan.AccessType.SEQ_SCAN, null);
+
+        QueryPlan ordered = table.plan(null, table.getColumn("b").get(), true, 10, 5);
+        assertEquals(QueryPlan.AccessType.INDEX_ORDER_SCAN, ordered.getAccess().getType());
+        assertEquals(QueryPlan.AccessType.SEQ_SCAN,
+            table.plan(null, table.getColumn("c").get(), false, 10, 0).getAccess().getType());
+    }
+
+    @Test
+    void everyPlanReturnsTheSameRowsAsAScan() {
+        for (String condition : Arrays.asList("id = 5", "id = 0", "a = 5", "a = 5 AND c = 3", "b BETWEEN 10 AND 20",
+            "b > 5", "b < 50 AND a = 7", "a = 5 OR c = 3", "NOT a = 5 AND b <= 300", "b >= 9990 AND id != 9995")) {
+            assertEquals(select(unindexed, condition, null, -1, 0), select(table, condition, null, -1, 0), condition);
+        }
+        assertEquals(select(unindexed, "a = 1", "b", 3, 2), select(table, "a = 1", "b", 3, 2));
+        assertEquals(select(unindexed, null, "b", 10, 5), select(table, null, "b", 10, 5));
+    }
+
+    @Test
+    void explainShowsAccessConditionsAndEstimates() {
+        List<String> lines = explain("a = 5 AND c = 3", null, -1, 0);
+        assertEquals(3, lines.size(), lines.toString());
+        assertTrue(lines.get(0).matches("Index Lookup on t using a_idx  \\(cost=\\d+\\.\\d\\d rows=\\d+\\)"), lines.get(0));
+        assertEquals("  Index Cond: a = 5", lines.get(1));
+        assertEquals("  Filter: c = 3", lines.get(2));
+
+        assertTrue(explain("id = 5", null, -1, 0).get(0).startsWith("Key Lookup on t using key "));
+        List<String> scan = explain("c = 3", null, -1, 0);
+        assertTrue(scan.get(0).matches("Seq Scan on t  \\(cost=\\d+\\.\\d\\d rows=\\d+\\)"), scan.get(0));
+        assertEquals("  Vector Filter: c = 3", scan.get(1));
+
+        List<String> limited = explain(null, "b", 10, 5);
+        assertTrue(limited.get(0).matches("Limit 10 Offset 5  \\(cost=\\d+\\.\\d\\d rows=10\\)"), limited.get(0));
+        assertTrue(limited.get(1).startsWith("  -> Index Order Scan on t using b_idx (descending)"), limited.get(1));
+
+        List<String> delete = table.plan(bind(table, "b BETWEEN 10 AND 20"), null, false, -1, 0).explain("Delete", 1);
+        assertEquals("Delete on t", delete.get(0));
+        assertTrue(delete.get(1).startsWith("  -> Index Range Scan on t using b_idx  (cost="), delete.get(1));
+    }
+
+    private void assertAccess(String condition, QueryPlan.AccessType type, String indexName) {
+        QueryPlan plan = table.plan(condition == null ? null : bind(table, condition), null, false, -1, 0);
+        assertEquals(type, plan.getAccess().getType(), condition);
+        if (indexName != null) {
+            assertEquals(indexName, plan.getAccess().getIndexName(), condition);
+        } else if (type == QueryPlan.AccessType.SEQ_SCAN) {
+            assertNull(plan.getAccess().getIndexName(), condition);
+        }
+    }
+
+    private List<String> explain(String condition, String orderBy, int limit, int offset) {
+        return table.plan(condition == null ? null : bind(table, condition),
+            orderBy == null ? null : table.getColumn(orderBy).get(), true, limit, offset).explain(null, 1);
+    }
+
+    private static List<List<Object>> select(Table table, String condition, String orderBy, int limit, int offset) {
+        QueryPlan plan = table.plan(condition == null ? null : bind(table, condition),
+            orderBy == null ? null : table.getColumn(orderBy).get(), true, limit, offset);
+        List<List<Object>> rows = new ArrayList<>();
+        try (ReadView view = table.openReadView()) {
+            RowCursor cursor = table.select(view, plan, null);
+            while (cursor.hasNext()) {
+                rows.add(Arrays.asList(cursor.next()));
+            }
+        }
+        return rows;
+    }
+
+    private static Expression bind(Table table, String condition) {
+        return ((Statement.Select) SqlParser.parse("SELECT * FROM t WHERE " + condition)).getWhere().bind(table);
+    }
+
+    private static Table table() {
+        Table table = new Table("t", Arrays.asList(
+            new Column("id", DataType.INTEGER, true, false),
+            new Column("a", DataType.INTEGER, false, false),
+            new Column("b", DataType.INTEGER, false, false),
+            new Column("c", DataType.INTEGER, false, false)));
+        for (int id = 1; id <= ROWS; id++) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("id", id);
+            row.put("a", id % 100);
+            row.put("b", id);
+            row.put("c", id % 7);
+            table.insertRow(null, row);
+        }
+        return table;
+    }
+}
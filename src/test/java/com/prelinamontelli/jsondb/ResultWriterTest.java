@@ -0,0 +1,131 @@
+package com.prelinamontelli.jsondb;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResultWriterTest {
+    private static final List<String> HEADERS = Arrays.asList("id", "name", "score");
+    private static final int[] POSITIONS = {0, 1, 2};
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void csvQuotesOnlyWhenNeeded() {
+        String csv = write(OutputFormat.CSV, 1 << 16,
+            new Object[] {1, "plain", 1.5},
+            new Object[] {2, null, null},
+            new Object[] {3, "", -2.0},
+            new Object[] {4, " padded", 0.0},
+            new Object[] {5, "a,b", 1.0},
+            new Object[] {6, "say \"hi\"", 1.0},
+            new Object[] {7, "two\nlines", 1.0},
+            new Object[] {8, "中文", 1.0});
+        assertEquals("id,name,score\n"
+            + "1,plain,1.5\n"
+            + "2,,\n"             // NULL 是不加引号的空字段
+            + "3,\"\",-2.0\n"     // 空字符串加引号，与 NULL 区分
+            + "4,\" padded\",0.0\n"
+            + "5,\"a,b\",1.0\n"
+            + "6,\"say \"\"hi\"\"\",1.0\n"
+            + "7,\"two\nlines\",1.0\n"
+            + "8,中文,1.0\n", csv);
+    }
+
+    @Test
+    void csvOutputCanBeCopiedBack() throws IOException {
+        List<Object[]> rows = new ArrayList<>();
+        for (int id = 1; id <= 5000; id++) {
+            String name = id % 7 == 0 ? null : id % 7 == 1 ? "" : id % 7 == 2 ? "q\"" + id + "\"" : id % 7 == 3 ? "x,\n" + id : " n" + id;
+            rows.add(new Object[] {id, name, id % 11 == 0 ? null : id * 0.25});
+        }
+        // 阈值很小，每行都会写出，行不会因为分块写出而截断
+        Path file = directory.resolve("out.csv");
+        Files.write(file, write(OutputFormat.CSV, 16, rows.toArray(new Object[0][])).getBytes(StandardCharsets.UTF_8));
+
+        DBManager manager = new DBManager(directory, new DBConfig());
+        try {
+            manager.createDatabase("db");
+            Database db = manager.getDatabase("db").get();
+            manager.applyChange(db, WalRecord.createTable("t", Arrays.asList(
+                new Column("id", DataType.INTEGER, true, false),
+                new Column("name", DataType.STRING, false, false),
+                new Column("score", DataType.DOUBLE, false, false))));
+            assertEquals(rows.size(), manager.copyFrom(db, "t", file, CopyFormat.CSV, true));
+            List<Row> copied = db.getTable("t").get().getRows();
+            for (int i = 0; i < rows.size(); i++) {
+                Row row = copied.get(i);
+                assertEquals(Arrays.asList(rows.get(i)), Arrays.asList(row.getValue("id"), row.getValue("name"), row.getValue("score")));
+            }
+        } finally {
+            manager.shutdown();
+        }
+    }
+
+    @Test
+    void ndjsonEscapesStringsAndNonFiniteNumbers() throws IOException {
+        String ndjson = write(OutputFormat.NDJSON, 1 << 16,
+            new Object[] {1, "tab\there \"q\" back\\slash\nend\u0001", 1.5},
+            new Object[] {2, null, Double.NaN},
+            new Object[] {3, "", Double.POSITIVE_INFINITY},
+            new Object[] {4L, "中文", true});
+        String[] lines = ndjson.split("\n");
+        assertEquals(4, lines.length);
+        assertEquals("{\"id\":1,\"name\":\"tab\\there \\\"q\\\" back\\\\slash\\nend\\u0001\",\"score\":1.5}", lines[0]);
+        assertEquals("{\"id\":2,\"name\":null,\"score\":\"NaN\"}", lines[1]);
+        assertEquals("{\"id\":3,\"name\":\"\",\"score\":\"Infinity\"}", lines[2]);
+        assertEquals("{\"id\":4,\"name\":\"中文\",\"score\":true}", lines[3]);
+        // 每行都是合法的 JSON，解析后得到原来的值
+        JsonNode first = new ObjectMapper().readTree(lines[0]);
+        assertEquals("tab\there \"q\" back\\slash\nend\u0001", first.get("name").asText());
+        assertTrue(new ObjectMapper().readTree(lines[1]).get("name").isNull());
+    }
+
+    @Test
+    void tableAlignsColumnsOfFirstRows() {
+        ResultWriter writer = ResultWriter.create(OutputFormat.TABLE, 1 << 16, 2);
+        String table = write(writer,
+            new Object[] {1, "a", null},
+            new Object[] {22, "bbbb", 3.0},
+            new Object[] {333, "longer than width", 4.0});
+        assertEquals("id | name | score\n"
+            + "---+------+------\n"
+            + "1  | a    | NULL\n"
+            + "22 | bbbb | 3.0\n"
+            + "333 | longer than width | 4.0\n", table);
+    }
+
+    private static String write(OutputFormat format, int flushChars, Object[]... rows) {
+        ResultWriter writer = ResultWriter.create(format, flushChars, 100);
+        assertEquals(format, writer.getFormat());
+        return write(writer, rows);
+    }
+
+    private static String write(ResultWriter writer, Object[]... rows) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream out;
+        try {
+            out = new PrintStream(output, true, StandardCharsets.UTF_8.name());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        assertEquals(rows.length, writer.write(out, HEADERS, RowCursor.of(Arrays.asList(rows)), POSITIONS));
+        out.flush();
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
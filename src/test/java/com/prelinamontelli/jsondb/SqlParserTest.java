@@ -0,0 +1,83 @@
+package com.prelinamontelli.jsondb;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SqlParserTest {
+    @Test
+    void notBindsTighterThanAndWhichBindsTighterThanOr() {
+        Expression where = where("a = 1 OR b = 2 AND NOT c = 3 OR d = 4");
+        Expression.Or or = assertInstanceOf(Expression.Or.class, where);
+        assertEquals(3, or.getOperands().size());
+        Expression.And and = assertInstanceOf(Expression.And.class, or.getOperands().get(1));
+        assertInstanceOf(Expression.Not.class, and.getOperands().get(1));
+        // toString 给作为子表达式的 AND / OR 加括号，显示出树的结构
+        assertEquals("a = 1 OR (b = 2 AND NOT c = 3) OR d = 4", where.toString());
+
+        assertEquals("(a = 1 OR b = 2) AND c = 3", where("(a = 1 OR b = 2) AND c = 3").toString());
+        assertEquals("NOT (a = 1 AND b = 2)", where("NOT (a = 1 AND b = 2)").toString());
+        assertEquals("NOT a = 1 AND b = 2", where("NOT a = 1 AND b = 2").toString());
+        assertInstanceOf(Expression.And.class, where("NOT a = 1 AND b = 2"));
+        // BETWEEN 中的 AND 不是逻辑运算符
+        Expression.And between = assertInstanceOf(Expression.And.class, where("a BETWEEN 1 AND 5 AND b IS NOT NULL"));
+        assertInstanceOf(Expression.Between.class, between.getOperands().get(0));
+        assertInstanceOf(Expression.IsNull.class, between.getOperands().get(1));
+    }
+
+    @Test
+    void parsesSelectClauses() {
+        Statement.Select select = (Statement.Select) SqlParser.parse(
+            "select name, COUNT(*) from emp where salary >= -1.5 group by name order by name desc limit 10 offset 5;");
+        assertEquals("emp", select.getTable());
+        assertEquals(2, select.getItems().size());
+        assertEquals(Collections.singletonList("name"), select.getGroupBy());
+        assertEquals("salary >= -1.5", select.getWhere().toString());
+        assertEquals(Integer.valueOf(10), select.getLimit());
+        assertEquals(5, select.getOffset());
+
+        Statement.Select plain = (Statement.Select) SqlParser.parse("SELECT * FROM emp");
+        assertNull(plain.getWhere());
+        assertNull(plain.getLimit());
+    }
+
+    @Test
+    void parsesInsertValuesAndParameters() {
+        Statement.Insert insert = (Statement.Insert) SqlParser.parse("INSERT INTO t VALUES (1, 'a ''b'' \"c\"', NULL), ($1, TRUE, -2)");
+        assertEquals("t", insert.getTable());
+        assertEquals(2, insert.getRows().size());
+        assertEquals("a 'b' \"c\"", ((Expression.Literal) insert.getRows().get(0).get(1)).getValue());
+        assertNull(((Expression.Literal) insert.getRows().get(0).get(2)).getValue());
+        assertEquals(1, ((Expression.Parameter) insert.getRows().get(1).get(0)).getIndex());
+        assertEquals(Arrays.asList("$1", "TRUE", "-2"), Arrays.asList(insert.getRows().get(1).get(0).toString(),
+            insert.getRows().get(1).get(1).toString().toUpperCase(), insert.getRows().get(1).get(2).toString()));
+    }
+
+    @Test
+    void reportsSyntaxErrorsWithPosition() {
+        assertSyntaxError("SELECT * FROM t WHERE a = 1 AND", "Syntax error at position 32");
+        assertSyntaxError("SELECT * FROM t WHERE (a = 1", "expected ')' but found end of statement");
+        assertSyntaxError("SELECT * FROM t WHERE a = 1 b", "Syntax error at position 29");
+        assertSyntaxError("SELECT FROM t", "Syntax error at position 13: expected FROM but found 't'"); // FROM 被当作列名
+        assertSyntaxError("PREPARE p AS SELECT * FROM t", "only INSERT statements can be prepared");
+        assertSyntaxError("SELECT * FROM t WHERE a = \"open", "Unterminated string starting at position 27");
+        assertSyntaxError("SELECT * FROM t WHERE a = $0", "Invalid parameter $0 at position 27");
+        assertSyntaxError("SELECT * FROM t WHERE a # 1", "Unexpected character '#' at position 25");
+    }
+
+    private static void assertSyntaxError(String sql, String message) {
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class, () -> SqlParser.parse(sql));
+        assertTrue(error.getMessage().contains(message), error.getMessage());
+    }
+
+    private static Expression where(String condition) {
+        return ((Statement.Select) SqlParser.parse("SELECT * FROM t WHERE " + condition)).getWhere();
+    }
+}
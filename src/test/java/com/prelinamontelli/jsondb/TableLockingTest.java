@@ -0,0 +1,129 @@
+package com.prelinamontelli.jsondb;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TableLockingTest {
+    private static final int WRITERS = 4;
+    private static final int ROWS = 500;
+
+    @TempDir
+    Path directory;
+
+    private DBManager manager;
+    private Database db;
+    private final ExecutorService executor = Executors.newFixedThreadPool(WRITERS);
+
+    @BeforeEach
+    void setUp() throws IOException {
+        manager = new DBManager(directory, new DBConfig());
+        manager.createDatabase("db");
+        db = manager.getDatabase("db").get();
+        for (int i = 0; i < WRITERS; i++) {
+            manager.applyChange(db, WalRecord.createTable("t" + i, Arrays.asList(
+                new Column("id", DataType.INTEGER, true, false),
+                new Column("writer", DataType.INTEGER, false, false))));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+        manager.shutdown();
+    }
+
+    @Test
+    void writerIsNotBlockedByLockOnAnotherTable() throws Exception {
+        Table locked = db.getTable("t1").get();
+        long stamp = locked.lock().writeLock();
+        Future<?> other;
+        Future<?> same;
+        try {
+            other = executor.submit(() -> insert("t0", 1, 0));
+            other.get(10, TimeUnit.SECONDS);
+            // 同一个表的写入要等锁释放
+            same = executor.submit(() -> insert("t1", 1, 1));
+            assertThrows(TimeoutException.class, () -> same.get(200, TimeUnit.MILLISECONDS));
+            assertFalse(same.isDone());
+        } finally {
+            locked.lock().unlockWrite(stamp);
+        }
+        same.get(10, TimeUnit.SECONDS);
+        assertEquals(1, locked.getRowCount());
+    }
+
+    @Test
+    void concurrentWritersOnDifferentTablesAreAllLoggedAndReplayed() throws Exception {
+        List<Future<?>> futures = new ArrayList<>();
+        for (int writer = 0; writer < WRITERS; writer++) {
+            int current = writer;
+            futures.add(executor.submit(() -> {
+                for (int id = 1; id <= ROWS; id++) {
+                    insert("t" + current, id, current);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        for (int writer = 0; writer < WRITERS; writer++) {
+            assertEquals(ROWS, db.getTable("t" + writer).get().getRowCount());
+        }
+        assertEquals(WRITERS + WRITERS * ROWS, db.getLastLsn());
+
+        // 在关闭前复制数据文件，模拟崩溃：快照中只有空库，所有写入都靠 WAL 重放恢复
+        Path crashed = Files.createDirectory(directory.resolve("crashed"));
+        for (String file : Arrays.asList("db" + StorageFormat.JSON.getFileExtension(), "db.wal")) {
+            Files.copy(directory.resolve(file), crashed.resolve(file));
+        }
+        DBManager recovered = new DBManager(crashed, new DBConfig());
+        try {
+            Database reloaded = recovered.getDatabase("db").get();
+            for (int writer = 0; writer < WRITERS; writer++) {
+                Table table = reloaded.getTable("t" + writer).get();
+                assertEquals(ROWS, table.getRowCount());
+                assertEquals(Collections.nCopies(ROWS, writer), writers(table));
+            }
+        } finally {
+            recovered.shutdown();
+        }
+    }
+
+    private Void insert(String table, int id, int writer) throws IOException {
+        Map<String, Object> row = new HashMap<>();
+        row.put("id", id);
+        row.put("writer", writer);
+        manager.applyChange(db, WalRecord.insert(table, row));
+        return null;
+    }
+
+    private static List<Object> writers(Table table) {
+        List<Object> writers = new ArrayList<>();
+        for (Row row : table.getRows()) {
+            writers.add(row.getValue("writer"));
+        }
+        return writers;
+    }
+}
@@ -0,0 +1,156 @@
+package com.prelinamontelli.jsondb;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TableMvccTest {
+    private Column id;
+    private Column amount;
+    private Table table;
+
+    @BeforeEach
+    void setUp() {
+        id = new Column("id", DataType.INTEGER, true, false);
+        amount = new Column("amount", DataType.INTEGER, false, false);
+        table = new Table("t", Arrays.asList(id, amount));
+        table.createIndex(new IndexDefinition("amount_idx", "amount", IndexType.ORDERED));
+        insert(1, 10);
+        insert(2, 20);
+        insert(3, 30);
+    }
+
+    @Test
+    void viewSeesRowsAsOfOpeningDespiteConcurrentWrites() throws Exception {
+        try (ReadView view = table.openReadView()) {
+            // 另一个线程像 DBManager 一样在写锁内更新、删除和插入
+            CompletableFuture.runAsync(() -> write(() -> {
+                table.updateRows(Collections.singletonList(rowId(2)), Collections.singletonMap("amount", 99));
+                table.deleteRows(Collections.singletonList(rowId(3)));
+                insert(4, 40);
+            })).get(30, TimeUnit.SECONDS);
+
+            assertEquals(Arrays.asList("1=10", "2=20", "3=30"), select(view, null));
+            // 范围条件和按列查找都按视图中的值匹配：行 2 现在是 99，行 3 已删除，行 4 是之后插入的
+            assertEquals(Arrays.asList("2=20", "3=30"), select(view, between(15, 45)));
+            assertEquals(Arrays.asList(Collections.singletonList("2=20"), Collections.singletonList("3=30"), Collections.emptyList()),
+                lookup(view, id, Arrays.asList(2, 3, 4)));
+            assertEquals(Collections.singletonList(Collections.singletonList("2=20")), lookup(view, amount, Collections.singletonList(20)));
+        }
+        try (ReadView view = table.openReadView()) {
+            assertEquals(Arrays.asList("1=10", "2=99", "4=40"), select(view, null));
+            assertEquals(Collections.singletonList("4=40"), select(view, between(15, 45)));
+        }
+        assertEquals(0, table.versionedRowCount());
+    }
+
+    @Test
+    void pruningKeepsVersionsNeededByOlderView() {
+        ReadView oldest = table.openReadView();
+        write(() -> table.updateRows(Collections.singletonList(rowId(1)), Collections.singletonMap("amount", 11)));
+        ReadView middle = table.openReadView();
+        write(() -> table.updateRows(Collections.singletonList(rowId(1)), Collections.singletonMap("amount", 12)));
+
+        middle.close(); // 回收只有 middle 需要的版本，oldest 需要的版本必须保留
+        write(() -> table.deleteRows(Collections.singletonList(rowId(2))));
+        assertEquals(Arrays.asList("1=10", "2=20", "3=30"), select(oldest, null));
+        assertEquals(Collections.singletonList("1=10"), select(oldest, between(5, 10)));
+        assertTrue(table.versionedRowCount() > 0);
+
+        oldest.close();
+        assertEquals(0, table.versionedRowCount());
+        try (ReadView view = table.openReadView()) {
+            assertEquals(Arrays.asList("1=12", "3=30"), select(view, null));
+        }
+    }
+
+    @Test
+    void keepsEveryVersionAViewCanStillSee() {
+        ReadView first = table.openReadView();
+        write(() -> table.updateRows(Collections.singletonList(rowId(1)), Collections.singletonMap("amount", 11)));
+        ReadView second = table.openReadView();
+        write(() -> table.updateRows(Collections.singletonList(rowId(1)), Collections.singletonMap("amount", 12)));
+        ReadView third = table.openReadView();
+        write(() -> table.deleteRows(Collections.singletonList(rowId(1))));
+
+        first.close(); // 关闭最旧的视图后，后打开的视图仍然看到各自版本上的值
+        write(() -> insert(5, 50));
+        assertEquals(Collections.singletonList("1=11"), select(second, between(0, 15)));
+        assertEquals(Collections.singletonList("1=12"), select(third, between(0, 15)));
+        second.close();
+        assertEquals(Arrays.asList("1=12", "2=20", "3=30"), select(third, null));
+        third.close();
+        assertEquals(0, table.versionedRowCount());
+    }
+
+    @Test
+    void savesNoVersionsWithoutOpenViews() {
+        write(() -> {
+            table.updateRows(Collections.singletonList(rowId(1)), Collections.singletonMap("amount", 11));
+            table.deleteRows(Collections.singletonList(rowId(2)));
+        });
+        assertEquals(0, table.versionedRowCount());
+    }
+
+    private void insert(int key, int value) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("id", key);
+        row.put("amount", value);
+        table.insertRow(null, row);
+    }
+
+    private long rowId(int key) {
+        return table.findRowIds(id, key).get(0);
+    }
+
+    private void write(Runnable change) {
+        long stamp = table.lock().writeLock();
+        try {
+            change.run();
+        } finally {
+            table.lock().unlockWrite(stamp);
+        }
+    }
+
+    private Expression between(int low, int high) {
+        return new Expression.Between(new Expression.ColumnRef("amount"),
+            new Expression.Literal(String.valueOf(low), false), new Expression.Literal(String.valueOf(high), false)).bind(table);
+    }
+
+    private List<String> select(ReadView view, Expression filter) {
+        List<String> rows = new ArrayList<>();
+        RowCursor cursor = table.select(view, table.plan(filter, null, false, -1, 0), null);
+        while (cursor.hasNext()) {
+            rows.add(text(cursor.next()));
+        }
+        Collections.sort(rows);
+        return rows;
+    }
+
+    private List<List<String>> lookup(ReadView view, Column column, List<Object> keys) {
+        List<List<String>> results = new ArrayList<>();
+        for (List<Object[]> matches : table.lookup(view, column, keys, null)) {
+            List<String> rows = new ArrayList<>();
+            for (Object[] values : matches) {
+                rows.add(text(values));
+            }
+            results.add(rows);
+        }
+        return results;
+    }
+
+    private static String text(Object[] values) {
+        return values[0] + "=" + values[1];
+    }
+}
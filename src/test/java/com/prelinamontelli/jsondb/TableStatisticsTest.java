@@ -0,0 +1,95 @@
+package com.prelinamontelli.jsondb;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TableStatisticsTest {
+    private Table table;
+
+    @BeforeEach
+    void setUp() {
+        table = new Table("emp", Arrays.asList(
+            new Column("id", DataType.INTEGER, true, false),
+            new Column("salary", DataType.DOUBLE, false, false)));
+        for (int i = 1; i <= 50; i++) {
+            insert(i, 1000.0 + i);
+        }
+        table.analyze();
+    }
+
+    @Test
+    void rollbackRestoresDistributionsAndModificationCount() {
+        TableStatistics before = table.getStatistics().copy();
+        table.beginUndoLog();
+        insert(100, 99999.0);
+        table.updateRows(Collections.singletonList(rowId(1)), Collections.singletonMap("salary", -5.0));
+        table.deleteRows(Collections.singletonList(rowId(2)));
+        assertEquals(100, table.getStatistics().get(0).getMax());
+        table.endUndoLog(true);
+
+        TableStatistics after = table.getStatistics();
+        assertEquals(before.getModifications(), after.getModifications());
+        for (int column = 0; column < 2; column++) {
+            assertDistributionEquals(before.get(column), after.get(column));
+        }
+        assertEquals(50, after.get(0).getMax());
+        assertEquals(1050.0, after.get(1).getMax());
+        assertEquals(1001.0, after.get(1).getMin());
+    }
+
+    @Test
+    void committedChangesStayInStatistics() {
+        table.beginUndoLog();
+        insert(100, 99999.0);
+        table.endUndoLog(false);
+
+        TableStatistics after = table.getStatistics();
+        assertEquals(1, after.getModifications());
+        assertEquals(100, after.get(0).getMax());
+        assertEquals(51, after.get(0).getRows());
+    }
+
+    @Test
+    void rollbackAfterFailedStatementKeepsLaterChangesCounted() {
+        table.beginUndoLog();
+        insert(100, 99999.0);
+        table.endUndoLog(true);
+        insert(60, 2000.0);
+
+        TableStatistics after = table.getStatistics();
+        assertEquals(1, after.getModifications());
+        assertEquals(60, after.get(0).getMax());
+    }
+
+    private static void assertDistributionEquals(ColumnDistribution expected, ColumnDistribution actual) {
+        assertEquals(expected.getRows(), actual.getRows());
+        assertEquals(expected.getNulls(), actual.getNulls());
+        assertEquals(expected.getMin(), actual.getMin());
+        assertEquals(expected.getMax(), actual.getMax());
+        assertEquals(expected.getBounds(), actual.getBounds());
+        assertArrayEquals(expected.getCounts(), actual.getCounts());
+        assertArrayEquals(expected.getSketch(), actual.getSketch());
+        assertEquals(expected.getDistinctCount(), actual.getDistinctCount());
+    }
+
+    private void insert(int id, double salary) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("id", id);
+        row.put("salary", salary);
+        table.insertRow(null, row);
+    }
+
+    private long rowId(int id) {
+        List<Long> rowIds = table.findRowIds(table.getColumn("id").get(), id);
+        return rowIds.get(0);
+    }
+}
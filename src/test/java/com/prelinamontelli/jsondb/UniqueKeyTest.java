@@ -0,0 +1,118 @@
+package com.prelinamontelli.jsondb;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UniqueKeyTest {
+    private Table table;
+    private Column id;
+    private Column email;
+
+    @BeforeEach
+    void setUp() {
+        id = new Column("id", DataType.INTEGER, true, false);
+        email = new Column("email", DataType.STRING, false, true);
+        table = new Table("users", Arrays.asList(id, email, new Column("name", DataType.STRING, false, false)));
+        table.createIndex(new IndexDefinition("name_idx", "name", IndexType.HASH));
+        insert(1, "a@x", "Ann");
+        insert(2, "b@x", "Bob");
+    }
+
+    @Test
+    void rejectsDuplicatePrimaryKeyAndUniqueValue() {
+        IllegalStateException error = assertThrows(IllegalStateException.class, () -> insert(1, "c@x", "Cid"));
+        assertEquals("Duplicate value '1' for primary key column 'id' in table 'users'.", error.getMessage());
+        error = assertThrows(IllegalStateException.class, () -> insert(3, "a@x", "Cid"));
+        assertEquals("Duplicate value 'a@x' for unique column 'email' in table 'users'.", error.getMessage());
+        // 转换为列类型之后再比较：字符串 "2" 与已有的主键 2 重复
+        assertThrows(IllegalStateException.class, () -> insert("2", "d@x", "Dan"));
+
+        assertEquals(Arrays.asList("1,a@x,Ann", "2,b@x,Bob"), rows());
+        assertTrue(table.findRowIds(table.getColumn("name").get(), "Cid").isEmpty());
+    }
+
+    @Test
+    void primaryKeyCannotBeNullButUniqueColumnCan() {
+        assertThrows(IllegalArgumentException.class, () -> insert(null, "c@x", "Cid"));
+        insert(3, null, "Cid");
+        insert(4, null, "Dan");
+        assertEquals(2, table.findRowIds(email, null).size());
+        assertThrows(IllegalArgumentException.class,
+            () -> table.updateRows(table.findRowIds(id, 3), Collections.singletonMap("id", null)));
+    }
+
+    @Test
+    void updateChecksOtherRowsOnly() {
+        table.updateRows(table.findRowIds(id, 1), Collections.singletonMap("email", "a@x")); // 值原本就属于这一行
+        assertThrows(IllegalStateException.class,
+            () -> table.updateRows(table.findRowIds(id, 1), Collections.singletonMap("email", "b@x")));
+        assertThrows(IllegalStateException.class,
+            () -> table.updateRows(table.getRowIds(), Collections.singletonMap("email", "z@x")));
+        assertEquals(Arrays.asList("1,a@x,Ann", "2,b@x,Bob"), rows());
+
+        // 修改或删除之后原来的值可以再次使用
+        table.updateRows(table.findRowIds(id, 1), Collections.singletonMap("email", "c@x"));
+        table.deleteRows(table.findRowIds(id, 2));
+        insert(2, "a@x", "Ann");
+        insert(3, "b@x", "Bob");
+        assertEquals(Arrays.asList("1,c@x,Ann", "2,a@x,Ann", "3,b@x,Bob"), rows());
+        assertEquals(1, table.findRowIds(email, "a@x").size());
+    }
+
+    @Test
+    void batchAppendIsAllOrNothing() {
+        List<Object[]> batch = new ArrayList<>();
+        batch.add(new Object[] {3, "c@x", "Cid"});
+        batch.add(new Object[] {4, "d@x", "Dan"});
+        batch.add(new Object[] {5, "c@x", "Eve"}); // 与本批中的行重复
+        assertThrows(IllegalStateException.class, () -> table.appendRows(null, batch));
+        assertEquals(Arrays.asList("1,a@x,Ann", "2,b@x,Bob"), rows());
+        assertTrue(table.findRowIds(id, 3).isEmpty());
+
+        batch.set(2, new Object[] {5, "e@x", "Eve"});
+        table.appendRows(null, batch);
+        assertEquals(5, table.getRowCount());
+        assertEquals(1, table.findRowIds(table.getColumn("name").get(), "Dan").size());
+    }
+
+    @Test
+    void equalityOnKeyColumnUsesKeyLookup() {
+        List<Object[]> batch = new ArrayList<>();
+        for (int key = 3; key <= 1000; key++) {
+            batch.add(new Object[] {key, key + "@x", "user" + key});
+        }
+        table.appendRows(null, batch);
+        Expression filter = ((Statement.Select) SqlParser.parse("SELECT * FROM users WHERE email = \"b@x\"")).getWhere().bind(table);
+        QueryPlan plan = table.plan(filter, null, false, -1, 0);
+        assertEquals(QueryPlan.AccessType.KEY_LOOKUP, plan.getAccess().getType());
+        assertEquals(table.findRowIds(id, 2), table.findRowIds(plan));
+    }
+
+    private void insert(Object key, String emailValue, String name) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("id", key);
+        row.put("email", emailValue);
+        row.put("name", name);
+        table.insertRow(null, row);
+    }
+
+    private List<String> rows() {
+        List<String> rows = new ArrayList<>();
+        for (Row row : table.getRows()) {
+            rows.add(row.getValue("id") + "," + row.getValue("email") + "," + row.getValue("name"));
+        }
+        Collections.sort(rows);
+        return rows;
+    }
+}
@@ -0,0 +1,246 @@
+package com.prelinamontelli.jsondb;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WriteAheadLogTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @TempDir
+    Path directory;
+
+    private Path walPath;
+    private DBConfig config;
+
+    @BeforeEach
+    void setUp() {
+        walPath = directory.resolve("db.wal");
+        config = new DBConfig();
+        config.setWalSyncMode(WalSyncMode.ALWAYS);
+    }
+
+    @Test
+    void recoversRecordsInLsnOrder() throws IOException {
+        try (WriteAheadLog wal = open()) {
+            assertEquals(0, wal.recover(0, record -> { }));
+            for (int i = 1; i <= 3; i++) {
+                wal.sync(wal.append(insert(i)));
+            }
+        }
+        try (WriteAheadLog wal = open()) {
+            assertEquals(Arrays.asList(1L, 2L, 3L), recover(wal, 0));
+            assertEquals(3, wal.getRecordCount());
+            assertEquals(4, wal.append(insert(4)));
+        }
+    }
+
+    @Test
+    void skipsRecordsIncludedInSnapshot() throws IOException {
+        try (WriteAheadLog wal = open()) {
+            for (int i = 1; i <= 4; i++) {
+                wal.append(insert(i));
+            }
+        }
+        try (WriteAheadLog wal = open()) {
+            assertEquals(Arrays.asList(3L, 4L), recover(wal, 2));
+            assertEquals(4, wal.getLastLsn());
+        }
+    }
+
+    @Test
+    void truncatesTornTailToLastCompleteRecord() throws IOException {
+        try (WriteAheadLog wal = open()) {
+            wal.recover(0, record -> { });
+            wal.append(insert(1));
+            wal.append(insert(2));
+        }
+        long completeSize = Files.size(walPath);
+        String third = line(insert(3), 3);
+        Files.write(walPath, third.substring(0, third.length() / 2).getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        try (WriteAheadLog wal = open()) {
+            assertEquals(Arrays.asList(1L, 2L), recover(wal, 0));
+            assertEquals(completeSize, Files.size(walPath));
+            assertEquals(completeSize, wal.getSizeBytes());
+            assertEquals(3, wal.append(insert(3)));
+        }
+        try (WriteAheadLog wal = open()) {
+            assertEquals(Arrays.asList(1L, 2L, 3L), recover(wal, 0));
+        }
+    }
+
+    @Test
+    void truncatesCorruptLastLine() throws IOException {
+        try (WriteAheadLog wal = open()) {
+            wal.recover(0, record -> { });
+            wal.append(insert(1));
+        }
+        long completeSize = Files.size(walPath);
+        Files.write(walPath, "{\"lsn\":2,\"type\":\"INS\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        try (WriteAheadLog wal = open()) {
+            assertEquals(Collections.singletonList(1L), recover(wal, 0));
+            assertEquals(completeSize, Files.size(walPath));
+        }
+    }
+
+    @Test
+    void stopsAtRecordSplitAcrossSegmentBoundary() throws IOException {
+        // 记录 3 的前半部分在封存段末尾，后半部分在活动段开头，之后还有一条完整的记录 4
+        String third = line(insert(3), 3);
+        int split = third.length() / 2;
+        Files.write(directory.resolve("db.wal.3"),
+            (line(insert(1), 1) + line(insert(2), 2) + third.substring(0, split)).getBytes(StandardCharsets.UTF_8));
+        Files.write(directory.resolve("db.wal.5"), line(insert(5), 5).getBytes(StandardCharsets.UTF_8));
+        Files.write(walPath, (third.substring(split) + line(insert(4), 4)).getBytes(StandardCharsets.UTF_8));
+
+        try (WriteAheadLog wal = open()) {
+            assertEquals(Arrays.asList(1L, 2L), recover(wal, 0));
+            assertEquals(2, wal.getLastLsn());
+            // 截断后的封存段按实际的最后 LSN 命名，断点之后的段被删除
+            assertEquals(Collections.singletonList("db.wal.2"), sealedSegments());
+            assertEquals(0, Files.size(walPath));
+            assertEquals(3, wal.append(insert(3)));
+        }
+        try (WriteAheadLog wal = open()) {
+            assertEquals(Arrays.asList(1L, 2L, 3L), recover(wal, 0));
+        }
+    }
+
+    @Test
+    void keepsReadingPastTornSegmentCoveredBySnapshot() throws IOException {
+        String second = line(insert(2), 2);
+        Files.write(directory.resolve("db.wal.2"),
+            (line(insert(1), 1) + second.substring(0, second.length() / 2)).getBytes(StandardCharsets.UTF_8));
+        Files.write(walPath, line(insert(3), 3).getBytes(StandardCharsets.UTF_8));
+
+        try (WriteAheadLog wal = open()) {
+            assertEquals(Collections.singletonList(3L), recover(wal, 2));
+            assertEquals(Collections.singletonList("db.wal.2"), sealedSegments());
+        }
+    }
+
+    @Test
+    void rotationSealsSegmentsAndDeletesCheckpointedOnes() throws IOException {
+        try (WriteAheadLog wal = open()) {
+            wal.recover(0, record -> { });
+            wal.append(insert(1));
+            wal.append(insert(2));
+            wal.rotate();
+            assertEquals(0, wal.getSizeBytes());
+            wal.rotate(); // 活动段为空时不封存
+            wal.append(insert(3));
+            wal.rotate();
+            wal.append(insert(4));
+            assertEquals(1, wal.getRecordCount());
+            assertEquals(Arrays.asList("db.wal.2", "db.wal.3"), sealedSegments());
+        }
+        try (WriteAheadLog wal = open()) {
+            assertEquals(Arrays.asList(1L, 2L, 3L, 4L), recover(wal, 0));
+            wal.deleteSealedSegmentsUpTo(2);
+            assertEquals(Collections.singletonList("db.wal.3"), sealedSegments());
+        }
+        try (WriteAheadLog wal = open()) {
+            assertEquals(Arrays.asList(3L, 4L), recover(wal, 2));
+            wal.delete();
+        }
+        assertTrue(sealedSegments().isEmpty());
+        assertFalse(Files.exists(walPath));
+    }
+
+    @Test
+    void groupCommitSyncsConcurrentCommitters() throws Exception {
+        int committers = 16;
+        long delayMillis = 100;
+        config.setWalSyncMode(WalSyncMode.GROUP);
+        config.setWalGroupCommitDelayMillis(delayMillis);
+        ExecutorService executor = Executors.newFixedThreadPool(committers);
+        try (WriteAheadLog wal = open()) {
+            wal.recover(0, record -> { });
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Long>> lsns = new ArrayList<>();
+            for (int i = 0; i < committers; i++) {
+                int id = i;
+                lsns.add(executor.submit(() -> {
+                    start.await();
+                    long lsn = wal.append(insert(id));
+                    wal.sync(lsn);
+                    return lsn;
+                }));
+            }
+            long started = System.nanoTime();
+            start.countDown();
+            List<Long> committed = new ArrayList<>();
+            for (Future<Long> lsn : lsns) {
+                committed.add(lsn.get(30, TimeUnit.SECONDS));
+            }
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+            // 每个提交者各自等待一次时至少需要 committers * delayMillis；组提交时同一组共享一次等待和 fsync
+            assertTrue(elapsedMillis < committers * delayMillis / 2, "group commit took " + elapsedMillis + " ms");
+            Collections.sort(committed);
+            List<Long> expected = new ArrayList<>();
+            for (long lsn = 1; lsn <= committers; lsn++) {
+                expected.add(lsn);
+            }
+            assertEquals(expected, committed);
+        } finally {
+            executor.shutdownNow();
+        }
+        try (WriteAheadLog wal = open()) {
+            assertEquals(committers, recover(wal, 0).size());
+        }
+    }
+
+    private WriteAheadLog open() throws IOException {
+        return new WriteAheadLog(walPath, objectMapper, config);
+    }
+
+    private static List<Long> recover(WriteAheadLog wal, long snapshotLsn) throws IOException {
+        List<Long> lsns = new ArrayList<>();
+        wal.recover(snapshotLsn, record -> lsns.add(record.getLsn()));
+        return lsns;
+    }
+
+    private List<String> sealedSegments() throws IOException {
+        List<String> names = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(file -> file.getFileName().toString())
+                .filter(name -> name.startsWith("db.wal."))
+                .sorted()
+                .forEach(names::add);
+        }
+        return names;
+    }
+
+    private static WalRecord insert(int id) {
+        return WalRecord.insert("t", Collections.singletonMap("id", id));
+    }
+
+    // 与 WriteAheadLog 写入的格式相同的一行记录
+    private String line(WalRecord record, long lsn) throws IOException {
+        record.setLsn(lsn);
+        return objectMapper.writeValueAsString(record) + "\n";
+    }
+}